@@ -0,0 +1,94 @@
+package com.leon.benchmark;
+
+import com.leon.model.BinaryCodec;
+import com.leon.model.CheckCashRequestMessage;
+import com.leon.model.CheckPositionRequestMessage;
+import com.leon.model.DisruptorEvent;
+import com.leon.model.ExecutionMessage;
+import com.leon.model.MessageFactory;
+import com.leon.model.PayloadFormat;
+import com.leon.model.RequestTypeEnum;
+import java.nio.charset.StandardCharsets;
+
+// Requests shared by the benchmarks, as the JSON that the readers receive and as the equivalent binary messages.
+final class BenchmarkMessages
+{
+    // Chronicle needs access to JDK internals when run on Java 9 and later, older JVMs ignore the options.
+    static final String IGNORE_UNRECOGNIZED = "-XX:+IgnoreUnrecognizedVMOptions";
+    static final String OPEN_LANG = "--add-opens=java.base/java.lang=ALL-UNNAMED";
+    static final String OPEN_REFLECT = "--add-opens=java.base/java.lang.reflect=ALL-UNNAMED";
+    static final String OPEN_IO = "--add-opens=java.base/java.io=ALL-UNNAMED";
+    static final String OPEN_NIO = "--add-opens=java.base/java.nio=ALL-UNNAMED";
+    static final String OPEN_UTIL = "--add-opens=java.base/java.util=ALL-UNNAMED";
+    static final String OPEN_NIO_CHANNELS = "--add-opens=java.base/sun.nio.ch=ALL-UNNAMED";
+    static final String OPEN_MISC = "--add-opens=java.base/jdk.internal.misc=ALL-UNNAMED";
+    static final String EXPORT_REF = "--add-exports=java.base/jdk.internal.ref=ALL-UNNAMED";
+    static final String EXPORT_NIO_CHANNELS = "--add-exports=java.base/sun.nio.ch=ALL-UNNAMED";
+    static final String EXPORT_UNSAFE = "--add-exports=jdk.unsupported/sun.misc=ALL-UNNAMED";
+    static final String EXPORT_JAVAC_FILE = "--add-exports=jdk.compiler/com.sun.tools.javac.file=ALL-UNNAMED";
+    static final String OPEN_JAVAC = "--add-opens=jdk.compiler/com.sun.tools.javac=ALL-UNNAMED";
+    // Chronicle otherwise tries to send usage analytics from every fork.
+    static final String DISABLE_ANALYTICS = "-Dchronicle.analytics.disable=true";
+
+    static final String CASH_LOCK = "{\"clientId\": 1, \"instrumentId\": 1, \"referenceId\": \"REF-000001\", \"requestType\": \"CASH_CHECK_REQUEST\", \"lockCash\": 1, \"unlockCash\": 0}";
+    static final String CASH_UNLOCK = "{\"clientId\": 1, \"instrumentId\": 1, \"referenceId\": \"REF-000002\", \"requestType\": \"CASH_CHECK_REQUEST\", \"lockCash\": 0, \"unlockCash\": 1}";
+    static final String POSITION_LOCK = "{\"clientId\": 1, \"instrumentId\": 1, \"referenceId\": \"REF-000003\", \"requestType\": \"POSITION_CHECK_REQUEST\", \"lockQuantity\": 1, \"unlockQuantity\": 0, \"requestSubType\": \"LONG_SELL_ONLY\"}";
+    static final String POSITION_UNLOCK = "{\"clientId\": 1, \"instrumentId\": 1, \"referenceId\": \"REF-000004\", \"requestType\": \"POSITION_CHECK_REQUEST\", \"lockQuantity\": 0, \"unlockQuantity\": 1, \"requestSubType\": \"LONG_SELL_ONLY\"}";
+    static final String EXECUTION = "{\"executionId\": \"EXE-000001\", \"orderId\": \"ORD-000001\", \"instrumentId\": 1, \"clientId\": 1, \"side\": \"S\", \"executedPrice\": 10.25, \"executedQuantity\": 100, \"cumulativeQuantity\": 100, \"orderQuantity\": 100, \"currency\": \"GBP\"}";
+    static final String START_OF_DAY = "[{\"clientId\": 1, \"instrumentId\": 1, \"startOfDayQuantity\": 1000000, \"executedQuantity\": 0, \"reservedQuantity\": 0, \"borrowedQuantity\": 0, \"startOfDayCash\": 1000000, \"executedCash\": 0, \"reservedCash\": 0}]";
+
+    private BenchmarkMessages() {}
+
+    static byte[] ascii(String text)
+    {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    // Decodes the JSON request and encodes it again as a binary message.
+    static byte[] binary(RequestTypeEnum requestType, String json)
+    {
+        MessageFactory messageFactory = new MessageFactory();
+        byte[] payload = ascii(json);
+        byte[] buffer = new byte[DisruptorEvent.PAYLOAD_CAPACITY];
+        int length;
+        switch (requestType)
+        {
+            case CASH_CHECK_REQUEST:
+                CheckCashRequestMessage checkCashRequestMessage = new CheckCashRequestMessage();
+                messageFactory.decodeCashCheckRequestMessage(payload, 0, payload.length, checkCashRequestMessage);
+                length = BinaryCodec.encode(checkCashRequestMessage, 0, buffer, 0);
+                break;
+            case POSITION_CHECK_REQUEST:
+                CheckPositionRequestMessage checkPositionRequestMessage = new CheckPositionRequestMessage();
+                messageFactory.decodePositionCheckRequestMessage(payload, 0, payload.length, checkPositionRequestMessage);
+                length = BinaryCodec.encode(checkPositionRequestMessage, 0, buffer, 0);
+                break;
+            case EXECUTION_MESSAGE:
+                ExecutionMessage executionMessage = new ExecutionMessage();
+                messageFactory.decodeExecutionMessage(payload, 0, payload.length, executionMessage);
+                length = BinaryCodec.encode(executionMessage, 0, buffer, 0);
+                break;
+            default:
+                throw new IllegalArgumentException("No binary encoding for request type: " + requestType);
+        }
+        byte[] message = new byte[length];
+        System.arraycopy(buffer, 0, message, 0, length);
+        return message;
+    }
+
+    // An inbound event as the producer would have translated it.
+    static DisruptorEvent event(RequestTypeEnum requestType, String json, PayloadFormat payloadFormat)
+    {
+        DisruptorEvent event = new DisruptorEvent();
+        event.setPayloadType(requestType);
+        event.setPayloadFormat(payloadFormat);
+        if(payloadFormat == PayloadFormat.BINARY)
+        {
+            byte[] message = binary(requestType, json);
+            event.setPayload(message, 0, message.length);
+        }
+        else
+            event.setPayload(json, 0, json.length());
+        return event;
+    }
+}
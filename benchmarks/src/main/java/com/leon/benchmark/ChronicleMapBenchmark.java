@@ -0,0 +1,120 @@
+package com.leon.benchmark;
+
+import com.leon.model.Inventory;
+import com.leon.model.InventoryKey;
+import com.leon.model.InventorySerializer;
+import com.leon.model.InventoryStore;
+import com.leon.model.PrimitiveInventoryStore;
+import net.openhft.chronicle.map.ChronicleMap;
+import net.openhft.chronicle.map.ChronicleMapBuilder;
+import net.openhft.chronicle.map.ExternalMapQueryContext;
+import net.openhft.chronicle.map.MapEntry;
+import org.openjdk.jmh.annotations.*;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Reads and writes of a persisted inventory map through InventorySerializer, built as ChronicleInventoryWriter builds it, against the
+// in-memory store that the handler now works on.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {BenchmarkMessages.IGNORE_UNRECOGNIZED, BenchmarkMessages.OPEN_LANG, BenchmarkMessages.OPEN_REFLECT, BenchmarkMessages.OPEN_IO,
+        BenchmarkMessages.OPEN_NIO, BenchmarkMessages.OPEN_UTIL, BenchmarkMessages.OPEN_NIO_CHANNELS, BenchmarkMessages.OPEN_MISC, BenchmarkMessages.EXPORT_REF,
+        BenchmarkMessages.EXPORT_NIO_CHANNELS, BenchmarkMessages.EXPORT_UNSAFE, BenchmarkMessages.EXPORT_JAVAC_FILE, BenchmarkMessages.OPEN_JAVAC,
+        BenchmarkMessages.DISABLE_ANALYTICS})
+public class ChronicleMapBenchmark
+{
+    private static final int POSITION_COUNT = 1_024;
+
+    private File mapFile;
+    private ChronicleMap<Long, Inventory> inventoryMap;
+    private final InventoryStore inventoryStore = new PrimitiveInventoryStore(POSITION_COUNT);
+    private final long[] keys = new long[POSITION_COUNT];
+    private final Inventory inventory = new Inventory();
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        mapFile = File.createTempFile("inventory-benchmark", ".map");
+        mapFile.delete();
+        inventoryMap = ChronicleMapBuilder
+                .of(Long.class, Inventory.class)
+                .name("position-inventory-map")
+                .entries(5_000)
+                .averageValue(new Inventory())
+                .valueMarshaller(InventorySerializer.getInstance())
+                .createPersistedTo(mapFile);
+
+        for(int index = 0; index < POSITION_COUNT; index++)
+        {
+            Inventory position = new Inventory();
+            position.setInstrumentId(index % 128 + 1);
+            position.setClientId(index / 128 + 1);
+            position.setStartOfDayQuantity(1_000_000);
+            position.setStartOfDayCash(1_000_000.0);
+            keys[index] = InventoryKey.of(position);
+            inventoryMap.put(keys[index], position);
+            inventoryStore.put(position);
+        }
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        inventoryMap.close();
+        mapFile.delete();
+    }
+
+    private long nextKey()
+    {
+        return keys[next++ & (POSITION_COUNT - 1)];
+    }
+
+    // Map.get deserializes into a new instance on every call.
+    @Benchmark
+    public Inventory get()
+    {
+        return inventoryMap.get(nextKey());
+    }
+
+    @Benchmark
+    public Inventory getUsing()
+    {
+        return inventoryMap.getUsing(nextKey(), inventory);
+    }
+
+    // Both writes read the position first, as an update does. Map.put then also reads the previous value back into a new instance to return it.
+    @Benchmark
+    public Inventory put()
+    {
+        long key = nextKey();
+        inventoryMap.getUsing(key, inventory);
+        return inventoryMap.put(key, inventory);
+    }
+
+    // The write-behind path of ChronicleInventoryWriter, the value is written over the existing bytes under the segment lock.
+    @Benchmark
+    public Inventory replaceInPlace()
+    {
+        long key = nextKey();
+        inventoryMap.getUsing(key, inventory);
+        try(ExternalMapQueryContext<Long, Inventory, ?> context = inventoryMap.queryContext(key))
+        {
+            context.writeLock().lock();
+            MapEntry<Long, Inventory> entry = context.entry();
+            if(entry != null)
+                entry.doReplaceValue(context.wrapValueAsData(inventory));
+        }
+        return inventory;
+    }
+
+    @Benchmark
+    public Inventory storeRead()
+    {
+        return inventoryStore.read(inventoryStore.slotOf(nextKey()), inventory);
+    }
+}
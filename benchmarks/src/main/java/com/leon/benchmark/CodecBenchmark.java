@@ -0,0 +1,113 @@
+package com.leon.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.leon.model.BinaryCodec;
+import com.leon.model.CheckCashRequestMessage;
+import com.leon.model.CheckPositionRequestMessage;
+import com.leon.model.DisruptorEvent;
+import com.leon.model.ExecutionMessage;
+import com.leon.model.InventoryCheckResponse;
+import com.leon.model.MessageFactory;
+import com.leon.model.MutableString;
+import com.leon.model.OutcomeType;
+import com.leon.model.RequestTypeEnum;
+import com.leon.model.ResponseEncoder;
+import org.openjdk.jmh.annotations.*;
+import java.util.concurrent.TimeUnit;
+
+// Decoding of the three request types from JSON and binary, and encoding of a response into an outbound payload, against the Jackson
+// serialization that the encoder replaced.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark
+{
+    private final MessageFactory messageFactory = new MessageFactory();
+    private final CheckCashRequestMessage checkCashRequestMessage = new CheckCashRequestMessage();
+    private final CheckPositionRequestMessage checkPositionRequestMessage = new CheckPositionRequestMessage();
+    private final ExecutionMessage executionMessage = new ExecutionMessage();
+    private final byte[] cashJson = BenchmarkMessages.ascii(BenchmarkMessages.CASH_LOCK);
+    private final byte[] positionJson = BenchmarkMessages.ascii(BenchmarkMessages.POSITION_LOCK);
+    private final byte[] executionJson = BenchmarkMessages.ascii(BenchmarkMessages.EXECUTION);
+    private final byte[] cashBinary = BenchmarkMessages.binary(RequestTypeEnum.CASH_CHECK_REQUEST, BenchmarkMessages.CASH_LOCK);
+    private final byte[] positionBinary = BenchmarkMessages.binary(RequestTypeEnum.POSITION_CHECK_REQUEST, BenchmarkMessages.POSITION_LOCK);
+    private final byte[] executionBinary = BenchmarkMessages.binary(RequestTypeEnum.EXECUTION_MESSAGE, BenchmarkMessages.EXECUTION);
+
+    private final byte[] responseBuffer = new byte[DisruptorEvent.PAYLOAD_CAPACITY];
+    private final MutableString referenceId = new MutableString(32);
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final InventoryCheckResponse response = new InventoryCheckResponse(1, 0, OutcomeType.SUCCESS.name(), "REF-000003", 1, 1, 0.0, 0.0,
+            RequestTypeEnum.POSITION_CHECK_REQUEST.name(), RequestTypeEnum.LONG_SELL_ONLY.name());
+
+    @Setup
+    public void setUp()
+    {
+        referenceId.set("REF-000003");
+    }
+
+    @Benchmark
+    public CheckCashRequestMessage decodeCashJson()
+    {
+        messageFactory.decodeCashCheckRequestMessage(cashJson, 0, cashJson.length, checkCashRequestMessage);
+        return checkCashRequestMessage;
+    }
+
+    @Benchmark
+    public CheckPositionRequestMessage decodePositionJson()
+    {
+        messageFactory.decodePositionCheckRequestMessage(positionJson, 0, positionJson.length, checkPositionRequestMessage);
+        return checkPositionRequestMessage;
+    }
+
+    @Benchmark
+    public ExecutionMessage decodeExecutionJson()
+    {
+        messageFactory.decodeExecutionMessage(executionJson, 0, executionJson.length, executionMessage);
+        return executionMessage;
+    }
+
+    @Benchmark
+    public CheckCashRequestMessage decodeCashBinary()
+    {
+        BinaryCodec.decode(cashBinary, 0, cashBinary.length, checkCashRequestMessage);
+        return checkCashRequestMessage;
+    }
+
+    @Benchmark
+    public CheckPositionRequestMessage decodePositionBinary()
+    {
+        BinaryCodec.decode(positionBinary, 0, positionBinary.length, checkPositionRequestMessage);
+        return checkPositionRequestMessage;
+    }
+
+    @Benchmark
+    public ExecutionMessage decodeExecutionBinary()
+    {
+        BinaryCodec.decode(executionBinary, 0, executionBinary.length, executionMessage);
+        return executionMessage;
+    }
+
+    @Benchmark
+    public int encodeResponseJson()
+    {
+        return ResponseEncoder.encode(responseBuffer, 0, 1, 0, OutcomeType.SUCCESS, referenceId, 1, 1, 0.0, 0.0,
+                RequestTypeEnum.POSITION_CHECK_REQUEST, RequestTypeEnum.LONG_SELL_ONLY);
+    }
+
+    @Benchmark
+    public int encodeResponseBinary()
+    {
+        return BinaryCodec.encodeResponse(responseBuffer, 0, RequestTypeEnum.POSITION_CHECK_RESPONSE, 1, 1, 0, OutcomeType.SUCCESS, referenceId, 1, 1,
+                0.0, 0.0, RequestTypeEnum.POSITION_CHECK_REQUEST, RequestTypeEnum.LONG_SELL_ONLY);
+    }
+
+    @Benchmark
+    public byte[] encodeResponseJackson() throws JsonProcessingException
+    {
+        return objectMapper.writeValueAsBytes(response);
+    }
+}
@@ -0,0 +1,27 @@
+package com.leon.benchmark;
+
+import com.leon.model.Instrument;
+import com.leon.service.InstrumentService;
+import java.util.Optional;
+
+// The inventory checks do not look instruments up, the handler only needs a service to be constructed.
+class EmptyInstrumentService implements InstrumentService
+{
+    @Override
+    public void put(int instrumentId, Instrument instrument) {}
+
+    @Override
+    public Optional<Instrument> get(int instrumentId)
+    {
+        return Optional.empty();
+    }
+
+    @Override
+    public Optional<Instrument> get(String bloombergCode)
+    {
+        return Optional.empty();
+    }
+
+    @Override
+    public void upload(String uploadFilePath) {}
+}
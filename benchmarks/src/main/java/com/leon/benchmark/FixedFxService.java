@@ -0,0 +1,29 @@
+package com.leon.benchmark;
+
+import com.leon.model.FxRate;
+import com.leon.service.FxService;
+import java.util.Optional;
+
+// Converts every currency at the same rate so that executions never take the missing rate path.
+class FixedFxService implements FxService
+{
+    private final FxRate fxRate = new FxRate("GBP", 1.25);
+
+    @Override
+    public void put(String currency, double fxRateAgainstOneUSD) {}
+
+    @Override
+    public Optional<FxRate> get(String currency)
+    {
+        return Optional.of(fxRate);
+    }
+
+    @Override
+    public FxRate lookup(CharSequence currency)
+    {
+        return fxRate;
+    }
+
+    @Override
+    public void upload(String uploadFilePath) {}
+}
@@ -0,0 +1,173 @@
+package com.leon.benchmark;
+
+import com.leon.handler.InventoryCheckEventHandler;
+import com.leon.io.ChronicleInventoryWriter;
+import com.leon.model.DisruptorEvent;
+import com.leon.model.PayloadFormat;
+import com.leon.model.RequestTypeEnum;
+import com.leon.service.DisruptorService;
+import com.leon.service.LatencyService;
+import com.leon.service.RingStatistics;
+import com.lmax.disruptor.EventHandler;
+import org.openjdk.jmh.annotations.*;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// The whole of InventoryCheckEventHandler.onEvent for each request type: decoding, the inventory check, the event log being off, the
+// response encoding and, at the end of each batch, the hand-off of the changed position to the write-behind ring and of the responses to the
+// outbound ring, which here discards them. Locks are followed by the matching unlock so that every iteration takes the same path.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {BenchmarkMessages.IGNORE_UNRECOGNIZED, BenchmarkMessages.OPEN_LANG, BenchmarkMessages.OPEN_REFLECT, BenchmarkMessages.OPEN_IO,
+        BenchmarkMessages.OPEN_NIO, BenchmarkMessages.OPEN_UTIL, BenchmarkMessages.OPEN_NIO_CHANNELS, BenchmarkMessages.OPEN_MISC, BenchmarkMessages.EXPORT_REF,
+        BenchmarkMessages.EXPORT_NIO_CHANNELS, BenchmarkMessages.EXPORT_UNSAFE, BenchmarkMessages.EXPORT_JAVAC_FILE, BenchmarkMessages.OPEN_JAVAC,
+        BenchmarkMessages.DISABLE_ANALYTICS})
+public class InventoryCheckEventHandlerBenchmark
+{
+    @Param({"JSON", "BINARY"})
+    private PayloadFormat payloadFormat;
+
+    // Events per batch, the end of a batch is where the handler flushes its dirty positions and publishes its responses.
+    @Param({"1", "64"})
+    private int batchSize;
+
+    private File directory;
+    private InventoryCheckEventHandler handler;
+    private DisruptorEvent cashLock;
+    private DisruptorEvent cashUnlock;
+    private DisruptorEvent positionLock;
+    private DisruptorEvent positionUnlock;
+    private DisruptorEvent execution;
+    private long sequence;
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        directory = Files.createTempDirectory("handler-benchmark").toFile();
+        File startOfDayFile = new File(directory, "SOD.json");
+        Files.write(startOfDayFile.toPath(), BenchmarkMessages.START_OF_DAY.getBytes(StandardCharsets.US_ASCII));
+
+        handler = new InventoryCheckEventHandler(new DiscardingDisruptorService(), new EmptyInstrumentService(), new FixedFxService());
+        handler.start(new ChronicleInventoryWriter(new File(directory, "position-inventory.map").getPath(), null, 4096), 256);
+        handler.uploadSODPositions(startOfDayFile.getPath());
+
+        cashLock = BenchmarkMessages.event(RequestTypeEnum.CASH_CHECK_REQUEST, BenchmarkMessages.CASH_LOCK, payloadFormat);
+        cashUnlock = BenchmarkMessages.event(RequestTypeEnum.CASH_CHECK_REQUEST, BenchmarkMessages.CASH_UNLOCK, payloadFormat);
+        positionLock = BenchmarkMessages.event(RequestTypeEnum.POSITION_CHECK_REQUEST, BenchmarkMessages.POSITION_LOCK, payloadFormat);
+        positionUnlock = BenchmarkMessages.event(RequestTypeEnum.POSITION_CHECK_REQUEST, BenchmarkMessages.POSITION_UNLOCK, payloadFormat);
+        execution = BenchmarkMessages.event(RequestTypeEnum.EXECUTION_MESSAGE, BenchmarkMessages.EXECUTION, payloadFormat);
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        handler.stop();
+        File[] files = directory.listFiles();
+        if(files != null)
+            for(File file : files)
+                file.delete();
+        directory.delete();
+    }
+
+    private void onEvent(DisruptorEvent event)
+    {
+        long next = sequence++;
+        event.setUid(next);
+        handler.onEvent(event, next, (next + 1) % batchSize == 0);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(2)
+    public void cashLockAndUnlock()
+    {
+        onEvent(cashLock);
+        onEvent(cashUnlock);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(2)
+    public void positionLockAndUnlock()
+    {
+        onEvent(positionLock);
+        onEvent(positionUnlock);
+    }
+
+    @Benchmark
+    public void execution()
+    {
+        onEvent(execution);
+    }
+
+    // Stands in for the outbound ring, the responses are only counted.
+    private static class DiscardingDisruptorService implements DisruptorService
+    {
+        private final RingStatistics statistics = new RingStatistics();
+        private long publishedCount;
+
+        @Override
+        public void start(String name, EventHandler<DisruptorEvent> journalHandler, EventHandler<DisruptorEvent> actionEventHandler) {}
+
+        @Override
+        public void start(String name, EventHandler<DisruptorEvent> journalHandler, EventHandler<DisruptorEvent> replicationHandler,
+                          EventHandler<DisruptorEvent> actionEventHandler) {}
+
+        @Override
+        public void stop() {}
+
+        @Override
+        public void setLatencyService(LatencyService latencyService) {}
+
+        @Override
+        public RingStatistics getStatistics()
+        {
+            return statistics;
+        }
+
+        @Override
+        public Map<String, Object> getMetrics()
+        {
+            return Collections.singletonMap("publishedCount", publishedCount);
+        }
+
+        @Override
+        public void setNextUid(long nextUid) {}
+
+        @Override
+        public long getNextUid()
+        {
+            return publishedCount;
+        }
+
+        @Override
+        public void push(String message)
+        {
+            publishedCount++;
+        }
+
+        @Override
+        public void push(byte[] message)
+        {
+            publishedCount++;
+        }
+
+        @Override
+        public void pushAll(String[] messages, int count)
+        {
+            publishedCount += count;
+        }
+
+        @Override
+        public void pushAll(DisruptorEvent[] events, int count)
+        {
+            publishedCount += count;
+        }
+    }
+}
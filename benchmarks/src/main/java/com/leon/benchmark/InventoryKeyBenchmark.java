@@ -0,0 +1,85 @@
+package com.leon.benchmark;
+
+import com.leon.model.Inventory;
+import com.leon.model.InventoryKey;
+import com.leon.model.InventoryStore;
+import com.leon.model.PrimitiveInventoryStore;
+import org.openjdk.jmh.annotations.*;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Building the key of a position and looking it up, with the "%06d%06d" String key the inventory used to be keyed by against the packed key.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InventoryKeyBenchmark
+{
+    // A power of two so that the benchmarks can cycle through the positions with a mask.
+    private static final int POSITION_COUNT = 1_024;
+
+    private final Map<String, Inventory> inventoryByStringKey = new HashMap<>();
+    private final InventoryStore inventoryStore = new PrimitiveInventoryStore(POSITION_COUNT);
+    private final int[] instrumentIds = new int[POSITION_COUNT];
+    private final int[] clientIds = new int[POSITION_COUNT];
+    private int next;
+
+    @Setup
+    public void setUp()
+    {
+        for(int index = 0; index < POSITION_COUNT; index++)
+        {
+            instrumentIds[index] = index % 128 + 1;
+            clientIds[index] = index / 128 + 1;
+            Inventory inventory = new Inventory();
+            inventory.setInstrumentId(instrumentIds[index]);
+            inventory.setClientId(clientIds[index]);
+            inventoryByStringKey.put(String.format("%06d%06d", inventory.getInstrumentId(), inventory.getClientId()), inventory);
+            inventoryStore.put(inventory);
+        }
+    }
+
+    // Every call moves on to the next position so that the lookups are not all served by the same cache lines.
+    private int nextIndex()
+    {
+        return next++ & (POSITION_COUNT - 1);
+    }
+
+    @Benchmark
+    public String formattedKey()
+    {
+        int index = nextIndex();
+        return String.format("%06d%06d", instrumentIds[index], clientIds[index]);
+    }
+
+    @Benchmark
+    public String concatenatedKey()
+    {
+        int index = nextIndex();
+        return instrumentIds[index] + "-" + clientIds[index];
+    }
+
+    @Benchmark
+    public long packedKey()
+    {
+        int index = nextIndex();
+        return InventoryKey.of(instrumentIds[index], clientIds[index]);
+    }
+
+    @Benchmark
+    public Inventory formattedKeyLookup()
+    {
+        int index = nextIndex();
+        return inventoryByStringKey.get(String.format("%06d%06d", instrumentIds[index], clientIds[index]));
+    }
+
+    @Benchmark
+    public int packedKeyLookup()
+    {
+        int index = nextIndex();
+        return inventoryStore.slotOf(InventoryKey.of(instrumentIds[index], clientIds[index]));
+    }
+}
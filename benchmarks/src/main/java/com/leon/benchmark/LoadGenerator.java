@@ -0,0 +1,376 @@
+package com.leon.benchmark;
+
+import com.leon.Application;
+import com.leon.service.OrchestrationService;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.broker.BrokerService;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import javax.jms.Connection;
+import javax.jms.DeliveryMode;
+import javax.jms.JMSException;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+// Drives the whole application through JMS at fixed, open-loop rates and reports how far it keeps up. It starts an embedded ActiveMQ broker
+// and the Spring application against it, uploads a synthetic start of day for a universe of clients and instruments, then sends cash checks,
+// position checks and executions for keys drawn from a Zipf distribution, so that a few positions are hot as in production.
+// Each request is sent at its intended time whether or not earlier ones were answered, and its latency is measured from that intended time
+// to its response on the response topic, matched by referenceId. A generator that falls behind therefore shows up as latency instead of
+// being hidden by coordinated omission. The latency from the actual send time is reported next to it for comparison.
+// Each rate is run for a fixed time. The highest rate at which every response arrived and the corrected p99 stayed within the SLA is
+// reported as the maximum sustainable throughput. Run from the shaded benchmarks jar, with the same JVM options as the application:
+// java <add-opens options> -cp benchmarks/target/benchmarks.jar com.leon.benchmark.LoadGenerator --rates=1000,5000,10000 --step.seconds=30
+// Every setting is a --name=value argument, see DEFAULT_SETTINGS. Any other argument is passed on to the application, to try it with
+// another configuration, for example --inbound.disruptor.wait.strategy=YIELDING.
+public class LoadGenerator
+{
+    private static final String[][] DEFAULT_SETTINGS =
+    {
+        {"rates", "1000,2000,5000,10000"},
+        {"step.seconds", "20"},
+        {"warmup.seconds", "10"},
+        {"drain.seconds", "5"},
+        {"instruments", "1000"},
+        {"clients", "50"},
+        {"zipf.exponent", "1.0"},
+        // Percentages of cash checks, position checks and executions, in that order.
+        {"mix", "40,40,20"},
+        {"sla.p99.millis", "10"},
+        {"broker.port", "61617"},
+        {"server.port", "20110"},
+        {"work.directory", ""}
+    };
+    private static final String REFERENCE_PREFIX = "LG";
+    private static final String REFERENCE_FIELD = "\"referenceId\":\"" + REFERENCE_PREFIX;
+    private static final long HIGHEST_TRACKABLE_NANOS = 60_000_000_000L;
+
+    private final Map<String, String> settings;
+    private final List<String> applicationArguments;
+    private final int[] rates;
+    private final int stepSeconds;
+    private final int warmupSeconds;
+    private final int instrumentCount;
+    private final int clientCount;
+    private final int[] mix;
+    private final ZipfDistribution keys;
+
+    // Indexed by the number in each referenceId. The intended and actual send times are written before the request is sent.
+    private long[] intendedTimes;
+    private long[] sendTimes;
+    private int[] steps;
+    private Recorder[] correctedLatencies;
+    private Recorder[] uncorrectedLatencies;
+    private AtomicLongArray responseCounts;
+
+    public LoadGenerator(Map<String, String> settings, List<String> applicationArguments)
+    {
+        this.settings = settings;
+        this.applicationArguments = applicationArguments;
+        rates = Arrays.stream(settings.get("rates").split(",")).mapToInt(rate -> Integer.parseInt(rate.trim())).toArray();
+        stepSeconds = Integer.parseInt(settings.get("step.seconds"));
+        warmupSeconds = Integer.parseInt(settings.get("warmup.seconds"));
+        instrumentCount = Integer.parseInt(settings.get("instruments"));
+        clientCount = Integer.parseInt(settings.get("clients"));
+        mix = Arrays.stream(settings.get("mix").split(",")).mapToInt(share -> Integer.parseInt(share.trim())).toArray();
+        if(rates.length == 0 || Arrays.stream(rates).anyMatch(rate -> rate < 1) || mix.length != 3 || Arrays.stream(mix).sum() != 100)
+            throw new IllegalArgumentException("Rates must be positive and the mix must give three percentages that add up to 100.");
+
+        keys = new ZipfDistribution(instrumentCount * clientCount, Double.parseDouble(settings.get("zipf.exponent")));
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        Map<String, String> settings = new LinkedHashMap<>();
+        for(String[] setting : DEFAULT_SETTINGS)
+            settings.put(setting[0], setting[1]);
+
+        List<String> applicationArguments = new ArrayList<>();
+        for(String arg : args)
+        {
+            int separator = arg.indexOf('=');
+            if(!arg.startsWith("--") || separator < 3)
+            {
+                System.err.println("Arguments must be of the form --name=value, the settings and their defaults are: " + settings);
+                System.exit(1);
+            }
+
+            String name = arg.substring(2, separator);
+            if(settings.containsKey(name))
+                settings.put(name, arg.substring(separator + 1));
+            else
+                applicationArguments.add(arg);
+        }
+
+        new LoadGenerator(settings, applicationArguments).run();
+    }
+
+    public void run() throws Exception
+    {
+        File workDirectory = settings.get("work.directory").isEmpty() ? Files.createTempDirectory("load-generator").toFile() : new File(settings.get("work.directory"));
+        if(!workDirectory.isDirectory() && !workDirectory.mkdirs())
+            throw new IOException("Unable to create the work directory: " + workDirectory);
+
+        String brokerUrl = "tcp://localhost:" + settings.get("broker.port");
+        BrokerService broker = new BrokerService();
+        broker.setPersistent(false);
+        broker.setUseJmx(false);
+        broker.addConnector(brokerUrl);
+        broker.start();
+
+        ConfigurableApplicationContext context = SpringApplication.run(Application.class, springArguments(workDirectory, brokerUrl));
+        Connection connection = null;
+        try
+        {
+            allocate();
+            connection = new ActiveMQConnectionFactory(brokerUrl).createConnection();
+            Session responseSession = connection.createSession(false, Session.DUPS_OK_ACKNOWLEDGE);
+            MessageConsumer consumer = responseSession.createConsumer(responseSession.createTopic(context.getEnvironment().getProperty("spring.activemq.position.check.response.topic")));
+            consumer.setMessageListener(message ->
+            {
+                long receivedTime = System.nanoTime();
+                try
+                {
+                    if(message instanceof TextMessage)
+                        onResponse(((TextMessage) message).getText(), receivedTime);
+                }
+                catch(JMSException e)
+                {
+                    System.err.println("Unable to read response: " + e.getMessage());
+                }
+            });
+            Session requestSession = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            MessageProducer producer = requestSession.createProducer(requestSession.createTopic(context.getEnvironment().getProperty("spring.activemq.position.check.request.topic")));
+            producer.setDeliveryMode(DeliveryMode.NON_PERSISTENT);
+            connection.start();
+
+            File startOfDayFile = writeStartOfDay(workDirectory);
+            OrchestrationService orchestrationService = context.getBean(OrchestrationService.class);
+            orchestrationService.upload(startOfDayFile.getPath());
+            orchestrationService.start();
+
+            int next = 0;
+            long[] sentCounts = new long[rates.length + 1];
+            long[] expectedCounts = new long[rates.length + 1];
+            // Step 0 is the warm up at the first rate, it is not reported.
+            for(int step = 0; step <= rates.length; step++)
+            {
+                int rate = step == 0 ? rates[0] : rates[step - 1];
+                int count = rate * (step == 0 ? warmupSeconds : stepSeconds);
+                next = send(requestSession, producer, step, rate, next, count, sentCounts, expectedCounts);
+                drain(step, expectedCounts[step]);
+                if(step > 0)
+                    report(step, rate, sentCounts[step], expectedCounts[step]);
+            }
+        }
+        finally
+        {
+            if(connection != null)
+                connection.close();
+            context.close();
+            broker.stop();
+        }
+    }
+
+    // Keeps the state of the application in the work directory so that a load run never touches that of a real instance.
+    private String[] springArguments(File workDirectory, String brokerUrl) throws IOException
+    {
+        File emptyRequestFile = new File(workDirectory, "requests.txt");
+        Files.write(emptyRequestFile.toPath(), new byte[0]);
+        String path = workDirectory.getPath() + File.separator;
+        List<String> arguments = new ArrayList<>(Arrays.asList(
+            "--spring.activemq.broker-url=" + brokerUrl,
+            "--server.port=" + settings.get("server.port"),
+            "--reader.file.path=" + emptyRequestFile.getPath(),
+            "--chronicle.map.file.path=" + path + "position-inventory.map",
+            "--chronicle.map.legacy.file.path=",
+            "--inbound.journal.path=" + path + "inbound-journal",
+            "--inbound.journal.recovery.file.path=" + path + "inbound-journal",
+            "--outbound.journal.path=" + path + "outbound-journal",
+            "--inventory.snapshot.path=" + path + "inventory-snapshot",
+            "--event.log.path=" + path + "event-log",
+            "--replication.enabled=false"));
+        // Given last, so that they override the defaults above.
+        arguments.addAll(applicationArguments);
+        return arguments.toArray(new String[0]);
+    }
+
+    private void allocate()
+    {
+        long total = (long) rates[0] * warmupSeconds;
+        for(int rate : rates)
+            total += (long) rate * stepSeconds;
+        if(total > Integer.MAX_VALUE / 2)
+            throw new IllegalArgumentException("The run would send " + total + " requests, reduce the rates or the step time.");
+
+        intendedTimes = new long[(int) total];
+        sendTimes = new long[(int) total];
+        steps = new int[(int) total];
+        correctedLatencies = new Recorder[rates.length + 1];
+        uncorrectedLatencies = new Recorder[rates.length + 1];
+        for(int step = 0; step <= rates.length; step++)
+        {
+            correctedLatencies[step] = new Recorder(1, HIGHEST_TRACKABLE_NANOS, 3);
+            uncorrectedLatencies[step] = new Recorder(1, HIGHEST_TRACKABLE_NANOS, 3);
+        }
+        responseCounts = new AtomicLongArray(rates.length + 1);
+    }
+
+    // Sends count requests at the given rate, each at its own intended time, and returns the index of the next request.
+    private int send(Session session, MessageProducer producer, int step, int rate, int first, int count, long[] sentCounts, long[] expectedCounts) throws JMSException
+    {
+        double intervalNanos = 1_000_000_000.0 / rate;
+        long startTime = System.nanoTime();
+        long maximumSendLag = 0;
+        for(int index = 0; index < count; index++)
+        {
+            int reference = first + index;
+            long intendedTime = startTime + (long) (index * intervalNanos);
+            long delay = intendedTime - System.nanoTime();
+            if(delay > 0)
+                LockSupport.parkNanos(delay);
+
+            String request = nextRequest(reference);
+            steps[reference] = step;
+            intendedTimes[reference] = intendedTime;
+            sendTimes[reference] = System.nanoTime();
+            maximumSendLag = Math.max(maximumSendLag, sendTimes[reference] - intendedTime);
+            producer.send(session.createTextMessage(request));
+            if(!request.startsWith("EXECUTION_MESSAGE"))
+                expectedCounts[step]++;
+        }
+        sentCounts[step] = count;
+        if(maximumSendLag > 1_000_000_000L)
+            System.out.println("The generator fell behind its schedule by up to " + maximumSendLag / 1_000_000 + " ms, the latencies of this step include that delay.");
+        return first + count;
+    }
+
+    // Executions are not answered, the checks lock or unlock at random so that the positions neither run out nor pile up.
+    private String nextRequest(int reference)
+    {
+        int key = keys.next();
+        int instrumentId = key % instrumentCount + 1;
+        int clientId = key / instrumentCount + 1;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int type = random.nextInt(100);
+        boolean isLock = random.nextBoolean();
+        String ids = "{\"referenceId\": \"" + REFERENCE_PREFIX + reference + "\", \"clientId\": " + clientId + ", \"instrumentId\": " + instrumentId;
+        if(type < mix[0])
+            return "CASH_CHECK_REQUEST=" + ids + ", \"requestType\": \"CASH_CHECK_REQUEST\", \"lockCash\": " + (isLock ? 10 : 0) + ", \"unlockCash\": " + (isLock ? 0 : 10) + "}";
+        if(type < mix[0] + mix[1])
+            return "POSITION_CHECK_REQUEST=" + ids + ", \"requestType\": \"POSITION_CHECK_REQUEST\", \"lockQuantity\": " + (isLock ? 10 : 0) + ", \"unlockQuantity\": "
+                    + (isLock ? 0 : 10) + ", \"requestSubType\": \"LONG_SELL_ONLY\"}";
+        return "EXECUTION_MESSAGE=" + ids + ", \"executionId\": \"EX" + reference + "\", \"orderId\": \"OR" + reference + "\", \"side\": \"" + (isLock ? 'B' : 'S')
+                + "\", \"executedPrice\": 10.5, \"executedQuantity\": 10, \"cumulativeQuantity\": 10, \"orderQuantity\": 10, \"currency\": \"USD\"}";
+    }
+
+    private void onResponse(String response, long receivedTime)
+    {
+        int start = response.indexOf(REFERENCE_FIELD);
+        if(start < 0)
+            return;
+
+        int reference = 0;
+        for(int index = start + REFERENCE_FIELD.length(); index < response.length() && Character.isDigit(response.charAt(index)); index++)
+            reference = reference * 10 + (response.charAt(index) - '0');
+        if(reference >= intendedTimes.length)
+            return;
+
+        int step = steps[reference];
+        correctedLatencies[step].recordValue(Math.max(1, Math.min(receivedTime - intendedTimes[reference], HIGHEST_TRACKABLE_NANOS)));
+        uncorrectedLatencies[step].recordValue(Math.max(1, Math.min(receivedTime - sendTimes[reference], HIGHEST_TRACKABLE_NANOS)));
+        responseCounts.incrementAndGet(step);
+    }
+
+    private void drain(int step, long expectedCount)
+    {
+        long deadline = System.nanoTime() + Long.parseLong(settings.get("drain.seconds")) * 1_000_000_000L;
+        while(responseCounts.get(step) < expectedCount && System.nanoTime() < deadline)
+            LockSupport.parkNanos(1_000_000);
+    }
+
+    private int highestSustainableRate = 0;
+
+    private void report(int step, int rate, long sentCount, long expectedCount)
+    {
+        Histogram corrected = correctedLatencies[step].getIntervalHistogram();
+        Histogram uncorrected = uncorrectedLatencies[step].getIntervalHistogram();
+        long responseCount = responseCounts.get(step);
+        double slaNanos = Double.parseDouble(settings.get("sla.p99.millis")) * 1_000_000;
+        boolean isSustained = responseCount >= expectedCount && corrected.getValueAtPercentile(99.0) <= slaNanos;
+        if(isSustained && rate > highestSustainableRate)
+            highestSustainableRate = rate;
+
+        System.out.println(String.format("rate=%d/s sent=%d responses=%d/%d answered=%.0f/s", rate, sentCount, responseCount, expectedCount, responseCount / (double) stepSeconds)
+                + " corrected(ms) " + percentiles(corrected) + " uncorrected(ms) " + percentiles(uncorrected) + (isSustained ? " SUSTAINED" : " NOT SUSTAINED"));
+        if(step == rates.length)
+            System.out.println("Maximum sustainable throughput: " + (highestSustainableRate == 0 ? "none of the rates" : highestSustainableRate + " requests/s")
+                    + " with a p99 within " + settings.get("sla.p99.millis") + " ms.");
+    }
+
+    private static String percentiles(Histogram histogram)
+    {
+        return String.format("p50=%.3f p99=%.3f p99.9=%.3f max=%.3f", histogram.getValueAtPercentile(50.0) / 1e6, histogram.getValueAtPercentile(99.0) / 1e6,
+                histogram.getValueAtPercentile(99.9) / 1e6, histogram.getMaxValue() / 1e6);
+    }
+
+    private File writeStartOfDay(File workDirectory) throws IOException
+    {
+        StringBuilder startOfDay = new StringBuilder("[");
+        for(int clientId = 1; clientId <= clientCount; clientId++)
+        {
+            for(int instrumentId = 1; instrumentId <= instrumentCount; instrumentId++)
+            {
+                if(startOfDay.length() > 1)
+                    startOfDay.append(",\n");
+                startOfDay.append("{\"clientId\": ").append(clientId).append(", \"instrumentId\": ").append(instrumentId)
+                        .append(", \"startOfDayQuantity\": 1000000, \"executedQuantity\": 0, \"reservedQuantity\": 0, \"borrowedQuantity\": 0,")
+                        .append(" \"startOfDayCash\": 1000000, \"executedCash\": 0, \"reservedCash\": 0}");
+            }
+        }
+        File startOfDayFile = new File(workDirectory, "SOD.json");
+        Files.write(startOfDayFile.toPath(), startOfDay.append(']').toString().getBytes(StandardCharsets.US_ASCII));
+        return startOfDayFile;
+    }
+
+    // Draws ranks from 0 to size - 1, rank k with a probability proportional to 1 / (k + 1)^exponent, by binary search of the cumulative distribution.
+    private static class ZipfDistribution
+    {
+        private final double[] cumulativeProbabilities;
+
+        ZipfDistribution(int size, double exponent)
+        {
+            cumulativeProbabilities = new double[size];
+            double total = 0;
+            for(int rank = 0; rank < size; rank++)
+            {
+                total += 1.0 / Math.pow(rank + 1, exponent);
+                cumulativeProbabilities[rank] = total;
+            }
+            for(int rank = 0; rank < size; rank++)
+                cumulativeProbabilities[rank] /= total;
+        }
+
+        int next()
+        {
+            int rank = Arrays.binarySearch(cumulativeProbabilities, ThreadLocalRandom.current().nextDouble());
+            return Math.min(rank < 0 ? -rank - 1 : rank, cumulativeProbabilities.length - 1);
+        }
+    }
+}
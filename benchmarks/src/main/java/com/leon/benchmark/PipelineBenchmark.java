@@ -0,0 +1,303 @@
+package com.leon.benchmark;
+
+import com.leon.handler.DisruptorEventProducer;
+import com.leon.handler.InventoryCheckEventHandler;
+import com.leon.handler.PublishingEventHandler;
+import com.leon.io.ChronicleInventoryWriter;
+import com.leon.io.DisruptorWriter;
+import com.leon.model.DisruptorEvent;
+import com.leon.model.DisruptorEventFactory;
+import com.leon.model.WaitStrategyType;
+import com.leon.service.DisruptorServiceImpl;
+import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.dsl.Disruptor;
+import com.lmax.disruptor.dsl.ProducerType;
+import com.lmax.disruptor.util.DaemonThreadFactory;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.openjdk.jmh.annotations.*;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// The whole request path with stub I/O: producer threads translate JSON requests into the inbound ring, InventoryCheckEventHandler checks
+// them against the inventory, the responses go through the outbound ring of a DisruptorServiceImpl and PublishingEventHandler hands them
+// to a writer that only counts them. The journals are replaced by handlers that copy each payload into memory.
+// Each invocation publishes a burst of requests and returns once every response has been written, so the score is requests per second.
+// The latency of each request, from its translation into the inbound ring to its response being written, is printed as percentiles after
+// every iteration. As the requests arrive in bursts, the latency includes waiting behind the earlier requests of the same burst.
+// Narrow the matrix with -p, for example: -p ringSize=4096 -p waitStrategy=BUSY_SPIN
+// Busy spinning and yielding strategies need a core per consumer thread, on smaller machines they mostly measure contention.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {BenchmarkMessages.IGNORE_UNRECOGNIZED, BenchmarkMessages.OPEN_LANG, BenchmarkMessages.OPEN_REFLECT, BenchmarkMessages.OPEN_IO,
+        BenchmarkMessages.OPEN_NIO, BenchmarkMessages.OPEN_UTIL, BenchmarkMessages.OPEN_NIO_CHANNELS, BenchmarkMessages.OPEN_MISC, BenchmarkMessages.EXPORT_REF,
+        BenchmarkMessages.EXPORT_NIO_CHANNELS, BenchmarkMessages.EXPORT_UNSAFE, BenchmarkMessages.EXPORT_JAVAC_FILE, BenchmarkMessages.OPEN_JAVAC,
+        BenchmarkMessages.DISABLE_ANALYTICS})
+public class PipelineBenchmark
+{
+    private static final int BURST_SIZE = 4_096;
+    private static final int POSITION_COUNT = 64;
+    private static final long HIGHEST_TRACKABLE_NANOS = 10_000_000_000L;
+
+    @Param({"1024", "4096", "16384"})
+    private int ringSize;
+
+    @Param({"BUSY_SPIN", "YIELDING", "SLEEPING", "BLOCKING", "PHASED_BACKOFF"})
+    private WaitStrategyType waitStrategy;
+
+    // The number of threads publishing to the inbound ring and its producer type. A SINGLE ring only takes one producer.
+    @Param({"1-SINGLE", "1-MULTI", "2-MULTI", "4-MULTI"})
+    private String producers;
+
+    // JOURNAL_PARALLEL is the layout of DisruptorServiceImpl, the journal and the business logic see each event at the same time.
+    // JOURNAL_FIRST only lets the business logic see an event once it is journaled, BUSINESS_ONLY has no journal at all.
+    @Param({"JOURNAL_PARALLEL", "JOURNAL_FIRST", "BUSINESS_ONLY"})
+    private String topology;
+
+    private File directory;
+    private Disruptor<DisruptorEvent> inboundDisruptor;
+    private DisruptorServiceImpl outboundDisruptor;
+    private InventoryCheckEventHandler inventoryCheckEventHandler;
+    private CountingWriter writer;
+    private DisruptorEventProducer producer;
+    private Thread[] producerThreads;
+    private CyclicBarrier burstStart;
+    private volatile boolean isRunning;
+    private String[] messages;
+    // Executions are not answered, so the responses to wait for are counted from the messages that each producer is about to publish.
+    private boolean[] isAnswered;
+    private int[] nextMessages;
+    private long expectedCount;
+    private Histogram latencies;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException
+    {
+        directory = Files.createTempDirectory("pipeline-benchmark").toFile();
+        File startOfDayFile = new File(directory, "SOD.json");
+        Files.write(startOfDayFile.toPath(), startOfDay().getBytes(StandardCharsets.US_ASCII));
+        messages = messages();
+        isAnswered = new boolean[messages.length];
+        for(int index = 0; index < messages.length; index++)
+            isAnswered[index] = !messages[index].startsWith("EXECUTION_MESSAGE");
+
+        int producerCount = Integer.parseInt(producers.substring(0, producers.indexOf('-')));
+        ProducerType producerType = ProducerType.valueOf(producers.substring(producers.indexOf('-') + 1));
+
+        writer = new CountingWriter();
+        outboundDisruptor = new DisruptorServiceImpl();
+        outboundDisruptor.start("OUTBOUND", ringSize, ProducerType.SINGLE, waitStrategy.create(100, 1000), new MemoryJournalHandler(),
+                new PublishingEventHandler(writer));
+
+        inventoryCheckEventHandler = new InventoryCheckEventHandler(outboundDisruptor, new EmptyInstrumentService(), new FixedFxService());
+        inventoryCheckEventHandler.start(new ChronicleInventoryWriter(new File(directory, "position-inventory.map").getPath(), null, 4096), 256);
+        inventoryCheckEventHandler.uploadSODPositions(startOfDayFile.getPath());
+
+        inboundDisruptor = new Disruptor<>(new DisruptorEventFactory(), ringSize, DaemonThreadFactory.INSTANCE, producerType, waitStrategy.create(100, 1000));
+        switch (topology)
+        {
+            case "JOURNAL_FIRST":
+                inboundDisruptor.handleEventsWith(new MemoryJournalHandler()).then(inventoryCheckEventHandler);
+                break;
+            case "BUSINESS_ONLY":
+                inboundDisruptor.handleEventsWith(inventoryCheckEventHandler);
+                break;
+            default:
+                inboundDisruptor.handleEventsWith(new MemoryJournalHandler(), inventoryCheckEventHandler);
+        }
+        RingBuffer<DisruptorEvent> ringBuffer = inboundDisruptor.start();
+        producer = new DisruptorEventProducer(ringBuffer);
+
+        // The producers wait at the barrier for each burst, the benchmark thread is the last party to arrive.
+        isRunning = true;
+        burstStart = new CyclicBarrier(producerCount + 1);
+        producerThreads = new Thread[producerCount];
+        nextMessages = new int[producerCount];
+        for(int index = 0; index < producerCount; index++)
+        {
+            int producerIndex = index;
+            nextMessages[index] = index;
+            producerThreads[index] = new Thread(() -> publish(producerIndex, producerCount), "producer-" + index);
+            producerThreads[index].setDaemon(true);
+            producerThreads[index].start();
+        }
+    }
+
+    // Each producer publishes its share of the burst, carrying on through the messages from where its previous burst stopped.
+    private void publish(int producerIndex, int producerCount)
+    {
+        try
+        {
+            while(true)
+            {
+                burstStart.await();
+                if(!isRunning)
+                    return;
+
+                int next = nextMessages[producerIndex];
+                for(int count = producerIndex; count < BURST_SIZE; count += producerCount)
+                {
+                    producer.onData(messages[next]);
+                    next = next + 1 == messages.length ? 0 : next + 1;
+                }
+                nextMessages[producerIndex] = next;
+            }
+        }
+        catch(Exception e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Called before the producers are released, when each of them is done with its previous burst.
+    private int countResponses()
+    {
+        int responseCount = 0;
+        for(int producerIndex = 0; producerIndex < nextMessages.length; producerIndex++)
+        {
+            int next = nextMessages[producerIndex];
+            for(int count = producerIndex; count < BURST_SIZE; count += nextMessages.length)
+            {
+                if(isAnswered[next])
+                    responseCount++;
+                next = next + 1 == messages.length ? 0 : next + 1;
+            }
+        }
+        return responseCount;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception
+    {
+        isRunning = false;
+        burstStart.await();
+        for(Thread producerThread : producerThreads)
+            producerThread.join();
+
+        inboundDisruptor.shutdown();
+        outboundDisruptor.stop();
+        inventoryCheckEventHandler.stop();
+        File[] files = directory.listFiles();
+        if(files != null)
+            for(File file : files)
+                file.delete();
+        directory.delete();
+    }
+
+    @Setup(Level.Iteration)
+    public void resetLatencies()
+    {
+        writer.latencies.reset();
+    }
+
+    @TearDown(Level.Iteration)
+    public void printLatencies()
+    {
+        latencies = writer.latencies.getIntervalHistogram(latencies);
+        System.out.println("latency (us) p50=" + latencies.getValueAtPercentile(50.0) / 1_000.0 + " p99=" + latencies.getValueAtPercentile(99.0) / 1_000.0
+                + " p99.9=" + latencies.getValueAtPercentile(99.9) / 1_000.0 + " max=" + latencies.getMaxValue() / 1_000.0
+                + " responses=" + latencies.getTotalCount());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BURST_SIZE)
+    public long burst() throws Exception
+    {
+        // The previous burst is only over once all of its responses were written, so every producer is waiting at the barrier.
+        expectedCount += countResponses();
+        burstStart.await();
+        while(writer.writtenCount.get() < expectedCount)
+            Thread.yield();
+        return expectedCount;
+    }
+
+    // Cash and position locks, each followed later by its unlock, and executions, spread over the positions of one client.
+    private static String[] messages()
+    {
+        String[] messages = new String[POSITION_COUNT * 5];
+        for(int instrumentId = 1; instrumentId <= POSITION_COUNT; instrumentId++)
+        {
+            int index = (instrumentId - 1) * 5;
+            messages[index] = "CASH_CHECK_REQUEST=" + request(instrumentId, BenchmarkMessages.CASH_LOCK);
+            messages[index + 1] = "POSITION_CHECK_REQUEST=" + request(instrumentId, BenchmarkMessages.POSITION_LOCK);
+            messages[index + 2] = "EXECUTION_MESSAGE=" + request(instrumentId, BenchmarkMessages.EXECUTION);
+            messages[index + 3] = "CASH_CHECK_REQUEST=" + request(instrumentId, BenchmarkMessages.CASH_UNLOCK);
+            messages[index + 4] = "POSITION_CHECK_REQUEST=" + request(instrumentId, BenchmarkMessages.POSITION_UNLOCK);
+        }
+        return messages;
+    }
+
+    private static String request(int instrumentId, String json)
+    {
+        return json.replace("\"instrumentId\": 1", "\"instrumentId\": " + instrumentId);
+    }
+
+    private static String startOfDay()
+    {
+        StringBuilder startOfDay = new StringBuilder("[");
+        for(int instrumentId = 1; instrumentId <= POSITION_COUNT; instrumentId++)
+        {
+            if(instrumentId > 1)
+                startOfDay.append(',');
+            startOfDay.append("{\"clientId\": 1, \"instrumentId\": ").append(instrumentId).append(", \"startOfDayQuantity\": 1000000, \"executedQuantity\": 0, "
+                    + "\"reservedQuantity\": 0, \"borrowedQuantity\": 0, \"startOfDayCash\": 1000000, \"executedCash\": 0, \"reservedCash\": 0}");
+        }
+        return startOfDay.append(']').toString();
+    }
+
+    // Stands in for a journal by copying every payload into a memory buffer that wraps around.
+    private static class MemoryJournalHandler implements EventHandler<DisruptorEvent>
+    {
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 24);
+
+        @Override
+        public void onEvent(DisruptorEvent event, long sequence, boolean endOfBatch)
+        {
+            if(buffer.remaining() < event.getPayloadLength() + 16)
+                buffer.clear();
+
+            buffer.putLong(event.getUid());
+            buffer.putLong(event.getCreatedTime());
+            buffer.put(event.getPayload(), 0, event.getPayloadLength());
+        }
+    }
+
+    // Stands in for the JMS writer, counts the responses and records the latency of their requests.
+    private static class CountingWriter implements DisruptorWriter
+    {
+        private final AtomicLong writtenCount = new AtomicLong();
+        private final Recorder latencies = new Recorder(1, HIGHEST_TRACKABLE_NANOS, 3);
+
+        @Override
+        public void start() {}
+
+        @Override
+        public void write(DisruptorEvent event)
+        {
+            latencies.recordValue(Math.max(1, Math.min(System.nanoTime() - event.getCreatedTime(), HIGHEST_TRACKABLE_NANOS)));
+            writtenCount.lazySet(writtenCount.get() + 1);
+        }
+
+        @Override
+        public void flush() {}
+
+        @Override
+        public void stop() {}
+
+        @Override
+        public boolean togglePrimary()
+        {
+            return true;
+        }
+    }
+}
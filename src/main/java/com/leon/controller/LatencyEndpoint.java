@@ -0,0 +1,23 @@
+package com.leon.controller;
+
+import com.leon.service.LatencyService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+import java.util.Map;
+
+// Per-stage latency percentiles at /actuator/latency. Every read starts a new interval.
+@Component
+@Endpoint(id = "latency")
+public class LatencyEndpoint
+{
+	@Autowired
+	private LatencyService latencyService;
+
+	@ReadOperation
+	public Map<String, Object> latencies()
+	{
+		return latencyService.getLatencies();
+	}
+}
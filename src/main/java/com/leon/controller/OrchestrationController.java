@@ -7,6 +7,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
 import java.util.List;
+import java.util.Map;
 
 
 @RestController
@@ -32,6 +33,14 @@ public class OrchestrationController
         orchestrationService.start();
     }
 
+    @CrossOrigin
+    @RequestMapping(value = "/recover", method = RequestMethod.GET)
+    void recover()
+    {
+        logger.info("Received request to recover from the inbound journal and start orchestration.");
+        orchestrationService.recover();
+    }
+
     @CrossOrigin
     @RequestMapping(value = "/stop", method = RequestMethod.GET)
     void stop()
@@ -62,6 +71,13 @@ public class OrchestrationController
         return orchestrationService.getInventory();
     }
 
+    @CrossOrigin
+    @RequestMapping(value = "/rings", method = RequestMethod.GET)
+    public List<Map<String, Object>> getRingMetrics()
+    {
+        return orchestrationService.getRingMetrics();
+    }
+
     @CrossOrigin
     @RequestMapping(value = "/update", method = RequestMethod.PUT)
     public void updateInventory(@RequestBody Inventory inventory)
@@ -0,0 +1,25 @@
+package com.leon.controller;
+
+import com.leon.service.OrchestrationService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+import java.util.List;
+import java.util.Map;
+
+// Occupancy, consumer lag, event rates and batch sizes of every ring at /actuator/rings, the same as /orchestrate/rings.
+// Rates and interval batch sizes cover the time since the previous read of either.
+@Component
+@Endpoint(id = "rings")
+public class RingEndpoint
+{
+	@Autowired
+	private OrchestrationService orchestrationService;
+
+	@ReadOperation
+	public List<Map<String, Object>> rings()
+	{
+		return orchestrationService.getRingMetrics();
+	}
+}
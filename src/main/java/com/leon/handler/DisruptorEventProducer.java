@@ -1,7 +1,10 @@
 package com.leon.handler;
 
+import com.leon.model.BinaryCodec;
 import com.leon.model.DisruptorEvent;
-import com.leon.model.DisruptorPayload;
+import com.leon.model.PayloadFormat;
+import com.leon.model.RequestTypeEnum;
+import com.lmax.disruptor.EventTranslatorOneArg;
 import com.lmax.disruptor.RingBuffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -10,25 +13,91 @@ public class DisruptorEventProducer
 {
     private static final Logger logger = LoggerFactory.getLogger(DisruptorEventProducer.class);
 
+    // Copies an event that was staged by a handler, for example a response carrying the uid and creation time of its request.
+    private static final EventTranslatorOneArg<DisruptorEvent, DisruptorEvent> EVENT_COPY_TRANSLATOR = (event, sequence, source) ->
+    {
+        event.copyFrom(source);
+        event.setPublishedTime(System.nanoTime());
+    };
+
     private final RingBuffer<DisruptorEvent> ringBuffer;
+    // Added to the ring sequence to form the uid, non-zero once the uids of a recovered journal have to be continued.
+    private volatile long uidOffset = 0;
+
+    // Translates a "PAYLOAD_TYPE=payload" text message straight into the claimed slot. The offset ring sequence doubles as the uid.
+    private final EventTranslatorOneArg<DisruptorEvent, String> textMessageTranslator = (event, sequence, message) ->
+    {
+        int separator = message.indexOf('=');
+        event.setUid(uidOffset + sequence);
+        event.setCreatedTime(System.nanoTime());
+        event.setPublishedTime(event.getCreatedTime());
+        event.setPayloadType(RequestTypeEnum.lookup(message, 0, separator));
+        event.setPayloadFormat(PayloadFormat.JSON);
+        if(!event.setPayload(message, separator + 1, message.length()))
+        {
+            logger.error("Payload of message with uid: " + event.getUid() + " exceeds the event capacity of " + DisruptorEvent.PAYLOAD_CAPACITY + " bytes.");
+            event.setPayloadType(RequestTypeEnum.NONE);
+        }
+    };
+
+    // Copies a binary message, validated by the caller, into the claimed slot. Its type comes from the header. The header sequence is left
+    // as the client sent it, normally zero, the uid is carried by the event.
+    private final EventTranslatorOneArg<DisruptorEvent, byte[]> binaryMessageTranslator = (event, sequence, message) ->
+    {
+        event.setUid(uidOffset + sequence);
+        event.setCreatedTime(System.nanoTime());
+        event.setPublishedTime(event.getCreatedTime());
+        event.setPayloadType(BinaryCodec.typeOf(message, 0));
+        event.setPayloadFormat(PayloadFormat.BINARY);
+        if(!event.setPayload(message, 0, message.length))
+        {
+            logger.error("Payload of message with uid: " + event.getUid() + " exceeds the event capacity of " + DisruptorEvent.PAYLOAD_CAPACITY + " bytes.");
+            event.setPayloadType(RequestTypeEnum.NONE);
+        }
+    };
 
     public DisruptorEventProducer(RingBuffer<DisruptorEvent> ringBuffer)
     {
         this.ringBuffer = ringBuffer;
     }
 
-    public void onData(DisruptorPayload payload)
+    // The next message translated by this producer will carry the given uid.
+    public void setNextUid(long nextUid)
     {
-        long sequence  = ringBuffer.next();
-        try
-        {
-            DisruptorEvent event = ringBuffer.get(sequence);
-            event.setPayload(payload);
-        }
-        finally
-        {
-            ringBuffer.publish(sequence);
-        }
+        uidOffset = nextUid - (ringBuffer.getCursor() + 1);
+    }
 
+    public long getNextUid()
+    {
+        return uidOffset + ringBuffer.getCursor() + 1;
+    }
+
+    public void onData(String message)
+    {
+        ringBuffer.publishEvent(textMessageTranslator, message);
+    }
+
+    public void onData(byte[] message)
+    {
+        ringBuffer.publishEvent(binaryMessageTranslator, message);
+    }
+
+    public void onData(String[] messages, int count)
+    {
+        publishInBatches(textMessageTranslator, messages, count);
+    }
+
+    public void onData(DisruptorEvent[] events, int count)
+    {
+        publishInBatches(EVENT_COPY_TRANSLATOR, events, count);
+    }
+
+    // publishEvents claims the whole range with a single next(n) and makes it visible with a single publish(lo, hi).
+    // A claim cannot be larger than the ring itself so bigger bursts are split into ring-sized batches.
+    private <A> void publishInBatches(EventTranslatorOneArg<DisruptorEvent, A> translator, A[] arguments, int count)
+    {
+        int maximumBatchSize = ringBuffer.getBufferSize();
+        for(int batchStartsAt = 0; batchStartsAt < count; batchStartsAt += maximumBatchSize)
+            ringBuffer.publishEvents(translator, batchStartsAt, Math.min(maximumBatchSize, count - batchStartsAt), arguments);
     }
 }
@@ -1,5 +1,6 @@
 package com.leon.handler;
 
+import com.leon.io.JournalWriter;
 import com.leon.model.DisruptorEvent;
 import com.lmax.disruptor.EventHandler;
 import org.slf4j.Logger;
@@ -8,9 +9,23 @@ import org.slf4j.LoggerFactory;
 public class InboundJournalEventHandler implements EventHandler<DisruptorEvent>
 {
     private static final Logger logger = LoggerFactory.getLogger(InboundJournalEventHandler.class);
+    private final JournalWriter journalWriter;
+
+    public InboundJournalEventHandler(JournalWriter journalWriter)
+    {
+        if(journalWriter == null)
+        {
+            logger.error("Journal writer is invalid.");
+            throw new NullPointerException("Journal writer is invalid.");
+        }
+        else
+            this.journalWriter = journalWriter;
+    }
 
     public void onEvent(DisruptorEvent event, long sequence, boolean endOfBatch)
     {
-        logger.info(event.getPayload().getPayloadType() + "=" + event.getPayload().getPayload());
+        journalWriter.append(event);
+        if(endOfBatch)
+            journalWriter.endOfBatch();
     }
 }
@@ -1,26 +1,27 @@
 package com.leon.handler;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.leon.io.ChronicleInventoryWriter;
+import com.leon.io.EventLogWriter;
+import com.leon.io.InventorySnapshotWriter;
+import com.leon.io.LogRateLimiter;
 import com.leon.model.*;
 import com.leon.service.DisruptorService;
 import com.leon.service.FxService;
 import com.leon.service.FxServiceImpl;
 import com.leon.service.InstrumentService;
+import com.leon.service.LatencyService;
+import com.leon.service.RingStatistics;
+import com.leon.service.ShardRouter;
 import com.lmax.disruptor.EventHandler;
-import net.openhft.chronicle.map.ChronicleMap;
-import net.openhft.chronicle.map.ChronicleMapBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.time.Duration;
-import java.time.Instant;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Optional;
 import java.util.stream.Collectors;
 
 public class InventoryCheckEventHandler implements EventHandler<DisruptorEvent>
@@ -29,10 +30,64 @@ public class InventoryCheckEventHandler implements EventHandler<DisruptorEvent>
     private DisruptorService outboundDisruptor;
     private InstrumentService instrumentService;
     private FxService fxService;
-    private  ChronicleMap<String, Inventory> persistedDisruptorMap;
+    // The authoritative inventory of the shard, persisted behind the handler by the inventory writer.
+    private static final int EXPECTED_INVENTORY_SIZE = 5_000;
+    private final InventoryStore inventoryStore = new PrimitiveInventoryStore(EXPECTED_INVENTORY_SIZE);
+    private ChronicleInventoryWriter inventoryWriter;
+    // Positions changed during a batch are handed to the writer once each at the end of the batch, or earlier when this many are pending.
+    private static final int DEFAULT_MAXIMUM_DIRTY_COUNT = 256;
+    private long[] dirtyKeys = new long[DEFAULT_MAXIMUM_DIRTY_COUNT];
+    private int dirtyCount = 0;
+    // Inventory maintenance messages are rare so they are still decoded with Jackson.
+    private final ObjectMapper inventoryMapper = new ObjectMapper();
+    // Per-event detail is recorded in the binary event log, the text log only gets errors and warnings that are rate limited.
+    private EventLogWriter eventLog;
+    private static final long WARNING_INTERVAL_MILLIS = 10_000;
+    private final LogRateLimiter missingFxRateWarnings = new LogRateLimiter(WARNING_INTERVAL_MILLIS);
+    // Times the queueing, decoding and business logic of each event when set. Replayed events are not timed.
+    private LatencyService latencyService;
+    private long decodedTime;
+    // Counts the events and batches delivered by the inbound ring, replayed events are not counted.
+    private RingStatistics ringStatistics;
+    // Responses are staged here and published to the outbound ring as one claimed range at the end of each inbound batch.
+    private static final int MAXIMUM_PENDING_RESPONSES = 256;
+    private final DisruptorEvent[] pendingResponses = new DisruptorEvent[MAXIMUM_PENDING_RESPONSES];
+    private int pendingResponseCount = 0;
+    // Each handler owns the partition of the inventory whose keys are routed to its shard.
+    private final int shard;
+    private final int shardCount;
+    // While the inbound journal is replayed the inventory is rebuilt but no responses are encoded or published.
+    private boolean isReplaying = false;
+    // Snapshots are captured at the end of a batch, when the map is consistent with lastProcessedUid, and written out in the background.
+    private InventorySnapshotWriter snapshotWriter;
+    private long snapshotIntervalNanos;
+    private long lastSnapshotTime = 0;
+    private long lastProcessedUid = -1;
+    private Inventory[] snapshotInventories = new Inventory[0];
+    // Payloads are decoded into these instances in turn so that decoding an event allocates nothing.
+    private final MessageFactory messageFactory = new MessageFactory();
+    private final CheckCashRequestMessage checkCashRequestMessage = new CheckCashRequestMessage();
+    private final CheckPositionRequestMessage checkPositionRequestMessage = new CheckPositionRequestMessage();
+    private final ExecutionMessage executionMessage = new ExecutionMessage();
 
     public InventoryCheckEventHandler(DisruptorService outboundDisruptor, InstrumentService instrumentService, FxService fxService)
     {
+        this(outboundDisruptor, instrumentService, fxService, 0, 1);
+    }
+
+    public InventoryCheckEventHandler(DisruptorService outboundDisruptor, InstrumentService instrumentService, FxService fxService, int shard, int shardCount)
+    {
+        if(shard < 0 || shard >= shardCount)
+        {
+            logger.error("Shard " + shard + " is invalid for a shard count of " + shardCount + ".");
+            throw new IllegalArgumentException("Shard " + shard + " is invalid for a shard count of " + shardCount + ".");
+        }
+        else
+        {
+            this.shard = shard;
+            this.shardCount = shardCount;
+        }
+
         if(instrumentService == null)
         {
             logger.error("Instrument service is invalid.");
@@ -56,236 +111,441 @@ public class InventoryCheckEventHandler implements EventHandler<DisruptorEvent>
         }
         else
             this.outboundDisruptor = outboundDisruptor;
+
+        for(int index = 0; index < MAXIMUM_PENDING_RESPONSES; index++)
+            pendingResponses[index] = new DisruptorEvent();
     }
 
     public void onEvent(DisruptorEvent event, long sequence, boolean endOfBatch)
     {
-        DisruptorPayload payload = event.getPayload();
-        logger.info("Processing event with payload: " + payload);
-        ObjectMapper mapper = new ObjectMapper();
-        mapper.registerModule(new JavaTimeModule());
-        String result;
+        long receivedTime = now();
+        decodedTime = 0;
         try
         {
-            switch (RequestTypeEnum.valueOf(payload.getPayloadType()))
+            switch (event.getPayloadType())
             {
                 case CASH_CHECK_REQUEST:
-                    result = mapper.writeValueAsString(processCashCheckRequest(MessageFactory.createCashCheckRequestMessage(payload.getPayload())));
-                    outboundDisruptor.push(new DisruptorPayload("CASH_CHECK_RESPONSE", result, payload.getUid(), payload.getCreatedTime()));
+                    if(decoded(decode(event, checkCashRequestMessage)))
+                        processCashCheckRequest(event, checkCashRequestMessage);
                     break;
                 case POSITION_CHECK_REQUEST:
-                    result = mapper.writeValueAsString(processPositionCheckRequest(MessageFactory.createPositionCheckRequestMessage(payload.getPayload())));
-                    outboundDisruptor.push(new DisruptorPayload("POSITION_CHECK_RESPONSE", result, payload.getUid(), payload.getCreatedTime()));
+                    if(decoded(decode(event, checkPositionRequestMessage)))
+                        processPositionCheckRequest(event, checkPositionRequestMessage);
                     break;
                 case EXECUTION_MESSAGE:
-                    processExecution(MessageFactory.createExecutionMessage(payload.getPayload()));
+                    if(decoded(decode(event, executionMessage)))
+                        processExecution(event, executionMessage);
+                    break;
+                case INVENTORY_UPDATE:
+                    processInventoryUpdate(event);
+                    break;
+                case INVENTORY_DELETE:
+                    processInventoryDelete(event);
+                    break;
+                case INVENTORY_CLEAR:
+                    clearInventory();
+                    logger.info("Cleared the inventory of shard: " + shard);
+                    break;
+                default:
+                    logger.error("Event ignored because its payload type is not a supported request: " + event);
             }
         }
         catch(IllegalArgumentException e)
         {
-            logger.error("Event ignored because cannot convert " + payload.getPayloadType() + " to RequestTypeEnum. Exception thrown: " + e.getLocalizedMessage());
+            logger.error("Event ignored because cannot convert the request sub-type of " + event.getPayloadAsString() + " to RequestTypeEnum. Exception thrown: " + e.getLocalizedMessage());
+        }
+
+        if(receivedTime != 0)
+            recordLatencies(event, receivedTime);
+
+        if(ringStatistics != null && !isReplaying)
+            ringStatistics.onEvent(event.getPayloadType(), endOfBatch);
+
+        lastProcessedUid = event.getUid();
+        if(endOfBatch)
+        {
+            flushDirtyInventory();
+            publishPendingResponses();
+            if(snapshotWriter != null && !isReplaying && System.nanoTime() - lastSnapshotTime >= snapshotIntervalNanos)
+                takeSnapshot();
         }
-        catch (JsonProcessingException e)
+    }
+
+    private long now()
+    {
+        return latencyService == null || isReplaying ? 0 : System.nanoTime();
+    }
+
+    // Notes when decoding ended so that it can be told apart from the business logic that follows.
+    private boolean decoded(boolean isDecoded)
+    {
+        decodedTime = now();
+        return isDecoded;
+    }
+
+    // Requests that are decoded as part of their processing, like inventory maintenance, only have a business logic stage.
+    private void recordLatencies(DisruptorEvent event, long receivedTime)
+    {
+        long processedTime = System.nanoTime();
+        RequestTypeEnum requestType = event.getPayloadType();
+        latencyService.record(LatencyStage.INBOUND_QUEUEING, requestType, receivedTime - event.getPublishedTime());
+        if(decodedTime != 0)
+        {
+            latencyService.record(LatencyStage.DECODE, requestType, decodedTime - receivedTime);
+            latencyService.record(LatencyStage.BUSINESS, requestType, processedTime - decodedTime);
+        }
+        else
+            latencyService.record(LatencyStage.BUSINESS, requestType, processedTime - receivedTime);
+    }
+
+    // Skipped while the previous snapshot is still being written, the next end of batch tries again.
+    private void takeSnapshot()
+    {
+        if(snapshotWriter.isWriting())
+            return;
+
+        // The copies are reused from one snapshot to the next, the writer is done with them once isWriting is false.
+        if(snapshotInventories.length < inventoryStore.size())
+        {
+            Inventory[] inventories = Arrays.copyOf(snapshotInventories, inventoryStore.size() * 2);
+            for(int index = snapshotInventories.length; index < inventories.length; index++)
+                inventories[index] = new Inventory();
+            snapshotInventories = inventories;
+        }
+
+        int count = 0;
+        for(int slot = inventoryStore.nextSlot(-1); slot >= 0; slot = inventoryStore.nextSlot(slot))
+            inventoryStore.read(slot, snapshotInventories[count++]);
+
+        if(snapshotWriter.write(snapshotInventories, count, lastProcessedUid))
+            lastSnapshotTime = System.nanoTime();
+    }
+
+    // Requests arrive either as JSON text or as binary messages and each is decoded according to the format of its event.
+    private boolean decode(DisruptorEvent event, CheckCashRequestMessage message)
+    {
+        return event.getPayloadFormat() == PayloadFormat.BINARY ? BinaryCodec.decode(event.getPayload(), 0, event.getPayloadLength(), message)
+                : messageFactory.decodeCashCheckRequestMessage(event.getPayload(), 0, event.getPayloadLength(), message);
+    }
+
+    private boolean decode(DisruptorEvent event, CheckPositionRequestMessage message)
+    {
+        return event.getPayloadFormat() == PayloadFormat.BINARY ? BinaryCodec.decode(event.getPayload(), 0, event.getPayloadLength(), message)
+                : messageFactory.decodePositionCheckRequestMessage(event.getPayload(), 0, event.getPayloadLength(), message);
+    }
+
+    private boolean decode(DisruptorEvent event, ExecutionMessage message)
+    {
+        return event.getPayloadFormat() == PayloadFormat.BINARY ? BinaryCodec.decode(event.getPayload(), 0, event.getPayloadLength(), message)
+                : messageFactory.decodeExecutionMessage(event.getPayload(), 0, event.getPayloadLength(), message);
+    }
+
+    private void respond(DisruptorEvent request, CheckCashRequestMessage message, OutcomeType result, double lockedCash, double unlockedCash)
+    {
+        stageResponse(request, RequestTypeEnum.CASH_CHECK_RESPONSE, 0, 0, result, message.getReferenceId(), message.getClientId(), message.getInstrumentId(),
+                lockedCash, unlockedCash, message.getRequestType(), message.getRequestType());
+    }
+
+    private void respond(DisruptorEvent request, CheckPositionRequestMessage message, OutcomeType result, int lockedQuantity, int unlockedQuantity)
+    {
+        stageResponse(request, RequestTypeEnum.POSITION_CHECK_RESPONSE, lockedQuantity, unlockedQuantity, result, message.getReferenceId(), message.getClientId(),
+                message.getInstrumentId(), 0.0, 0.0, message.getRequestType(), message.getRequestSubType());
+    }
+
+    // A request that neither locks nor unlocks is answered with an empty response.
+    private void respondEmpty(DisruptorEvent request, RequestTypeEnum responseType)
+    {
+        stageResponse(request, responseType, 0, 0, null, null, 0, 0, 0.0, 0.0, null, null);
+    }
+
+    // Encodes the response straight into the next staged outbound event, in the format of its request so that each client gets back
+    // the format it sent. Nothing is staged while replaying.
+    private void stageResponse(DisruptorEvent request, RequestTypeEnum responseType, int lockedQuantity, int unlockedQuantity, OutcomeType result,
+                               MutableString referenceId, int clientId, int instrumentId, double lockedCash, double unlockedCash,
+                               RequestTypeEnum requestType, RequestTypeEnum requestSubType)
+    {
+        if(isReplaying)
+            return;
+
+        DisruptorEvent pendingResponse = pendingResponses[pendingResponseCount];
+        pendingResponse.setUid(request.getUid());
+        pendingResponse.setCreatedTime(request.getCreatedTime());
+        pendingResponse.setPayloadType(responseType);
+        pendingResponse.setPayloadFormat(request.getPayloadFormat());
+        int length = request.getPayloadFormat() == PayloadFormat.BINARY
+                ? BinaryCodec.encodeResponse(pendingResponse.getPayload(), 0, responseType, request.getUid(), lockedQuantity, unlockedQuantity, result,
+                        referenceId, clientId, instrumentId, lockedCash, unlockedCash, requestType, requestSubType)
+                : ResponseEncoder.encode(pendingResponse.getPayload(), 0, lockedQuantity, unlockedQuantity, result, referenceId, clientId, instrumentId,
+                        lockedCash, unlockedCash, requestType, requestSubType);
+
+        if(length < 0)
         {
-            logger.error("Event ignored because cannot convert " + payload.getPayload() + " to JSON. Exception thrown: " + e.getLocalizedMessage());
+            pendingResponse.setPayloadLength(0);
+            logger.error("Response to request with uid: " + request.getUid() + " exceeds the event capacity of " + DisruptorEvent.PAYLOAD_CAPACITY + " bytes and is dropped.");
+            return;
         }
+
+        pendingResponse.setPayloadLength(length);
+        if(++pendingResponseCount == MAXIMUM_PENDING_RESPONSES)
+            publishPendingResponses();
+    }
+
+    private void publishPendingResponses()
+    {
+        if(pendingResponseCount == 0)
+            return;
+
+        outboundDisruptor.pushAll(pendingResponses, pendingResponseCount);
+        pendingResponseCount = 0;
+    }
+
+    // Audit detail goes to the binary event log instead of the text log. Nothing is recorded for replayed events, they were recorded when
+    // they were first processed.
+    private void record(EventLogCode code, long uid, RequestTypeEnum requestType, int instrumentId, int clientId, int quantity, int appliedQuantity,
+                        double amount, double appliedAmount, int slot)
+    {
+        if(eventLog == null || isReplaying)
+            return;
+
+        eventLog.append(code, uid, requestType, instrumentId, clientId, quantity, appliedQuantity, inventoryStore.getReservedQuantity(slot),
+                amount, appliedAmount, inventoryStore.getReservedCash(slot));
+    }
+
+    private void record(EventLogCode code, DisruptorEvent request, CheckCashRequestMessage message, double appliedCash, int slot)
+    {
+        record(code, request.getUid(), message.getRequestType(), message.getInstrumentId(), message.getClientId(), 0, 0,
+                message.getLockCash() > 0 ? message.getLockCash() : message.getUnlockCash(), appliedCash, slot);
     }
 
-    private InventoryCheckResponse processPositionCheckRequest(CheckPositionRequestMessage checkPositionRequestMessage)
+    private void record(EventLogCode code, DisruptorEvent request, CheckPositionRequestMessage message, int appliedQuantity, int slot)
     {
-        Instant start = Instant.now();
-        InventoryCheckResponse inventoryCheckResponse = new InventoryCheckResponse();
-        String key = String.format("%06d%06d", checkPositionRequestMessage.getInstrumentId(), checkPositionRequestMessage.getClientId());
-        Inventory inventory = persistedDisruptorMap.get(key);
+        record(code, request.getUid(), message.getRequestSubType(), message.getInstrumentId(), message.getClientId(),
+                message.getLockQuantity() > 0 ? message.getLockQuantity() : message.getUnlockQuantity(), appliedQuantity, 0.0, 0.0, slot);
+    }
+
+    private void processPositionCheckRequest(DisruptorEvent request, CheckPositionRequestMessage checkPositionRequestMessage)
+    {
+        // Sub-types that are not known are decoded as NONE and the request is ignored, as it was when the name failed to convert.
+        if(checkPositionRequestMessage.getLockQuantity() > 0 && checkPositionRequestMessage.getRequestSubType() == RequestTypeEnum.NONE)
+            throw new IllegalArgumentException("No request sub-type matches the request.");
+
+        int slot = inventoryStore.slotOf(InventoryKey.of(checkPositionRequestMessage.getInstrumentId(), checkPositionRequestMessage.getClientId()));
+        if(slot < 0)
+        {
+            logger.error("Unable to check position because there is no inventory for instrument: " + checkPositionRequestMessage.getInstrumentId() + " and client: " + checkPositionRequestMessage.getClientId());
+            respond(request, checkPositionRequestMessage, OutcomeType.FAILURE, 0, 0);
+            return;
+        }
 
+        int reservedQuantity = inventoryStore.getReservedQuantity(slot);
         if(checkPositionRequestMessage.getLockQuantity() > 0)
-            inventoryCheckResponse = handlePositionLockRequest(checkPositionRequestMessage, inventory);
+            handlePositionLockRequest(request, checkPositionRequestMessage, slot);
         else if(checkPositionRequestMessage.getUnlockQuantity() > 0)
-            inventoryCheckResponse = handlePositionUnlockRequest(checkPositionRequestMessage, inventory);
+            handlePositionUnlockRequest(request, checkPositionRequestMessage, slot);
+        else
+            respondEmpty(request, RequestTypeEnum.POSITION_CHECK_RESPONSE);
 
-        persistedDisruptorMap.put(key, inventory);
-        logger.info(String.format("Completed position check: %s, time taken: %d ms.", checkPositionRequestMessage, Duration.between(start, Instant.now()).toMillis()));
-        return inventoryCheckResponse;
+        // Rejected and empty checks leave the position as it was, so there is nothing to write behind.
+        if(inventoryStore.getReservedQuantity(slot) != reservedQuantity)
+            markDirty(slot);
     }
 
-    private InventoryCheckResponse processCashCheckRequest(CheckCashRequestMessage checkCashRequestMessage)
+    private void processCashCheckRequest(DisruptorEvent request, CheckCashRequestMessage checkCashRequestMessage)
     {
-        Instant start = Instant.now();
-        InventoryCheckResponse inventoryCheckResponse = new InventoryCheckResponse();
-        String key = String.format("%06d%06d", checkCashRequestMessage.getInstrumentId(), checkCashRequestMessage.getClientId());
-        Inventory inventory = persistedDisruptorMap.get(key);
+        int slot = inventoryStore.slotOf(InventoryKey.of(checkCashRequestMessage.getInstrumentId(), checkCashRequestMessage.getClientId()));
+        if(slot < 0)
+        {
+            logger.error("Unable to check cash because there is no inventory for instrument: " + checkCashRequestMessage.getInstrumentId() + " and client: " + checkCashRequestMessage.getClientId());
+            respond(request, checkCashRequestMessage, OutcomeType.FAILURE, 0.0, 0.0);
+            return;
+        }
 
+        double reservedCash = inventoryStore.getReservedCash(slot);
         if(checkCashRequestMessage.getLockCash() > 0)
-            inventoryCheckResponse = handleCashLockRequest(checkCashRequestMessage, inventory);
+            handleCashLockRequest(request, checkCashRequestMessage, slot);
         else if(checkCashRequestMessage.getUnlockCash() > 0)
-            inventoryCheckResponse = handleCashUnlockRequest(checkCashRequestMessage, inventory);
+            handleCashUnlockRequest(request, checkCashRequestMessage, slot);
+        else
+            respondEmpty(request, RequestTypeEnum.CASH_CHECK_RESPONSE);
 
-        persistedDisruptorMap.put(key, inventory);
-        logger.info(String.format("Completed cash check: %s, time taken: %d ms.", checkCashRequestMessage, Duration.between(start, Instant.now()).toMillis()));
-        return inventoryCheckResponse;
+        if(inventoryStore.getReservedCash(slot) != reservedCash)
+            markDirty(slot);
     }
 
-    private InventoryCheckResponse handleCashLockRequest(CheckCashRequestMessage checkCashRequestMessage, Inventory inventory)
+    private void handleCashLockRequest(DisruptorEvent request, CheckCashRequestMessage checkCashRequestMessage, int slot)
     {
-        double balance = inventory.getStartOfDayCash() + inventory.getExecutedCash() - inventory.getReservedCash();
+        double balance = inventoryStore.getStartOfDayCash(slot) + inventoryStore.getExecutedCash(slot) - inventoryStore.getReservedCash(slot);
         double lockedCash = checkCashRequestMessage.getLockCash();
 
         if(balance >= lockedCash)
         {
-            inventory.setReservedCash(inventory.getReservedCash() + lockedCash);
-            logger.info(String.format("Successfully locked FULL cash of %f. The inventory is now: %s", lockedCash, inventory));
-            return new InventoryCheckResponse(0, 0, OutcomeType.SUCCESS.toString(), checkCashRequestMessage.getReferenceId(), checkCashRequestMessage.getClientId(),
-                    checkCashRequestMessage.getInstrumentId(), lockedCash, 0.0, checkCashRequestMessage.getRequestType(), checkCashRequestMessage.getRequestType());
+            inventoryStore.setReservedCash(slot, inventoryStore.getReservedCash(slot) + lockedCash);
+            record(EventLogCode.CASH_LOCKED, request, checkCashRequestMessage, lockedCash, slot);
+            respond(request, checkCashRequestMessage, OutcomeType.SUCCESS, lockedCash, 0.0);
+            return;
         }
 
         if(balance > 0.0 && balance < lockedCash)
         {
-            inventory.setReservedCash(inventory.getReservedCash() + balance);
-            logger.info(String.format("Successfully locked PARTIAL cash of %f. The inventory is now: %s", lockedCash, inventory));
-            return new InventoryCheckResponse(0, 0, OutcomeType.SUCCESS.toString(), checkCashRequestMessage.getReferenceId(), checkCashRequestMessage.getClientId(),
-                    checkCashRequestMessage.getInstrumentId(), balance, 0.0, checkCashRequestMessage.getRequestType(), checkCashRequestMessage.getRequestType());
+            inventoryStore.setReservedCash(slot, inventoryStore.getReservedCash(slot) + balance);
+            record(EventLogCode.CASH_PARTIALLY_LOCKED, request, checkCashRequestMessage, balance, slot);
+            respond(request, checkCashRequestMessage, OutcomeType.SUCCESS, balance, 0.0);
+            return;
         }
 
-        logger.error(String.format("Unable to cash lock %d for inventory: ", lockedCash, inventory));
-        return new InventoryCheckResponse(0, 0, OutcomeType.FAILURE.toString(), checkCashRequestMessage.getReferenceId(), checkCashRequestMessage.getClientId(),
-                checkCashRequestMessage.getInstrumentId(), 0.0, 0.0, checkCashRequestMessage.getRequestType(), checkCashRequestMessage.getRequestType());
+        record(EventLogCode.CASH_LOCK_REJECTED, request, checkCashRequestMessage, 0.0, slot);
+        respond(request, checkCashRequestMessage, OutcomeType.FAILURE, 0.0, 0.0);
     }
 
-    private InventoryCheckResponse handleCashUnlockRequest(CheckCashRequestMessage checkCashRequestMessage, Inventory inventory)
+    private void handleCashUnlockRequest(DisruptorEvent request, CheckCashRequestMessage checkCashRequestMessage, int slot)
     {
         double unlockedCash = checkCashRequestMessage.getUnlockCash();
-        if(inventory.getReservedCash() >= unlockedCash)
+        if(inventoryStore.getReservedCash(slot) >= unlockedCash)
         {
-            inventory.setReservedCash(inventory.getReservedCash() - unlockedCash);
-            logger.info(String.format("Successfully unlocked FULL cash of %d. The inventory is now: %s", unlockedCash, inventory));
-            return new InventoryCheckResponse(0, 0, OutcomeType.SUCCESS.toString(), checkCashRequestMessage.getReferenceId(), checkCashRequestMessage.getClientId(),
-                    checkCashRequestMessage.getInstrumentId(), 0.0, unlockedCash, checkCashRequestMessage.getRequestType(), checkCashRequestMessage.getRequestType());
+            inventoryStore.setReservedCash(slot, inventoryStore.getReservedCash(slot) - unlockedCash);
+            record(EventLogCode.CASH_UNLOCKED, request, checkCashRequestMessage, unlockedCash, slot);
+            respond(request, checkCashRequestMessage, OutcomeType.SUCCESS, 0.0, unlockedCash);
         }
         else
         {
-            logger.error(String.format("For inventory: %s, the reserved cash cannot be less than the unlock cash of %d", inventory, unlockedCash));
-            return new InventoryCheckResponse(0, 0, OutcomeType.FAILURE.toString(), checkCashRequestMessage.getReferenceId(), checkCashRequestMessage.getClientId(),
-                    checkCashRequestMessage.getInstrumentId(), 0.0, 0.0, checkCashRequestMessage.getRequestType(), checkCashRequestMessage.getRequestType());
+            record(EventLogCode.CASH_UNLOCK_REJECTED, request, checkCashRequestMessage, 0.0, slot);
+            respond(request, checkCashRequestMessage, OutcomeType.FAILURE, 0.0, 0.0);
         }
     }
 
-    private InventoryCheckResponse handlePositionLockRequest(CheckPositionRequestMessage checkPositionRequestMessage, Inventory inventory)
+    private void handlePositionLockRequest(DisruptorEvent request, CheckPositionRequestMessage checkPositionRequestMessage, int slot)
     {
         int balance = 0;
         int lockedQuantity = checkPositionRequestMessage.getLockQuantity();
 
-        if(RequestTypeEnum.valueOf(checkPositionRequestMessage.getRequestSubType()) == RequestTypeEnum.LONG_AND_COVERED_SHORT_SELL
-            || RequestTypeEnum.valueOf(checkPositionRequestMessage.getRequestSubType()) == RequestTypeEnum.NAKED_SHORT_SELL)
-            balance = (inventory.getStartOfDayQuantity() + inventory.getBorrowedQuantity() + inventory.getExecutedQuantity()) - inventory.getReservedQuantity();
+        if(checkPositionRequestMessage.getRequestSubType() == RequestTypeEnum.LONG_AND_COVERED_SHORT_SELL
+            || checkPositionRequestMessage.getRequestSubType() == RequestTypeEnum.NAKED_SHORT_SELL)
+            balance = (inventoryStore.getStartOfDayQuantity(slot) + inventoryStore.getBorrowedQuantity(slot) + inventoryStore.getExecutedQuantity(slot)) - inventoryStore.getReservedQuantity(slot);
 
-        if(RequestTypeEnum.valueOf(checkPositionRequestMessage.getRequestSubType()) == RequestTypeEnum.LONG_SELL_ONLY)
-            balance = (inventory.getStartOfDayQuantity() + inventory.getExecutedQuantity()) - inventory.getReservedQuantity();
+        if(checkPositionRequestMessage.getRequestSubType() == RequestTypeEnum.LONG_SELL_ONLY)
+            balance = (inventoryStore.getStartOfDayQuantity(slot) + inventoryStore.getExecutedQuantity(slot)) - inventoryStore.getReservedQuantity(slot);
 
         if(balance == 0)
         {
-            if(RequestTypeEnum.valueOf(checkPositionRequestMessage.getRequestSubType()) == RequestTypeEnum.NAKED_SHORT_SELL)
+            if(checkPositionRequestMessage.getRequestSubType() == RequestTypeEnum.NAKED_SHORT_SELL)
             {
-                inventory.setReservedQuantity(inventory.getReservedQuantity() + lockedQuantity);
-                logger.error(String.format("For inventory: %s, the available position balance is zero but this is a naked short sell request so lock quantity is %d", inventory, lockedQuantity));
-                return new InventoryCheckResponse(lockedQuantity, 0, OutcomeType.SUCCESS.toString(), checkPositionRequestMessage.getReferenceId(), checkPositionRequestMessage.getClientId(),
-                        checkPositionRequestMessage.getInstrumentId(), 0.0, 0.0, checkPositionRequestMessage.getRequestType(), checkPositionRequestMessage.getRequestSubType());
+                inventoryStore.setReservedQuantity(slot, inventoryStore.getReservedQuantity(slot) + lockedQuantity);
+                record(EventLogCode.POSITION_NAKED_SHORT_LOCKED, request, checkPositionRequestMessage, lockedQuantity, slot);
+                respond(request, checkPositionRequestMessage, OutcomeType.SUCCESS, lockedQuantity, 0);
+                return;
             }
             else
             {
-                logger.error(String.format("For inventory: %s, the available position balance is zero so unable to lock quantity of %d", inventory, lockedQuantity));
-                return new InventoryCheckResponse(0, 0, OutcomeType.FAILURE.toString(), checkPositionRequestMessage.getReferenceId(), checkPositionRequestMessage.getClientId(),
-                        checkPositionRequestMessage.getInstrumentId(), 0.0, 0.0, checkPositionRequestMessage.getRequestType(), checkPositionRequestMessage.getRequestSubType());
+                record(EventLogCode.POSITION_LOCK_REJECTED, request, checkPositionRequestMessage, 0, slot);
+                respond(request, checkPositionRequestMessage, OutcomeType.FAILURE, 0, 0);
+                return;
             }
 
         }
 
         if(balance >= lockedQuantity)
         {
-            inventory.setReservedQuantity(inventory.getReservedQuantity() + lockedQuantity);
-            logger.info(String.format("Successfully locked FULL quantity of %d. The inventory is now: %s", lockedQuantity, inventory));
-            return new InventoryCheckResponse(lockedQuantity, 0, OutcomeType.SUCCESS.toString(), checkPositionRequestMessage.getReferenceId(), checkPositionRequestMessage.getClientId(),
-                    checkPositionRequestMessage.getInstrumentId(), 0.0, 0.0, checkPositionRequestMessage.getRequestType(), checkPositionRequestMessage.getRequestSubType());
+            inventoryStore.setReservedQuantity(slot, inventoryStore.getReservedQuantity(slot) + lockedQuantity);
+            record(EventLogCode.POSITION_LOCKED, request, checkPositionRequestMessage, lockedQuantity, slot);
+            respond(request, checkPositionRequestMessage, OutcomeType.SUCCESS, lockedQuantity, 0);
+            return;
         }
 
         if(balance > 0 && balance < lockedQuantity)
         {
-            if(RequestTypeEnum.valueOf(checkPositionRequestMessage.getRequestSubType()) == RequestTypeEnum.NAKED_SHORT_SELL)
+            if(checkPositionRequestMessage.getRequestSubType() == RequestTypeEnum.NAKED_SHORT_SELL)
             {
-                inventory.setReservedQuantity(inventory.getReservedQuantity() + lockedQuantity);
-                logger.error(String.format("For inventory: %s, the available position balance is less than the lock quantity but this is a naked short sell request so lock quantity is %d", inventory, lockedQuantity));
-                return new InventoryCheckResponse(lockedQuantity, 0, OutcomeType.SUCCESS.toString(), checkPositionRequestMessage.getReferenceId(), checkPositionRequestMessage.getClientId(),
-                        checkPositionRequestMessage.getInstrumentId(), 0.0, 0.0, checkPositionRequestMessage.getRequestType(), checkPositionRequestMessage.getRequestSubType());
+                inventoryStore.setReservedQuantity(slot, inventoryStore.getReservedQuantity(slot) + lockedQuantity);
+                record(EventLogCode.POSITION_NAKED_SHORT_LOCKED, request, checkPositionRequestMessage, lockedQuantity, slot);
+                respond(request, checkPositionRequestMessage, OutcomeType.SUCCESS, lockedQuantity, 0);
+                return;
             }
             else
             {
-                inventory.setReservedQuantity(inventory.getReservedQuantity() + balance);
-                logger.info(String.format("Successfully locked PARTIAL quantity of %d. The inventory is now: %s", balance, inventory));
-                return new InventoryCheckResponse(lockedQuantity, 0, OutcomeType.SUCCESS.toString(), checkPositionRequestMessage.getReferenceId(), checkPositionRequestMessage.getClientId(),
-                        checkPositionRequestMessage.getInstrumentId(), 0.0, 0.0, checkPositionRequestMessage.getRequestType(), checkPositionRequestMessage.getRequestSubType());
+                inventoryStore.setReservedQuantity(slot, inventoryStore.getReservedQuantity(slot) + balance);
+                record(EventLogCode.POSITION_PARTIALLY_LOCKED, request, checkPositionRequestMessage, balance, slot);
+                respond(request, checkPositionRequestMessage, OutcomeType.SUCCESS, lockedQuantity, 0);
+                return;
             }
         }
 
-        logger.error(String.format("Unable to lock %d for inventory: ", lockedQuantity, inventory));
-        return new InventoryCheckResponse(0, 0, OutcomeType.FAILURE.toString(), checkPositionRequestMessage.getReferenceId(), checkPositionRequestMessage.getClientId(),
-                checkPositionRequestMessage.getInstrumentId(), 0.0, 0.0, checkPositionRequestMessage.getRequestType(), checkPositionRequestMessage.getRequestSubType());
+        record(EventLogCode.POSITION_LOCK_REJECTED, request, checkPositionRequestMessage, 0, slot);
+        respond(request, checkPositionRequestMessage, OutcomeType.FAILURE, 0, 0);
     }
 
-    private InventoryCheckResponse handlePositionUnlockRequest(CheckPositionRequestMessage checkPositionRequestMessage, Inventory inventory)
+    private void handlePositionUnlockRequest(DisruptorEvent request, CheckPositionRequestMessage checkPositionRequestMessage, int slot)
     {
         int unlockedQuantity = checkPositionRequestMessage.getUnlockQuantity();
-        if(inventory.getReservedQuantity() >= unlockedQuantity)
+        if(inventoryStore.getReservedQuantity(slot) >= unlockedQuantity)
         {
-            inventory.setReservedQuantity(inventory.getReservedQuantity() - unlockedQuantity);
-            logger.info(String.format("Successfully unlocked FULL quantity of %d. The inventory is now: %s", unlockedQuantity, inventory));
-            return new InventoryCheckResponse(0, unlockedQuantity, OutcomeType.SUCCESS.toString(), checkPositionRequestMessage.getReferenceId(), checkPositionRequestMessage.getClientId(),
-                    checkPositionRequestMessage.getInstrumentId(), 0.0, 0.0, checkPositionRequestMessage.getRequestType(), checkPositionRequestMessage.getRequestSubType());
+            inventoryStore.setReservedQuantity(slot, inventoryStore.getReservedQuantity(slot) - unlockedQuantity);
+            record(EventLogCode.POSITION_UNLOCKED, request, checkPositionRequestMessage, unlockedQuantity, slot);
+            respond(request, checkPositionRequestMessage, OutcomeType.SUCCESS, 0, unlockedQuantity);
         }
         else
         {
-            logger.error(String.format("For inventory: %s, the reserved quantity cannot be less than the unlock quantity of %d", inventory, unlockedQuantity));
-            return new InventoryCheckResponse(0, 0, OutcomeType.FAILURE.toString(), checkPositionRequestMessage.getReferenceId(), checkPositionRequestMessage.getClientId(),
-                    checkPositionRequestMessage.getInstrumentId(), 0.0, 0.0, checkPositionRequestMessage.getRequestType(), checkPositionRequestMessage.getRequestSubType());
+            record(EventLogCode.POSITION_UNLOCK_REJECTED, request, checkPositionRequestMessage, 0, slot);
+            respond(request, checkPositionRequestMessage, OutcomeType.FAILURE, 0, 0);
         }
     }
 
-    private void processExecution(ExecutionMessage executionMessage)
+    private void processExecution(DisruptorEvent request, ExecutionMessage executionMessage)
     {
-        String key = String.format("%06d%06d", executionMessage.getInstrumentId(), executionMessage.getClientId());
-        Inventory inventory = persistedDisruptorMap.get(key);
+        int slot = inventoryStore.slotOf(InventoryKey.of(executionMessage.getInstrumentId(), executionMessage.getClientId()));
+        if(slot < 0)
+        {
+            logger.error("Execution message ignored because there is no inventory for instrument: " + executionMessage.getInstrumentId() + " and client: " + executionMessage.getClientId());
+            return;
+        }
 
+        int appliedQuantity = 0;
+        double appliedCash = 0.0;
         if(executionMessage.getSide() != 'B')
         {
-            Optional<FxRate> fxRateOptional = fxService.get(executionMessage.getCurrency());
-            if(!fxRateOptional.isPresent())
-                logger.warn("FX rate for currency: %s is missing from FX Service. The default FX rate of 1.0 will be used.");
-            inventory.setExecutedCash(inventory.getExecutedCash() + (executionMessage.getExecutedQuantity() * executionMessage.getExecutedPrice() * fxRateOptional.orElse(FxServiceImpl.defaultUSDRate).getFxRateAgainstUSD()));
+            FxRate fxRate = fxService.lookup(executionMessage.getCurrency());
+            if(fxRate == null)
+            {
+                if(missingFxRateWarnings.tryAcquire())
+                    logger.warn("FX rate for currency: " + executionMessage.getCurrency() + " is missing from FX Service. The default FX rate of 1.0 will be used. "
+                            + missingFxRateWarnings.takeSuppressedCount() + " similar warnings were suppressed.");
+                fxRate = FxServiceImpl.defaultUSDRate;
+            }
+            appliedCash = executionMessage.getExecutedQuantity() * executionMessage.getExecutedPrice() * fxRate.getFxRateAgainstUSD();
+            inventoryStore.setExecutedCash(slot, inventoryStore.getExecutedCash(slot) + appliedCash);
         }
         else
-            inventory.setExecutedQuantity(inventory.getExecutedQuantity() + executionMessage.getExecutedQuantity());
-
+        {
+            appliedQuantity = executionMessage.getExecutedQuantity();
+            inventoryStore.setExecutedQuantity(slot, inventoryStore.getExecutedQuantity(slot) + appliedQuantity);
+        }
 
-        logger.info(String.format("Processed execution message: %s, the current inventory is updated to: %s", executionMessage, inventory));
-        persistedDisruptorMap.put(key, inventory);
+        record(EventLogCode.EXECUTION_APPLIED, request.getUid(), null, executionMessage.getInstrumentId(), executionMessage.getClientId(),
+                executionMessage.getExecutedQuantity(), appliedQuantity, executionMessage.getExecutedPrice(), appliedCash, slot);
+        markDirty(slot);
     }
 
-    private void initializeChronicleMap(String chronicleMapFilePath)
+    // The store is filled from the persisted map before the inbound disruptor starts, from then on it is only touched by the disruptor thread.
+    public void start(ChronicleInventoryWriter inventoryWriter, int maximumDirtyCount)
     {
-        try
+        if(maximumDirtyCount < 1)
         {
-            persistedDisruptorMap = ChronicleMapBuilder
-                    .of(String.class, Inventory.class)
-                    .name("position-inventory-map")
-                    .entries(5_000)
-                    .averageValue(new Inventory())
-                    .valueMarshaller(InventorySerializer.getInstance())
-                    .averageKey("000001000001")
-                    .createPersistedTo(new File(chronicleMapFilePath));
+            logger.error("Maximum dirty inventory count: " + maximumDirtyCount + " must be positive.");
+            throw new IllegalArgumentException("Maximum dirty inventory count: " + maximumDirtyCount + " must be positive.");
+        }
+        else
+            this.dirtyKeys = new long[maximumDirtyCount];
 
-            // Warm-up step to make the chronicle map get method faster
-            persistedDisruptorMap.get("000001000001");
-            persistedDisruptorMap.get("999999999999");
+        if(inventoryWriter == null)
+        {
+            logger.error("Inventory writer is invalid.");
+            throw new NullPointerException("Inventory writer is invalid.");
+        }
 
-            logger.info("Created the chronicle map from persisted file: " + chronicleMapFilePath + " with " + persistedDisruptorMap.size() + " inventory positions.");
+        try
+        {
+            inventoryWriter.start();
+            inventoryWriter.load(inventoryStore);
+            this.inventoryWriter = inventoryWriter;
         }
         catch(IOException ioe)
         {
@@ -293,43 +553,73 @@ public class InventoryCheckEventHandler implements EventHandler<DisruptorEvent>
         }
     }
 
-    public void start(String chronicleMapFilePath)
+    public void setSnapshotWriter(InventorySnapshotWriter snapshotWriter, long snapshotIntervalMillis)
     {
-        initializeChronicleMap(chronicleMapFilePath);
+        this.snapshotWriter = snapshotWriter;
+        this.snapshotIntervalNanos = snapshotIntervalMillis * 1_000_000L;
     }
 
-    public void stop()
+    public void setEventLog(EventLogWriter eventLog)
+    {
+        this.eventLog = eventLog;
+    }
+
+    public void setLatencyService(LatencyService latencyService)
+    {
+        this.latencyService = latencyService != null && latencyService.isEnabled() ? latencyService : null;
+    }
+
+    public void setRingStatistics(RingStatistics ringStatistics)
+    {
+        this.ringStatistics = ringStatistics;
+    }
+
+    public void setLastProcessedUid(long lastProcessedUid)
     {
-        if(persistedDisruptorMap != null && persistedDisruptorMap.isOpen())
-            persistedDisruptorMap.close();
+        this.lastProcessedUid = lastProcessedUid;
+    }
+
+    // Only called while the inbound disruptor is idle, the replay thread hands over to the disruptor thread when live ingestion starts.
+    public void setReplaying(boolean isReplaying)
+    {
+        this.isReplaying = isReplaying;
+    }
 
-        logger.info("Closed Chronicle map with inventory positions.");
+    public void stop()
+    {
+        if(inventoryWriter != null)
+            inventoryWriter.stop();
     }
 
+    // Only called while the inbound disruptor is idle, before start or during recovery. Changes made while running go through the ring.
     public void uploadSODPositions(String startOfDayInventoryPositionFilePath)
     {
-        if(persistedDisruptorMap == null || persistedDisruptorMap.isClosed())
+        if(inventoryWriter == null)
         {
-            logger.error("Chronicle map is in an invalid state and upload is not possible.");
+            logger.error("Inventory store is in an invalid state and upload is not possible.");
             return;
         }
 
         try
         {
-            int size = persistedDisruptorMap.size();
+            int size = inventoryStore.size();
             if(size > 0)
             {
-                persistedDisruptorMap.clear();
-                logger.info("Cleared the chronicle map of " + size + " inventory positions.");
+                clearInventory();
+                logger.info("Cleared the inventory store of " + size + " inventory positions.");
             }
 
             final ObjectMapper objectMapper = new ObjectMapper();
             List<Inventory> positionInventories = objectMapper.readValue(new File(startOfDayInventoryPositionFilePath), new TypeReference<List<Inventory>>(){});
 
-            positionInventories.forEach(inventory ->
-                    persistedDisruptorMap.put(String.format("%06d%06d",  inventory.getInstrumentId(), inventory.getClientId()), inventory));
+            List<Inventory> shardInventories = positionInventories.stream()
+                    .filter(inventory -> ShardRouter.shardOf(inventory.getInstrumentId(), inventory.getClientId(), shardCount) == shard)
+                    .collect(Collectors.toList());
+
+            shardInventories.forEach(this::updateInventory);
+            flushDirtyInventory();
 
-            logger.info("Loaded Chronicle map with " + positionInventories.size() + " inventory positions.");
+            logger.info("Loaded inventory store of shard " + shard + " with " + shardInventories.size() + " of " + positionInventories.size() + " inventory positions.");
         }
         catch (FileNotFoundException fnfe)
         {
@@ -341,25 +631,87 @@ public class InventoryCheckEventHandler implements EventHandler<DisruptorEvent>
         }
     }
 
+    // Safe to call from any thread, the persisted map trails the store by the writes still queued behind it.
     public List<Inventory> getInventory()
     {
-        return persistedDisruptorMap.values().stream().collect(Collectors.toList());
+        return inventoryWriter.getInventory();
+    }
+
+    private void processInventoryUpdate(DisruptorEvent event)
+    {
+        Inventory inventory = decodeInventory(event);
+        if(inventory != null)
+        {
+            updateInventory(inventory);
+            logger.info("Updated inventory: " + inventory);
+        }
     }
 
-    public void clearInventory()
+    private void processInventoryDelete(DisruptorEvent event)
     {
-        persistedDisruptorMap.clear();
+        Inventory inventory = decodeInventory(event);
+        if(inventory != null)
+        {
+            deleteInventory(inventory);
+            logger.info("Deleted inventory: " + inventory);
+        }
     }
 
-    public void updateInventory(Inventory inventory)
+    private Inventory decodeInventory(DisruptorEvent event)
     {
-        String key = String.format("%06d%06d", inventory.getInstrumentId(), inventory.getClientId());
-        persistedDisruptorMap.put(key, inventory);
+        try
+        {
+            return inventoryMapper.readValue(event.getPayload(), 0, event.getPayloadLength(), Inventory.class);
+        }
+        catch(IOException ioe)
+        {
+            logger.error("Event ignored because its inventory cannot be decoded: " + event + ". Exception thrown: " + ioe.getLocalizedMessage());
+            return null;
+        }
+    }
+
+    private void clearInventory()
+    {
+        inventoryStore.clear();
+        dirtyCount = 0;
+        inventoryWriter.clear();
+    }
+
+    private void updateInventory(Inventory inventory)
+    {
+        markDirty(inventoryStore.put(inventory));
+    }
+
+    // A burst of events for the same key costs one write to the persisted map instead of one per event.
+    private void markDirty(int slot)
+    {
+        if(!inventoryStore.markDirty(slot))
+            return;
+
+        dirtyKeys[dirtyCount++] = inventoryStore.keyAt(slot);
+        if(dirtyCount == dirtyKeys.length)
+            flushDirtyInventory();
+    }
+
+    // Keys removed since they were marked no longer have a slot, their removal has already been queued to the writer.
+    private void flushDirtyInventory()
+    {
+        for(int index = 0; index < dirtyCount; index++)
+        {
+            int slot = inventoryStore.slotOf(dirtyKeys[index]);
+            if(slot >= 0)
+            {
+                inventoryStore.clearDirty(slot);
+                inventoryWriter.put(inventoryStore, slot);
+            }
+        }
+        dirtyCount = 0;
     }
 
-    public void deleteInventory(Inventory inventory)
+    private void deleteInventory(Inventory inventory)
     {
-        String key = String.format("%06d%06d", inventory.getInstrumentId(), inventory.getClientId());
-        persistedDisruptorMap.remove(key);
+        long key = InventoryKey.of(inventory);
+        if(inventoryStore.remove(key))
+            inventoryWriter.remove(key);
     }
 }
@@ -1,16 +1,34 @@
 package com.leon.handler;
 
+import com.leon.io.JournalWriter;
 import com.leon.model.DisruptorEvent;
 import com.lmax.disruptor.EventHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+// Records every response in the binary journal format, keyed by the uid of its request, so that a replay can be compared with it.
+// Use JournalDiff to compare two outbound journals or to print one.
 public class OutboundJournalEventHandler implements EventHandler<DisruptorEvent>
 {
     private static final Logger logger = LoggerFactory.getLogger(OutboundJournalEventHandler.class);
+    private final JournalWriter journalWriter;
+
+    public OutboundJournalEventHandler(JournalWriter journalWriter)
+    {
+        if(journalWriter == null)
+        {
+            logger.error("Journal writer is invalid.");
+            throw new NullPointerException("Journal writer is invalid.");
+        }
+        else
+            this.journalWriter = journalWriter;
+    }
 
     public void onEvent(DisruptorEvent event, long sequence, boolean endOfBatch)
     {
-        logger.info(event.getPayload().getPayload());
+        if(event.getPayloadLength() > 0)
+            journalWriter.append(event);
+        if(endOfBatch)
+            journalWriter.endOfBatch();
     }
 }
@@ -1,26 +1,104 @@
 package com.leon.handler;
 
 import com.leon.io.DisruptorWriter;
+import com.leon.io.EventLogWriter;
 import com.leon.model.DisruptorEvent;
-import com.leon.model.DisruptorPayload;
+import com.leon.model.EventLogCode;
+import com.leon.model.LatencyStage;
+import com.leon.model.RequestTypeEnum;
+import com.leon.service.LatencyService;
+import com.leon.service.RingStatistics;
 import com.lmax.disruptor.EventHandler;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import java.util.Arrays;
 
 public class PublishingEventHandler implements EventHandler<DisruptorEvent>
 {
-    private static final Logger logger = LoggerFactory.getLogger(PublishingEventHandler.class);
+    private static final int INITIAL_PENDING_SIZE = 256;
     private DisruptorWriter writer;
+    // Responses carry the uid of their request, which is only released once the secondary holds it as well.
+    private ReplicationEventHandler replicationEventHandler;
+    // Each published response is recorded with its latency in the binary event log of the outbound thread, when there is one.
+    private EventLogWriter eventLog;
+    // Times the outbound queueing and the send of each response, and the whole round trip of its request, when set.
+    private LatencyService latencyService;
+    // Counts the responses and batches delivered by the outbound ring when set.
+    private RingStatistics ringStatistics;
+    // Created times and types of the responses of the current ring batch, kept until its flush. Grown as needed, never shrunk.
+    private long[] pendingCreatedTimes = new long[INITIAL_PENDING_SIZE];
+    private RequestTypeEnum[] pendingTypes = new RequestTypeEnum[INITIAL_PENDING_SIZE];
+    private int pendingCount = 0;
 
     public PublishingEventHandler(DisruptorWriter writer)
     {
         this.writer = writer;
     }
 
+    public PublishingEventHandler(DisruptorWriter writer, ReplicationEventHandler replicationEventHandler)
+    {
+        this.writer = writer;
+        this.replicationEventHandler = replicationEventHandler;
+    }
+
+    public PublishingEventHandler(DisruptorWriter writer, ReplicationEventHandler replicationEventHandler, EventLogWriter eventLog)
+    {
+        this(writer, replicationEventHandler);
+        this.eventLog = eventLog;
+    }
+
+    public void setLatencyService(LatencyService latencyService)
+    {
+        this.latencyService = latencyService != null && latencyService.isEnabled() ? latencyService : null;
+    }
+
+    public void setRingStatistics(RingStatistics ringStatistics)
+    {
+        this.ringStatistics = ringStatistics;
+    }
+
     public void onEvent(DisruptorEvent event, long sequence, boolean endOfBatch)
     {
-        DisruptorPayload payload = event.getPayload();
-        writer.write(payload);
-        logger.info("Published response: " + payload + ", time taken in nano-seconds: " + (System.nanoTime() - payload.getCreatedTime()));
+        long receivedTime = latencyService == null ? 0 : System.nanoTime();
+        if(replicationEventHandler != null)
+            replicationEventHandler.awaitAcknowledgement(event.getUid());
+
+        long sendTime = latencyService == null ? 0 : System.nanoTime();
+        writer.write(event);
+        // Writers that batch their sends hand them over here, the time taken counts towards the send of the last response of the batch.
+        if(endOfBatch)
+            writer.flush();
+
+        long sentTime = System.nanoTime();
+        if(eventLog != null)
+            eventLog.append(EventLogCode.RESPONSE_PUBLISHED, event.getUid(), event.getPayloadType(), 0, 0, 0, 0, 0, 0.0, sentTime - event.getCreatedTime(), 0.0);
+
+        if(latencyService != null)
+        {
+            latencyService.record(LatencyStage.OUTBOUND_QUEUEING, event.getPayloadType(), receivedTime - event.getPublishedTime());
+            latencyService.record(LatencyStage.SEND, event.getPayloadType(), sentTime - sendTime);
+            recordEndToEnd(event, endOfBatch, sentTime);
+        }
+
+        if(ringStatistics != null)
+            ringStatistics.onEvent(event.getPayloadType(), endOfBatch);
+    }
+
+    // A response only reaches the client once its batch is flushed, so the round trips of a batch all end at the flush. Responses a
+    // writer committed earlier, on reaching its own batch bound, are counted until the end of the ring batch as well.
+    private void recordEndToEnd(DisruptorEvent event, boolean endOfBatch, long sentTime)
+    {
+        if(pendingCount == pendingCreatedTimes.length)
+        {
+            pendingCreatedTimes = Arrays.copyOf(pendingCreatedTimes, pendingCount * 2);
+            pendingTypes = Arrays.copyOf(pendingTypes, pendingCount * 2);
+        }
+        pendingCreatedTimes[pendingCount] = event.getCreatedTime();
+        pendingTypes[pendingCount++] = event.getPayloadType();
+
+        if(!endOfBatch)
+            return;
+
+        for(int index = 0; index < pendingCount; index++)
+            latencyService.record(LatencyStage.END_TO_END, pendingTypes[index], sentTime - pendingCreatedTimes[index]);
+        pendingCount = 0;
     }
 }
@@ -0,0 +1,182 @@
+package com.leon.handler;
+
+import com.leon.io.JournalWriter;
+import com.leon.model.DisruptorEvent;
+import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.Sequence;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+
+// Streams the inbound sequence to the secondary over TCP, in parallel with the journal, using the journal record format.
+// Records are gathered into one buffer and written at the end of each batch. The secondary acknowledges the last sequence it has
+// received into its inbound ring, not yet journaled or applied there, and the publishing handler holds back responses until their
+// request has been acknowledged, see awaitAcknowledgement. A response is therefore only released once the secondary holds its request.
+public class ReplicationEventHandler implements EventHandler<DisruptorEvent>
+{
+    private static final Logger logger = LoggerFactory.getLogger(ReplicationEventHandler.class);
+    private static final int SEND_BUFFER_SIZE = 256 * 1024;
+    private static final long RECONNECT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final String host;
+    private final int port;
+    private final long acknowledgementTimeoutNanos;
+    private final ByteBuffer sendBuffer = ByteBuffer.allocateDirect(SEND_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private final Sequence acknowledgedSequence = new Sequence(-1);
+    private volatile boolean isStarted = false;
+    private volatile SocketChannel channel;
+    private long lastConnectionAttempt = 0;
+
+    public ReplicationEventHandler(String host, int port, long acknowledgementTimeoutMillis)
+    {
+        if(host == null || host.isEmpty())
+        {
+            logger.error("Replication host cannot be null or empty.");
+            throw new IllegalArgumentException("Replication host cannot be null or empty.");
+        }
+
+        this.host = host;
+        this.port = port;
+        this.acknowledgementTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(acknowledgementTimeoutMillis);
+    }
+
+    public void start()
+    {
+        isStarted = true;
+        logger.info("Started replication to secondary at " + host + ":" + port);
+    }
+
+    public void stop()
+    {
+        isStarted = false;
+        disconnect();
+        logger.info("Stopped replication to secondary at " + host + ":" + port);
+    }
+
+    public void onEvent(DisruptorEvent event, long sequence, boolean endOfBatch)
+    {
+        if(!isStarted || (channel == null && !connect()))
+            return;
+
+        if(sendBuffer.remaining() < JournalWriter.maximumRecordLength())
+            flush();
+
+        JournalWriter.writeRecord(sendBuffer, sendBuffer.position(), event);
+
+        if(endOfBatch)
+            flush();
+    }
+
+    private void flush()
+    {
+        SocketChannel channel = this.channel;
+        sendBuffer.flip();
+        try
+        {
+            while(channel != null && sendBuffer.hasRemaining())
+                channel.write(sendBuffer);
+        }
+        catch(IOException ioe)
+        {
+            logger.error("Replication to secondary at " + host + ":" + port + " failed, the secondary must be resynchronised. Exception: " + ioe.getLocalizedMessage());
+            disconnect();
+        }
+        sendBuffer.clear();
+    }
+
+    private boolean connect()
+    {
+        if(System.nanoTime() - lastConnectionAttempt < RECONNECT_INTERVAL_NANOS)
+            return false;
+
+        lastConnectionAttempt = System.nanoTime();
+        try
+        {
+            SocketChannel channel = SocketChannel.open(new InetSocketAddress(host, port));
+            channel.socket().setTcpNoDelay(true);
+            this.channel = channel;
+            Thread acknowledgementReader = new Thread(() -> readAcknowledgements(channel), "replication-acknowledgement-reader-" + port);
+            acknowledgementReader.setDaemon(true);
+            acknowledgementReader.start();
+            logger.info("Connected to secondary at " + host + ":" + port);
+            return true;
+        }
+        catch(IOException ioe)
+        {
+            logger.error("Unable to connect to secondary at " + host + ":" + port + ", events are not replicated. Exception: " + ioe.getLocalizedMessage());
+            return false;
+        }
+    }
+
+    private void readAcknowledgements(SocketChannel channel)
+    {
+        ByteBuffer acknowledgementBuffer = ByteBuffer.allocate(Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        try
+        {
+            while(channel.isOpen())
+            {
+                acknowledgementBuffer.clear();
+                while(acknowledgementBuffer.hasRemaining())
+                {
+                    if(channel.read(acknowledgementBuffer) < 0)
+                        throw new IOException("Connection closed by secondary.");
+                }
+                acknowledgedSequence.set(acknowledgementBuffer.getLong(0));
+            }
+        }
+        catch(IOException ioe)
+        {
+            if(this.channel == channel)
+            {
+                logger.error("Lost acknowledgements from secondary at " + host + ":" + port + ". Exception: " + ioe.getLocalizedMessage());
+                disconnect();
+            }
+        }
+    }
+
+    private void disconnect()
+    {
+        SocketChannel channel = this.channel;
+        this.channel = null;
+        if(channel == null)
+            return;
+
+        try
+        {
+            channel.close();
+        }
+        catch(IOException ioe)
+        {
+            logger.error("Failed to close connection to secondary at " + host + ":" + port + ". Exception: " + ioe.getLocalizedMessage());
+        }
+    }
+
+    // Called by the publishing handler. Returns false without waiting when nothing is being replicated and after the timeout,
+    // in which case the secondary is considered lost and is disconnected so that later responses are not held back as well.
+    public boolean awaitAcknowledgement(long sequence)
+    {
+        if(acknowledgedSequence.get() >= sequence)
+            return true;
+
+        long deadline = System.nanoTime() + acknowledgementTimeoutNanos;
+        while(acknowledgedSequence.get() < sequence)
+        {
+            if(channel == null)
+                return false;
+
+            if(System.nanoTime() > deadline)
+            {
+                logger.error("Secondary at " + host + ":" + port + " did not acknowledge sequence: " + sequence + " in time and is disconnected.");
+                disconnect();
+                return false;
+            }
+            Thread.yield();
+        }
+        return true;
+    }
+}
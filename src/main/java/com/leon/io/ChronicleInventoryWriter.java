@@ -0,0 +1,282 @@
+package com.leon.io;
+
+import com.leon.model.Inventory;
+import com.leon.model.InventoryKey;
+import com.leon.model.InventorySerializer;
+import com.leon.model.InventoryStore;
+import com.leon.model.LatencyStage;
+import com.leon.model.RequestTypeEnum;
+import com.leon.service.LatencyService;
+import com.leon.service.ShardRouter;
+import com.lmax.disruptor.BlockingWaitStrategy;
+import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.dsl.Disruptor;
+import com.lmax.disruptor.dsl.ProducerType;
+import com.lmax.disruptor.util.DaemonThreadFactory;
+import net.openhft.chronicle.map.ChronicleMap;
+import net.openhft.chronicle.map.ChronicleMapBuilder;
+import net.openhft.chronicle.map.ExternalMapQueryContext;
+import net.openhft.chronicle.map.MapEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+// Write-behind persistence of a shard's inventory store to a Chronicle map. The handler thread copies each changed position into a slot of a
+// small ring and carries on, a background thread applies the copies to the map in order. The map therefore trails the store by whatever
+// is still in the ring, it is read back when the shard starts and serves the inventory queries of other threads.
+public class ChronicleInventoryWriter
+{
+    private static final Logger logger = LoggerFactory.getLogger(ChronicleInventoryWriter.class);
+    private final String chronicleMapFilePath;
+    private final String legacyChronicleMapFilePath;
+    private final int bufferSize;
+    // The legacy file predates sharding, every shard reads the whole of it and keeps only its own positions.
+    private int shard = 0;
+    private int shardCount = 1;
+    private boolean hasMigratedLegacyChronicleMap = false;
+    private ChronicleMap<Long, Inventory> persistedInventoryMap;
+    private Disruptor<InventoryWrite> disruptor;
+    private RingBuffer<InventoryWrite> ringBuffer;
+    // Times each change applied to the map when set.
+    private LatencyService latencyService;
+
+    // Each type of write is timed under the inventory maintenance request type that has the same effect.
+    private enum WriteType
+    {
+        PUT(RequestTypeEnum.INVENTORY_UPDATE),
+        REMOVE(RequestTypeEnum.INVENTORY_DELETE),
+        CLEAR(RequestTypeEnum.INVENTORY_CLEAR);
+
+        private final RequestTypeEnum requestType;
+
+        WriteType(RequestTypeEnum requestType)
+        {
+            this.requestType = requestType;
+        }
+    }
+
+    private static class InventoryWrite
+    {
+        private WriteType type;
+        private long key;
+        private final Inventory inventory = new Inventory();
+    }
+
+    public ChronicleInventoryWriter(String chronicleMapFilePath, String legacyChronicleMapFilePath, int bufferSize)
+    {
+        if(chronicleMapFilePath == null || chronicleMapFilePath.isEmpty())
+        {
+            logger.error("Chronicle map file path cannot be null or empty.");
+            throw new IllegalArgumentException("Chronicle map file path cannot be null or empty.");
+        }
+
+        if(bufferSize < 1 || Integer.bitCount(bufferSize) != 1)
+        {
+            logger.error("Write-behind buffer size: " + bufferSize + " must be a power of two.");
+            throw new IllegalArgumentException("Write-behind buffer size: " + bufferSize + " must be a power of two.");
+        }
+
+        this.chronicleMapFilePath = chronicleMapFilePath;
+        this.legacyChronicleMapFilePath = legacyChronicleMapFilePath;
+        this.bufferSize = bufferSize;
+    }
+
+    public void start() throws IOException
+    {
+        persistedInventoryMap = ChronicleMapBuilder
+                .of(Long.class, Inventory.class)
+                .name("position-inventory-map")
+                .entries(5_000)
+                .averageValue(new Inventory())
+                .valueMarshaller(InventorySerializer.getInstance())
+                .createPersistedTo(new File(chronicleMapFilePath));
+
+        migrateLegacyChronicleMap();
+        logger.info("Created the chronicle map from persisted file: " + chronicleMapFilePath + " with " + persistedInventoryMap.size() + " inventory positions.");
+
+        // The map is only written in the background so there is no point in burning a core waiting for changes.
+        disruptor = new Disruptor<>(InventoryWrite::new, bufferSize, DaemonThreadFactory.INSTANCE, ProducerType.SINGLE, new BlockingWaitStrategy());
+        disruptor.handleEventsWith((EventHandler<InventoryWrite>) (write, sequence, endOfBatch) -> apply(write));
+        ringBuffer = disruptor.start();
+    }
+
+    public void setShard(int shard, int shardCount)
+    {
+        if(shard < 0 || shard >= shardCount)
+        {
+            logger.error("Shard: " + shard + " must be between 0 and the shard count: " + shardCount + " exclusive.");
+            throw new IllegalArgumentException("Shard: " + shard + " must be between 0 and the shard count: " + shardCount + " exclusive.");
+        }
+
+        this.shard = shard;
+        this.shardCount = shardCount;
+    }
+
+    // Files written before the inventory was keyed by InventoryKey used "%06d%06d" String keys. The positions of this shard are copied once
+    // into the new map, re-keyed from the ids held in each value. The old file is left in place for the other shards, it is retired once
+    // every shard has migrated, see retireLegacyChronicleMap.
+    private void migrateLegacyChronicleMap() throws IOException
+    {
+        if(legacyChronicleMapFilePath == null || legacyChronicleMapFilePath.isEmpty())
+            return;
+
+        File legacyFile = new File(legacyChronicleMapFilePath);
+        if(!legacyFile.exists())
+            return;
+
+        if(persistedInventoryMap.size() > 0)
+        {
+            logger.warn("Skipped the migration of the legacy chronicle map file: " + legacyChronicleMapFilePath + " as the current map already holds " + persistedInventoryMap.size() + " inventory positions.");
+            hasMigratedLegacyChronicleMap = true;
+            return;
+        }
+
+        int migratedCount = 0;
+        try(ChronicleMap<String, Inventory> legacyMap = ChronicleMapBuilder
+                .of(String.class, Inventory.class)
+                .name("position-inventory-map")
+                .entries(5_000)
+                .averageValue(new Inventory())
+                .valueMarshaller(InventorySerializer.getInstance())
+                .averageKey("000001000001")
+                .createPersistedTo(legacyFile))
+        {
+            for(Inventory inventory : legacyMap.values())
+            {
+                if(ShardRouter.shardOf(inventory.getInstrumentId(), inventory.getClientId(), shardCount) != shard)
+                    continue;
+
+                persistedInventoryMap.put(InventoryKey.of(inventory), inventory);
+                migratedCount++;
+            }
+        }
+
+        hasMigratedLegacyChronicleMap = true;
+        logger.info("Migrated " + migratedCount + " inventory positions of shard: " + shard + " from the legacy chronicle map file: " + legacyChronicleMapFilePath);
+    }
+
+    public boolean hasMigratedLegacyChronicleMap()
+    {
+        return hasMigratedLegacyChronicleMap;
+    }
+
+    // Renames the legacy file so that it is never migrated twice. Only called once every shard has migrated its positions from it.
+    public static void retireLegacyChronicleMap(String legacyChronicleMapFilePath)
+    {
+        File legacyFile = new File(legacyChronicleMapFilePath);
+        File migratedFile = new File(legacyChronicleMapFilePath + ".migrated");
+        if(legacyFile.renameTo(migratedFile))
+            logger.info("Renamed the migrated legacy chronicle map file: " + legacyChronicleMapFilePath + " to: " + migratedFile.getPath());
+        else
+            logger.error("Migrated the legacy chronicle map file: " + legacyChronicleMapFilePath + " but could not rename it to: " + migratedFile.getPath() + ", remove it before the next start.");
+    }
+
+    public void setLatencyService(LatencyService latencyService)
+    {
+        this.latencyService = latencyService != null && latencyService.isEnabled() ? latencyService : null;
+    }
+
+    private void apply(InventoryWrite write)
+    {
+        long applyTime = latencyService == null ? 0 : System.nanoTime();
+        switch (write.type)
+        {
+            case PUT:
+                replace(write.key, write.inventory);
+                break;
+            case REMOVE:
+                delete(write.key);
+                break;
+            case CLEAR:
+                persistedInventoryMap.clear();
+                break;
+        }
+
+        if(latencyService != null)
+            latencyService.record(LatencyStage.CHRONICLE_ACCESS, write.type.requestType, System.nanoTime() - applyTime);
+    }
+
+    // Map.put and Map.remove read the previous value back into a new Inventory to return it. Working on the entry under its segment lock
+    // instead writes the fixed-size value over the existing bytes, or removes them, without copying anything out of the map.
+    private void replace(long key, Inventory inventory)
+    {
+        try(ExternalMapQueryContext<Long, Inventory, ?> context = persistedInventoryMap.queryContext(key))
+        {
+            context.writeLock().lock();
+            MapEntry<Long, Inventory> entry = context.entry();
+            if(entry != null)
+                entry.doReplaceValue(context.wrapValueAsData(inventory));
+            else
+                context.absentEntry().doInsert(context.wrapValueAsData(inventory));
+        }
+    }
+
+    private void delete(long key)
+    {
+        try(ExternalMapQueryContext<Long, Inventory, ?> context = persistedInventoryMap.queryContext(key))
+        {
+            context.writeLock().lock();
+            MapEntry<Long, Inventory> entry = context.entry();
+            if(entry != null)
+                entry.doRemove();
+        }
+    }
+
+    // Fills the store with the persisted positions, called before the shard processes any event. Every entry is read into the same
+    // instance because the store copies the fields.
+    public void load(InventoryStore inventoryStore)
+    {
+        Inventory inventory = new Inventory();
+        persistedInventoryMap.forEachEntry(entry -> inventoryStore.put(entry.value().getUsing(inventory)));
+
+        logger.info("Loaded " + inventoryStore.size() + " inventory positions from the chronicle map: " + chronicleMapFilePath);
+    }
+
+    // Called by the single thread that owns the store. Blocks only when the background thread has fallen a whole ring behind.
+    public void put(InventoryStore inventoryStore, int slot)
+    {
+        long sequence = ringBuffer.next();
+        InventoryWrite write = ringBuffer.get(sequence);
+        write.type = WriteType.PUT;
+        write.key = inventoryStore.keyAt(slot);
+        inventoryStore.read(slot, write.inventory);
+        ringBuffer.publish(sequence);
+    }
+
+    public void remove(long key)
+    {
+        long sequence = ringBuffer.next();
+        InventoryWrite write = ringBuffer.get(sequence);
+        write.type = WriteType.REMOVE;
+        write.key = key;
+        ringBuffer.publish(sequence);
+    }
+
+    public void clear()
+    {
+        long sequence = ringBuffer.next();
+        ringBuffer.get(sequence).type = WriteType.CLEAR;
+        ringBuffer.publish(sequence);
+    }
+
+    public List<Inventory> getInventory()
+    {
+        return new ArrayList<>(persistedInventoryMap.values());
+    }
+
+    // Every write still in the ring is applied before the map is closed.
+    public void stop()
+    {
+        if(disruptor != null)
+            disruptor.shutdown();
+
+        if(persistedInventoryMap != null && persistedInventoryMap.isOpen())
+            persistedInventoryMap.close();
+
+        logger.info("Closed Chronicle map with inventory positions.");
+    }
+}
@@ -1,15 +1,31 @@
 package com.leon.io;
 
-import com.leon.model.DisruptorPayload;
 import com.leon.service.ConfigurationServiceImpl;
+import com.leon.service.ShardRouter;
 import reactor.core.publisher.Flux;
 
+import java.util.List;
+
 public interface DisruptorReader
 {
     void start();
     void start(String fileNamePath);
     void start(ConfigurationServiceImpl configurationService);
 
-    Flux<DisruptorPayload> readAll();
+    Flux<String> readAll();
+
+    // Requests grouped into batches of at most maximumBatchSize, each pushed onto the rings in one go.
+    // Readers that pace their requests override it to hand over whatever is due instead of waiting for a full batch.
+    default Flux<List<String>> readBatches(int maximumBatchSize)
+    {
+        return readAll().buffer(maximumBatchSize);
+    }
+
+    // Readers that push their requests onto the rings themselves, from their own thread, route them through this router instead of
+    // emitting them. The others ignore it.
+    default void setShardRouter(ShardRouter shardRouter)
+    {
+    }
+
     void stop();
 }
@@ -1,13 +1,13 @@
 package com.leon.io;
 
-import com.leon.model.DisruptorPayload;
-import reactor.core.publisher.Flux;
+import com.leon.model.DisruptorEvent;
 
 public interface DisruptorWriter
 {
     void start();
-    void writeAll(Flux<DisruptorPayload> payload);
-    void write(DisruptorPayload payload);
+    void write(DisruptorEvent event);
+    // Called at the end of each batch of the outbound ring, a writer that holds on to responses must send them all before returning.
+    void flush();
     void stop();
     boolean togglePrimary();
 }
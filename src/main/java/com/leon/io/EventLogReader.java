@@ -0,0 +1,94 @@
+package com.leon.io;
+
+import com.leon.model.EventLogCode;
+import com.leon.model.RequestTypeEnum;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.time.Instant;
+import java.util.Arrays;
+
+// Decodes an event log written by EventLogWriter into one line of text per record, oldest first. Run offline, for example:
+// java -cp position-check-disruptor.jar com.leon.io.EventLogReader ../logs/event-log.inventory [uid]
+// With a uid only the records of that request are printed.
+public class EventLogReader
+{
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final long baseMillis;
+    private final long baseNanoTime;
+
+    public EventLogReader(String path) throws IOException
+    {
+        try(RandomAccessFile randomAccessFile = new RandomAccessFile(path, "r"))
+        {
+            buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, randomAccessFile.length());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        if(buffer.limit() < EventLogWriter.HEADER_SIZE || buffer.getInt(0) != EventLogWriter.MAGIC || buffer.getInt(4) != EventLogWriter.VERSION
+                || buffer.getInt(8) != EventLogWriter.RECORD_SIZE)
+            throw new IOException(path + " is not an event log of version " + EventLogWriter.VERSION + ".");
+
+        capacity = buffer.getInt(12);
+        baseMillis = buffer.getLong(16);
+        baseNanoTime = buffer.getLong(24);
+    }
+
+    // Returns the number of records printed.
+    public int print(PrintStream out, long uid)
+    {
+        long[] sequences = new long[capacity];
+        int count = 0;
+        for(int index = 0; index < capacity; index++)
+        {
+            int position = EventLogWriter.HEADER_SIZE + index * EventLogWriter.RECORD_SIZE;
+            long sequence = buffer.getLong(position);
+            if(sequence > 0 && (uid < 0 || buffer.getLong(position + 8) == uid))
+                sequences[count++] = sequence;
+        }
+
+        // The position of a record within the ring follows from its sequence, so sorting the sequences is enough to order the records.
+        Arrays.sort(sequences, 0, count);
+        for(int index = 0; index < count; index++)
+            out.println(format(EventLogWriter.HEADER_SIZE + (int) ((sequences[index] - 1) % capacity) * EventLogWriter.RECORD_SIZE));
+
+        return count;
+    }
+
+    private String format(int position)
+    {
+        long nanoTime = buffer.getLong(position + 16);
+        long elapsedNanos = nanoTime - baseNanoTime;
+        Instant time = Instant.ofEpochMilli(baseMillis).plusNanos(elapsedNanos);
+        int requestType = buffer.getShort(position + 26);
+
+        return time + " sequence=" + buffer.getLong(position)
+                + " uid=" + buffer.getLong(position + 8)
+                + " code=" + EventLogCode.fromOrdinal(buffer.getShort(position + 24))
+                + " requestType=" + (requestType < 0 ? "null" : RequestTypeEnum.fromCode(requestType).name())
+                + " instrumentId=" + buffer.getInt(position + 28)
+                + " clientId=" + buffer.getInt(position + 32)
+                + " quantity=" + buffer.getInt(position + 36)
+                + " appliedQuantity=" + buffer.getInt(position + 40)
+                + " reservedQuantity=" + buffer.getInt(position + 44)
+                + " amount=" + buffer.getDouble(position + 48)
+                + " appliedAmount=" + buffer.getDouble(position + 56)
+                + " reservedCash=" + buffer.getDouble(position + 64);
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        if(args.length < 1 || args.length > 2)
+        {
+            System.err.println("Usage: EventLogReader <event log file> [uid]");
+            System.exit(1);
+        }
+
+        int count = new EventLogReader(args[0]).print(System.out, args.length == 2 ? Long.parseLong(args[1]) : -1);
+        System.err.println(count + " records decoded from " + args[0]);
+    }
+}
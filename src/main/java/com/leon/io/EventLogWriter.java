@@ -0,0 +1,114 @@
+package com.leon.io;
+
+import com.leon.model.EventLogCode;
+import com.leon.model.RequestTypeEnum;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+// Per-event audit detail of one thread, written as fixed-size binary records into a memory-mapped ring so that recording an event costs
+// a few stores and no allocation, formatting or locking. The oldest records are overwritten once the ring is full. EventLogReader
+// decodes a file into text offline.
+// File layout: int magic, int version, int record size, int capacity in records, long wall clock millis and long nano time taken together
+// when the file was created, then the records. Record layout: long record sequence (from 1, written last so that a torn record can be
+// told apart), long uid, long nano time, short code, short request type code, int instrument id, int client id, int quantity,
+// int applied quantity, int reserved quantity, double amount, double applied amount, double reserved cash.
+public class EventLogWriter
+{
+    private static final Logger logger = LoggerFactory.getLogger(EventLogWriter.class);
+    public static final int MAGIC = 0x45564C47;
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 32;
+    public static final int RECORD_SIZE = 72;
+
+    private final String path;
+    private final int capacity;
+    private MappedByteBuffer buffer;
+    private long nextSequence = 1;
+
+    public EventLogWriter(String path, int capacity)
+    {
+        if(path == null || path.isEmpty())
+        {
+            logger.error("Event log path cannot be null or empty.");
+            throw new IllegalArgumentException("Event log path cannot be null or empty.");
+        }
+
+        if(capacity < 1 || capacity > (Integer.MAX_VALUE - HEADER_SIZE) / RECORD_SIZE)
+        {
+            logger.error("Event log capacity of " + capacity + " records is invalid.");
+            throw new IllegalArgumentException("Event log capacity of " + capacity + " records is invalid.");
+        }
+
+        this.path = path;
+        this.capacity = capacity;
+    }
+
+    // The nano times of the records are only meaningful against the base taken when the file was created, so each run starts a new file
+    // and keeps the one of the previous run as <path>.previous.
+    public void open() throws IOException
+    {
+        File file = new File(path);
+        if(file.exists())
+        {
+            File previousFile = new File(path + ".previous");
+            if((previousFile.exists() && !previousFile.delete()) || !file.renameTo(previousFile))
+                logger.error("Unable to keep the previous event log: " + path + ", it will be overwritten.");
+        }
+
+        try(RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw"))
+        {
+            long size = HEADER_SIZE + (long) capacity * RECORD_SIZE;
+            randomAccessFile.setLength(0);
+            randomAccessFile.setLength(size);
+            buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(8, RECORD_SIZE);
+            buffer.putInt(12, capacity);
+            buffer.putLong(16, System.currentTimeMillis());
+            buffer.putLong(24, System.nanoTime());
+        }
+
+        logger.info("Created event log: " + path + " with capacity of " + capacity + " records.");
+    }
+
+    // Only to be called by the one thread that owns this log.
+    public void append(EventLogCode code, long uid, RequestTypeEnum requestType, int instrumentId, int clientId, int quantity, int appliedQuantity,
+                       int reservedQuantity, double amount, double appliedAmount, double reservedCash)
+    {
+        long sequence = nextSequence++;
+        int position = HEADER_SIZE + (int) ((sequence - 1) % capacity) * RECORD_SIZE;
+        // Invalidates the record being overwritten before its fields change.
+        buffer.putLong(position, 0L);
+        buffer.putLong(position + 8, uid);
+        buffer.putLong(position + 16, System.nanoTime());
+        buffer.putShort(position + 24, (short) code.ordinal());
+        buffer.putShort(position + 26, (short) (requestType == null ? -1 : requestType.getCode()));
+        buffer.putInt(position + 28, instrumentId);
+        buffer.putInt(position + 32, clientId);
+        buffer.putInt(position + 36, quantity);
+        buffer.putInt(position + 40, appliedQuantity);
+        buffer.putInt(position + 44, reservedQuantity);
+        buffer.putDouble(position + 48, amount);
+        buffer.putDouble(position + 56, appliedAmount);
+        buffer.putDouble(position + 64, reservedCash);
+        buffer.putLong(position, sequence);
+    }
+
+    // Flushes the records to the file, the mapping itself stays valid until it is garbage collected.
+    public void close()
+    {
+        if(buffer != null)
+        {
+            buffer.force();
+            logger.info("Closed event log: " + path + " after " + (nextSequence - 1) + " records.");
+        }
+    }
+}
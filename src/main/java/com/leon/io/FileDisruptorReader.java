@@ -1,6 +1,6 @@
 package com.leon.io;
 
-import com.leon.model.DisruptorPayload;
+import com.leon.model.RequestTypeEnum;
 import com.leon.service.ConfigurationServiceImpl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -64,23 +64,22 @@ public class FileDisruptorReader implements DisruptorReader
     }
 
     @Override
-    public Flux<DisruptorPayload> readAll()
+    public Flux<String> readAll()
     {
         if(reader == null)
             return Flux.empty();
 
-        Flux<DisruptorPayload> result = Flux.generate(() -> "", (state, sink) ->
+        Flux<String> result = Flux.generate(() -> "", (state, sink) ->
         {
             String nextLine = this.readNext();
             if(nextLine == null)
                 sink.complete();
             else
             {
-                String[] splitInput  = nextLine.split("=");
-                if (splitInput.length == 2)
-                    sink.next(new DisruptorPayload(splitInput[0], splitInput[1]));
+                if (RequestTypeEnum.isClientRequest(nextLine))
+                    sink.next(nextLine);
                 else
-                    logger.error("String not in correct format");
+                    logger.error("String not in correct format or not of a client request type: " + nextLine);
             }
             return state;
         });
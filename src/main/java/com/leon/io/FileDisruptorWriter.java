@@ -1,14 +1,15 @@
 package com.leon.io;
 
-import com.leon.model.DisruptorPayload;
+import com.leon.model.DisruptorEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
-import reactor.core.publisher.Flux;
 import java.io.FileWriter;
 import java.io.IOException;
 
+@Scope("prototype")
 @Component("FileDisruptorWriter")
 public class FileDisruptorWriter implements DisruptorWriter
 {
@@ -34,29 +35,40 @@ public class FileDisruptorWriter implements DisruptorWriter
     }
 
     @Override
-    public void writeAll(Flux<DisruptorPayload> payload)
+    public void write(DisruptorEvent event)
     {
-        payload.subscribe(load -> write(load));
+        try
+        {
+            if(isPrimary)
+                fileWriter.write(String.valueOf(event));
+        }
+        catch(IOException ioe)
+        {
+            ioe.printStackTrace();
+            logger.error("Failed to write file because of exception: " +  ioe.getLocalizedMessage());
+        }
     }
 
     @Override
-    public void write(DisruptorPayload payload)
+    public void flush()
     {
         try
         {
-            if(isPrimary)
-                fileWriter.write(String.valueOf(payload));
+            if(fileWriter != null)
+                fileWriter.flush();
         }
         catch(IOException ioe)
         {
-            ioe.printStackTrace();
-            logger.error("Failed to write file because of exception: " +  ioe.getLocalizedMessage());
+            logger.error("Failed to flush file because of exception: " +  ioe.getLocalizedMessage());
         }
     }
 
     @Override
     public void stop()
     {
+        if(fileWriter == null)
+            return;
+
         try
         {
             fileWriter.flush();
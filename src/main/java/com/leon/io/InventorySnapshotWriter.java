@@ -0,0 +1,153 @@
+package com.leon.io;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.leon.model.Inventory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongConsumer;
+import java.util.regex.Pattern;
+
+// Writes point-in-time copies of a shard's inventory to <base path>.<last sequence>.json on a background thread.
+// Snapshots use the same JSON layout as the start of day file so that loading one is just another upload.
+// A snapshot only becomes visible once it is completely written and synced, so the latest file can always be trusted.
+public class InventorySnapshotWriter
+{
+    private static final Logger logger = LoggerFactory.getLogger(InventorySnapshotWriter.class);
+    private final String basePath;
+    private final int retainedSnapshotCount;
+    private final LongConsumer snapshotListener;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final AtomicBoolean isWriting = new AtomicBoolean(false);
+    private ExecutorService snapshotExecutor;
+
+    public InventorySnapshotWriter(String basePath, int retainedSnapshotCount, LongConsumer snapshotListener)
+    {
+        if(basePath == null || basePath.isEmpty())
+        {
+            logger.error("Snapshot base path cannot be null or empty.");
+            throw new IllegalArgumentException("Snapshot base path cannot be null or empty.");
+        }
+
+        if(retainedSnapshotCount < 1)
+        {
+            logger.error("At least one snapshot must be retained.");
+            throw new IllegalArgumentException("At least one snapshot must be retained.");
+        }
+
+        this.basePath = basePath;
+        this.retainedSnapshotCount = retainedSnapshotCount;
+        this.snapshotListener = snapshotListener;
+    }
+
+    public static String snapshotPath(String basePath, long lastSequence)
+    {
+        return String.format("%s.%019d.json", basePath, lastSequence);
+    }
+
+    public void start()
+    {
+        snapshotExecutor = Executors.newSingleThreadExecutor(runnable ->
+        {
+            Thread thread = new Thread(runnable, "inventory-snapshot-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void stop()
+    {
+        if(snapshotExecutor != null)
+            snapshotExecutor.shutdown();
+    }
+
+    public boolean isWriting()
+    {
+        return isWriting.get();
+    }
+
+    // The caller must leave the inventories untouched until isWriting returns false again.
+    public boolean write(Inventory[] inventories, int count, long lastSequence)
+    {
+        if(snapshotExecutor == null || !isWriting.compareAndSet(false, true))
+            return false;
+
+        snapshotExecutor.execute(() ->
+        {
+            try
+            {
+                File snapshot = new File(snapshotPath(basePath, lastSequence));
+                File temporarySnapshot = new File(snapshot.getPath() + ".tmp");
+                try(FileOutputStream outputStream = new FileOutputStream(temporarySnapshot))
+                {
+                    outputStream.write(objectMapper.writeValueAsBytes(Arrays.asList(inventories).subList(0, count)));
+                    outputStream.getFD().sync();
+                }
+                Files.move(temporarySnapshot.toPath(), snapshot.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                logger.info("Wrote snapshot: " + snapshot + " with " + count + " inventory positions.");
+
+                File[] snapshots = listSnapshots();
+                for(int index = 0; index < snapshots.length - retainedSnapshotCount; index++)
+                {
+                    if(!snapshots[index].delete())
+                        logger.error("Unable to delete old snapshot: " + snapshots[index]);
+                }
+
+                if(snapshotListener != null)
+                    snapshotListener.accept(lastSequence);
+            }
+            catch(IOException ioe)
+            {
+                logger.error("Failed to write snapshot at sequence: " + lastSequence + " due to exception: " + ioe.getLocalizedMessage());
+            }
+            finally
+            {
+                isWriting.set(false);
+            }
+        });
+        return true;
+    }
+
+    // Oldest first, the zero-padded sequence in the file name keeps the natural order.
+    public File[] listSnapshots()
+    {
+        File base = new File(basePath).getAbsoluteFile();
+        File[] snapshots = base.getParentFile().listFiles((directory, name) -> name.matches(Pattern.quote(base.getName()) + "\\.\\d{19}\\.json"));
+        if(snapshots == null)
+            return new File[0];
+
+        Arrays.sort(snapshots);
+        return snapshots;
+    }
+
+    // Returns null when there is no snapshot.
+    public File findLatestSnapshot()
+    {
+        File[] snapshots = listSnapshots();
+        return snapshots.length == 0 ? null : snapshots[snapshots.length - 1];
+    }
+
+    public static long sequenceOf(File snapshot)
+    {
+        String name = snapshot.getName();
+        return Long.parseLong(name.substring(name.length() - ".json".length() - 19, name.length() - ".json".length()));
+    }
+
+    // A new session starts from the start of day positions so snapshots of a previous session must not be picked up by its recovery.
+    public void deleteSnapshots()
+    {
+        for(File snapshot : listSnapshots())
+        {
+            if(!snapshot.delete())
+                logger.error("Unable to delete old snapshot: " + snapshot);
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package com.leon.io;
+
+import com.leon.model.BinaryCodec;
+import com.leon.model.RequestTypeEnum;
+import com.leon.service.ConfigurationServiceImpl;
+import com.leon.service.ShardRouter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+
+import javax.annotation.PreDestroy;
+import javax.jms.BytesMessage;
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+import java.util.List;
+
+// Consumes the request topic on a dedicated thread in place of the JMS listener of the orchestration service.
+// The thread waits for a message, then takes whatever else the broker has already prefetched, up to the maximum batch size, so that
+// a burst is pushed onto the rings in one batch while a lone message goes straight through. The thread pushes through the shard router
+// itself, reusing one array for every batch, so the flux it was started from emits nothing and only completes when the reader stops.
+// Acknowledgement is either DUPS_OK, left to the ActiveMQ client which acknowledges lazily in batches, or CLIENT, made once per batch
+// after the batch has been pushed. Either way a restart can deliver a request twice but never loses one the rings did not take.
+// Requests are dropped while this instance is not the primary, as the listener does.
+@Component("JMSDisruptorReader")
+public class JMSDisruptorReader implements DisruptorReader
+{
+    private static final Logger logger = LoggerFactory.getLogger(JMSDisruptorReader.class);
+    private static final long RECEIVE_TIMEOUT_MILLIS = 100;
+    private static final long RECONNECT_INTERVAL_MILLIS = 1000;
+
+    @Value("${spring.activemq.position.check.request.topic}")
+    private String positionCheckRequestTopic;
+    @Value("${jms.reader.prefetch:1000}")
+    private int prefetch;
+    @Value("${jms.reader.acknowledge.mode:DUPS_OK}")
+    private String acknowledgeMode;
+    @Autowired
+    private ConnectionFactory connectionFactory;
+    @Autowired
+    private ConfigurationServiceImpl configurationService;
+
+    private ShardRouter shardRouter;
+    // Text requests of the batch being read, only used by the consumer thread.
+    private String[] requestBatch;
+    private int requestBatchCount = 0;
+    private int sessionAcknowledgeMode;
+    private Connection connection;
+    private Session session;
+    private MessageConsumer consumer;
+    private Thread consumerThread;
+    private volatile boolean isRunning = false;
+
+    @Override
+    public void start()
+    {
+        if(shardRouter == null)
+        {
+            logger.error("Shard router is invalid, the JMS reader cannot push requests without it.");
+            throw new NullPointerException("Shard router is invalid, the JMS reader cannot push requests without it.");
+        }
+
+        if("CLIENT".equals(acknowledgeMode))
+            sessionAcknowledgeMode = Session.CLIENT_ACKNOWLEDGE;
+        else if("DUPS_OK".equals(acknowledgeMode))
+            sessionAcknowledgeMode = Session.DUPS_OK_ACKNOWLEDGE;
+        else
+        {
+            logger.error("JMS reader acknowledge mode: " + acknowledgeMode + " is invalid, it must be DUPS_OK or CLIENT.");
+            throw new IllegalArgumentException("JMS reader acknowledge mode: " + acknowledgeMode + " is invalid, it must be DUPS_OK or CLIENT.");
+        }
+
+        isRunning = true;
+        logger.info("Started JMS reader on topic: " + positionCheckRequestTopic + " with prefetch: " + prefetch + " and " + acknowledgeMode + " acknowledgement.");
+    }
+
+    @Override
+    public void start(String positionCheckRequestTopic)
+    {
+        this.positionCheckRequestTopic = positionCheckRequestTopic;
+        start();
+    }
+
+    @Override
+    public void start(ConfigurationServiceImpl configurationService)
+    {
+        this.configurationService = configurationService;
+        start();
+    }
+
+    @Override
+    public void setShardRouter(ShardRouter shardRouter)
+    {
+        this.shardRouter = shardRouter;
+    }
+
+    @Override
+    public Flux<String> readAll()
+    {
+        return readBatches(1).flatMapIterable(batch -> batch);
+    }
+
+    @Override
+    public Flux<List<String>> readBatches(int maximumBatchSize)
+    {
+        if(!isRunning)
+            return Flux.empty();
+
+        return Flux.create(sink ->
+        {
+            consumerThread = new Thread(() -> consume(sink, Math.max(1, maximumBatchSize)), "jms-request-reader");
+            consumerThread.setDaemon(true);
+            consumerThread.start();
+        });
+    }
+
+    private void consume(FluxSink<List<String>> sink, int maximumBatchSize)
+    {
+        requestBatch = new String[maximumBatchSize];
+        while(isRunning)
+        {
+            try
+            {
+                if(session == null)
+                    open();
+
+                Message message = consumer.receive(RECEIVE_TIMEOUT_MILLIS);
+                if(message == null)
+                    continue;
+
+                Message lastMessage = message;
+                int count = 0;
+                boolean isPrimary = configurationService.isPrimary();
+                while(message != null)
+                {
+                    if(isPrimary)
+                        read(message);
+                    lastMessage = message;
+                    message = ++count < maximumBatchSize ? consumer.receiveNoWait() : null;
+                }
+
+                pushRequestBatch();
+
+                if(sessionAcknowledgeMode == Session.CLIENT_ACKNOWLEDGE)
+                    lastMessage.acknowledge();
+            }
+            catch(JMSException jmse)
+            {
+                if(!isRunning)
+                    break;
+
+                logger.error("Exception thrown while consuming from topic: " + positionCheckRequestTopic + ": " + jmse.getLocalizedMessage() + ", reconnecting.");
+                close();
+                sleep(RECONNECT_INTERVAL_MILLIS);
+            }
+            catch(Exception e)
+            {
+                logger.error("Received exception while processing position check request from JMS reader: " + e.getLocalizedMessage());
+            }
+        }
+        close();
+        sink.complete();
+    }
+
+    // Text requests are batched. A binary request is pushed on its own, after the text requests before it to keep their order.
+    private void read(Message message) throws JMSException
+    {
+        if(message instanceof TextMessage)
+        {
+            String text = ((TextMessage) message).getText();
+            if(RequestTypeEnum.isClientRequest(text))
+                requestBatch[requestBatchCount++] = text;
+            else
+                logger.error("Cannot push incorrect message onto disruptor because of its format or type: " + text);
+        }
+        else if(message instanceof BytesMessage)
+        {
+            BytesMessage bytesMessage = (BytesMessage) message;
+            byte[] bytes = new byte[(int) bytesMessage.getBodyLength()];
+            bytesMessage.readBytes(bytes);
+            if(!BinaryCodec.isValidRequest(bytes, 0, bytes.length))
+            {
+                logger.error("Cannot push incorrect binary message of " + bytes.length + " bytes onto disruptor.");
+                return;
+            }
+
+            pushRequestBatch();
+            shardRouter.push(bytes);
+        }
+    }
+
+    private void pushRequestBatch()
+    {
+        if(requestBatchCount == 0)
+            return;
+
+        shardRouter.pushAll(requestBatch, requestBatchCount);
+        requestBatchCount = 0;
+    }
+
+    // The prefetch is set through an ActiveMQ destination option so that it also applies through a caching connection factory.
+    private void open() throws JMSException
+    {
+        connection = connectionFactory.createConnection();
+        session = connection.createSession(false, sessionAcknowledgeMode);
+        consumer = session.createConsumer(session.createTopic(positionCheckRequestTopic + "?consumer.prefetchSize=" + prefetch));
+        connection.start();
+        logger.info("Opened consumer on topic: " + positionCheckRequestTopic);
+    }
+
+    private void close()
+    {
+        try
+        {
+            if(consumer != null)
+                consumer.close();
+            if(session != null)
+                session.close();
+            if(connection != null)
+                connection.close();
+        }
+        catch(JMSException jmse)
+        {
+            logger.error("Exception thrown while closing consumer on topic: " + positionCheckRequestTopic + ": " + jmse.getLocalizedMessage());
+        }
+        consumer = null;
+        session = null;
+        connection = null;
+    }
+
+    private static void sleep(long millis)
+    {
+        try
+        {
+            Thread.sleep(millis);
+        }
+        catch(InterruptedException ie)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Also run when the application context closes, so that the consumer is closed before the connection factory it came from.
+    @Override
+    @PreDestroy
+    public void stop()
+    {
+        isRunning = false;
+        if(consumerThread == null)
+            return;
+
+        try
+        {
+            consumerThread.join(RECEIVE_TIMEOUT_MILLIS * 10);
+        }
+        catch(InterruptedException ie)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -1,14 +1,29 @@
 package com.leon.io;
 
-import com.leon.model.DisruptorPayload;
+import com.leon.model.DisruptorEvent;
+import com.leon.model.JmsPublishingMode;
+import com.leon.model.PayloadFormat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.jms.core.JmsTemplate;
+import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
-import reactor.core.publisher.Flux;
+import javax.jms.BytesMessage;
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.DeliveryMode;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
 
+// Each writer belongs to the publishing thread of one shard and keeps its own session and producer for as long as it runs, instead of
+// creating them for every response. They are opened on the first write, on that thread, and reopened on the next write after a failure.
+// In TRANSACTED mode the responses of a ring batch are committed together when the batch ends. A commit is also made as soon as
+// jms.writer.maximum.batch.size responses are pending or the oldest pending one has waited jms.writer.maximum.batch.delay.micros,
+// so a long ring batch does not hold back its first responses.
+@Scope("prototype")
 @Component("JMSDisruptorWriter")
 public class JMSDisruptorWriter implements DisruptorWriter
 {
@@ -17,8 +32,20 @@ public class JMSDisruptorWriter implements DisruptorWriter
 	private boolean isPrimary = false;
 	@Value("${spring.activemq.position.check.response.topic}")
 	private String positionCheckResponseTopic;
+	@Value("${jms.writer.mode:TRANSACTED}")
+	private JmsPublishingMode publishingMode;
+	@Value("${jms.writer.maximum.batch.size:256}")
+	private int maximumBatchSize;
+	@Value("${jms.writer.maximum.batch.delay.micros:1000}")
+	private long maximumBatchDelayMicros;
 	@Autowired
-	private JmsTemplate jmsTemplate;
+	private ConnectionFactory connectionFactory;
+
+	private Connection connection;
+	private Session session;
+	private MessageProducer producer;
+	private int pendingCount = 0;
+	private long firstPendingTime;
 
 	@Override
 	public boolean togglePrimary()
@@ -31,33 +58,101 @@ public class JMSDisruptorWriter implements DisruptorWriter
 	@Override
 	public void start()
 	{
-		logger.info((isPrimary ? "Started writer in PRIMARY mode" : "Started writer in SECONDARY mode") + " with topic: " + positionCheckResponseTopic);
+		logger.info((isPrimary ? "Started writer in PRIMARY mode" : "Started writer in SECONDARY mode") + " with topic: " + positionCheckResponseTopic
+				+ " in " + publishingMode + " mode.");
 	}
 
-	@Override
-	public void writeAll(Flux<DisruptorPayload> payload)
+	private void open() throws JMSException
 	{
-		payload.subscribe(load -> write(load));
+		boolean isTransacted = publishingMode == JmsPublishingMode.TRANSACTED;
+		connection = connectionFactory.createConnection();
+		session = connection.createSession(isTransacted, isTransacted ? Session.SESSION_TRANSACTED : Session.AUTO_ACKNOWLEDGE);
+		producer = session.createProducer(session.createTopic(positionCheckResponseTopic));
+		producer.setDeliveryMode(isTransacted ? DeliveryMode.PERSISTENT : DeliveryMode.NON_PERSISTENT);
+		logger.info("Opened " + publishingMode + " session on topic: " + positionCheckResponseTopic);
 	}
 
 	@Override
-	public void write(DisruptorPayload payload)
+	public void write(DisruptorEvent event)
 	{
+		if(!isPrimary)
+			return;
+
 		try
 		{
-			if(isPrimary)
-				jmsTemplate.send(positionCheckResponseTopic, s -> s.createTextMessage(payload.getPayload()));
+			if(session == null)
+				open();
+
+			// Binary responses go out as bytes messages and JSON responses as text messages, matching how their requests arrived.
+			Message message;
+			if(event.getPayloadFormat() == PayloadFormat.BINARY)
+			{
+				BytesMessage bytesMessage = session.createBytesMessage();
+				bytesMessage.writeBytes(event.getPayload(), 0, event.getPayloadLength());
+				message = bytesMessage;
+			}
+			else
+				message = session.createTextMessage(event.getPayloadAsString());
+
+			producer.send(message);
+			if(publishingMode != JmsPublishingMode.TRANSACTED)
+				return;
+
+			if(pendingCount++ == 0)
+				firstPendingTime = System.nanoTime();
+			if(pendingCount >= maximumBatchSize || System.nanoTime() - firstPendingTime >= maximumBatchDelayMicros * 1_000)
+				flush();
 		}
 		catch(Exception e)
 		{
-			e.printStackTrace();
-			logger.error("Exception thrown while sending message:" + e.getLocalizedMessage() + " on topic: " + positionCheckResponseTopic);
+			logger.error("Exception thrown while sending message with uid: " + event.getUid() + ": " + e.getLocalizedMessage() + " on topic: " + positionCheckResponseTopic);
+			close();
 		}
 	}
 
 	@Override
-	public void stop()
+	public void flush()
 	{
+		if(pendingCount == 0)
+			return;
 
+		try
+		{
+			session.commit();
+		}
+		catch(JMSException jmse)
+		{
+			logger.error("Exception thrown while committing " + pendingCount + " messages: " + jmse.getLocalizedMessage() + " on topic: " + positionCheckResponseTopic);
+			close();
+		}
+		pendingCount = 0;
+	}
+
+	// Pending messages that were not committed are lost with the session. The session is closed on its own as well because a caching
+	// connection factory hands out a shared connection that ignores close.
+	private void close()
+	{
+		try
+		{
+			if(session != null)
+				session.close();
+			if(connection != null)
+				connection.close();
+		}
+		catch(JMSException jmse)
+		{
+			logger.error("Exception thrown while closing session on topic: " + positionCheckResponseTopic + ": " + jmse.getLocalizedMessage());
+		}
+		connection = null;
+		session = null;
+		producer = null;
+		pendingCount = 0;
+	}
+
+	@Override
+	public void stop()
+	{
+		flush();
+		close();
 	}
 }
@@ -0,0 +1,115 @@
+package com.leon.io;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.leon.model.BinaryCodec;
+import com.leon.model.InventoryCheckResponse;
+import com.leon.model.PayloadFormat;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Compares the responses of a replay with those recorded in the original outbound journal, or prints one outbound journal. Run offline:
+// java -cp position-check-disruptor.jar com.leon.io.JournalDiff <recorded outbound journal> [<replayed outbound journal>] [--by-reference]
+// Responses are matched by the uid of their request, which a replay of a whole session from its start of day reproduces.
+// When the replay starts part way through, --by-reference matches them by the referenceId of the client instead.
+// Responses are compared in their decoded form, so a JSON response matches the binary one it replays. Exits with 2 when they differ.
+public class JournalDiff
+{
+    private final ObjectMapper objectMapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    private final boolean isKeyedByReference;
+    private int duplicateCount = 0;
+
+    public JournalDiff(boolean isKeyedByReference)
+    {
+        this.isKeyedByReference = isKeyedByReference;
+    }
+
+    // Responses in journal order, keyed by uid or referenceId. A response that cannot be decoded is kept as its raw payload.
+    public Map<String, Object> read(String journalPath) throws Exception
+    {
+        Map<String, Object> responses = new LinkedHashMap<>();
+        new JournalReader(journalPath).replay(0, (event, sequence, endOfBatch) ->
+        {
+            Object response = event.getPayloadFormat() == PayloadFormat.BINARY
+                    ? BinaryCodec.decodeResponse(event.getPayload(), 0, event.getPayloadLength())
+                    : decodeJson(event.getPayloadAsString());
+            if(response == null)
+                response = event.getPayloadType() + " of " + event.getPayloadLength() + " bytes that cannot be decoded";
+
+            String key = isKeyedByReference && response instanceof InventoryCheckResponse ? ((InventoryCheckResponse) response).getReferenceId() : String.valueOf(event.getUid());
+            if(responses.putIfAbsent(key, response) != null)
+                duplicateCount++;
+        });
+        return responses;
+    }
+
+    private Object decodeJson(String payload)
+    {
+        try
+        {
+            return objectMapper.readValue(payload, InventoryCheckResponse.class);
+        }
+        catch(IOException ioe)
+        {
+            return payload;
+        }
+    }
+
+    public int print(PrintStream out, String journalPath) throws Exception
+    {
+        Map<String, Object> responses = read(journalPath);
+        responses.forEach((key, response) -> out.println(key + " " + response));
+        return responses.size();
+    }
+
+    // Prints each response that differs, is missing from the replay or only in the replay, and returns how many there are.
+    public int diff(PrintStream out, String recordedJournalPath, String replayedJournalPath) throws Exception
+    {
+        Map<String, Object> recorded = read(recordedJournalPath);
+        Map<String, Object> replayed = read(replayedJournalPath);
+        int differentCount = 0;
+        int missingCount = 0;
+        for(Map.Entry<String, Object> entry : recorded.entrySet())
+        {
+            Object replayedResponse = replayed.remove(entry.getKey());
+            if(replayedResponse == null)
+            {
+                out.println("MISSING " + entry.getKey() + " recorded=" + entry.getValue());
+                missingCount++;
+            }
+            else if(!replayedResponse.equals(entry.getValue()))
+            {
+                out.println("DIFFERENT " + entry.getKey() + " recorded=" + entry.getValue() + " replayed=" + replayedResponse);
+                differentCount++;
+            }
+        }
+
+        replayed.forEach((key, response) -> out.println("EXTRA " + key + " replayed=" + response));
+        System.err.println("Compared " + recorded.size() + " recorded responses with the replay: " + (recorded.size() - differentCount - missingCount) + " matched, "
+                + differentCount + " different, " + missingCount + " missing from the replay and " + replayed.size() + " only in the replay."
+                + (duplicateCount > 0 ? " " + duplicateCount + " responses with a duplicate key were ignored." : ""));
+        return differentCount + missingCount + replayed.size();
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        boolean isKeyedByReference = args.length > 0 && args[args.length - 1].equals("--by-reference");
+        int pathCount = isKeyedByReference ? args.length - 1 : args.length;
+        if(pathCount < 1 || pathCount > 2)
+        {
+            System.err.println("Usage: JournalDiff <recorded outbound journal> [<replayed outbound journal>] [--by-reference]");
+            System.exit(1);
+        }
+
+        JournalDiff journalDiff = new JournalDiff(isKeyedByReference);
+        if(pathCount == 1)
+        {
+            int count = journalDiff.print(System.out, args[0]);
+            System.err.println(count + " responses decoded from " + args[0]);
+        }
+        else if(journalDiff.diff(System.out, args[0], args[1]) > 0)
+            System.exit(2);
+    }
+}
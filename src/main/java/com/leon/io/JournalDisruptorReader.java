@@ -0,0 +1,249 @@
+package com.leon.io;
+
+import com.leon.model.BinaryCodec;
+import com.leon.model.CheckCashRequestMessage;
+import com.leon.model.CheckPositionRequestMessage;
+import com.leon.model.DisruptorEvent;
+import com.leon.model.ExecutionMessage;
+import com.leon.model.PayloadFormat;
+import com.leon.model.RequestTypeEnum;
+import com.leon.service.ConfigurationServiceImpl;
+import com.lmax.disruptor.EventHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+// Replays captured inbound journals as live requests, keeping the gaps between their arrival times divided by replay.speed.
+// A speed of 1 reproduces the original traffic, 10 plays it ten times faster and 0 as fast as the rings take it.
+// The journals of several shards, given as a comma separated list, are each replayed on their own thread against the same clock.
+// Requests that arrived in the same instant are handed over as one batch, as they would have been by the original producers.
+// Binary requests are replayed in their JSON form, the responses to them therefore come back as JSON.
+// Gaps longer than replay.maximum.gap.millis, for example between two sessions captured in the same journal, are shortened to it.
+// Inventory maintenance records are skipped rather than replayed: the ingress would reject them, and routed as requests an inventory
+// clear would reach a single shard for every journal. A replay therefore starts from the inventory uploaded before it, not from the
+// changes made during the captured session.
+@Component("JournalDisruptorReader")
+public class JournalDisruptorReader implements DisruptorReader
+{
+    private static final Logger logger = LoggerFactory.getLogger(JournalDisruptorReader.class);
+    @Value("${replay.journal.path:../logs/capture/inbound-journal}")
+    private String replayJournalPath;
+    @Value("${replay.speed:1.0}")
+    private double replaySpeed;
+    @Value("${replay.maximum.gap.millis:10000}")
+    private long replayMaximumGapMillis;
+    private String[] journalPaths = new String[0];
+    private volatile boolean isStopped = false;
+
+    @Override
+    public void start()
+    {
+        if(replaySpeed < 0)
+        {
+            logger.error("Replay speed: " + replaySpeed + " cannot be negative.");
+            throw new IllegalArgumentException("Replay speed: " + replaySpeed + " cannot be negative.");
+        }
+
+        journalPaths = replayJournalPath.split(",");
+        for(int index = 0; index < journalPaths.length; index++)
+            journalPaths[index] = journalPaths[index].trim();
+
+        isStopped = false;
+        logger.info("Replaying journal(s): " + replayJournalPath + (replaySpeed == 0 ? " as fast as possible." : " at " + replaySpeed + " times their original speed."));
+    }
+
+    @Override
+    public void start(String replayJournalPath)
+    {
+        this.replayJournalPath = replayJournalPath;
+        start();
+    }
+
+    // A replay does not depend on the role of the instance, its journals are read whether it is primary or secondary.
+    @Override
+    public void start(ConfigurationServiceImpl configurationService)
+    {
+        start();
+    }
+
+    @Override
+    public Flux<String> readAll()
+    {
+        return readBatches(1).flatMapIterable(batch -> batch);
+    }
+
+    // The replay runs on its own threads so that subscribing returns straight away, as it does for messages arriving over JMS.
+    @Override
+    public Flux<List<String>> readBatches(int maximumBatchSize)
+    {
+        if(journalPaths.length == 0)
+            return Flux.empty();
+
+        return Flux.create(sink ->
+        {
+            long firstCreatedTime = Long.MAX_VALUE;
+            for(String journalPath : journalPaths)
+            {
+                try
+                {
+                    firstCreatedTime = Math.min(firstCreatedTime, JournalReader.firstCreatedTime(journalPath));
+                }
+                catch(IOException ioe)
+                {
+                    logger.error("Unable to read the start of journal: " + journalPath + " due to exception: " + ioe.getLocalizedMessage());
+                }
+            }
+
+            long replayStartTime = System.nanoTime();
+            AtomicInteger remainingCount = new AtomicInteger(journalPaths.length);
+            for(int index = 0; index < journalPaths.length; index++)
+            {
+                ReplayHandler replayHandler = new ReplayHandler(sink, maximumBatchSize, firstCreatedTime, replayStartTime);
+                String journalPath = journalPaths[index];
+                Thread replayer = new Thread(() ->
+                {
+                    try
+                    {
+                        new JournalReader(journalPath).replay(0, replayHandler);
+                        logger.info("Replayed " + replayHandler.replayedCount + " requests from journal: " + journalPath + " and skipped "
+                                + replayHandler.skippedCount + " inventory maintenance records.");
+                    }
+                    catch(Exception e)
+                    {
+                        logger.error("Failed to replay journal: " + journalPath + " due to exception: " + e.getLocalizedMessage());
+                    }
+                    finally
+                    {
+                        if(remainingCount.decrementAndGet() == 0)
+                            sink.complete();
+                    }
+                }, "journal-request-replayer-" + index);
+                replayer.setDaemon(true);
+                replayer.start();
+            }
+        });
+    }
+
+    @Override
+    public void stop()
+    {
+        isStopped = true;
+    }
+
+    private class ReplayHandler implements EventHandler<DisruptorEvent>
+    {
+        private final FluxSink<List<String>> sink;
+        private final int maximumBatchSize;
+        private final long maximumGapNanos = replayMaximumGapMillis * 1_000_000;
+        private final long replayStartTime;
+        private long previousCreatedTime;
+        // Time since the start of the capture, with the long gaps shortened.
+        private long elapsedCaptureNanos = 0;
+        private List<String> batch = new ArrayList<>();
+        private long replayedCount = 0;
+        private long skippedCount = 0;
+        private final CheckCashRequestMessage cashRequest = new CheckCashRequestMessage();
+        private final CheckPositionRequestMessage positionRequest = new CheckPositionRequestMessage();
+        private final ExecutionMessage execution = new ExecutionMessage();
+
+        ReplayHandler(FluxSink<List<String>> sink, int maximumBatchSize, long firstCreatedTime, long replayStartTime)
+        {
+            this.sink = sink;
+            this.maximumBatchSize = Math.max(1, maximumBatchSize);
+            this.previousCreatedTime = firstCreatedTime;
+            this.replayStartTime = replayStartTime;
+        }
+
+        @Override
+        public void onEvent(DisruptorEvent event, long sequence, boolean endOfBatch)
+        {
+            if(isStopped)
+                return;
+
+            String request = toRequest(event);
+            if(request != null && replaySpeed > 0)
+            {
+                elapsedCaptureNanos += Math.max(0, Math.min(event.getCreatedTime() - previousCreatedTime, maximumGapNanos));
+                previousCreatedTime = event.getCreatedTime();
+                long dueTime = replayStartTime + (long) (elapsedCaptureNanos / replaySpeed);
+                if(dueTime - System.nanoTime() > 0)
+                {
+                    flush();
+                    long delay;
+                    while((delay = dueTime - System.nanoTime()) > 0 && !isStopped)
+                        LockSupport.parkNanos(delay);
+                }
+            }
+
+            if(request != null)
+            {
+                batch.add(request);
+                replayedCount++;
+            }
+
+            if(batch.size() == maximumBatchSize || endOfBatch)
+                flush();
+        }
+
+        private void flush()
+        {
+            if(batch.isEmpty())
+                return;
+
+            sink.next(batch);
+            batch = new ArrayList<>(Math.min(maximumBatchSize, 1024));
+        }
+
+        // Rebuilds the "PAYLOAD_TYPE=payload" message that was received, returns null for a record that cannot or should not be replayed.
+        private String toRequest(DisruptorEvent event)
+        {
+            if(!event.getPayloadType().isClientRequest())
+            {
+                skippedCount++;
+                return null;
+            }
+
+            if(event.getPayloadFormat() != PayloadFormat.BINARY)
+                return event.getPayloadType() + "=" + event.getPayloadAsString();
+
+            byte[] payload = event.getPayload();
+            int length = event.getPayloadLength();
+            switch(event.getPayloadType())
+            {
+                case CASH_CHECK_REQUEST:
+                    if(!BinaryCodec.decode(payload, 0, length, cashRequest))
+                        return null;
+                    return RequestTypeEnum.CASH_CHECK_REQUEST + "={\"clientId\": " + cashRequest.getClientId() + ", \"instrumentId\": " + cashRequest.getInstrumentId()
+                            + ", \"referenceId\": \"" + cashRequest.getReferenceId() + "\", \"requestType\": \"" + cashRequest.getRequestType()
+                            + "\", \"lockCash\": " + cashRequest.getLockCash() + ", \"unlockCash\": " + cashRequest.getUnlockCash() + "}";
+                case POSITION_CHECK_REQUEST:
+                    if(!BinaryCodec.decode(payload, 0, length, positionRequest))
+                        return null;
+                    return RequestTypeEnum.POSITION_CHECK_REQUEST + "={\"clientId\": " + positionRequest.getClientId() + ", \"instrumentId\": " + positionRequest.getInstrumentId()
+                            + ", \"referenceId\": \"" + positionRequest.getReferenceId() + "\", \"requestType\": \"" + positionRequest.getRequestType()
+                            + "\", \"lockQuantity\": " + positionRequest.getLockQuantity() + ", \"unlockQuantity\": " + positionRequest.getUnlockQuantity()
+                            + ", \"requestSubType\": \"" + positionRequest.getRequestSubType() + "\"}";
+                case EXECUTION_MESSAGE:
+                    if(!BinaryCodec.decode(payload, 0, length, execution))
+                        return null;
+                    return RequestTypeEnum.EXECUTION_MESSAGE + "={\"executionId\": \"" + execution.getExecutionId() + "\", \"orderId\": \"" + execution.getOrderId()
+                            + "\", \"instrumentId\": " + execution.getInstrumentId() + ", \"clientId\": " + execution.getClientId() + ", \"side\": \"" + execution.getSide()
+                            + "\", \"executedPrice\": " + execution.getExecutedPrice() + ", \"executedQuantity\": " + execution.getExecutedQuantity()
+                            + ", \"cumulativeQuantity\": " + execution.getCumulativeQuantity() + ", \"orderQuantity\": " + execution.getOrderQuantity()
+                            + ", \"currency\": \"" + execution.getCurrency() + "\"}";
+                default:
+                    logger.error("Cannot replay binary record with uid: " + event.getUid() + " of type: " + event.getPayloadType());
+                    return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.leon.io;
+
+import com.leon.model.DisruptorEvent;
+import com.leon.model.PayloadFormat;
+import com.leon.model.RequestTypeEnum;
+import com.lmax.disruptor.EventHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import static com.leon.io.JournalWriter.*;
+
+// Reads the segments written by JournalWriter in order, stopping at the first zero length or at a record that is not complete.
+// After a scan or replay the reader knows where the journal ends so that a JournalWriter can carry on appending from there.
+public class JournalReader
+{
+    private static final Logger logger = LoggerFactory.getLogger(JournalReader.class);
+    // Replayed events are handed over in batches so that handlers run their end of batch work as they do on the ring.
+    private static final int REPLAY_BATCH_SIZE = 1024;
+
+    private final String basePath;
+    private int endSegmentIndex = -1;
+    private int endPosition = SEGMENT_HEADER_SIZE;
+    private long lastSequence = -1;
+    private long recordCount = 0;
+
+    public JournalReader(String basePath)
+    {
+        if(basePath == null || basePath.isEmpty())
+        {
+            logger.error("Journal base path cannot be null or empty.");
+            throw new IllegalArgumentException("Journal base path cannot be null or empty.");
+        }
+
+        this.basePath = basePath;
+    }
+
+    public void scan() throws Exception
+    {
+        replay(Long.MAX_VALUE, null);
+    }
+
+    // Hands every record with a sequence at or after fromSequence to the handler, reusing one event so nothing is allocated per record.
+    // The handler is called one record behind the reader so that the last record of the journal can be flagged as the end of a batch.
+    public long replay(long fromSequence, EventHandler<DisruptorEvent> handler) throws Exception
+    {
+        DisruptorEvent event = new DisruptorEvent();
+        DisruptorEvent pendingEvent = null;
+        long replayedCount = 0;
+        endSegmentIndex = -1;
+        endPosition = SEGMENT_HEADER_SIZE;
+        lastSequence = -1;
+        recordCount = 0;
+
+        for(int segmentIndex = firstSegmentIndex(basePath); new File(segmentPath(basePath, segmentIndex)).exists(); segmentIndex++)
+        {
+            MappedByteBuffer segment = map(segmentIndex);
+            if(segment.getInt(0) != MAGIC || segment.getInt(4) != VERSION)
+                throw new IOException("Journal segment: " + segmentPath(basePath, segmentIndex) + " has an unknown format.");
+
+            endSegmentIndex = segmentIndex;
+            int position = SEGMENT_HEADER_SIZE;
+            int length = 0;
+            while(position + Integer.BYTES <= segment.capacity())
+            {
+                length = segment.getInt(position);
+                if(!isValidRecordLength(length) || position + length > segment.capacity())
+                    break;
+
+                long sequence = segment.getLong(position + 8);
+                if(handler != null && sequence >= fromSequence)
+                {
+                    if(pendingEvent != null)
+                        handler.onEvent(pendingEvent, pendingEvent.getUid(), ++replayedCount % REPLAY_BATCH_SIZE == 0);
+
+                    pendingEvent = event;
+                    readRecord(segment, position, pendingEvent);
+                }
+
+                lastSequence = sequence;
+                recordCount++;
+                position += align(length);
+            }
+
+            endPosition = position;
+            if(length != END_OF_SEGMENT)
+                break;
+        }
+
+        if(pendingEvent != null)
+            handler.onEvent(pendingEvent, pendingEvent.getUid(), true);
+
+        logger.info("Read " + recordCount + " records from journal: " + basePath + " ending at sequence: " + lastSequence + ", " + (pendingEvent == null ? 0 : replayedCount + 1) + " of them replayed.");
+        return lastSequence;
+    }
+
+    private MappedByteBuffer map(int segmentIndex) throws IOException
+    {
+        try(RandomAccessFile randomAccessFile = new RandomAccessFile(segmentPath(basePath, segmentIndex), "r"))
+        {
+            MappedByteBuffer segment = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, randomAccessFile.length());
+            segment.order(ByteOrder.LITTLE_ENDIAN);
+            return segment;
+        }
+    }
+
+    // Also used to decode records streamed to the secondary, the length must have been validated by the caller.
+    public static void readRecord(ByteBuffer buffer, int position, DisruptorEvent event)
+    {
+        int length = buffer.getInt(position);
+        event.setPayloadType(RequestTypeEnum.fromCode(buffer.getShort(position + 4)));
+        event.setPayloadFormat(PayloadFormat.fromOrdinal(buffer.getShort(position + 6)));
+        event.setUid(buffer.getLong(position + 8));
+        event.setCreatedTime(buffer.getLong(position + 16));
+        event.setPublishedTime(event.getCreatedTime());
+        buffer.position(position + RECORD_HEADER_SIZE);
+        buffer.get(event.getPayload(), 0, length - RECORD_HEADER_SIZE);
+        event.setPayloadLength(length - RECORD_HEADER_SIZE);
+    }
+
+    // Created time of the first record of the journal, or Long.MAX_VALUE when it has none. Used to line up the replay of several journals.
+    public static long firstCreatedTime(String basePath) throws IOException
+    {
+        File file = new File(segmentPath(basePath, firstSegmentIndex(basePath)));
+        if(!file.exists())
+            return Long.MAX_VALUE;
+
+        try(RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r"))
+        {
+            if(randomAccessFile.length() < SEGMENT_HEADER_SIZE + RECORD_HEADER_SIZE)
+                return Long.MAX_VALUE;
+
+            randomAccessFile.seek(SEGMENT_HEADER_SIZE);
+            if(!isValidRecordLength(Integer.reverseBytes(randomAccessFile.readInt())))
+                return Long.MAX_VALUE;
+
+            randomAccessFile.seek(SEGMENT_HEADER_SIZE + 16);
+            return Long.reverseBytes(randomAccessFile.readLong());
+        }
+    }
+
+    public static boolean isValidRecordLength(int length)
+    {
+        return length >= RECORD_HEADER_SIZE && length <= RECORD_HEADER_SIZE + DisruptorEvent.PAYLOAD_CAPACITY;
+    }
+
+    // Index of the last segment holding records, -1 when the journal has no segments.
+    public int getEndSegmentIndex()
+    {
+        return endSegmentIndex;
+    }
+
+    // Position in the last segment where the next record would be written.
+    public int getEndPosition()
+    {
+        return endPosition;
+    }
+
+    public long getLastSequence()
+    {
+        return lastSequence;
+    }
+
+    public long getRecordCount()
+    {
+        return recordCount;
+    }
+}
@@ -0,0 +1,377 @@
+package com.leon.io;
+
+import com.leon.model.DisruptorEvent;
+import com.leon.model.JournalDurabilityPolicy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+// Writes length-prefixed binary records into pre-allocated, memory-mapped segment files named <base path>.<segment index>.
+// Segment layout: int magic, int version, long first sequence, then the records, each aligned to 8 bytes:
+// int length (header plus payload, written last so a record is only visible once complete), short payload type code,
+// short flags (the payload format ordinal), long sequence (the event uid), long created time, payload bytes.
+// A length of zero marks the end of the journal and END_OF_SEGMENT means the records continue in the next segment.
+// With a capture directory every segment is also hard linked into it as soon as it is created, so the capture sees every record as it is
+// appended and keeps the whole session once the live segments are truncated after a snapshot or deleted by the next session.
+public class JournalWriter
+{
+    private static final Logger logger = LoggerFactory.getLogger(JournalWriter.class);
+    public static final int MAGIC = 0x4C4A4E4C;
+    public static final int VERSION = 1;
+    public static final int SEGMENT_HEADER_SIZE = 16;
+    public static final int FIRST_SEQUENCE_OFFSET = 8;
+    public static final int RECORD_HEADER_SIZE = 24;
+    public static final int END_OF_SEGMENT = -1;
+    private static final int PAGE_SIZE = 4096;
+    private static final String PREPARED_SUFFIX = ".prepared";
+
+    private final String basePath;
+    private final int segmentSize;
+    private final JournalDurabilityPolicy durabilityPolicy;
+    private final long syncIntervalMillis;
+    private ExecutorService segmentPreparer;
+    private ScheduledExecutorService segmentSynchronizer;
+    private Future<MappedByteBuffer> nextSegment;
+    private volatile MappedByteBuffer segment;
+    // Read by truncateBefore on the snapshot thread, which must never delete the segment being appended to or the one being prepared.
+    private volatile int segmentIndex;
+    private long lastSequence = -1;
+    private boolean isOpen = false;
+    private File captureDirectory;
+
+    public JournalWriter(String basePath, int segmentSize, JournalDurabilityPolicy durabilityPolicy, long syncIntervalMillis)
+    {
+        if(segmentSize < SEGMENT_HEADER_SIZE + RECORD_HEADER_SIZE + DisruptorEvent.PAYLOAD_CAPACITY + Integer.BYTES)
+        {
+            logger.error("Journal segment size of " + segmentSize + " bytes is too small to hold a record.");
+            throw new IllegalArgumentException("Journal segment size of " + segmentSize + " bytes is too small to hold a record.");
+        }
+
+        this.basePath = basePath;
+        this.segmentSize = segmentSize;
+        this.durabilityPolicy = durabilityPolicy;
+        this.syncIntervalMillis = syncIntervalMillis;
+    }
+
+    public static String segmentPath(String basePath, int segmentIndex)
+    {
+        return String.format("%s.%05d", basePath, segmentIndex);
+    }
+
+    // Segments before a snapshot are deleted, so the journal does not necessarily start at segment zero.
+    public static int firstSegmentIndex(String basePath)
+    {
+        File base = new File(basePath).getAbsoluteFile();
+        String[] segmentNames = base.getParentFile().list((directory, name) -> name.matches(Pattern.quote(base.getName()) + "\\.\\d{5}"));
+        int firstSegmentIndex = Integer.MAX_VALUE;
+        for(String segmentName : segmentNames == null ? new String[0] : segmentNames)
+            firstSegmentIndex = Math.min(firstSegmentIndex, Integer.parseInt(segmentName.substring(segmentName.length() - 5)));
+
+        return firstSegmentIndex == Integer.MAX_VALUE ? 0 : firstSegmentIndex;
+    }
+
+    // Must be set before the journal is opened, null stops capturing.
+    public void setCaptureDirectory(File captureDirectory)
+    {
+        this.captureDirectory = captureDirectory;
+    }
+
+    // Starts a new journal, deleting any segments left behind by a previous session.
+    public void open() throws IOException
+    {
+        open(false);
+    }
+
+    // When appending, the existing journal is scanned and new records carry on from the end of its last record.
+    public void open(boolean append) throws IOException
+    {
+        segmentPreparer = Executors.newSingleThreadExecutor(runnable -> daemon(runnable, "journal-segment-preparer"));
+        JournalReader journalReader = new JournalReader(basePath);
+        if(append)
+        {
+            try
+            {
+                journalReader.scan();
+            }
+            catch(Exception e)
+            {
+                throw new IOException("Unable to scan journal: " + basePath + " before appending to it.", e);
+            }
+        }
+
+        if(journalReader.getEndSegmentIndex() < 0)
+        {
+            deleteSegmentsFrom(firstSegmentIndex(basePath));
+            segmentIndex = 0;
+            segment = createSegment(segmentIndex);
+            segment.position(SEGMENT_HEADER_SIZE);
+        }
+        else
+        {
+            deleteSegmentsFrom(journalReader.getEndSegmentIndex() + 1);
+            segmentIndex = journalReader.getEndSegmentIndex();
+            segment = mapSegment(segmentIndex);
+            segment.position(journalReader.getEndPosition());
+            lastSequence = journalReader.getLastSequence();
+            for(int index = firstSegmentIndex(basePath); index <= segmentIndex; index++)
+                capture(index);
+        }
+        prepareNextSegment();
+
+        if(durabilityPolicy == JournalDurabilityPolicy.PERIODIC)
+        {
+            segmentSynchronizer = Executors.newSingleThreadScheduledExecutor(runnable -> daemon(runnable, "journal-segment-synchronizer"));
+            segmentSynchronizer.scheduleAtFixedRate(() -> segment.force(), syncIntervalMillis, syncIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+
+        isOpen = true;
+        logger.info("Opened journal: " + segmentPath(basePath, segmentIndex) + " at sequence: " + lastSequence + " with durability policy: " + durabilityPolicy
+                + (captureDirectory == null ? "" : ", capturing into: " + captureDirectory));
+    }
+
+    private void deleteSegmentsFrom(int firstSegmentIndex) throws IOException
+    {
+        for(int index = firstSegmentIndex; new File(segmentPath(basePath, index)).exists(); index++)
+        {
+            if(!new File(segmentPath(basePath, index)).delete())
+                throw new IOException("Unable to delete old journal segment: " + segmentPath(basePath, index));
+        }
+    }
+
+    private static Thread daemon(Runnable runnable, String name)
+    {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    // Maps the whole segment up front and touches every page so that appends on the journal thread do not take page faults.
+    // The segment is prepared under a temporary name and renamed into place with its header written, so that truncation and recovery
+    // never see a sized segment whose first sequence still reads as zero.
+    private MappedByteBuffer createSegment(int index) throws IOException
+    {
+        File file = new File(segmentPath(basePath, index));
+        File preparedFile = new File(file.getPath() + PREPARED_SUFFIX);
+        if(file.getParentFile() != null)
+            file.getParentFile().mkdirs();
+
+        Files.deleteIfExists(preparedFile.toPath());
+        MappedByteBuffer buffer = mapSegment(preparedFile.getPath());
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putLong(FIRST_SEQUENCE_OFFSET, -1);
+        for(int page = PAGE_SIZE; page < segmentSize; page += PAGE_SIZE)
+            buffer.put(page, (byte) 0);
+
+        // Deleting first guarantees that a recreated segment does not expose records of an older journal, and unlike truncating it in place
+        // leaves any captured copy of the older segment intact.
+        Files.deleteIfExists(file.toPath());
+        Files.move(preparedFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        capture(index);
+        return buffer;
+    }
+
+    // A failure to capture is logged and does not stop the journal.
+    private void capture(int index)
+    {
+        if(captureDirectory == null)
+            return;
+
+        Path segmentPath = Paths.get(segmentPath(basePath, index));
+        Path capturedPath = captureDirectory.toPath().resolve(segmentPath.getFileName());
+        try
+        {
+            Files.createDirectories(captureDirectory.toPath());
+            if(!Files.exists(capturedPath))
+                Files.createLink(capturedPath, segmentPath);
+        }
+        catch(IOException | UnsupportedOperationException e)
+        {
+            logger.error("Unable to capture journal segment: " + segmentPath + " into: " + captureDirectory + " due to exception: " + e.getLocalizedMessage());
+        }
+    }
+
+    private MappedByteBuffer mapSegment(int index) throws IOException
+    {
+        return mapSegment(segmentPath(basePath, index));
+    }
+
+    private MappedByteBuffer mapSegment(String path) throws IOException
+    {
+        try(RandomAccessFile randomAccessFile = new RandomAccessFile(path, "rw"))
+        {
+            randomAccessFile.setLength(Math.max(segmentSize, randomAccessFile.length()));
+            MappedByteBuffer buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, randomAccessFile.length());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            return buffer;
+        }
+    }
+
+    public void append(DisruptorEvent event)
+    {
+        if(!isOpen)
+            return;
+
+        int alignedLength = align(RECORD_HEADER_SIZE + event.getPayloadLength());
+        MappedByteBuffer segment = this.segment;
+        int position = segment.position();
+
+        try
+        {
+            if(position + alignedLength + Integer.BYTES > segmentSize)
+            {
+                segment = roll();
+                position = segment.position();
+            }
+
+            if(position == SEGMENT_HEADER_SIZE)
+                segment.putLong(FIRST_SEQUENCE_OFFSET, event.getUid());
+
+            writeRecord(segment, position, event);
+            lastSequence = event.getUid();
+        }
+        catch(IOException ioe)
+        {
+            logger.error("Failed to journal event with uid: " + event.getUid() + " due to exception: " + ioe.getLocalizedMessage());
+        }
+    }
+
+    // Also used to stream records to the secondary. Leaves the buffer positioned after the aligned record and returns its aligned length.
+    public static int writeRecord(ByteBuffer buffer, int position, DisruptorEvent event)
+    {
+        int length = RECORD_HEADER_SIZE + event.getPayloadLength();
+        buffer.putShort(position + 4, (short) event.getPayloadType().getCode());
+        buffer.putShort(position + 6, (short) event.getPayloadFormat().ordinal());
+        buffer.putLong(position + 8, event.getUid());
+        buffer.putLong(position + 16, event.getCreatedTime());
+        buffer.position(position + RECORD_HEADER_SIZE);
+        buffer.put(event.getPayload(), 0, event.getPayloadLength());
+        buffer.putInt(position, length);
+        buffer.position(position + align(length));
+        return align(length);
+    }
+
+    public static int maximumRecordLength()
+    {
+        return align(RECORD_HEADER_SIZE + DisruptorEvent.PAYLOAD_CAPACITY);
+    }
+
+    public void endOfBatch()
+    {
+        if(isOpen && durabilityPolicy == JournalDurabilityPolicy.END_OF_BATCH)
+            segment.force();
+    }
+
+    private MappedByteBuffer roll() throws IOException
+    {
+        MappedByteBuffer previousSegment = segment;
+        previousSegment.putInt(previousSegment.position(), END_OF_SEGMENT);
+        if(durabilityPolicy != JournalDurabilityPolicy.NONE)
+            previousSegment.force();
+
+        try
+        {
+            segment = nextSegment.get();
+        }
+        catch(Exception e)
+        {
+            throw new IOException("Failed to prepare journal segment: " + segmentPath(basePath, segmentIndex + 1), e);
+        }
+
+        segment.position(SEGMENT_HEADER_SIZE);
+        segmentIndex++;
+        prepareNextSegment();
+        logger.info("Rolled journal to segment: " + segmentPath(basePath, segmentIndex));
+        return segment;
+    }
+
+    private void prepareNextSegment()
+    {
+        int nextSegmentIndex = segmentIndex + 1;
+        nextSegment = segmentPreparer.submit(() -> createSegment(nextSegmentIndex));
+    }
+
+    public static int align(int length)
+    {
+        return (length + 7) & ~7;
+    }
+
+    // Deletes the completed segments whose records all have a sequence at or before the given one, for example once a snapshot covers them.
+    // A segment is complete once the next segment has its first sequence. The segment being appended to is never deleted, whatever its
+    // successor reads, and nor is anything after it.
+    public void truncateBefore(long sequence)
+    {
+        int deletedCount = 0;
+        for(int index = firstSegmentIndex(basePath); index < segmentIndex; index++)
+        {
+            long nextFirstSequence = readFirstSequence(index + 1);
+            if(nextFirstSequence < 0 || nextFirstSequence > sequence + 1)
+                break;
+
+            if(!new File(segmentPath(basePath, index)).delete())
+            {
+                logger.error("Unable to delete journal segment: " + segmentPath(basePath, index));
+                break;
+            }
+            deletedCount++;
+        }
+
+        if(deletedCount > 0)
+            logger.info("Truncated " + deletedCount + " segment(s) of journal: " + basePath + " covering sequences up to: " + sequence);
+    }
+
+    private long readFirstSequence(int index)
+    {
+        File file = new File(segmentPath(basePath, index));
+        if(!file.exists())
+            return -1;
+
+        try(RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r"))
+        {
+            if(randomAccessFile.length() < SEGMENT_HEADER_SIZE)
+                return -1;
+
+            randomAccessFile.seek(FIRST_SEQUENCE_OFFSET);
+            return Long.reverseBytes(randomAccessFile.readLong());
+        }
+        catch(IOException ioe)
+        {
+            logger.error("Unable to read the first sequence of journal segment: " + file + " due to exception: " + ioe.getLocalizedMessage());
+            return -1;
+        }
+    }
+
+    public long getLastSequence()
+    {
+        return lastSequence;
+    }
+
+    public void close()
+    {
+        if(!isOpen)
+            return;
+
+        isOpen = false;
+        if(segmentSynchronizer != null)
+            segmentSynchronizer.shutdown();
+        segmentPreparer.shutdown();
+        segment.force();
+        logger.info("Closed journal: " + basePath + " at sequence: " + lastSequence);
+    }
+}
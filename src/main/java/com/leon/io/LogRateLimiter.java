@@ -0,0 +1,42 @@
+package com.leon.io;
+
+// Lets a repeated warning through at most once per interval and counts the occurrences it held back, so that a condition hit on every
+// event shows up in the log without the logging itself becoming the bottleneck. Each limiter belongs to one call site and one thread.
+public class LogRateLimiter
+{
+    private final long intervalNanos;
+    private long lastLoggedTime;
+    private boolean hasLogged = false;
+    private long suppressedCount = 0;
+
+    public LogRateLimiter(long intervalMillis)
+    {
+        if(intervalMillis < 0)
+            throw new IllegalArgumentException("Log rate limiter interval cannot be negative.");
+
+        this.intervalNanos = intervalMillis * 1_000_000L;
+    }
+
+    // Returns true when the caller should log now, the message is only built once it is known to be wanted.
+    public boolean tryAcquire()
+    {
+        long now = System.nanoTime();
+        if(hasLogged && now - lastLoggedTime < intervalNanos)
+        {
+            suppressedCount++;
+            return false;
+        }
+
+        hasLogged = true;
+        lastLoggedTime = now;
+        return true;
+    }
+
+    // Returns and resets the number of occurrences held back since the last one that was logged.
+    public long takeSuppressedCount()
+    {
+        long count = suppressedCount;
+        suppressedCount = 0;
+        return count;
+    }
+}
@@ -0,0 +1,158 @@
+package com.leon.io;
+
+import com.leon.model.DisruptorEvent;
+import com.leon.service.DisruptorService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+// Runs on the secondary. Accepts the stream of one primary inbound shard and publishes its records, uids included, to the matching
+// inbound ring so that the secondary journals and applies exactly the same sequence. Each chunk read from the socket is published as
+// one batch and then acknowledged with the last sequence it contained, as soon as the batch is in the ring and before it is journaled.
+public class ReplicationReceiver
+{
+    private static final Logger logger = LoggerFactory.getLogger(ReplicationReceiver.class);
+    private static final int RECEIVE_BUFFER_SIZE = 256 * 1024;
+    private static final int MAXIMUM_BATCH_SIZE = 256;
+
+    private final int port;
+    private final DisruptorService inboundDisruptor;
+    private final ByteBuffer receiveBuffer = ByteBuffer.allocateDirect(RECEIVE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private final ByteBuffer acknowledgementBuffer = ByteBuffer.allocate(Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    private final DisruptorEvent[] batch = new DisruptorEvent[MAXIMUM_BATCH_SIZE];
+    private volatile long lastSequence = -1;
+    private volatile boolean isStarted = false;
+    private ServerSocketChannel serverChannel;
+    private volatile SocketChannel channel;
+    private Thread receiverThread;
+
+    public ReplicationReceiver(int port, DisruptorService inboundDisruptor)
+    {
+        if(inboundDisruptor == null)
+        {
+            logger.error("Inbound disruptor is invalid.");
+            throw new NullPointerException("Inbound disruptor is invalid.");
+        }
+
+        this.port = port;
+        this.inboundDisruptor = inboundDisruptor;
+        for(int index = 0; index < MAXIMUM_BATCH_SIZE; index++)
+            batch[index] = new DisruptorEvent();
+    }
+
+    // Replicated uids continue from the last sequence the secondary recovered or received.
+    public void start(long lastSequence) throws IOException
+    {
+        this.lastSequence = lastSequence;
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        isStarted = true;
+        receiverThread = new Thread(this::receive, "replication-receiver-" + port);
+        receiverThread.setDaemon(true);
+        receiverThread.start();
+        logger.info("Listening for replication from primary on port: " + port);
+    }
+
+    public void stop()
+    {
+        isStarted = false;
+        try
+        {
+            if(serverChannel != null)
+                serverChannel.close();
+            if(channel != null)
+                channel.close();
+            if(receiverThread != null)
+                receiverThread.join();
+        }
+        catch(IOException ioe)
+        {
+            logger.error("Failed to close replication port: " + port + ". Exception: " + ioe.getLocalizedMessage());
+        }
+        catch(InterruptedException ie)
+        {
+            Thread.currentThread().interrupt();
+        }
+        logger.info("Stopped replication receiver on port: " + port + " at sequence: " + lastSequence);
+    }
+
+    public long getLastSequence()
+    {
+        return lastSequence;
+    }
+
+    private void receive()
+    {
+        while(isStarted)
+        {
+            try(SocketChannel channel = serverChannel.accept())
+            {
+                this.channel = channel;
+                channel.socket().setTcpNoDelay(true);
+                logger.info("Accepted replication connection from: " + channel.getRemoteAddress());
+                receiveBuffer.clear();
+                while(isStarted && channel.read(receiveBuffer) >= 0)
+                {
+                    receiveBuffer.flip();
+                    publishReceivedRecords();
+                    receiveBuffer.compact();
+                    acknowledge(channel);
+                }
+            }
+            catch(IOException ioe)
+            {
+                if(isStarted)
+                    logger.error("Replication connection on port: " + port + " was lost. Exception: " + ioe.getLocalizedMessage());
+            }
+        }
+    }
+
+    // Leaves an incomplete trailing record in the buffer for the next read.
+    private void publishReceivedRecords() throws IOException
+    {
+        int count = 0;
+        while(receiveBuffer.remaining() >= Integer.BYTES)
+        {
+            int position = receiveBuffer.position();
+            int length = receiveBuffer.getInt(position);
+            if(!JournalReader.isValidRecordLength(length))
+                throw new IOException("Received a replication record with an invalid length of " + length + " bytes.");
+
+            if(receiveBuffer.remaining() < JournalWriter.align(length))
+                break;
+
+            JournalReader.readRecord(receiveBuffer, position, batch[count]);
+            receiveBuffer.position(position + JournalWriter.align(length));
+
+            long sequence = batch[count].getUid();
+            if(sequence <= lastSequence)
+                continue;
+
+            if(sequence != lastSequence + 1)
+                logger.error("Replication gap on port: " + port + ", expected sequence: " + (lastSequence + 1) + " but received: " + sequence);
+
+            lastSequence = sequence;
+            if(++count == MAXIMUM_BATCH_SIZE)
+            {
+                inboundDisruptor.pushAll(batch, count);
+                count = 0;
+            }
+        }
+
+        if(count > 0)
+            inboundDisruptor.pushAll(batch, count);
+    }
+
+    private void acknowledge(SocketChannel channel) throws IOException
+    {
+        acknowledgementBuffer.clear();
+        acknowledgementBuffer.putLong(0, lastSequence);
+        while(acknowledgementBuffer.hasRemaining())
+            channel.write(acknowledgementBuffer);
+    }
+}
@@ -0,0 +1,345 @@
+package com.leon.model;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Fixed layout binary encoding of requests, executions and responses, all little-endian.
+// Header: short version, short type code (RequestTypeEnum code), int body length, long sequence (the uid, zero from clients).
+// Every body starts with int instrument id and int client id so that routing never has to know the message type.
+// The fixed fields follow at fixed offsets and the text fields come last, each as a short length (-1 for null) and UTF-8 bytes.
+//
+// Cash check request:      instrumentId, clientId, int lockCash, int unlockCash, short requestType, referenceId
+// Position check request:  instrumentId, clientId, int lockQuantity, int unlockQuantity, short requestType, short requestSubType, referenceId
+// Execution message:       instrumentId, clientId, double executedPrice, int executedQuantity, int cumulativeQuantity, int orderQuantity,
+//                          short side, executionId, orderId, currency
+// Check response:          instrumentId, clientId, int lockedQuantity, int unlockedQuantity, double lockedCash, double unlockedCash,
+//                          short result (OutcomeType code), short requestType, short requestSubType (-1 for none), referenceId
+public class BinaryCodec
+{
+	private static final Logger logger = LoggerFactory.getLogger(BinaryCodec.class);
+	public static final short VERSION = 1;
+	public static final int HEADER_SIZE = 16;
+	private static final int INSTRUMENT_ID_OFFSET = HEADER_SIZE;
+	private static final int CLIENT_ID_OFFSET = HEADER_SIZE + 4;
+	private static final int FIXED_BODY_OFFSET = HEADER_SIZE + 8;
+	private static final int NULL_LENGTH = -1;
+
+	private BinaryCodec() {}
+
+	// True when the buffer holds a complete message of a version this codec reads.
+	public static boolean isValid(byte[] buffer, int offset, int length)
+	{
+		return length >= HEADER_SIZE + 8 && getShort(buffer, offset) == VERSION && HEADER_SIZE + getInt(buffer, offset + 4) == length;
+	}
+
+	// True when the buffer holds a complete message of a type accepted from clients, used to check what arrives at an ingress.
+	public static boolean isValidRequest(byte[] buffer, int offset, int length)
+	{
+		return isValid(buffer, offset, length) && typeOf(buffer, offset).isClientRequest();
+	}
+
+	public static RequestTypeEnum typeOf(byte[] buffer, int offset)
+	{
+		return RequestTypeEnum.fromCode(getShort(buffer, offset + 2));
+	}
+
+	public static long sequenceOf(byte[] buffer, int offset)
+	{
+		return getLong(buffer, offset + 8);
+	}
+
+	public static int instrumentIdOf(byte[] buffer, int offset)
+	{
+		return getInt(buffer, offset + INSTRUMENT_ID_OFFSET);
+	}
+
+	public static int clientIdOf(byte[] buffer, int offset)
+	{
+		return getInt(buffer, offset + CLIENT_ID_OFFSET);
+	}
+
+	// Each encode method returns the number of bytes written, or -1 when the message does not fit in the buffer.
+	public static int encode(CheckCashRequestMessage message, long sequence, byte[] buffer, int offset)
+	{
+		int position = offset + FIXED_BODY_OFFSET;
+		if(buffer.length < position + 10 + textLength(message.getReferenceId()))
+			return -1;
+
+		putInt(buffer, offset + INSTRUMENT_ID_OFFSET, message.getInstrumentId());
+		putInt(buffer, offset + CLIENT_ID_OFFSET, message.getClientId());
+		putInt(buffer, position, message.getLockCash());
+		putInt(buffer, position + 4, message.getUnlockCash());
+		putShort(buffer, position + 8, message.getRequestType().getCode());
+		position = putText(buffer, position + 10, message.getReferenceId());
+		return putHeader(buffer, offset, RequestTypeEnum.CASH_CHECK_REQUEST, position, sequence);
+	}
+
+	public static int encode(CheckPositionRequestMessage message, long sequence, byte[] buffer, int offset)
+	{
+		int position = offset + FIXED_BODY_OFFSET;
+		if(buffer.length < position + 12 + textLength(message.getReferenceId()))
+			return -1;
+
+		putInt(buffer, offset + INSTRUMENT_ID_OFFSET, message.getInstrumentId());
+		putInt(buffer, offset + CLIENT_ID_OFFSET, message.getClientId());
+		putInt(buffer, position, message.getLockQuantity());
+		putInt(buffer, position + 4, message.getUnlockQuantity());
+		putShort(buffer, position + 8, message.getRequestType().getCode());
+		putShort(buffer, position + 10, message.getRequestSubType().getCode());
+		position = putText(buffer, position + 12, message.getReferenceId());
+		return putHeader(buffer, offset, RequestTypeEnum.POSITION_CHECK_REQUEST, position, sequence);
+	}
+
+	public static int encode(ExecutionMessage message, long sequence, byte[] buffer, int offset)
+	{
+		int position = offset + FIXED_BODY_OFFSET;
+		if(buffer.length < position + 22 + textLength(message.getExecutionId()) + textLength(message.getOrderId()) + textLength(message.getCurrency()))
+			return -1;
+
+		putInt(buffer, offset + INSTRUMENT_ID_OFFSET, message.getInstrumentId());
+		putInt(buffer, offset + CLIENT_ID_OFFSET, message.getClientId());
+		putLong(buffer, position, Double.doubleToRawLongBits(message.getExecutedPrice()));
+		putInt(buffer, position + 8, message.getExecutedQuantity());
+		putInt(buffer, position + 12, message.getCumulativeQuantity());
+		putInt(buffer, position + 16, message.getOrderQuantity());
+		putShort(buffer, position + 20, message.getSide());
+		position = putText(buffer, position + 22, message.getExecutionId());
+		position = putText(buffer, position, message.getOrderId());
+		position = putText(buffer, position, message.getCurrency());
+		return putHeader(buffer, offset, RequestTypeEnum.EXECUTION_MESSAGE, position, sequence);
+	}
+
+	// The response type is CASH_CHECK_RESPONSE or POSITION_CHECK_RESPONSE, the request types stay in the body as in the JSON response.
+	public static int encode(InventoryCheckResponse response, RequestTypeEnum responseType, long sequence, byte[] buffer, int offset)
+	{
+		return encodeResponse(buffer, offset, responseType, sequence, response.getLockedQuantity(), response.getUnlockedQuantity(),
+				response.getResult() == null ? null : OutcomeType.valueOf(response.getResult()), response.getReferenceId(), response.getClientId(),
+				response.getInstrumentId(), response.getLockedCash(), response.getUnlockedCash(), lookup(response.getRequestType()), lookup(response.getRequestSubType()));
+	}
+
+	// Used by the inventory handler to write a response straight into an outbound slot. A null result or type is written as -1.
+	public static int encodeResponse(byte[] buffer, int offset, RequestTypeEnum responseType, long sequence, int lockedQuantity, int unlockedQuantity,
+			OutcomeType result, CharSequence referenceId, int clientId, int instrumentId, double lockedCash, double unlockedCash,
+			RequestTypeEnum requestType, RequestTypeEnum requestSubType)
+	{
+		int position = offset + FIXED_BODY_OFFSET;
+		if(buffer.length < position + 30 + textLength(referenceId))
+			return -1;
+
+		putInt(buffer, offset + INSTRUMENT_ID_OFFSET, instrumentId);
+		putInt(buffer, offset + CLIENT_ID_OFFSET, clientId);
+		putInt(buffer, position, lockedQuantity);
+		putInt(buffer, position + 4, unlockedQuantity);
+		putLong(buffer, position + 8, Double.doubleToRawLongBits(lockedCash));
+		putLong(buffer, position + 16, Double.doubleToRawLongBits(unlockedCash));
+		putShort(buffer, position + 24, result == null ? -1 : result.getCode());
+		putShort(buffer, position + 26, requestType == null ? -1 : requestType.getCode());
+		putShort(buffer, position + 28, requestSubType == null ? -1 : requestSubType.getCode());
+		position = putText(buffer, position + 30, referenceId);
+		return putHeader(buffer, offset, responseType, position, sequence);
+	}
+
+	// Each decode method resets the message first and returns false, after logging, when the buffer does not hold a valid message of its type.
+	public static boolean decode(byte[] buffer, int offset, int length, CheckCashRequestMessage message)
+	{
+		message.reset();
+		if(!isValid(buffer, offset, length, RequestTypeEnum.CASH_CHECK_REQUEST, 10))
+			return false;
+
+		int position = offset + FIXED_BODY_OFFSET;
+		message.setInstrumentId(instrumentIdOf(buffer, offset));
+		message.setClientId(clientIdOf(buffer, offset));
+		message.setLockCash(getInt(buffer, position));
+		message.setUnlockCash(getInt(buffer, position + 4));
+		message.setRequestType(RequestTypeEnum.fromCode(getShort(buffer, position + 8)));
+		return getText(buffer, position + 10, offset + length, message.getReferenceId()) >= 0 || invalid(buffer, offset, length);
+	}
+
+	public static boolean decode(byte[] buffer, int offset, int length, CheckPositionRequestMessage message)
+	{
+		message.reset();
+		if(!isValid(buffer, offset, length, RequestTypeEnum.POSITION_CHECK_REQUEST, 12))
+			return false;
+
+		int position = offset + FIXED_BODY_OFFSET;
+		message.setInstrumentId(instrumentIdOf(buffer, offset));
+		message.setClientId(clientIdOf(buffer, offset));
+		message.setLockQuantity(getInt(buffer, position));
+		message.setUnlockQuantity(getInt(buffer, position + 4));
+		message.setRequestType(RequestTypeEnum.fromCode(getShort(buffer, position + 8)));
+		message.setRequestSubType(RequestTypeEnum.fromCode(getShort(buffer, position + 10)));
+		return getText(buffer, position + 12, offset + length, message.getReferenceId()) >= 0 || invalid(buffer, offset, length);
+	}
+
+	public static boolean decode(byte[] buffer, int offset, int length, ExecutionMessage message)
+	{
+		message.reset();
+		if(!isValid(buffer, offset, length, RequestTypeEnum.EXECUTION_MESSAGE, 22))
+			return false;
+
+		int position = offset + FIXED_BODY_OFFSET;
+		int limit = offset + length;
+		message.setInstrumentId(instrumentIdOf(buffer, offset));
+		message.setClientId(clientIdOf(buffer, offset));
+		message.setExecutedPrice(Double.longBitsToDouble(getLong(buffer, position)));
+		message.setExecutedQuantity(getInt(buffer, position + 8));
+		message.setCumulativeQuantity(getInt(buffer, position + 12));
+		message.setOrderQuantity(getInt(buffer, position + 16));
+		message.setSide((char) getShort(buffer, position + 20));
+		position = getText(buffer, position + 22, limit, message.getExecutionId());
+		position = position < 0 ? position : getText(buffer, position, limit, message.getOrderId());
+		position = position < 0 ? position : getText(buffer, position, limit, message.getCurrency());
+		return position >= 0 || invalid(buffer, offset, length);
+	}
+
+	// Responses are decoded by consumers and tools rather than on the hot path so this one allocates its strings.
+	public static InventoryCheckResponse decodeResponse(byte[] buffer, int offset, int length)
+	{
+		int position = offset + FIXED_BODY_OFFSET;
+		RequestTypeEnum type = isValid(buffer, offset, length) ? typeOf(buffer, offset) : RequestTypeEnum.NONE;
+		if((type != RequestTypeEnum.CASH_CHECK_RESPONSE && type != RequestTypeEnum.POSITION_CHECK_RESPONSE) || length < FIXED_BODY_OFFSET + 32)
+		{
+			invalid(buffer, offset, length);
+			return null;
+		}
+
+		MutableString referenceId = new MutableString(Math.max(0, getShort(buffer, position + 30)));
+		if(getText(buffer, position + 30, offset + length, referenceId) < 0)
+		{
+			invalid(buffer, offset, length);
+			return null;
+		}
+
+		OutcomeType result = OutcomeType.fromCode(getShort(buffer, position + 24));
+		return new InventoryCheckResponse(getInt(buffer, position), getInt(buffer, position + 4), result == null ? null : result.toString(),
+				referenceId.toStringOrNull(), clientIdOf(buffer, offset), instrumentIdOf(buffer, offset), Double.longBitsToDouble(getLong(buffer, position + 8)),
+				Double.longBitsToDouble(getLong(buffer, position + 16)), nameOf(getShort(buffer, position + 26)), nameOf(getShort(buffer, position + 28)));
+	}
+
+	private static boolean isValid(byte[] buffer, int offset, int length, RequestTypeEnum type, int fixedBlockLength)
+	{
+		if(isValid(buffer, offset, length) && typeOf(buffer, offset) == type && length >= FIXED_BODY_OFFSET + fixedBlockLength)
+			return true;
+
+		return invalid(buffer, offset, length);
+	}
+
+	private static boolean invalid(byte[] buffer, int offset, int length)
+	{
+		StringBuilder hex = new StringBuilder();
+		for(int index = offset; index < offset + Math.min(length, 64); index++)
+			hex.append(String.format("%02x", buffer[index]));
+		logger.error("Failed to decode binary message of " + length + " bytes starting with: " + hex);
+		return false;
+	}
+
+	private static String nameOf(int requestTypeCode)
+	{
+		return requestTypeCode < 0 ? null : RequestTypeEnum.fromCode(requestTypeCode).name();
+	}
+
+	private static RequestTypeEnum lookup(String name)
+	{
+		return name == null ? null : RequestTypeEnum.lookup(name, 0, name.length());
+	}
+
+	private static int putHeader(byte[] buffer, int offset, RequestTypeEnum type, int end, long sequence)
+	{
+		putShort(buffer, offset, VERSION);
+		putShort(buffer, offset + 2, type.getCode());
+		putInt(buffer, offset + 4, end - offset - HEADER_SIZE);
+		putLong(buffer, offset + 8, sequence);
+		return end - offset;
+	}
+
+	private static int textLength(CharSequence text)
+	{
+		return 2 + (text == null ? 0 : Utf8.encodedLength(text));
+	}
+
+	// The length is written once the text is, as it counts bytes rather than characters.
+	private static int putText(byte[] buffer, int position, CharSequence text)
+	{
+		if(text == null || (text instanceof MutableString && ((MutableString) text).isNull()))
+		{
+			putShort(buffer, position, NULL_LENGTH);
+			return position + 2;
+		}
+
+		int start = position + 2;
+		position = start;
+		for(int index = 0; index < text.length(); )
+		{
+			int codePoint = Character.codePointAt(text, index);
+			position = Utf8.encode(buffer, position, codePoint);
+			index += Character.charCount(codePoint);
+		}
+		putShort(buffer, start - 2, position - start);
+		return position;
+	}
+
+	// Returns the position after the text, or -1 when it runs past the limit, is not UTF-8 or does not fit the target.
+	private static int getText(byte[] buffer, int position, int limit, MutableString target)
+	{
+		if(position + 2 > limit)
+			return -1;
+
+		int length = getShort(buffer, position);
+		position += 2;
+		if(length == NULL_LENGTH)
+		{
+			target.setNull();
+			return position;
+		}
+
+		if(length < 0 || position + length > limit)
+			return -1;
+
+		target.clear();
+		int end = position + length;
+		while(position < end)
+		{
+			int sequenceLength = Utf8.sequenceLength(buffer[position]);
+			int codePoint = sequenceLength < 0 || position + sequenceLength > end ? -1 : Utf8.decode(buffer, position, sequenceLength);
+			if(codePoint < 0 || !target.append(codePoint))
+				return -1;
+			position += sequenceLength;
+		}
+		return end;
+	}
+
+	private static void putShort(byte[] buffer, int position, int value)
+	{
+		buffer[position] = (byte) value;
+		buffer[position + 1] = (byte) (value >> 8);
+	}
+
+	private static void putInt(byte[] buffer, int position, int value)
+	{
+		buffer[position] = (byte) value;
+		buffer[position + 1] = (byte) (value >> 8);
+		buffer[position + 2] = (byte) (value >> 16);
+		buffer[position + 3] = (byte) (value >> 24);
+	}
+
+	private static void putLong(byte[] buffer, int position, long value)
+	{
+		putInt(buffer, position, (int) value);
+		putInt(buffer, position + 4, (int) (value >> 32));
+	}
+
+	private static short getShort(byte[] buffer, int position)
+	{
+		return (short) ((buffer[position] & 0xFF) | (buffer[position + 1] << 8));
+	}
+
+	private static int getInt(byte[] buffer, int position)
+	{
+		return (buffer[position] & 0xFF) | ((buffer[position + 1] & 0xFF) << 8) | ((buffer[position + 2] & 0xFF) << 16) | (buffer[position + 3] << 24);
+	}
+
+	private static long getLong(byte[] buffer, int position)
+	{
+		return (getInt(buffer, position) & 0xFFFFFFFFL) | ((long) getInt(buffer, position + 4) << 32);
+	}
+}
@@ -5,6 +5,9 @@ import java.util.Objects;
 
 public class CheckCashRequestMessage
 {
+	// Text is never longer than the payload it is decoded from, so any id the protocol can carry fits.
+	public static final int REFERENCE_ID_CAPACITY = DisruptorEvent.PAYLOAD_CAPACITY;
+
 	@JsonProperty("lockCash")
 	private int lockCash;
 	@JsonProperty("unlockCash")
@@ -14,9 +17,9 @@ public class CheckCashRequestMessage
 	@JsonProperty("instrumentId")
 	private int instrumentId;
 	@JsonProperty("requestType")
-	private String requestType;
+	private RequestTypeEnum requestType = RequestTypeEnum.NONE;
 	@JsonProperty("referenceId")
-	private String referenceId;
+	private final MutableString referenceId = new MutableString(REFERENCE_ID_CAPACITY);
 
 	public int getUnlockCash()
 	{
@@ -48,14 +51,15 @@ public class CheckCashRequestMessage
 		this.instrumentId = instrumentId;
 	}
 
-	public String getReferenceId()
+	// Decoded into in place, copy it if it has to outlive the current event.
+	public MutableString getReferenceId()
 	{
 		return referenceId;
 	}
 
-	public void setReferenceId(String referenceId)
+	public void setReferenceId(CharSequence referenceId)
 	{
-		this.referenceId = referenceId;
+		this.referenceId.set(referenceId);
 	}
 
 	public int getLockCash()
@@ -68,12 +72,12 @@ public class CheckCashRequestMessage
 		this.lockCash = lockCash;
 	}
 
-	public String getRequestType()
+	public RequestTypeEnum getRequestType()
 	{
 		return requestType;
 	}
 
-	public void setRequestType(String requestType)
+	public void setRequestType(RequestTypeEnum requestType)
 	{
 		this.requestType = requestType;
 	}
@@ -82,14 +86,25 @@ public class CheckCashRequestMessage
 	{
 	}
 
-	public CheckCashRequestMessage(int lockCash, int unlockCash, int clientId, int instrumentId, String referenceId, String requestType)
+	public CheckCashRequestMessage(int lockCash, int unlockCash, int clientId, int instrumentId, CharSequence referenceId, RequestTypeEnum requestType)
 	{
 		this.lockCash = lockCash;
 		this.unlockCash = unlockCash;
 		this.clientId = clientId;
 		this.instrumentId = instrumentId;
 		this.requestType = requestType;
-		this.referenceId = referenceId;
+		this.referenceId.set(referenceId);
+	}
+
+	// Returns the message to the state of an empty JSON object before the next payload is decoded into it.
+	public void reset()
+	{
+		lockCash = 0;
+		unlockCash = 0;
+		clientId = 0;
+		instrumentId = 0;
+		requestType = RequestTypeEnum.NONE;
+		referenceId.setNull();
 	}
 
 	@Override
@@ -105,7 +120,7 @@ public class CheckCashRequestMessage
 		if (o == null || getClass() != o.getClass()) return false;
 		CheckCashRequestMessage that = (CheckCashRequestMessage) o;
 		return getLockCash() == that.getLockCash() && getUnlockCash() == that.getUnlockCash() && getClientId() == that.getClientId()
-				&& getInstrumentId() == that.getInstrumentId() && getRequestType().equals(that.getRequestType()) && getReferenceId().equals(that.getReferenceId());
+				&& getInstrumentId() == that.getInstrumentId() && getRequestType() == that.getRequestType() && getReferenceId().equals(that.getReferenceId());
 	}
 
 	@Override
@@ -113,4 +128,4 @@ public class CheckCashRequestMessage
 	{
 		return Objects.hash(getLockCash(), getUnlockCash(), getClientId(), getInstrumentId(), getRequestType(), getReferenceId());
 	}
-}
\ No newline at end of file
+}
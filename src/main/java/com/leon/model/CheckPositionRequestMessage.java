@@ -5,6 +5,9 @@ import java.util.Objects;
 
 public class CheckPositionRequestMessage
 {
+	// Text is never longer than the payload it is decoded from, so any id the protocol can carry fits.
+	public static final int REFERENCE_ID_CAPACITY = DisruptorEvent.PAYLOAD_CAPACITY;
+
 	@JsonProperty("lockQuantity")
 	private int lockQuantity;
 	@JsonProperty("unlockQuantity")
@@ -14,21 +17,19 @@ public class CheckPositionRequestMessage
 	@JsonProperty("instrumentId")
 	private int instrumentId;
 	@JsonProperty("referenceId")
-	private String referenceId;
+	private final MutableString referenceId = new MutableString(REFERENCE_ID_CAPACITY);
 	@JsonProperty("requestType")
-	private String requestType;
+	private RequestTypeEnum requestType = RequestTypeEnum.NONE;
 	@JsonProperty("requestSubType")
-	private String requestSubType;
-
-
+	private RequestTypeEnum requestSubType = RequestTypeEnum.NONE;
 
-	public CheckPositionRequestMessage(int lockQuantity, int unlockQuantity, int clientId, int instrumentId, String referenceId, String requestType, String requestSubType)
+	public CheckPositionRequestMessage(int lockQuantity, int unlockQuantity, int clientId, int instrumentId, CharSequence referenceId, RequestTypeEnum requestType, RequestTypeEnum requestSubType)
 	{
 		this.lockQuantity = lockQuantity;
 		this.unlockQuantity = unlockQuantity;
 		this.clientId = clientId;
 		this.instrumentId = instrumentId;
-		this.referenceId = referenceId;
+		this.referenceId.set(referenceId);
 		this.requestType = requestType;
 		this.requestSubType = requestSubType;
 	}
@@ -37,6 +38,18 @@ public class CheckPositionRequestMessage
 	{
 	}
 
+	// Returns the message to the state of an empty JSON object before the next payload is decoded into it.
+	public void reset()
+	{
+		lockQuantity = 0;
+		unlockQuantity = 0;
+		clientId = 0;
+		instrumentId = 0;
+		referenceId.setNull();
+		requestType = RequestTypeEnum.NONE;
+		requestSubType = RequestTypeEnum.NONE;
+	}
+
 	public int getLockQuantity()
 	{
 		return lockQuantity;
@@ -77,34 +90,35 @@ public class CheckPositionRequestMessage
 		this.instrumentId = instrumentId;
 	}
 
-	public String getRequestType()
+	public RequestTypeEnum getRequestType()
 	{
 		return requestType;
 	}
 
-	public void setRequestType(String requestType)
+	public void setRequestType(RequestTypeEnum requestType)
 	{
 		this.requestType = requestType;
 	}
 
-	public String getRequestSubType()
+	public RequestTypeEnum getRequestSubType()
 	{
 		return requestSubType;
 	}
 
-	public void setRequestSubType(String requestSubType)
+	public void setRequestSubType(RequestTypeEnum requestSubType)
 	{
 		this.requestSubType = requestSubType;
 	}
 
-	public String getReferenceId()
+	// Decoded into in place, copy it if it has to outlive the current event.
+	public MutableString getReferenceId()
 	{
 		return referenceId;
 	}
 
-	public void setReferenceId(String referenceId)
+	public void setReferenceId(CharSequence referenceId)
 	{
-		this.referenceId = referenceId;
+		this.referenceId.set(referenceId);
 	}
 
 	@Override
@@ -114,7 +128,7 @@ public class CheckPositionRequestMessage
 		if (o == null || getClass() != o.getClass()) return false;
 		CheckPositionRequestMessage that = (CheckPositionRequestMessage) o;
 		return getLockQuantity() == that.getLockQuantity() && getUnlockQuantity() == that.getUnlockQuantity() && getClientId() == that.getClientId() && getReferenceId().equals(that.getReferenceId())
-				&& getInstrumentId() == that.getInstrumentId() && getRequestType().equals(that.getRequestType()) && getRequestSubType().equals(that.getRequestSubType());
+				&& getInstrumentId() == that.getInstrumentId() && getRequestType() == that.getRequestType() && getRequestSubType() == that.getRequestSubType();
 	}
 
 	@Override
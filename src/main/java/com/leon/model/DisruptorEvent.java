@@ -1,22 +1,168 @@
 package com.leon.model;
 
+import java.nio.charset.StandardCharsets;
+
+// Each ring buffer slot is preallocated once by the DisruptorEventFactory and then reused for the lifetime of the disruptor.
+// Producers fill the slot in place through an EventTranslator so that nothing is allocated per request.
 public class DisruptorEvent
 {
-    private DisruptorPayload disruptorPayload;
+    public static final int PAYLOAD_CAPACITY = 1024;
+
+    private RequestTypeEnum payloadType = RequestTypeEnum.NONE;
+    private PayloadFormat payloadFormat = PayloadFormat.JSON;
+    private final byte[] payload = new byte[PAYLOAD_CAPACITY];
+    private int payloadLength;
+    private long uid;
+    private long createdTime;
+    private long publishedTime;
+
+    public RequestTypeEnum getPayloadType()
+    {
+        return payloadType;
+    }
+
+    public void setPayloadType(RequestTypeEnum payloadType)
+    {
+        this.payloadType = payloadType;
+    }
+
+    public PayloadFormat getPayloadFormat()
+    {
+        return payloadFormat;
+    }
+
+    public void setPayloadFormat(PayloadFormat payloadFormat)
+    {
+        this.payloadFormat = payloadFormat;
+    }
+
+    public byte[] getPayload()
+    {
+        return payload;
+    }
+
+    public int getPayloadLength()
+    {
+        return payloadLength;
+    }
+
+    public void setPayloadLength(int payloadLength)
+    {
+        this.payloadLength = payloadLength;
+    }
+
+    public long getUid()
+    {
+        return uid;
+    }
+
+    public void setUid(long uid)
+    {
+        this.uid = uid;
+    }
+
+    public long getCreatedTime()
+    {
+        return createdTime;
+    }
+
+    public void setCreatedTime(long createdTime)
+    {
+        this.createdTime = createdTime;
+    }
+
+    public long getPublishedTime()
+    {
+        return publishedTime;
+    }
+
+    public void setPublishedTime(long publishedTime)
+    {
+        this.publishedTime = publishedTime;
+    }
+
+    public boolean setPayload(byte[] source, int offset, int length)
+    {
+        if(length > PAYLOAD_CAPACITY)
+        {
+            payloadLength = 0;
+            return false;
+        }
+
+        System.arraycopy(source, offset, payload, 0, length);
+        payloadLength = length;
+        return true;
+    }
+
+    // Encodes the characters as UTF-8 straight into the preallocated payload so that no intermediate byte array is created.
+    public boolean setPayload(CharSequence source, int start, int end)
+    {
+        int position = 0;
+        for(int index = start; index < end; index++)
+        {
+            char c = source.charAt(index);
+            if(c < 0x80)
+            {
+                if(position + 1 > PAYLOAD_CAPACITY)
+                    return overflow();
+                payload[position++] = (byte) c;
+            }
+            else if(c < 0x800)
+            {
+                if(position + 2 > PAYLOAD_CAPACITY)
+                    return overflow();
+                payload[position++] = (byte) (0xC0 | (c >> 6));
+                payload[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+            else if(Character.isHighSurrogate(c) && index + 1 < end && Character.isLowSurrogate(source.charAt(index + 1)))
+            {
+                if(position + 4 > PAYLOAD_CAPACITY)
+                    return overflow();
+                int codePoint = Character.toCodePoint(c, source.charAt(++index));
+                payload[position++] = (byte) (0xF0 | (codePoint >> 18));
+                payload[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                payload[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                payload[position++] = (byte) (0x80 | (codePoint & 0x3F));
+            }
+            else
+            {
+                if(position + 3 > PAYLOAD_CAPACITY)
+                    return overflow();
+                payload[position++] = (byte) (0xE0 | (c >> 12));
+                payload[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                payload[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        payloadLength = position;
+        return true;
+    }
+
+    private boolean overflow()
+    {
+        payloadLength = 0;
+        return false;
+    }
 
-    public DisruptorPayload getPayload()
+    public void copyFrom(DisruptorEvent source)
     {
-        return disruptorPayload;
+        payloadType = source.payloadType;
+        payloadFormat = source.payloadFormat;
+        uid = source.uid;
+        createdTime = source.createdTime;
+        publishedTime = source.publishedTime;
+        payloadLength = source.payloadLength;
+        System.arraycopy(source.payload, 0, payload, 0, source.payloadLength);
     }
 
-    public void setPayload(DisruptorPayload disruptorPayload)
+    // Allocates a new string so it must only be used off the hot path, for example when writing text messages or logging.
+    public String getPayloadAsString()
     {
-        this.disruptorPayload = disruptorPayload;
+        return new String(payload, 0, payloadLength, StandardCharsets.UTF_8);
     }
 
     @Override
     public String toString()
     {
-        return "DisruptorEvent{payload=" + disruptorPayload + '}';
+        return "DisruptorEvent{" + "payloadType=" + payloadType + ", payloadFormat=" + payloadFormat + ", payload='" + (payloadFormat == PayloadFormat.JSON ? getPayloadAsString() : payloadLength + " bytes") + '\'' + ", uid=" + uid + ", createdTime=" + createdTime + ", publishedTime=" + publishedTime + '}';
     }
 }
@@ -0,0 +1,33 @@
+package com.leon.model;
+
+// What an event log record describes. The generic columns of a record mean, depending on its code:
+// for position checks quantity is the requested quantity and applied quantity what was actually locked or unlocked,
+// for cash checks amount is the requested cash and applied amount what was actually locked or unlocked,
+// for executions quantity and amount are the executed quantity and price, applied quantity the quantity added on a buy and applied
+// amount the USD cash added on a sell, and for RESPONSE_PUBLISHED applied amount is the nanoseconds between request and response.
+// The request type is the sub-type of a position check, the type of a cash check and the response type of RESPONSE_PUBLISHED.
+// Reserved quantity and cash are those of the position once the event was applied.
+public enum EventLogCode
+{
+    NONE,
+    CASH_LOCKED,
+    CASH_PARTIALLY_LOCKED,
+    CASH_LOCK_REJECTED,
+    CASH_UNLOCKED,
+    CASH_UNLOCK_REJECTED,
+    POSITION_LOCKED,
+    POSITION_PARTIALLY_LOCKED,
+    POSITION_NAKED_SHORT_LOCKED,
+    POSITION_LOCK_REJECTED,
+    POSITION_UNLOCKED,
+    POSITION_UNLOCK_REJECTED,
+    EXECUTION_APPLIED,
+    RESPONSE_PUBLISHED;
+
+    private static final EventLogCode[] VALUES = values();
+
+    public static EventLogCode fromOrdinal(int ordinal)
+    {
+        return ordinal >= 0 && ordinal < VALUES.length ? VALUES[ordinal] : NONE;
+    }
+}
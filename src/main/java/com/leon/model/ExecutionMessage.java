@@ -6,6 +6,10 @@ import java.util.Objects;
 
 public class ExecutionMessage
 {
+	// Text is never longer than the payload it is decoded from, so any id or code the protocol can carry fits.
+	public static final int ID_CAPACITY = DisruptorEvent.PAYLOAD_CAPACITY;
+	public static final int CURRENCY_CAPACITY = DisruptorEvent.PAYLOAD_CAPACITY;
+
 	@JsonProperty("executedPrice")
 	private double executedPrice;
 	@JsonProperty("executedQuantity")
@@ -17,33 +21,48 @@ public class ExecutionMessage
 	@JsonProperty("side")
 	private char side;
 	@JsonProperty("executionId")
-	private String executionId;
+	private final MutableString executionId = new MutableString(ID_CAPACITY);
 	@JsonProperty("orderId")
-	private String orderId;
+	private final MutableString orderId = new MutableString(ID_CAPACITY);
 	@JsonProperty("instrumentId")
 	private int instrumentId;
 	@JsonProperty("clientId")
 	private int clientId;
 	@JsonProperty("currency")
-	private String currency;
+	private final MutableString currency = new MutableString(CURRENCY_CAPACITY);
 
 	public ExecutionMessage()
 	{
 	}
 
 	public ExecutionMessage(double executedPrice, int executedQuantity, int cumulativeQuantity, int orderQuantity, char side,
-							String executionId, String orderId, int instrumentId, int clientId, String currency)
+							CharSequence executionId, CharSequence orderId, int instrumentId, int clientId, CharSequence currency)
 	{
 		this.executedPrice = executedPrice;
 		this.executedQuantity = executedQuantity;
 		this.cumulativeQuantity = cumulativeQuantity;
 		this.orderQuantity = orderQuantity;
 		this.side = side;
-		this.executionId = executionId;
-		this.orderId = orderId;
+		this.executionId.set(executionId);
+		this.orderId.set(orderId);
 		this.instrumentId = instrumentId;
 		this.clientId = clientId;
-		this.currency = currency;
+		this.currency.set(currency);
+	}
+
+	// Returns the message to the state of an empty JSON object before the next payload is decoded into it.
+	public void reset()
+	{
+		executedPrice = 0.0;
+		executedQuantity = 0;
+		cumulativeQuantity = 0;
+		orderQuantity = 0;
+		side = 0;
+		executionId.setNull();
+		orderId.setNull();
+		instrumentId = 0;
+		clientId = 0;
+		currency.setNull();
 	}
 
 	public int getExecutedQuantity()
@@ -86,24 +105,24 @@ public class ExecutionMessage
 		this.side = side;
 	}
 
-	public String getExecutionId()
+	public MutableString getExecutionId()
 	{
 		return executionId;
 	}
 
-	public void setExecutionId(String executionId)
+	public void setExecutionId(CharSequence executionId)
 	{
-		this.executionId = executionId;
+		this.executionId.set(executionId);
 	}
 
-	public String getOrderId()
+	public MutableString getOrderId()
 	{
 		return orderId;
 	}
 
-	public void setOrderId(String orderId)
+	public void setOrderId(CharSequence orderId)
 	{
-		this.orderId = orderId;
+		this.orderId.set(orderId);
 	}
 
 	public int getInstrumentId()
@@ -136,14 +155,14 @@ public class ExecutionMessage
 		this.executedPrice = executedPrice;
 	}
 
-	public String getCurrency()
+	public MutableString getCurrency()
 	{
 		return currency;
 	}
 
-	public void setCurrency(String currency)
+	public void setCurrency(CharSequence currency)
 	{
-		this.currency = currency;
+		this.currency.set(currency);
 	}
 
 	@Override
@@ -152,8 +152,8 @@ public class InventoryCheckResponse
 		return getLockedQuantity() == that.getLockedQuantity() && getUnlockedQuantity() == that.getUnlockedQuantity()
 				&& getClientId() == that.getClientId() && getInstrumentId() == that.getInstrumentId()
 				&& Double.compare(that.getLockedCash(), getLockedCash()) == 0 && Double.compare(that.getUnlockedCash(), getUnlockedCash()) == 0
-				&& getResult().equals(that.getResult()) && getReferenceId().equals(that.getReferenceId())
-				&& getRequestType().equals(that.getRequestType()) && getRequestSubType().equals(that.getRequestSubType());
+				&& Objects.equals(getResult(), that.getResult()) && Objects.equals(getReferenceId(), that.getReferenceId())
+				&& Objects.equals(getRequestType(), that.getRequestType()) && Objects.equals(getRequestSubType(), that.getRequestSubType());
 	}
 
 	@Override
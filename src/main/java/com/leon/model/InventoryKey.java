@@ -0,0 +1,33 @@
+package com.leon.model;
+
+// The inventory of a client in an instrument is keyed by both ids packed into one long, instrument in the high half and client in the low
+// half, so every id in the int range gets a distinct key and lookups need neither formatting nor a String per request.
+public class InventoryKey
+{
+	private InventoryKey() {}
+
+	public static long of(int instrumentId, int clientId)
+	{
+		return ((long) instrumentId << 32) | (clientId & 0xFFFFFFFFL);
+	}
+
+	public static long of(Inventory inventory)
+	{
+		return of(inventory.getInstrumentId(), inventory.getClientId());
+	}
+
+	public static int instrumentIdOf(long key)
+	{
+		return (int) (key >>> 32);
+	}
+
+	public static int clientIdOf(long key)
+	{
+		return (int) key;
+	}
+
+	public static String toString(long key)
+	{
+		return "InventoryKey{instrumentId=" + instrumentIdOf(key) + ", clientId=" + clientIdOf(key) + '}';
+	}
+}
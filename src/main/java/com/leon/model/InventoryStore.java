@@ -0,0 +1,57 @@
+package com.leon.model;
+
+// The authoritative inventory of one shard, keyed by InventoryKey. A position is addressed by its slot, which stays valid until the next
+// put or remove, so a check looks the key up once and then reads and updates the fields of that slot in place.
+// Implementations are single-writer: only the thread that owns the shard may call any of these methods.
+public interface InventoryStore
+{
+	// Returns the slot of the key, or -1 when the store does not hold it.
+	int slotOf(long key);
+
+	// Inserts the position or overwrites all of its fields, returns its slot.
+	int put(Inventory inventory);
+
+	boolean remove(long key);
+
+	void clear();
+
+	int size();
+
+	// Returns the next occupied slot after the given one, or -1 when there is none. Start from -1 to visit every position.
+	int nextSlot(int slot);
+
+	// Marks the position as changed since it was last persisted, returns false when it already was. The mark moves with the position.
+	boolean markDirty(int slot);
+
+	void clearDirty(int slot);
+
+	long keyAt(int slot);
+
+	// Copies the fields of the slot into the given instance and returns it.
+	Inventory read(int slot, Inventory using);
+
+	int getStartOfDayQuantity(int slot);
+
+	int getExecutedQuantity(int slot);
+
+	void setExecutedQuantity(int slot, int executedQuantity);
+
+	int getReservedQuantity(int slot);
+
+	void setReservedQuantity(int slot, int reservedQuantity);
+
+	int getBorrowedQuantity(int slot);
+
+	double getStartOfDayCash(int slot);
+
+	double getExecutedCash(int slot);
+
+	void setExecutedCash(int slot, double executedCash);
+
+	double getReservedCash(int slot);
+
+	void setReservedCash(int slot, double reservedCash);
+
+	// Same text as Inventory.toString for the position in the slot.
+	String toString(int slot);
+}
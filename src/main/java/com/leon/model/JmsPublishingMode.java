@@ -0,0 +1,9 @@
+package com.leon.model;
+
+public enum JmsPublishingMode
+{
+    // Responses are sent persistent in a transacted session and committed together, so the broker is waited on once per batch.
+    TRANSACTED,
+    // Responses are sent non-persistent, which the ActiveMQ client pipelines without waiting for the broker to acknowledge each one.
+    ASYNC
+}
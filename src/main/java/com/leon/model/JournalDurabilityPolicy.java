@@ -0,0 +1,11 @@
+package com.leon.model;
+
+public enum JournalDurabilityPolicy
+{
+    // Records are written to the memory-mapped segment and left to the OS, they survive a process crash but not a machine crash.
+    NONE,
+    // The segment is forced to disk at the end of every disruptor batch.
+    END_OF_BATCH,
+    // The segment is forced to disk by a background thread at a fixed interval.
+    PERIODIC
+}
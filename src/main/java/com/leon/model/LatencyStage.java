@@ -0,0 +1,21 @@
+package com.leon.model;
+
+// The stages that a request and its response go through, each timed with System.nanoTime on the thread that performs it.
+public enum LatencyStage
+{
+    // From a message being handed to the inbound ring to its slot being published, including any wait for a free slot.
+    INGRESS,
+    // From the inbound slot being published to the business handler picking it up.
+    INBOUND_QUEUEING,
+    DECODE,
+    // Checking and updating the inventory and encoding the response.
+    BUSINESS,
+    // Applying one write-behind change to the Chronicle map, recorded under the inventory maintenance type of the change.
+    CHRONICLE_ACCESS,
+    // From the response being published to the outbound ring to the publishing handler picking it up.
+    OUTBOUND_QUEUEING,
+    // Writing the response to its destination, JMS or a file.
+    SEND,
+    // From the request being published to the inbound ring to its response having been sent.
+    END_TO_END
+}
@@ -1,51 +1,561 @@
 package com.leon.model;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import java.nio.charset.StandardCharsets;
 
+// Streaming decoder for the flat JSON of check requests and executions. Fields are matched against the known names as raw bytes and
+// decoded straight into a message owned by the caller, so a well formed payload is decoded without allocating anything.
+// Unknown fields, including nested objects and arrays, are skipped. Numbers may be quoted, as Jackson accepted them.
+// An instance keeps the parse position between calls and must only be used by one thread, each handler owns its own.
 public class MessageFactory
 {
 	private static final Logger logger = LoggerFactory.getLogger(MessageFactory.class);
-	final static ObjectMapper objectMapper = new ObjectMapper();
+	private static final byte[] LOCK_CASH = ascii("lockCash");
+	private static final byte[] UNLOCK_CASH = ascii("unlockCash");
+	private static final byte[] LOCK_QUANTITY = ascii("lockQuantity");
+	private static final byte[] UNLOCK_QUANTITY = ascii("unlockQuantity");
+	private static final byte[] CLIENT_ID = ascii("clientId");
+	private static final byte[] INSTRUMENT_ID = ascii("instrumentId");
+	private static final byte[] REFERENCE_ID = ascii("referenceId");
+	private static final byte[] REQUEST_TYPE = ascii("requestType");
+	private static final byte[] REQUEST_SUB_TYPE = ascii("requestSubType");
+	private static final byte[] EXECUTED_PRICE = ascii("executedPrice");
+	private static final byte[] EXECUTED_QUANTITY = ascii("executedQuantity");
+	private static final byte[] CUMULATIVE_QUANTITY = ascii("cumulativeQuantity");
+	private static final byte[] ORDER_QUANTITY = ascii("orderQuantity");
+	private static final byte[] SIDE = ascii("side");
+	private static final byte[] EXECUTION_ID = ascii("executionId");
+	private static final byte[] ORDER_ID = ascii("orderId");
+	private static final byte[] CURRENCY = ascii("currency");
+	// Powers of ten that are exact as doubles, a mantissa below 2^53 scaled by one of them is correctly rounded.
+	// Digits are only accumulated while the mantissa stays below 2^53 after the next one.
+	private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15,
+			1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+	private static final long MAXIMUM_EXACT_MANTISSA = ((1L << 53) - 9) / 10;
 
-	public static ExecutionMessage createExecutionMessage(String payload)
+	private byte[] payload;
+	private int offset;
+	private int position;
+	private int limit;
+	private int keyStart;
+	private int keyEnd;
+	private boolean isValid;
+	private String error;
+
+	public boolean decodeExecutionMessage(byte[] payload, int offset, int length, ExecutionMessage message)
 	{
-		try
+		message.reset();
+		begin(payload, offset, length);
+		while(nextField())
 		{
-			return objectMapper.readValue(payload, ExecutionMessage.class);
+			if(isKey(EXECUTED_PRICE))
+				message.setExecutedPrice(parseDouble());
+			else if(isKey(EXECUTED_QUANTITY))
+				message.setExecutedQuantity(parseInt());
+			else if(isKey(CUMULATIVE_QUANTITY))
+				message.setCumulativeQuantity(parseInt());
+			else if(isKey(ORDER_QUANTITY))
+				message.setOrderQuantity(parseInt());
+			else if(isKey(SIDE))
+				message.setSide(parseChar());
+			else if(isKey(EXECUTION_ID))
+				parseString(message.getExecutionId());
+			else if(isKey(ORDER_ID))
+				parseString(message.getOrderId());
+			else if(isKey(INSTRUMENT_ID))
+				message.setInstrumentId(parseInt());
+			else if(isKey(CLIENT_ID))
+				message.setClientId(parseInt());
+			else if(isKey(CURRENCY))
+				parseString(message.getCurrency());
+			else
+				skipValue();
 		}
-		catch (JsonProcessingException e)
+		return end("execution message");
+	}
+
+	public boolean decodeCashCheckRequestMessage(byte[] payload, int offset, int length, CheckCashRequestMessage message)
+	{
+		message.reset();
+		begin(payload, offset, length);
+		while(nextField())
 		{
-			logger.error("Failed to process execution message JSON: " + payload + " due to exception: " + e.getLocalizedMessage());
+			if(isKey(LOCK_CASH))
+				message.setLockCash(parseInt());
+			else if(isKey(UNLOCK_CASH))
+				message.setUnlockCash(parseInt());
+			else if(isKey(CLIENT_ID))
+				message.setClientId(parseInt());
+			else if(isKey(INSTRUMENT_ID))
+				message.setInstrumentId(parseInt());
+			else if(isKey(REQUEST_TYPE))
+				message.setRequestType(parseRequestType());
+			else if(isKey(REFERENCE_ID))
+				parseString(message.getReferenceId());
+			else
+				skipValue();
 		}
-		return null;
+		return end("cash check request");
 	}
 
-	public static CheckCashRequestMessage createCashCheckRequestMessage(String payload)
+	public boolean decodePositionCheckRequestMessage(byte[] payload, int offset, int length, CheckPositionRequestMessage message)
 	{
-		try
+		message.reset();
+		begin(payload, offset, length);
+		while(nextField())
 		{
-			return objectMapper.readValue(payload, CheckCashRequestMessage.class);
+			if(isKey(LOCK_QUANTITY))
+				message.setLockQuantity(parseInt());
+			else if(isKey(UNLOCK_QUANTITY))
+				message.setUnlockQuantity(parseInt());
+			else if(isKey(CLIENT_ID))
+				message.setClientId(parseInt());
+			else if(isKey(INSTRUMENT_ID))
+				message.setInstrumentId(parseInt());
+			else if(isKey(REFERENCE_ID))
+				parseString(message.getReferenceId());
+			else if(isKey(REQUEST_TYPE))
+				message.setRequestType(parseRequestType());
+			else if(isKey(REQUEST_SUB_TYPE))
+				message.setRequestSubType(parseRequestType());
+			else
+				skipValue();
 		}
-		catch (JsonProcessingException e)
+		return end("stock check request");
+	}
+
+	private void begin(byte[] payload, int offset, int length)
+	{
+		this.payload = payload;
+		this.offset = offset;
+		this.position = offset;
+		this.limit = offset + length;
+		this.isValid = true;
+		this.error = null;
+		keyEnd = -1;
+		skipWhitespace();
+		expect('{');
+	}
+
+	private boolean end(String messageName)
+	{
+		if(isValid)
 		{
-			logger.error("Failed to process cash check request JSON: " + payload + " due to exception: " + e.getLocalizedMessage());
+			skipWhitespace();
+			if(position != limit)
+				fail("unexpected content after the closing brace");
 		}
-		return null;
+
+		if(!isValid)
+			logger.error("Failed to process " + messageName + " JSON: " + new String(payload, offset, limit - offset, StandardCharsets.UTF_8) + " due to: " + error + " at position: " + (position - offset));
+
+		payload = null;
+		return isValid;
 	}
 
-	public static CheckPositionRequestMessage createPositionCheckRequestMessage(String payload)
+	// Positions the parser at the value of the next field, returns false at the closing brace or when the payload is invalid.
+	private boolean nextField()
 	{
-		try
+		if(!isValid)
+			return false;
+
+		skipWhitespace();
+		if(peek() == '}')
 		{
-			return objectMapper.readValue(payload, CheckPositionRequestMessage.class);
+			position++;
+			return false;
 		}
-		catch (JsonProcessingException e)
+
+		// The first field follows the opening brace, every other one follows a comma.
+		if(keyEnd >= 0 && !expect(','))
+			return false;
+
+		skipWhitespace();
+		if(!expect('"'))
+			return false;
+
+		keyStart = position;
+		while(position < limit && payload[position] != '"')
+			position++;
+
+		keyEnd = position;
+		if(!expect('"'))
+			return false;
+
+		skipWhitespace();
+		if(!expect(':'))
+			return false;
+
+		skipWhitespace();
+		return true;
+	}
+
+	private boolean isKey(byte[] name)
+	{
+		if(keyEnd - keyStart != name.length)
+			return false;
+
+		for(int index = 0; index < name.length; index++)
 		{
-			logger.error("Failed to process stock check request JSON: " + payload + " due to exception: " + e.getLocalizedMessage());
+			if(payload[keyStart + index] != name[index])
+				return false;
 		}
-		return null;
+		return true;
+	}
+
+	// Accepts the integral part of a fractional number, as Jackson does, and maps null to zero.
+	private int parseInt()
+	{
+		if(skipNull())
+			return 0;
+
+		boolean isQuoted = peek() == '"';
+		if(isQuoted)
+			position++;
+
+		boolean isNegative = peek() == '-';
+		if(isNegative)
+			position++;
+
+		int start = position;
+		long value = 0;
+		while(position < limit && isDigit(payload[position]))
+		{
+			value = value * 10 + (payload[position++] - '0');
+			if(value > Integer.MAX_VALUE + 1L)
+			{
+				fail("integer out of range");
+				return 0;
+			}
+		}
+
+		if(position == start)
+		{
+			fail("expected a number");
+			return 0;
+		}
+
+		if(peek() == '.')
+		{
+			position++;
+			while(position < limit && isDigit(payload[position]))
+				position++;
+		}
+
+		if(isQuoted)
+			expect('"');
+
+		value = isNegative ? -value : value;
+		if(value > Integer.MAX_VALUE)
+		{
+			fail("integer out of range");
+			return 0;
+		}
+		return (int) value;
+	}
+
+	// Exact for up to 15 significant digits and small exponents, anything longer falls back to Double.parseDouble.
+	private double parseDouble()
+	{
+		if(skipNull())
+			return 0.0;
+
+		boolean isQuoted = peek() == '"';
+		if(isQuoted)
+			position++;
+
+		int start = position;
+		boolean isNegative = peek() == '-';
+		if(isNegative)
+			position++;
+
+		long mantissa = 0;
+		int digitCount = 0;
+		int scale = 0;
+		boolean isExact = true;
+		while(position < limit && isDigit(payload[position]))
+		{
+			if(mantissa <= MAXIMUM_EXACT_MANTISSA)
+				mantissa = mantissa * 10 + (payload[position] - '0');
+			else
+				isExact = false;
+			position++;
+			digitCount++;
+		}
+
+		if(peek() == '.')
+		{
+			position++;
+			while(position < limit && isDigit(payload[position]))
+			{
+				if(mantissa <= MAXIMUM_EXACT_MANTISSA)
+				{
+					mantissa = mantissa * 10 + (payload[position] - '0');
+					scale++;
+				}
+				else
+					isExact = false;
+				position++;
+				digitCount++;
+			}
+		}
+
+		if(digitCount == 0)
+		{
+			fail("expected a number");
+			return 0.0;
+		}
+
+		int exponent = 0;
+		if(peek() == 'e' || peek() == 'E')
+		{
+			position++;
+			boolean isNegativeExponent = peek() == '-';
+			if(isNegativeExponent || peek() == '+')
+				position++;
+
+			int exponentStart = position;
+			while(position < limit && isDigit(payload[position]))
+				exponent = Math.min(exponent * 10 + (payload[position++] - '0'), 1000);
+
+			if(position == exponentStart)
+			{
+				fail("expected an exponent");
+				return 0.0;
+			}
+			exponent = isNegativeExponent ? -exponent : exponent;
+		}
+
+		int end = position;
+		if(isQuoted)
+			expect('"');
+
+		int powerOfTen = exponent - scale;
+		if(!isExact || powerOfTen < -22 || powerOfTen > 22)
+			return Double.parseDouble(new String(payload, start, end - start, StandardCharsets.US_ASCII));
+
+		double value = powerOfTen < 0 ? mantissa / POWERS_OF_TEN[-powerOfTen] : mantissa * POWERS_OF_TEN[powerOfTen];
+		return isNegative ? -value : value;
+	}
+
+	private char parseChar()
+	{
+		if(skipNull())
+			return 0;
+
+		if(!expect('"'))
+			return 0;
+
+		char value = 0;
+		if(peek() != '"')
+			value = (char) parseCharacter();
+
+		if(peek() != '"')
+			fail("expected a single character");
+
+		expect('"');
+		return value;
+	}
+
+	private void parseString(MutableString target)
+	{
+		if(skipNull())
+		{
+			target.setNull();
+			return;
+		}
+
+		if(!expect('"'))
+			return;
+
+		target.clear();
+		while(isValid && position < limit && payload[position] != '"')
+		{
+			int character = payload[position] == '\\' ? parseCharacter() : parseCodePoint();
+			if(isValid && !target.append(character))
+				fail("text exceeds the capacity of " + target.capacity() + " characters");
+		}
+		expect('"');
+	}
+
+	// Decodes the UTF-8 sequence of one unescaped character.
+	private int parseCodePoint()
+	{
+		int sequenceLength = Utf8.sequenceLength(payload[position]);
+		int codePoint = sequenceLength < 0 || position + sequenceLength > limit ? -1 : Utf8.decode(payload, position, sequenceLength);
+		if(codePoint < 0)
+		{
+			fail("invalid UTF-8");
+			return 0;
+		}
+
+		position += sequenceLength;
+		return codePoint;
+	}
+
+	// Unknown names are decoded as NONE so that the handler decides how to treat them.
+	private RequestTypeEnum parseRequestType()
+	{
+		if(skipNull())
+			return RequestTypeEnum.NONE;
+
+		if(!expect('"'))
+			return RequestTypeEnum.NONE;
+
+		int start = position;
+		while(position < limit && payload[position] != '"' && payload[position] != '\\')
+			position++;
+
+		int end = position;
+		if(!expect('"'))
+			return RequestTypeEnum.NONE;
+
+		return RequestTypeEnum.lookup(payload, start, end);
+	}
+
+	// Decodes one character of a string, including the escapes JSON allows.
+	private int parseCharacter()
+	{
+		int character = payload[position++] & 0xFF;
+		if(character != '\\')
+			return character;
+
+		switch(peek())
+		{
+			case 'b':
+				position++;
+				return '\b';
+			case 'f':
+				position++;
+				return '\f';
+			case 'n':
+				position++;
+				return '\n';
+			case 'r':
+				position++;
+				return '\r';
+			case 't':
+				position++;
+				return '\t';
+			case 'u':
+				position++;
+				int value = 0;
+				for(int index = 0; index < 4; index++)
+				{
+					int digit = position < limit ? Character.digit(payload[position++], 16) : -1;
+					if(digit < 0)
+					{
+						fail("invalid unicode escape");
+						return 0;
+					}
+					value = (value << 4) | digit;
+				}
+				return value;
+			default:
+				if(position == limit)
+				{
+					fail("unterminated escape");
+					return 0;
+				}
+				return payload[position++] & 0xFF;
+		}
+	}
+
+	private void skipValue()
+	{
+		int depth = 0;
+		do
+		{
+			if(position == limit)
+			{
+				fail("unterminated value");
+				return;
+			}
+
+			byte character = payload[position];
+			if(character == '"')
+			{
+				position++;
+				while(isValid && position < limit && payload[position] != '"')
+					parseCharacter();
+				expect('"');
+				continue;
+			}
+
+			if(character == '{' || character == '[')
+				depth++;
+			else if(character == '}' || character == ']')
+			{
+				// The closing brace of the message itself ends a scalar value.
+				if(depth == 0)
+					return;
+				depth--;
+			}
+			else if(character == ',' && depth == 0)
+				return;
+			position++;
+		}
+		while(isValid && (depth > 0 || (position < limit && !isDelimiter(payload[position]))));
+	}
+
+	private boolean skipNull()
+	{
+		if(position + 4 <= limit && payload[position] == 'n' && payload[position + 1] == 'u' && payload[position + 2] == 'l' && payload[position + 3] == 'l')
+		{
+			position += 4;
+			return true;
+		}
+		return false;
+	}
+
+	private void skipWhitespace()
+	{
+		while(position < limit && (payload[position] == ' ' || payload[position] == '\t' || payload[position] == '\n' || payload[position] == '\r'))
+			position++;
+	}
+
+	private int peek()
+	{
+		return position < limit ? payload[position] : -1;
+	}
+
+	private boolean expect(char character)
+	{
+		if(!isValid)
+			return false;
+
+		if(peek() != character)
+		{
+			fail("expected '" + character + "'");
+			return false;
+		}
+
+		position++;
+		return true;
+	}
+
+	private void fail(String error)
+	{
+		if(isValid)
+		{
+			isValid = false;
+			this.error = error;
+		}
+	}
+
+	private static boolean isDigit(byte character)
+	{
+		return character >= '0' && character <= '9';
+	}
+
+	private static boolean isDelimiter(byte character)
+	{
+		return character == ',' || character == '}' || character == ']' || character == ' ' || character == '\t' || character == '\n' || character == '\r';
+	}
+
+	private static byte[] ascii(String text)
+	{
+		return text.getBytes(StandardCharsets.US_ASCII);
 	}
 }
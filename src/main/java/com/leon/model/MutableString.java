@@ -0,0 +1,146 @@
+package com.leon.model;
+
+import com.fasterxml.jackson.annotation.JsonValue;
+
+// Fixed capacity text owned by a reusable message, decoded into in place so that ids and codes do not allocate a String per event.
+// A null JSON value is kept apart from an empty string so that responses can echo exactly what was received.
+public class MutableString implements CharSequence
+{
+	private final char[] characters;
+	private int length = 0;
+	private boolean isNull = true;
+
+	public MutableString(int capacity)
+	{
+		this.characters = new char[capacity];
+	}
+
+	public void setNull()
+	{
+		length = 0;
+		isNull = true;
+	}
+
+	public void clear()
+	{
+		length = 0;
+		isNull = false;
+	}
+
+	// Takes a code point, written as a surrogate pair outside the basic plane. Returns false and leaves the text truncated when the
+	// capacity is exceeded.
+	public boolean append(int codePoint)
+	{
+		isNull = false;
+		if(Character.isBmpCodePoint(codePoint))
+		{
+			if(length == characters.length)
+				return false;
+
+			characters[length++] = (char) codePoint;
+			return true;
+		}
+
+		if(length + 2 > characters.length)
+			return false;
+
+		characters[length++] = Character.highSurrogate(codePoint);
+		characters[length++] = Character.lowSurrogate(codePoint);
+		return true;
+	}
+
+	// Returns false and leaves the text truncated when the capacity is exceeded.
+	public boolean set(CharSequence text)
+	{
+		if(text == null)
+		{
+			setNull();
+			return true;
+		}
+
+		clear();
+		while(length < text.length() && length < characters.length)
+		{
+			characters[length] = text.charAt(length);
+			length++;
+		}
+		return length == text.length();
+	}
+
+	public boolean isNull()
+	{
+		return isNull;
+	}
+
+	public int capacity()
+	{
+		return characters.length;
+	}
+
+	@Override
+	public int length()
+	{
+		return length;
+	}
+
+	@Override
+	public char charAt(int index)
+	{
+		if(index < 0 || index >= length)
+			throw new IndexOutOfBoundsException("Index: " + index + ", length: " + length);
+
+		return characters[index];
+	}
+
+	@Override
+	public CharSequence subSequence(int start, int end)
+	{
+		return toString().substring(start, end);
+	}
+
+	public boolean contentEquals(CharSequence text)
+	{
+		if(text == null)
+			return isNull;
+
+		if(isNull || text.length() != length)
+			return false;
+
+		for(int index = 0; index < length; index++)
+		{
+			if(characters[index] != text.charAt(index))
+				return false;
+		}
+		return true;
+	}
+
+	@JsonValue
+	public String toStringOrNull()
+	{
+		return isNull ? null : toString();
+	}
+
+	@Override
+	public String toString()
+	{
+		return isNull ? "null" : new String(characters, 0, length);
+	}
+
+	@Override
+	public boolean equals(Object o)
+	{
+		if (this == o) return true;
+		if (o == null || getClass() != o.getClass()) return false;
+		MutableString that = (MutableString) o;
+		return isNull == that.isNull && (isNull || contentEquals(that));
+	}
+
+	@Override
+	public int hashCode()
+	{
+		int hash = isNull ? 0 : 1;
+		for(int index = 0; index < length; index++)
+			hash = 31 * hash + characters[index];
+		return hash;
+	}
+}
@@ -2,7 +2,38 @@ package com.leon.model;
 
 public enum OutcomeType
 {
-    SUCCESS,
-    PARTIAL_SUCCESS,
-    FAILURE
+    SUCCESS(0),
+    PARTIAL_SUCCESS(1),
+    FAILURE(2);
+
+    // The code written for the outcome in binary responses, fixed per constant as for RequestTypeEnum.
+    private final int code;
+
+    private static final OutcomeType[] BY_CODE = new OutcomeType[values().length];
+
+    static
+    {
+        for(OutcomeType value : values())
+        {
+            if(value.code >= BY_CODE.length || BY_CODE[value.code] != null)
+                throw new IllegalStateException("Outcome type: " + value + " does not have a unique code below " + BY_CODE.length + ".");
+            BY_CODE[value.code] = value;
+        }
+    }
+
+    OutcomeType(int code)
+    {
+        this.code = code;
+    }
+
+    public int getCode()
+    {
+        return code;
+    }
+
+    // Returns null for a code that is not known, as a null outcome is written as -1.
+    public static OutcomeType fromCode(int code)
+    {
+        return code >= 0 && code < BY_CODE.length ? BY_CODE[code] : null;
+    }
 }
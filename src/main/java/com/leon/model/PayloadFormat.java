@@ -0,0 +1,16 @@
+package com.leon.model;
+
+public enum PayloadFormat
+{
+    // "PAYLOAD_TYPE={json}" text messages, readable by humans and accepted by every transport.
+    JSON,
+    // The little-endian fixed layout of BinaryCodec, self-describing through its header.
+    BINARY;
+
+    private static final PayloadFormat[] VALUES = values();
+
+    public static PayloadFormat fromOrdinal(int ordinal)
+    {
+        return ordinal >= 0 && ordinal < VALUES.length ? VALUES[ordinal] : JSON;
+    }
+}
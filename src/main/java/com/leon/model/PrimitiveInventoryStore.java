@@ -0,0 +1,317 @@
+package com.leon.model;
+
+import java.util.Arrays;
+
+// Open-addressing hash table with linear probing over parallel primitive arrays, one array per field. There is no object per position,
+// so a check is a probe of the key array followed by reads and writes of a few fields at the same index, and nothing is allocated
+// unless the table has to grow. Removal shifts the following entries of the probe run back instead of leaving tombstones.
+public class PrimitiveInventoryStore implements InventoryStore
+{
+	private static final int MINIMUM_CAPACITY = 16;
+	// Grows when more than half of the slots are occupied which keeps the probe runs short.
+	private static final int MAXIMUM_LOAD_PERCENT = 50;
+
+	private long[] keys;
+	private boolean[] isOccupied;
+	private boolean[] isDirty;
+	private int[] startOfDayQuantities;
+	private int[] executedQuantities;
+	private int[] reservedQuantities;
+	private int[] borrowedQuantities;
+	private double[] startOfDayCash;
+	private double[] executedCash;
+	private double[] reservedCash;
+	private int mask;
+	private int shift;
+	private int size;
+	private int resizeThreshold;
+
+	public PrimitiveInventoryStore(int expectedSize)
+	{
+		if(expectedSize < 0)
+			throw new IllegalArgumentException("Expected size of the inventory store cannot be negative.");
+
+		int capacity = MINIMUM_CAPACITY;
+		while(capacity * MAXIMUM_LOAD_PERCENT / 100 < expectedSize)
+			capacity <<= 1;
+
+		allocate(capacity);
+	}
+
+	private void allocate(int capacity)
+	{
+		keys = new long[capacity];
+		isOccupied = new boolean[capacity];
+		isDirty = new boolean[capacity];
+		startOfDayQuantities = new int[capacity];
+		executedQuantities = new int[capacity];
+		reservedQuantities = new int[capacity];
+		borrowedQuantities = new int[capacity];
+		startOfDayCash = new double[capacity];
+		executedCash = new double[capacity];
+		reservedCash = new double[capacity];
+		mask = capacity - 1;
+		shift = 64 - Integer.numberOfTrailingZeros(capacity);
+		resizeThreshold = (int) ((long) capacity * MAXIMUM_LOAD_PERCENT / 100);
+	}
+
+	// Fibonacci hashing, the top bits of the product are the best mixed so they pick the home slot.
+	private int homeSlotOf(long key)
+	{
+		return (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+	}
+
+	@Override
+	public int slotOf(long key)
+	{
+		int slot = homeSlotOf(key);
+		while(isOccupied[slot])
+		{
+			if(keys[slot] == key)
+				return slot;
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	@Override
+	public int put(Inventory inventory)
+	{
+		long key = InventoryKey.of(inventory);
+		int slot = homeSlotOf(key);
+		while(isOccupied[slot] && keys[slot] != key)
+			slot = (slot + 1) & mask;
+
+		if(!isOccupied[slot])
+		{
+			if(size + 1 > resizeThreshold)
+			{
+				grow();
+				return put(inventory);
+			}
+
+			isOccupied[slot] = true;
+			keys[slot] = key;
+			size++;
+		}
+
+		startOfDayQuantities[slot] = inventory.getStartOfDayQuantity();
+		executedQuantities[slot] = inventory.getExecutedQuantity();
+		reservedQuantities[slot] = inventory.getReservedQuantity();
+		borrowedQuantities[slot] = inventory.getBorrowedQuantity();
+		startOfDayCash[slot] = inventory.getStartOfDayCash();
+		executedCash[slot] = inventory.getExecutedCash();
+		reservedCash[slot] = inventory.getReservedCash();
+		return slot;
+	}
+
+	private void grow()
+	{
+		long[] oldKeys = keys;
+		boolean[] oldIsOccupied = isOccupied;
+		boolean[] oldIsDirty = isDirty;
+		int[] oldStartOfDayQuantities = startOfDayQuantities;
+		int[] oldExecutedQuantities = executedQuantities;
+		int[] oldReservedQuantities = reservedQuantities;
+		int[] oldBorrowedQuantities = borrowedQuantities;
+		double[] oldStartOfDayCash = startOfDayCash;
+		double[] oldExecutedCash = executedCash;
+		double[] oldReservedCash = reservedCash;
+
+		allocate(oldKeys.length << 1);
+		for(int oldSlot = 0; oldSlot < oldKeys.length; oldSlot++)
+		{
+			if(!oldIsOccupied[oldSlot])
+				continue;
+
+			int slot = homeSlotOf(oldKeys[oldSlot]);
+			while(isOccupied[slot])
+				slot = (slot + 1) & mask;
+
+			isOccupied[slot] = true;
+			keys[slot] = oldKeys[oldSlot];
+			isDirty[slot] = oldIsDirty[oldSlot];
+			startOfDayQuantities[slot] = oldStartOfDayQuantities[oldSlot];
+			executedQuantities[slot] = oldExecutedQuantities[oldSlot];
+			reservedQuantities[slot] = oldReservedQuantities[oldSlot];
+			borrowedQuantities[slot] = oldBorrowedQuantities[oldSlot];
+			startOfDayCash[slot] = oldStartOfDayCash[oldSlot];
+			executedCash[slot] = oldExecutedCash[oldSlot];
+			reservedCash[slot] = oldReservedCash[oldSlot];
+		}
+	}
+
+	@Override
+	public boolean remove(long key)
+	{
+		int slot = slotOf(key);
+		if(slot < 0)
+			return false;
+
+		// Moves back every later entry of the run whose home slot is not between the hole and itself, so that lookups never stop early.
+		int hole = slot;
+		int next = (hole + 1) & mask;
+		while(isOccupied[next])
+		{
+			int home = homeSlotOf(keys[next]);
+			if(((next - home) & mask) >= ((next - hole) & mask))
+			{
+				move(next, hole);
+				hole = next;
+			}
+			next = (next + 1) & mask;
+		}
+
+		isOccupied[hole] = false;
+		isDirty[hole] = false;
+		size--;
+		return true;
+	}
+
+	private void move(int from, int to)
+	{
+		keys[to] = keys[from];
+		isDirty[to] = isDirty[from];
+		startOfDayQuantities[to] = startOfDayQuantities[from];
+		executedQuantities[to] = executedQuantities[from];
+		reservedQuantities[to] = reservedQuantities[from];
+		borrowedQuantities[to] = borrowedQuantities[from];
+		startOfDayCash[to] = startOfDayCash[from];
+		executedCash[to] = executedCash[from];
+		reservedCash[to] = reservedCash[from];
+	}
+
+	@Override
+	public void clear()
+	{
+		Arrays.fill(isOccupied, false);
+		Arrays.fill(isDirty, false);
+		size = 0;
+	}
+
+	@Override
+	public int size()
+	{
+		return size;
+	}
+
+	@Override
+	public int nextSlot(int slot)
+	{
+		for(int next = slot + 1; next < keys.length; next++)
+		{
+			if(isOccupied[next])
+				return next;
+		}
+		return -1;
+	}
+
+	@Override
+	public boolean markDirty(int slot)
+	{
+		if(isDirty[slot])
+			return false;
+
+		isDirty[slot] = true;
+		return true;
+	}
+
+	@Override
+	public void clearDirty(int slot)
+	{
+		isDirty[slot] = false;
+	}
+
+	@Override
+	public long keyAt(int slot)
+	{
+		return keys[slot];
+	}
+
+	@Override
+	public Inventory read(int slot, Inventory using)
+	{
+		using.setClientId(InventoryKey.clientIdOf(keys[slot]));
+		using.setInstrumentId(InventoryKey.instrumentIdOf(keys[slot]));
+		using.setStartOfDayQuantity(startOfDayQuantities[slot]);
+		using.setExecutedQuantity(executedQuantities[slot]);
+		using.setReservedQuantity(reservedQuantities[slot]);
+		using.setBorrowedQuantity(borrowedQuantities[slot]);
+		using.setStartOfDayCash(startOfDayCash[slot]);
+		using.setExecutedCash(executedCash[slot]);
+		using.setReservedCash(reservedCash[slot]);
+		return using;
+	}
+
+	@Override
+	public int getStartOfDayQuantity(int slot)
+	{
+		return startOfDayQuantities[slot];
+	}
+
+	@Override
+	public int getExecutedQuantity(int slot)
+	{
+		return executedQuantities[slot];
+	}
+
+	@Override
+	public void setExecutedQuantity(int slot, int executedQuantity)
+	{
+		executedQuantities[slot] = executedQuantity;
+	}
+
+	@Override
+	public int getReservedQuantity(int slot)
+	{
+		return reservedQuantities[slot];
+	}
+
+	@Override
+	public void setReservedQuantity(int slot, int reservedQuantity)
+	{
+		reservedQuantities[slot] = reservedQuantity;
+	}
+
+	@Override
+	public int getBorrowedQuantity(int slot)
+	{
+		return borrowedQuantities[slot];
+	}
+
+	@Override
+	public double getStartOfDayCash(int slot)
+	{
+		return startOfDayCash[slot];
+	}
+
+	@Override
+	public double getExecutedCash(int slot)
+	{
+		return executedCash[slot];
+	}
+
+	@Override
+	public void setExecutedCash(int slot, double executedCash)
+	{
+		this.executedCash[slot] = executedCash;
+	}
+
+	@Override
+	public double getReservedCash(int slot)
+	{
+		return reservedCash[slot];
+	}
+
+	@Override
+	public void setReservedCash(int slot, double reservedCash)
+	{
+		this.reservedCash[slot] = reservedCash;
+	}
+
+	@Override
+	public String toString(int slot)
+	{
+		return read(slot, new Inventory()).toString();
+	}
+}
@@ -2,13 +2,107 @@ package com.leon.model;
 
 public enum RequestTypeEnum
 {
-    CASH_CHECK_REQUEST,
-    POSITION_CHECK_REQUEST,
-    EXECUTION_MESSAGE,
-    LONG_AND_COVERED_SHORT_SELL,
-    LONG_SELL_ONLY,
-    NAKED_SHORT_SELL,
-    QUANTITY_AMEND_UP,
-    QUANTITY_AMEND_DOWN,
-    NONE
+    CASH_CHECK_REQUEST(0),
+    POSITION_CHECK_REQUEST(1),
+    EXECUTION_MESSAGE(2),
+    LONG_AND_COVERED_SHORT_SELL(3),
+    LONG_SELL_ONLY(4),
+    NAKED_SHORT_SELL(5),
+    QUANTITY_AMEND_UP(6),
+    QUANTITY_AMEND_DOWN(7),
+    NONE(8),
+    CASH_CHECK_RESPONSE(9),
+    POSITION_CHECK_RESPONSE(10),
+    // Maintenance of the inventory while running, sequenced through the inbound ring like any request so that the shard's single writer
+    // applies them and recovery replays them from the journal.
+    INVENTORY_UPDATE(11),
+    INVENTORY_DELETE(12),
+    INVENTORY_CLEAR(13);
+
+    // The code written for the type in binary messages, journal records and the event log. Each constant keeps its code whatever its
+    // position in the enum, so a new type takes the next unused code and a removed one leaves its code unused.
+    private final int code;
+
+    // values() clones the array on every call so the lookup keeps its own copy.
+    private static final RequestTypeEnum[] VALUES = values();
+    private static final RequestTypeEnum[] BY_CODE = new RequestTypeEnum[VALUES.length];
+
+    static
+    {
+        for(RequestTypeEnum value : VALUES)
+        {
+            if(value.code >= BY_CODE.length || BY_CODE[value.code] != null)
+                throw new IllegalStateException("Request type: " + value + " does not have a unique code below " + BY_CODE.length + ".");
+            BY_CODE[value.code] = value;
+        }
+    }
+
+    RequestTypeEnum(int code)
+    {
+        this.code = code;
+    }
+
+    public int getCode()
+    {
+        return code;
+    }
+
+    // Only requests and executions are accepted from clients. The inventory maintenance types are published by the service itself, from
+    // its REST calls and journal recovery, so every ingress drops them.
+    public boolean isClientRequest()
+    {
+        return this == CASH_CHECK_REQUEST || this == POSITION_CHECK_REQUEST || this == EXECUTION_MESSAGE;
+    }
+
+    // True when a "PAYLOAD_TYPE=payload" text message carries a type accepted from clients.
+    public static boolean isClientRequest(String message)
+    {
+        int separator = message == null ? -1 : message.indexOf('=');
+        return separator > 0 && lookup(message, 0, separator).isClientRequest();
+    }
+
+    public static RequestTypeEnum fromCode(int code)
+    {
+        return code >= 0 && code < BY_CODE.length ? BY_CODE[code] : NONE;
+    }
+
+    // Equivalent to valueOf(text.substring(start, end)) without allocating the substring, returns NONE when there is no match.
+    public static RequestTypeEnum lookup(CharSequence text, int start, int end)
+    {
+        int length = end - start;
+        for(RequestTypeEnum value : VALUES)
+        {
+            String name = value.name();
+            if(name.length() != length)
+                continue;
+
+            int index = 0;
+            while(index < length && name.charAt(index) == text.charAt(start + index))
+                index++;
+
+            if(index == length)
+                return value;
+        }
+        return NONE;
+    }
+
+    // Same lookup over ASCII bytes, used when decoding a payload in place.
+    public static RequestTypeEnum lookup(byte[] text, int start, int end)
+    {
+        int length = end - start;
+        for(RequestTypeEnum value : VALUES)
+        {
+            String name = value.name();
+            if(name.length() != length)
+                continue;
+
+            int index = 0;
+            while(index < length && name.charAt(index) == text[start + index])
+                index++;
+
+            if(index == length)
+                return value;
+        }
+        return NONE;
+    }
 }
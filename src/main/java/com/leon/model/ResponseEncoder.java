@@ -0,0 +1,230 @@
+package com.leon.model;
+
+import java.nio.charset.StandardCharsets;
+
+// Writes the JSON of an inventory check response straight into a preallocated buffer, normally the payload of an outbound ring slot.
+// The output is what Jackson produced for InventoryCheckResponse, field for field, but assembled from precomputed name templates and
+// primitive values so that nothing is allocated per response.
+public class ResponseEncoder
+{
+	private static final byte[] LOCK_QUANTITY = ascii("{\"lockQuantity\":");
+	private static final byte[] UNLOCKED_QUANTITY = ascii(",\"unlockedQuantity\":");
+	private static final byte[] RESULT = ascii(",\"result\":");
+	private static final byte[] REFERENCE_ID = ascii(",\"referenceId\":");
+	private static final byte[] CLIENT_ID = ascii(",\"clientId\":");
+	private static final byte[] INSTRUMENT_ID = ascii(",\"instrumentId\":");
+	private static final byte[] LOCKED_CASH = ascii(",\"lockedCash\":");
+	private static final byte[] UNLOCKED_CASH = ascii(",\"unlockedCash\":");
+	private static final byte[] REQUEST_TYPE = ascii(",\"requestType\":");
+	private static final byte[] REQUEST_SUB_TYPE = ascii(",\"requestSubType\":");
+	private static final byte[] NULL = ascii("null");
+	private static final byte[][] REQUEST_TYPE_NAMES = names(RequestTypeEnum.values());
+	private static final byte[][] OUTCOME_TYPE_NAMES = names(OutcomeType.values());
+	private static final byte[] HEXADECIMAL_DIGITS = ascii("0123456789abcdef");
+	// Fixed part plus the longest type names and numbers, the reference id is added per response as it may need escaping or several bytes a character.
+	private static final int MAXIMUM_FIXED_LENGTH = 400;
+	// Up to nine decimals are written without allocating, see putDouble.
+	private static final int MAXIMUM_SCALE = 9;
+	private static final long MAXIMUM_EXACT_UNITS = 1L << 53;
+	private static final long[] POWERS_OF_TEN = {1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L, 100_000_000L, 1_000_000_000L};
+
+	private ResponseEncoder() {}
+
+	// Returns the number of bytes written, or -1 when the response may not fit in the buffer. A null result or type is written as null.
+	public static int encode(byte[] buffer, int offset, int lockedQuantity, int unlockedQuantity, OutcomeType result, MutableString referenceId,
+			int clientId, int instrumentId, double lockedCash, double unlockedCash, RequestTypeEnum requestType, RequestTypeEnum requestSubType)
+	{
+		if(buffer.length - offset < MAXIMUM_FIXED_LENGTH + textLength(referenceId))
+			return -1;
+
+		int position = put(buffer, offset, LOCK_QUANTITY);
+		position = putLong(buffer, position, lockedQuantity);
+		position = put(buffer, position, UNLOCKED_QUANTITY);
+		position = putLong(buffer, position, unlockedQuantity);
+		position = put(buffer, position, RESULT);
+		position = putName(buffer, position, result == null ? null : OUTCOME_TYPE_NAMES[result.ordinal()]);
+		position = put(buffer, position, REFERENCE_ID);
+		position = putText(buffer, position, referenceId);
+		position = put(buffer, position, CLIENT_ID);
+		position = putLong(buffer, position, clientId);
+		position = put(buffer, position, INSTRUMENT_ID);
+		position = putLong(buffer, position, instrumentId);
+		position = put(buffer, position, LOCKED_CASH);
+		position = putDouble(buffer, position, lockedCash);
+		position = put(buffer, position, UNLOCKED_CASH);
+		position = putDouble(buffer, position, unlockedCash);
+		position = put(buffer, position, REQUEST_TYPE);
+		position = putName(buffer, position, requestType == null ? null : REQUEST_TYPE_NAMES[requestType.ordinal()]);
+		position = put(buffer, position, REQUEST_SUB_TYPE);
+		position = putName(buffer, position, requestSubType == null ? null : REQUEST_TYPE_NAMES[requestSubType.ordinal()]);
+		buffer[position++] = '}';
+		return position - offset;
+	}
+
+	private static int put(byte[] buffer, int position, byte[] template)
+	{
+		System.arraycopy(template, 0, buffer, position, template.length);
+		return position + template.length;
+	}
+
+	private static int putName(byte[] buffer, int position, byte[] name)
+	{
+		if(name == null)
+			return put(buffer, position, NULL);
+
+		buffer[position++] = '"';
+		position = put(buffer, position, name);
+		buffer[position++] = '"';
+		return position;
+	}
+
+	// The bytes putText writes for the text, so that the longest ids the payload allows still fit in the response.
+	private static int textLength(MutableString text)
+	{
+		if(text == null || text.isNull())
+			return NULL.length;
+
+		int length = 2;
+		for(int index = 0; index < text.length(); )
+		{
+			int codePoint = Character.codePointAt(text, index);
+			length += codePoint == '"' || codePoint == '\\' ? 2 : codePoint < 0x20 ? 6 : Utf8.encodedLength(codePoint);
+			index += Character.charCount(codePoint);
+		}
+		return length;
+	}
+
+	private static int putText(byte[] buffer, int position, MutableString text)
+	{
+		if(text == null || text.isNull())
+			return put(buffer, position, NULL);
+
+		buffer[position++] = '"';
+		for(int index = 0; index < text.length(); )
+		{
+			int character = Character.codePointAt(text, index);
+			index += Character.charCount(character);
+			if(character == '"' || character == '\\')
+			{
+				buffer[position++] = '\\';
+				buffer[position++] = (byte) character;
+			}
+			else if(character < 0x20)
+			{
+				buffer[position++] = '\\';
+				buffer[position++] = 'u';
+				buffer[position++] = '0';
+				buffer[position++] = '0';
+				buffer[position++] = HEXADECIMAL_DIGITS[character >> 4];
+				buffer[position++] = HEXADECIMAL_DIGITS[character & 0xF];
+			}
+			else
+				position = Utf8.encode(buffer, position, character);
+		}
+		buffer[position++] = '"';
+		return position;
+	}
+
+	// Writes the digits from the right so that no intermediate characters are needed.
+	private static int putLong(byte[] buffer, int position, long value)
+	{
+		if(value < 0)
+		{
+			if(value == Long.MIN_VALUE)
+				return putAscii(buffer, position, Long.toString(value));
+
+			buffer[position++] = '-';
+			value = -value;
+		}
+
+		int end = position + digitCount(value);
+		int index = end;
+		do
+		{
+			buffer[--index] = (byte) ('0' + value % 10);
+			value /= 10;
+		}
+		while(value != 0);
+		return end;
+	}
+
+	// Same text as Double.toString for values that are exact to nine decimals between 10^-3 and 10^7, which covers cash amounts.
+	// Anything else, including scientific notation, falls back to Double.toString. NaN and infinity are quoted as Jackson wrote them.
+	private static int putDouble(byte[] buffer, int position, double value)
+	{
+		if(Double.isNaN(value) || Double.isInfinite(value))
+		{
+			buffer[position++] = '"';
+			position = putAscii(buffer, position, Double.toString(value));
+			buffer[position++] = '"';
+			return position;
+		}
+
+		double magnitude = Math.abs(value);
+		if(magnitude == 0.0 || (magnitude >= 1e-3 && magnitude < 1e7))
+		{
+			for(int scale = 1; scale <= MAXIMUM_SCALE; scale++)
+			{
+				long units = Math.round(magnitude * POWERS_OF_TEN[scale]);
+				// Past 2^53 the units are no longer exact and the digits could differ from the shortest representation.
+				if(units >= MAXIMUM_EXACT_UNITS)
+					break;
+
+				if((double) units / POWERS_OF_TEN[scale] != magnitude)
+					continue;
+
+				if(value < 0 || (value == 0.0 && 1 / value < 0))
+					buffer[position++] = '-';
+
+				position = putLong(buffer, position, units / POWERS_OF_TEN[scale]);
+				buffer[position++] = '.';
+				long fraction = units % POWERS_OF_TEN[scale];
+				int digits = scale;
+				while(digits > 1 && fraction % 10 == 0)
+				{
+					fraction /= 10;
+					digits--;
+				}
+
+				for(int index = digits - 1; index >= 0; index--)
+				{
+					buffer[position + index] = (byte) ('0' + fraction % 10);
+					fraction /= 10;
+				}
+				return position + digits;
+			}
+		}
+		return putAscii(buffer, position, Double.toString(value));
+	}
+
+	private static int putAscii(byte[] buffer, int position, String text)
+	{
+		for(int index = 0; index < text.length(); index++)
+			buffer[position++] = (byte) text.charAt(index);
+		return position;
+	}
+
+	private static int digitCount(long value)
+	{
+		int count = 1;
+		while(value >= 10)
+		{
+			value /= 10;
+			count++;
+		}
+		return count;
+	}
+
+	private static byte[][] names(Enum<?>[] values)
+	{
+		byte[][] names = new byte[values.length][];
+		for(Enum<?> value : values)
+			names[value.ordinal()] = ascii(value.name());
+		return names;
+	}
+
+	private static byte[] ascii(String text)
+	{
+		return text.getBytes(StandardCharsets.US_ASCII);
+	}
+}
@@ -0,0 +1,111 @@
+package com.leon.model;
+
+// UTF-8 for the text fields of the JSON and binary codecs, one code point at a time so that nothing is allocated. Decoding is strict,
+// rejecting what String would replace: overlong forms, surrogates and anything past the last code point.
+final class Utf8
+{
+	private Utf8() {}
+
+	// Returns the number of bytes of the sequence started by this byte, or -1 when it cannot start one.
+	static int sequenceLength(byte first)
+	{
+		if(first >= 0)
+			return 1;
+		if((first & 0xE0) == 0xC0)
+			return 2;
+		if((first & 0xF0) == 0xE0)
+			return 3;
+		if((first & 0xF8) == 0xF0)
+			return 4;
+		return -1;
+	}
+
+	// Returns the code point of the sequence at the position, or -1 when it is malformed.
+	static int decode(byte[] buffer, int position, int sequenceLength)
+	{
+		int codePoint;
+		int minimum;
+		switch(sequenceLength)
+		{
+			case 1:
+				return buffer[position];
+			case 2:
+				codePoint = buffer[position] & 0x1F;
+				minimum = 0x80;
+				break;
+			case 3:
+				codePoint = buffer[position] & 0x0F;
+				minimum = 0x800;
+				break;
+			case 4:
+				codePoint = buffer[position] & 0x07;
+				minimum = 0x10000;
+				break;
+			default:
+				return -1;
+		}
+
+		for(int index = 1; index < sequenceLength; index++)
+		{
+			int continuation = buffer[position + index];
+			if((continuation & 0xC0) != 0x80)
+				return -1;
+			codePoint = (codePoint << 6) | (continuation & 0x3F);
+		}
+
+		if(codePoint < minimum || codePoint > Character.MAX_CODE_POINT || (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE))
+			return -1;
+		return codePoint;
+	}
+
+	// Writes the code point and returns the position after it. A lone surrogate is written as '?', as String.getBytes does.
+	static int encode(byte[] buffer, int position, int codePoint)
+	{
+		if(codePoint < 0x80)
+			buffer[position++] = (byte) codePoint;
+		else if(codePoint < 0x800)
+		{
+			buffer[position++] = (byte) (0xC0 | (codePoint >> 6));
+			buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+		}
+		else if(codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE)
+			buffer[position++] = '?';
+		else if(codePoint < 0x10000)
+		{
+			buffer[position++] = (byte) (0xE0 | (codePoint >> 12));
+			buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+			buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+		}
+		else
+		{
+			buffer[position++] = (byte) (0xF0 | (codePoint >> 18));
+			buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+			buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+			buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+		}
+		return position;
+	}
+
+	static int encodedLength(int codePoint)
+	{
+		if(codePoint < 0x80)
+			return 1;
+		if(codePoint < 0x800)
+			return 2;
+		if(codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE)
+			return 1;
+		return codePoint < 0x10000 ? 3 : 4;
+	}
+
+	static int encodedLength(CharSequence text)
+	{
+		int length = 0;
+		for(int index = 0; index < text.length(); )
+		{
+			int codePoint = Character.codePointAt(text, index);
+			length += encodedLength(codePoint);
+			index += Character.charCount(codePoint);
+		}
+		return length;
+	}
+}
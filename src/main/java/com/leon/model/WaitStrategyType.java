@@ -0,0 +1,36 @@
+package com.leon.model;
+
+import com.lmax.disruptor.BlockingWaitStrategy;
+import com.lmax.disruptor.BusySpinWaitStrategy;
+import com.lmax.disruptor.PhasedBackoffWaitStrategy;
+import com.lmax.disruptor.SleepingWaitStrategy;
+import com.lmax.disruptor.WaitStrategy;
+import com.lmax.disruptor.YieldingWaitStrategy;
+import java.util.concurrent.TimeUnit;
+
+public enum WaitStrategyType
+{
+    BUSY_SPIN,
+    YIELDING,
+    SLEEPING,
+    BLOCKING,
+    PHASED_BACKOFF;
+
+    // The spin and yield timeouts are only used by the phased backoff strategy, which falls back to blocking once both have elapsed.
+    public WaitStrategy create(long spinTimeoutMicros, long yieldTimeoutMicros)
+    {
+        switch (this)
+        {
+            case YIELDING:
+                return new YieldingWaitStrategy();
+            case SLEEPING:
+                return new SleepingWaitStrategy();
+            case BLOCKING:
+                return new BlockingWaitStrategy();
+            case PHASED_BACKOFF:
+                return PhasedBackoffWaitStrategy.withLock(spinTimeoutMicros, yieldTimeoutMicros, TimeUnit.MICROSECONDS);
+            default:
+                return new BusySpinWaitStrategy();
+        }
+    }
+}
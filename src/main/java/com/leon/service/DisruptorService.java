@@ -1,12 +1,21 @@
 package com.leon.service;
 
 import com.leon.model.DisruptorEvent;
-import com.leon.model.DisruptorPayload;
 import com.lmax.disruptor.EventHandler;
+import java.util.Map;
 
 public interface DisruptorService
 {
     void start(String name, EventHandler<DisruptorEvent> journalHandler, EventHandler<DisruptorEvent> actionEventHandler);
+    void start(String name, EventHandler<DisruptorEvent> journalHandler, EventHandler<DisruptorEvent> replicationHandler, EventHandler<DisruptorEvent> actionEventHandler);
     void stop();
-    void push(DisruptorPayload payLoad);
+    void setLatencyService(LatencyService latencyService);
+    RingStatistics getStatistics();
+    Map<String, Object> getMetrics();
+    void setNextUid(long nextUid);
+    long getNextUid();
+    void push(String message);
+    void push(byte[] message);
+    void pushAll(String[] messages, int count);
+    void pushAll(DisruptorEvent[] events, int count);
 }
@@ -9,12 +9,16 @@ package com.leon.service;
 // each of these Event Handlers will receive all messages available in the Disruptor (in the same order).
 
 import com.leon.handler.DisruptorEventProducer;
+import com.leon.model.BinaryCodec;
 import com.leon.model.DisruptorEvent;
 import com.leon.model.DisruptorEventFactory;
-import com.leon.model.DisruptorPayload;
-import com.lmax.disruptor.BusySpinWaitStrategy;
+import com.leon.model.LatencyStage;
+import com.leon.model.RequestTypeEnum;
+import com.leon.model.WaitStrategyType;
 import com.lmax.disruptor.EventHandler;
 import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.TimeoutException;
+import com.lmax.disruptor.WaitStrategy;
 import com.lmax.disruptor.dsl.Disruptor;
 import com.lmax.disruptor.dsl.ProducerType;
 import com.lmax.disruptor.util.DaemonThreadFactory;
@@ -23,45 +27,84 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Scope;
+import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Service;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 @Scope("prototype")
 @Service
 public class DisruptorServiceImpl implements DisruptorService
 {
     private static final Logger logger = LoggerFactory.getLogger(DisruptorServiceImpl.class);
-    private int counter;
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 5;
     private String name;
-    private long timeTaken = 0;
     private Disruptor<DisruptorEvent> disruptor;
+    private RingBuffer<DisruptorEvent> ringBuffer;
     private DisruptorEventProducer producer;
+    // Consumers in the order they were registered, their sequences against the cursor give how far each lags behind the producers.
+    private EventHandler<DisruptorEvent>[] handlers;
+    private final RingStatistics statistics = new RingStatistics();
     @Value("${buffer.size}")
     private int bufferSize;
+    // Times messages pushed onto an inbound ring, from the call to the slot being published. Null for rings that are not timed.
+    private LatencyService latencyService;
 
     @Autowired
     ConfigurationServiceImpl configurationService;
+    @Autowired
+    private Environment environment;
 
+    // Each ring reads its own settings using its lower-cased name as the prefix, for example inbound.disruptor.producer.type.
+    // Sharded rings are named INBOUND-0, INBOUND-1 etc. and share the settings of their ring without the shard suffix.
+    // A ring that is only ever published to by one thread should stay SINGLE, MULTI claims slots with a lock-free CAS on the cursor.
     @Override
     public void start(String name, EventHandler<DisruptorEvent> journalHandler, EventHandler<DisruptorEvent> actionEventHandler)
+    {
+        start(name, journalHandler, null, actionEventHandler);
+    }
+
+    @Override
+    public void start(String name, EventHandler<DisruptorEvent> journalHandler, EventHandler<DisruptorEvent> replicationHandler, EventHandler<DisruptorEvent> actionEventHandler)
+    {
+        String prefix = name.replaceFirst("-\\d+$", "").toLowerCase() + ".disruptor.";
+        int ringBufferSize = environment.getProperty(prefix + "buffer.size", Integer.class, bufferSize);
+        ProducerType producerType = environment.getProperty(prefix + "producer.type", ProducerType.class, ProducerType.SINGLE);
+        WaitStrategyType waitStrategyType = environment.getProperty(prefix + "wait.strategy", WaitStrategyType.class, WaitStrategyType.BUSY_SPIN);
+        long spinTimeoutMicros = environment.getProperty(prefix + "phased.backoff.spin.timeout.micros", Long.class, 100L);
+        long yieldTimeoutMicros = environment.getProperty(prefix + "phased.backoff.yield.timeout.micros", Long.class, 1000L);
+
+        start(name, ringBufferSize, producerType, waitStrategyType.create(spinTimeoutMicros, yieldTimeoutMicros), journalHandler, replicationHandler, actionEventHandler);
+    }
+
+    public void start(String name, int ringBufferSize, ProducerType producerType, WaitStrategy waitStrategy, EventHandler<DisruptorEvent> journalHandler, EventHandler<DisruptorEvent> actionEventHandler)
+    {
+        start(name, ringBufferSize, producerType, waitStrategy, journalHandler, null, actionEventHandler);
+    }
+
+    public void start(String name, int ringBufferSize, ProducerType producerType, WaitStrategy waitStrategy, EventHandler<DisruptorEvent> journalHandler,
+                      EventHandler<DisruptorEvent> replicationHandler, EventHandler<DisruptorEvent> actionEventHandler)
     {
         this.name = name;
-        counter = 0;
         // The factory for the event
         DisruptorEventFactory factory = new DisruptorEventFactory();
 
         // Construct the Disruptor
-        disruptor = new Disruptor<DisruptorEvent>(factory, bufferSize,
-                DaemonThreadFactory.INSTANCE, ProducerType.SINGLE, new BusySpinWaitStrategy());
-        logger.info("Created " + name + " disruptor.");
+        disruptor = new Disruptor<DisruptorEvent>(factory, ringBufferSize,
+                DaemonThreadFactory.INSTANCE, producerType, waitStrategy);
+        logger.info("Created " + name + " disruptor with buffer size: " + ringBufferSize + ", producer type: " + producerType + " and wait strategy: " + waitStrategy.getClass().getSimpleName());
 
-        disruptor.handleEventsWith(journalHandler, actionEventHandler);
+        // The journal, replication and business logic all see every event in the same order, in parallel.
+        handlers = replicationHandler == null ? asArray(journalHandler, actionEventHandler) : asArray(journalHandler, replicationHandler, actionEventHandler);
+        disruptor.handleEventsWith(handlers);
 
         // Start the Disruptor, starts all threads running
         disruptor.start();
         logger.info("Started " + name + " disruptor.");
 
         // Get the ring buffer from the Disruptor to be used for publishing.
-        RingBuffer<DisruptorEvent> ringBuffer = disruptor.getRingBuffer();
+        ringBuffer = disruptor.getRingBuffer();
         producer = new DisruptorEventProducer(ringBuffer);
         logger.info("Instantiated producer for " + name + " disruptor.");
     }
@@ -69,17 +112,121 @@ public class DisruptorServiceImpl implements DisruptorService
     @Override
     public void stop()
     {
-        logger.info(counter + " events were processed by " + name + " disruptor");
-        disruptor.halt();
-        logger.info("Halted " + name + " disruptor");
-        disruptor.shutdown();
-        logger.info("Shutdown " + name + " disruptor");
+        // The cursor is the last published sequence so there is no need for a separate, contended counter on the publishing path.
+        logger.info((ringBuffer.getCursor() + 1) + " events were published to " + name + " disruptor");
+        // Waits for the consumers to process what was already published before halting them.
+        try
+        {
+            disruptor.shutdown(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            logger.info("Drained and shutdown " + name + " disruptor");
+        }
+        catch(TimeoutException te)
+        {
+            disruptor.halt();
+            logger.error("Halted " + name + " disruptor with events still to process after waiting " + SHUTDOWN_TIMEOUT_SECONDS + " seconds for it to drain.");
+        }
+    }
+
+    @SafeVarargs
+    private static EventHandler<DisruptorEvent>[] asArray(EventHandler<DisruptorEvent>... handlers)
+    {
+        return handlers;
     }
 
     @Override
-    public void push(DisruptorPayload payLoad)
+    public RingStatistics getStatistics()
+    {
+        return statistics;
+    }
+
+    // Read from the ring's own sequences, so taking the metrics costs the consumers nothing.
+    @Override
+    public Map<String, Object> getMetrics()
+    {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("name", name);
+        if(ringBuffer == null)
+            return metrics;
+
+        long cursor = ringBuffer.getCursor();
+        metrics.put("bufferSize", ringBuffer.getBufferSize());
+        metrics.put("cursor", cursor);
+        metrics.put("remainingCapacity", ringBuffer.remainingCapacity());
+        Map<String, Object> consumers = new LinkedHashMap<>();
+        for(EventHandler<DisruptorEvent> handler : handlers)
+        {
+            long sequence = disruptor.getSequenceValueFor(handler);
+            Map<String, Object> consumer = new LinkedHashMap<>();
+            consumer.put("sequence", sequence);
+            consumer.put("lag", cursor - sequence);
+            consumers.put(handler.getClass().getSimpleName(), consumer);
+        }
+        metrics.put("consumers", consumers);
+        metrics.putAll(statistics.read());
+        return metrics;
+    }
+
+    @Override
+    public void setLatencyService(LatencyService latencyService)
+    {
+        this.latencyService = latencyService != null && latencyService.isEnabled() ? latencyService : null;
+    }
+
+    @Override
+    public void setNextUid(long nextUid)
+    {
+        producer.setNextUid(nextUid);
+        logger.info("Uids of messages published to " + name + " disruptor now continue from: " + nextUid);
+    }
+
+    @Override
+    public long getNextUid()
+    {
+        return producer.getNextUid();
+    }
+
+    @Override
+    public void push(String message)
+    {
+        long pushTime = latencyService == null ? 0 : System.nanoTime();
+        producer.onData(message);
+        if(latencyService != null)
+            latencyService.record(LatencyStage.INGRESS, typeOf(message), System.nanoTime() - pushTime);
+    }
+
+    @Override
+    public void push(byte[] message)
+    {
+        long pushTime = latencyService == null ? 0 : System.nanoTime();
+        producer.onData(message);
+        if(latencyService != null)
+            latencyService.record(LatencyStage.INGRESS, BinaryCodec.typeOf(message, 0), System.nanoTime() - pushTime);
+    }
+
+    @Override
+    public void pushAll(String[] messages, int count)
+    {
+        long pushTime = latencyService == null ? 0 : System.nanoTime();
+        producer.onData(messages, count);
+        if(latencyService != null)
+        {
+            // Every message of the batch waited for the whole batch to be published.
+            long elapsedNanos = System.nanoTime() - pushTime;
+            for(int index = 0; index < count; index++)
+                latencyService.record(LatencyStage.INGRESS, typeOf(messages[index]), elapsedNanos);
+        }
+    }
+
+    @Override
+    public void pushAll(DisruptorEvent[] events, int count)
+    {
+        producer.onData(events, count);
+    }
+
+    // The type is looked up again because the slot may already be taken by a consumer once it has been published.
+    private static RequestTypeEnum typeOf(String message)
     {
-        producer.onData(payLoad);
-        counter++;
+        int separator = message.indexOf('=');
+        return separator < 0 ? RequestTypeEnum.NONE : RequestTypeEnum.lookup(message, 0, separator);
     }
 }
@@ -7,5 +7,6 @@ public interface FxService
 {
 	void put(String currency, double fxRateAgainstOneUSD);
 	Optional<FxRate> get(String currency);
+	FxRate lookup(CharSequence currency);
 	void upload(String uploadFilePath);
 }
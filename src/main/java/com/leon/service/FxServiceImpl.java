@@ -21,6 +21,8 @@ public class FxServiceImpl implements FxService
 {
 	private static final Logger logger = LoggerFactory.getLogger(FxServiceImpl.class);
 	private Map<String, FxRate> fxRatesMap = new HashMap<>();
+	// Copy of the map values scanned by lookup, there are few enough currencies that a scan beats hashing a key that is not a String.
+	private volatile FxRate[] fxRates = new FxRate[0];
 	public static FxRate defaultUSDRate = new FxRate("USD", 1.0);
 
 	FxServiceImpl() {}
@@ -29,6 +31,7 @@ public class FxServiceImpl implements FxService
 	public void put(String currency, double fxRateAgainstOneUSD)
 	{
 		fxRatesMap.put(currency, new FxRate(currency, fxRateAgainstOneUSD));
+		fxRates = fxRatesMap.values().toArray(new FxRate[0]);
 	}
 
 	@Override
@@ -37,6 +40,18 @@ public class FxServiceImpl implements FxService
 		return Optional.ofNullable(fxRatesMap.get(currency));
 	}
 
+	// Returns null when the currency is missing.
+	@Override
+	public FxRate lookup(CharSequence currency)
+	{
+		for(FxRate fxRate : fxRates)
+		{
+			if(fxRate.getCurrency().contentEquals(currency))
+				return fxRate;
+		}
+		return null;
+	}
+
 	@Override
 	public void upload(String uploadFilePath)
 	{
@@ -49,6 +64,7 @@ public class FxServiceImpl implements FxService
 		{
 			fxRatesMap = new ObjectMapper().readValue(new File(uploadFilePath), new TypeReference<List<FxRate>>(){})
 					.stream().collect(Collectors.toMap(fxRate -> fxRate.getCurrency(), fxRate -> fxRate));
+			fxRates = fxRatesMap.values().toArray(new FxRate[0]);
 		}
 		catch(IOException ioe)
 		{
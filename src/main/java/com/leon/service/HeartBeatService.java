@@ -1,7 +1,12 @@
 package com.leon.service;
 
+import java.util.function.Consumer;
+
 public interface HeartBeatService
 {
 	void start(boolean isPrimary);
 	void stop();
+	void setRoleChangeListener(Consumer<Boolean> roleChangeListener);
+	boolean isPrimary();
+	long getEpoch();
 }
@@ -2,107 +2,259 @@ package com.leon.service;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.jms.annotation.JmsListener;
-import org.springframework.jms.core.JmsTemplate;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import javax.jms.Message;
-import javax.jms.MessageListener;
-import javax.jms.TextMessage;
-import java.time.LocalDateTime;
-import java.time.temporal.ChronoUnit;
-import java.util.UUID;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.PortUnreachableException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
 
+// Exchanges fixed-size UDP heartbeats with the other instance on a dedicated thread and measures the gap with nanoTime.
+// Heartbeat layout, little-endian: int magic, int role (0 = primary, 1 = secondary), long epoch, long instance id, long sequence.
+// The epoch is the fencing token: every promotion moves it past the highest epoch seen, and an instance that still believes it is
+// the primary steps down as soon as it hears a primary with a higher epoch, so two primaries cannot both keep their role.
 @Service
-public class HeartBeatServiceImpl implements HeartBeatService, MessageListener
+public class HeartBeatServiceImpl implements HeartBeatService
 {
 	private static final Logger logger = LoggerFactory.getLogger(HeartBeatServiceImpl.class);
-	@Autowired
-	private JmsTemplate jmsTemplate;
-	private boolean hasStarted = false;
-	@Value("${spring.activemq.heartbeat.topic}")
-	String heartbeatTopic;
-	@Value("${heartbeat.check.maximum.interval}")
-	long heartbeatCheckMaximumInterval;
-	private boolean isPrimary;
-	private String heartbeatSender;
-	private String heartbeatUID;
-	private LocalDateTime lastTimeStamp;
-	private String uid = UUID.randomUUID().toString();
-
-	@Scheduled(fixedDelay=100)
-	public void ping()
+	private static final int MAGIC = 0x48425431;
+	private static final int HEARTBEAT_SIZE = 32;
+	private static final int PRIMARY = 0;
+	private static final int SECONDARY = 1;
+
+	@Value("${heartbeat.local.port}")
+	private int localPort;
+	@Value("${heartbeat.remote.host}")
+	private String remoteHost;
+	@Value("${heartbeat.remote.port}")
+	private int remotePort;
+	@Value("${heartbeat.interval.micros}")
+	private long heartbeatIntervalMicros;
+	@Value("${heartbeat.maximum.gap.micros}")
+	private long maximumGapMicros;
+	@Value("${heartbeat.automatic.promotion}")
+	private boolean isAutomaticPromotion;
+
+	private final long instanceId = ThreadLocalRandom.current().nextLong();
+	private final ByteBuffer sendBuffer = ByteBuffer.allocateDirect(HEARTBEAT_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+	private final ByteBuffer receiveBuffer = ByteBuffer.allocateDirect(HEARTBEAT_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+	private volatile boolean isPrimary;
+	private volatile boolean hasStarted = false;
+	private volatile long epoch = 0;
+	private volatile Consumer<Boolean> roleChangeListener;
+	private DatagramChannel channel;
+	private InetSocketAddress remoteAddress;
+	private Thread heartbeatThread;
+	private long sequence = 0;
+	private volatile long highestEpochSeen = 0;
+	private long lastHeartbeatReceivedTime;
+	private boolean hasHeardPeer = false;
+	private boolean isPeerLost = false;
+	// An instance that has been fenced off stays secondary until it is restarted, so a pair can never keep swapping roles on its own.
+	private boolean isAutomaticPromotionAllowed = true;
+	private int peerRole = -1;
+	private long peerEpoch = -1;
+
+	// Starting again only changes the role, the heartbeat thread keeps running.
+	@Override
+	public synchronized void start(boolean isPrimary)
 	{
-		if(!hasStarted)
+		if(isPrimary && !this.isPrimary)
+			epoch = Math.max(epoch, highestEpochSeen) + 1;
+
+		this.isPrimary = isPrimary;
+		logger.info("Heartbeat service running in {} mode with epoch: {} and instance id: {}", (isPrimary ? "PRIMARY" : "SECONDARY"), epoch, instanceId);
+		if(hasStarted)
 			return;
 
-		jmsTemplate.send(heartbeatTopic, s -> s.createTextMessage((isPrimary? "PRIMARY" : "SECONDARY") + "=" + uid));
+		try
+		{
+			channel = DatagramChannel.open();
+			channel.bind(new InetSocketAddress(localPort));
+			channel.configureBlocking(false);
+			// Connecting restricts the channel to the other instance and lets read and write run without allocating an address per heartbeat.
+			remoteAddress = new InetSocketAddress(remoteHost, remotePort);
+			channel.connect(remoteAddress);
+		}
+		catch(IOException ioe)
+		{
+			logger.error("Cannot start heartbeat on port: " + localPort + " due to exception: " + ioe.getLocalizedMessage());
+			return;
+		}
+
+		hasStarted = true;
+		heartbeatThread = new Thread(this::run, "heartbeat");
+		heartbeatThread.setDaemon(true);
+		heartbeatThread.start();
 	}
 
 	@Override
-	@JmsListener(destination = "${spring.activemq.heartbeat.topic}")
-	public void onMessage(Message message)
+	public void stop()
 	{
-		if(!hasStarted)
-			return;
-
+		hasStarted = false;
 		try
 		{
-			if(message instanceof TextMessage)
+			if(heartbeatThread != null)
+				heartbeatThread.join();
+			if(channel != null)
+				channel.close();
+		}
+		catch(InterruptedException ie)
+		{
+			Thread.currentThread().interrupt();
+		}
+		catch(IOException ioe)
+		{
+			logger.error("Failed to close heartbeat channel due to exception: " + ioe.getLocalizedMessage());
+		}
+		logger.info("Heartbeat service stopped.");
+	}
+
+	@Override
+	public void setRoleChangeListener(Consumer<Boolean> roleChangeListener)
+	{
+		this.roleChangeListener = roleChangeListener;
+	}
+
+	@Override
+	public boolean isPrimary()
+	{
+		return isPrimary;
+	}
+
+	@Override
+	public long getEpoch()
+	{
+		return epoch;
+	}
+
+	private void run()
+	{
+		long intervalNanos = TimeUnit.MICROSECONDS.toNanos(heartbeatIntervalMicros);
+		long maximumGapNanos = TimeUnit.MICROSECONDS.toNanos(maximumGapMicros);
+		long pollNanos = Math.max(1_000, intervalNanos / 4);
+		long nextHeartbeatTime = System.nanoTime();
+
+		while(hasStarted)
+		{
+			long now = System.nanoTime();
+			if(now - nextHeartbeatTime >= 0)
 			{
-				TextMessage textMessage = (TextMessage) message;
-				String[] splitHeartbeat  = textMessage.getText().split("=");
-				if(splitHeartbeat.length == 2)
-				{
-					heartbeatSender = splitHeartbeat[0];
-					heartbeatUID = splitHeartbeat[1];
-				}
-				else
-				{
-					logger.warn("Heartbeat is not in the correct format.");
-					return;
-				}
-				if(heartbeatSender.equals(isPrimary ? "PRIMARY" : "SECONDARY"))
-				{
-					if(!splitHeartbeat[1].equals(uid))
-						logger.error("Another service is also running as {} with a UID: {}", (isPrimary ? "PRIMARY" : "SECONDARY"), heartbeatUID);
-					return;
-				}
-				lastTimeStamp = LocalDateTime.now();
-				logger.info("Received heartbeat message from: {} with UID: {} at: {}", heartbeatSender, heartbeatUID, lastTimeStamp);
+				send();
+				nextHeartbeatTime = now + intervalNanos;
 			}
+
+			while(receive())
+				lastHeartbeatReceivedTime = System.nanoTime();
+
+			checkGap(System.nanoTime(), maximumGapNanos);
+			LockSupport.parkNanos(pollNanos);
+		}
+	}
+
+	private void send()
+	{
+		sendBuffer.clear();
+		sendBuffer.putInt(0, MAGIC);
+		sendBuffer.putInt(4, isPrimary ? PRIMARY : SECONDARY);
+		sendBuffer.putLong(8, epoch);
+		sendBuffer.putLong(16, instanceId);
+		sendBuffer.putLong(24, sequence++);
+		try
+		{
+			channel.write(sendBuffer);
 		}
-		catch(Exception e)
+		catch(PortUnreachableException pue)
 		{
-			logger.error("Received Exception with processing heartbeat: " + e);
+			// The other instance is not listening, the gap detection reports it.
+		}
+		catch(IOException ioe)
+		{
+			logger.error("Failed to send heartbeat to " + remoteAddress + " due to exception: " + ioe.getLocalizedMessage());
 		}
 	}
 
-	@Scheduled(fixedDelay=200)
-	private void checkHeartbeat()
+	// Returns true when a heartbeat from the other instance was received.
+	private boolean receive()
 	{
-		if(hasStarted && heartbeatSender != null && !heartbeatSender.isEmpty() && heartbeatSender.equals(isPrimary ? "PRIMARY" : "SECONDARY") && lastTimeStamp !=null)
+		try
+		{
+			receiveBuffer.clear();
+			if(channel.read(receiveBuffer) <= 0)
+				return false;
+		}
+		catch(PortUnreachableException pue)
 		{
-			long gap = Math.abs(ChronoUnit.MILLIS.between(lastTimeStamp, LocalDateTime.now()));
-			if(gap > heartbeatCheckMaximumInterval)
-				logger.error("Heartbeat error!! Sender: {}, lastTimeStamp: {}, gap: {}, maxInterval: {}", heartbeatSender, lastTimeStamp, gap, heartbeatCheckMaximumInterval);
+			return false;
 		}
+		catch(IOException ioe)
+		{
+			logger.error("Failed to receive heartbeat due to exception: " + ioe.getLocalizedMessage());
+			return false;
+		}
+
+		if(receiveBuffer.position() != HEARTBEAT_SIZE || receiveBuffer.getInt(0) != MAGIC || receiveBuffer.getLong(16) == instanceId)
+			return false;
+
+		int peerRole = receiveBuffer.getInt(4);
+		long peerEpoch = receiveBuffer.getLong(8);
+		highestEpochSeen = Math.max(highestEpochSeen, peerEpoch);
+		// Heartbeats arrive every interval so conflicts are only reported when something changes.
+		boolean hasPeerChanged = !hasHeardPeer || isPeerLost || peerRole != this.peerRole || peerEpoch != this.peerEpoch;
+		this.peerRole = peerRole;
+		this.peerEpoch = peerEpoch;
+		hasHeardPeer = true;
+		isPeerLost = false;
+
+		if(hasPeerChanged)
+			logger.info("Heartbeat received from {} with epoch: {}", (peerRole == PRIMARY ? "PRIMARY" : "SECONDARY"), peerEpoch);
+
+		if(peerRole == PRIMARY && isPrimary)
+		{
+			if(peerEpoch > epoch)
+			{
+				logger.error("Heard a primary with the higher epoch: {} than our epoch: {}, stepping down to SECONDARY.", peerEpoch, epoch);
+				isAutomaticPromotionAllowed = false;
+				changeRole(false);
+			}
+			else if(peerEpoch == epoch && hasPeerChanged)
+				logger.error("Another instance is also running as PRIMARY with the same epoch: {}", epoch);
+		}
+		else if(peerRole == SECONDARY && !isPrimary && hasPeerChanged)
+			logger.error("Another instance is also running as SECONDARY.");
+
+		return true;
 	}
 
-	@Override
-	public void start(boolean isPrimary)
+	// Only a secondary whose peer was last heard as the primary promotes itself, so starting up before the primary does not cause a failover.
+	private void checkGap(long now, long maximumGapNanos)
 	{
-		this.isPrimary = isPrimary;
-		logger.info("Heartbeat service started running in {} mode with UID: {}", (isPrimary ? "PRIMARY" : "SECONDARY"), uid);
-		hasStarted = true;
-		ping();
+		if(!hasHeardPeer || isPeerLost || now - lastHeartbeatReceivedTime <= maximumGapNanos)
+			return;
+
+		isPeerLost = true;
+		logger.error("Heartbeat gap of {} micros exceeds the maximum of {} micros while running as {}.", TimeUnit.NANOSECONDS.toMicros(now - lastHeartbeatReceivedTime),
+				maximumGapMicros, (isPrimary ? "PRIMARY" : "SECONDARY"));
+
+		if(!isPrimary && isAutomaticPromotion && isAutomaticPromotionAllowed && peerRole == PRIMARY)
+		{
+			logger.error("Primary is lost, promoting this instance to PRIMARY.");
+			changeRole(true);
+		}
 	}
 
-	@Override
-	public void stop()
+	private void changeRole(boolean isPrimary)
 	{
-		hasStarted = false;
+		Consumer<Boolean> roleChangeListener = this.roleChangeListener;
+		if(roleChangeListener != null)
+			roleChangeListener.accept(isPrimary);
+		else
+			start(isPrimary);
 	}
 }
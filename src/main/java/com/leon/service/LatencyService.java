@@ -0,0 +1,12 @@
+package com.leon.service;
+
+import com.leon.model.LatencyStage;
+import com.leon.model.RequestTypeEnum;
+import java.util.Map;
+
+public interface LatencyService
+{
+    boolean isEnabled();
+    void record(LatencyStage stage, RequestTypeEnum requestType, long nanos);
+    Map<String, Object> getLatencies();
+}
@@ -0,0 +1,122 @@
+package com.leon.service;
+
+import com.leon.model.LatencyStage;
+import com.leon.model.RequestTypeEnum;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import javax.annotation.PostConstruct;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// One HdrHistogram recorder per stage and request type, all allocated up front so that recording a latency on a handler thread is a few
+// atomic increments and never allocates. Recorders take concurrent writers, so the shards share them.
+// Each read swaps out the interval histograms, reports the interval since the previous read and adds it to the totals since start.
+@Service
+public class LatencyServiceImpl implements LatencyService
+{
+    private static final Logger logger = LoggerFactory.getLogger(LatencyServiceImpl.class);
+    // Two significant digits keep each histogram to a few tens of kilobytes, longer latencies are recorded as the highest trackable value.
+    private static final long HIGHEST_TRACKABLE_NANOS = 10_000_000_000L;
+    private static final int SIGNIFICANT_DIGITS = 2;
+    private static final LatencyStage[] STAGES = LatencyStage.values();
+    private static final RequestTypeEnum[] REQUEST_TYPES = RequestTypeEnum.values();
+
+    @Value("${latency.recording.enabled:true}")
+    private boolean isEnabled;
+
+    private Recorder[][] recorders;
+    private Histogram[][] intervalHistograms;
+    private Histogram[][] totalHistograms;
+    private long lastReadTime;
+
+    @PostConstruct
+    public void initialization()
+    {
+        recorders = new Recorder[STAGES.length][REQUEST_TYPES.length];
+        intervalHistograms = new Histogram[STAGES.length][REQUEST_TYPES.length];
+        totalHistograms = new Histogram[STAGES.length][REQUEST_TYPES.length];
+        if(isEnabled)
+        {
+            for(int stage = 0; stage < STAGES.length; stage++)
+            {
+                for(int requestType = 0; requestType < REQUEST_TYPES.length; requestType++)
+                {
+                    recorders[stage][requestType] = new Recorder(1, HIGHEST_TRACKABLE_NANOS, SIGNIFICANT_DIGITS);
+                    totalHistograms[stage][requestType] = new Histogram(1, HIGHEST_TRACKABLE_NANOS, SIGNIFICANT_DIGITS);
+                }
+            }
+        }
+        lastReadTime = System.currentTimeMillis();
+        logger.info("Latency recording is " + (isEnabled ? "enabled" : "disabled") + ".");
+    }
+
+    @Override
+    public boolean isEnabled()
+    {
+        return isEnabled;
+    }
+
+    @Override
+    public void record(LatencyStage stage, RequestTypeEnum requestType, long nanos)
+    {
+        if(!isEnabled || requestType == null)
+            return;
+
+        recorders[stage.ordinal()][requestType.ordinal()].recordValue(Math.max(1, Math.min(nanos, HIGHEST_TRACKABLE_NANOS)));
+    }
+
+    // Only stages and request types that have recorded anything since start are reported, in nanoseconds.
+    @Override
+    public synchronized Map<String, Object> getLatencies()
+    {
+        Map<String, Object> latencies = new LinkedHashMap<>();
+        long now = System.currentTimeMillis();
+        latencies.put("enabled", isEnabled);
+        latencies.put("unit", "nanoseconds");
+        latencies.put("intervalMillis", now - lastReadTime);
+        lastReadTime = now;
+
+        Map<String, Object> stages = new LinkedHashMap<>();
+        latencies.put("stages", stages);
+        if(!isEnabled)
+            return latencies;
+
+        for(int stage = 0; stage < STAGES.length; stage++)
+        {
+            Map<String, Object> requestTypes = new LinkedHashMap<>();
+            for(int requestType = 0; requestType < REQUEST_TYPES.length; requestType++)
+            {
+                Histogram intervalHistogram = recorders[stage][requestType].getIntervalHistogram(intervalHistograms[stage][requestType]);
+                intervalHistograms[stage][requestType] = intervalHistogram;
+                Histogram totalHistogram = totalHistograms[stage][requestType];
+                totalHistogram.add(intervalHistogram);
+                if(totalHistogram.getTotalCount() == 0)
+                    continue;
+
+                Map<String, Object> histograms = new LinkedHashMap<>();
+                histograms.put("interval", summarize(intervalHistogram));
+                histograms.put("total", summarize(totalHistogram));
+                requestTypes.put(REQUEST_TYPES[requestType].name(), histograms);
+            }
+
+            if(!requestTypes.isEmpty())
+                stages.put(STAGES[stage].name(), requestTypes);
+        }
+        return latencies;
+    }
+
+    private Map<String, Object> summarize(Histogram histogram)
+    {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("count", histogram.getTotalCount());
+        summary.put("p50", histogram.getValueAtPercentile(50.0));
+        summary.put("p99", histogram.getValueAtPercentile(99.0));
+        summary.put("p99.9", histogram.getValueAtPercentile(99.9));
+        summary.put("max", histogram.getMaxValue());
+        return summary;
+    }
+}
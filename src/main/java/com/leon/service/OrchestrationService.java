@@ -2,13 +2,16 @@ package com.leon.service;
 
 import com.leon.model.Inventory;
 import java.util.List;
+import java.util.Map;
 
 public interface OrchestrationService
 {
     void start();
+    void recover();
     void stop();
     void upload(String filePath);
     List<Inventory> getInventory();
+    List<Map<String, Object>> getRingMetrics();
     void clearInventory();
     void updateInventory(Inventory inventory);
     void deleteInventory(Inventory inventory);
@@ -1,36 +1,53 @@
 package com.leon.service;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.leon.handler.InboundJournalEventHandler;
 import com.leon.handler.InventoryCheckEventHandler;
 import com.leon.handler.OutboundJournalEventHandler;
 import com.leon.handler.PublishingEventHandler;
+import com.leon.handler.ReplicationEventHandler;
+import com.leon.io.ChronicleInventoryWriter;
 import com.leon.io.DisruptorReader;
 import com.leon.io.DisruptorWriter;
-import com.leon.model.DisruptorPayload;
+import com.leon.io.JMSDisruptorReader;
+import com.leon.io.EventLogWriter;
+import com.leon.io.InventorySnapshotWriter;
+import com.leon.io.JournalReader;
+import com.leon.io.JournalWriter;
+import com.leon.io.ReplicationReceiver;
+import com.leon.model.BinaryCodec;
 import com.leon.model.Inventory;
+import com.leon.model.JournalDurabilityPolicy;
+import com.leon.model.RequestTypeEnum;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.BeanFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.jms.annotation.JmsListener;
+import org.springframework.jms.config.JmsListenerEndpointRegistry;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.PostConstruct;
+import javax.jms.BytesMessage;
 import javax.jms.Message;
 import javax.jms.MessageListener;
 import javax.jms.TextMessage;
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 @Service
 public class OrchestrationServiceImpl implements OrchestrationService, MessageListener
 {
     private static final Logger logger = LoggerFactory.getLogger(OrchestrationServiceImpl.class);
-    @Autowired
-    private DisruptorService inboundDisruptor;
-    @Autowired
-    private DisruptorService outboundDisruptor;
+    private static final String REQUEST_LISTENER_ID = "requestListener";
     @Autowired
     private ConfigurationServiceImpl configurationService;
     @Autowired
@@ -41,33 +58,186 @@ public class OrchestrationServiceImpl implements OrchestrationService, MessageLi
     private BeanFactory beanFactory;
     @Autowired
     private HeartBeatService heartbeatService;
+    @Autowired
+    private LatencyService latencyService;
+    @Autowired
+    private JmsListenerEndpointRegistry jmsListenerEndpointRegistry;
 
-    private InventoryCheckEventHandler inventoryCheckEventHandler;
+    // Each shard has its own inbound disruptor, business handler, partition of the inventory and ordered outbound stage.
+    private DisruptorService[] inboundDisruptors;
+    private DisruptorService[] outboundDisruptors;
+    private InventoryCheckEventHandler[] inventoryCheckEventHandlers;
+    private DisruptorWriter[] responseWriters;
+    private JournalWriter[] inboundJournalWriters;
+    private JournalWriter[] outboundJournalWriters;
+    private InventorySnapshotWriter[] inventorySnapshotWriters;
+    // Binary audit logs of the business and publishing threads of each shard, null when the event log is disabled.
+    private EventLogWriter[] inventoryEventLogs;
+    private EventLogWriter[] publishingEventLogs;
+    // The primary streams each inbound shard to the secondary on replication.port plus the shard number.
+    private ReplicationEventHandler[] replicationEventHandlers;
+    private ReplicationReceiver[] replicationReceivers;
+    private long[] lastRecoveredSequences;
+    private ShardRouter shardRouter;
     private DisruptorReader requestReader;
-    private DisruptorWriter responseWriter;
+    private boolean hasStartedRequestReader = false;
 
     @Value("${disruptor.reader.class}")
     private String disruptorReaderClass;
     @Value("${disruptor.writer.class}")
     private String disruptorWriterClass;
+    @Value("${inbound.journal.path}")
+    private String inboundJournalPath;
+    @Value("${inbound.journal.segment.size}")
+    private int inboundJournalSegmentSize;
+    @Value("${inbound.journal.durability}")
+    private JournalDurabilityPolicy inboundJournalDurability;
+    @Value("${inbound.journal.sync.interval.millis}")
+    private long inboundJournalSyncIntervalMillis;
+    @Value("${outbound.journal.path}")
+    private String outboundJournalPath;
+    @Value("${outbound.journal.segment.size:134217728}")
+    private int outboundJournalSegmentSize;
+    @Value("${outbound.journal.durability:PERIODIC}")
+    private JournalDurabilityPolicy outboundJournalDurability;
+    @Value("${outbound.journal.sync.interval.millis:100}")
+    private long outboundJournalSyncIntervalMillis;
+    // When set, the inbound and outbound journals of each session are captured into a directory named after its start time.
+    @Value("${journal.capture.path:}")
+    private String journalCapturePath;
     @Value("${inbound.journal.recovery.file.path}")
     private String inboundJournalRecoveryFilePath;
+    @Value("${startOfDayInventoryPositionFilePath}")
+    private String startOfDayInventoryPositionFilePath;
+    @Value("${inventory.snapshot.path}")
+    private String inventorySnapshotPath;
+    @Value("${inventory.snapshot.interval.millis}")
+    private long inventorySnapshotIntervalMillis;
+    @Value("${inventory.snapshot.retained.count}")
+    private int inventorySnapshotRetainedCount;
+    @Value("${replication.enabled}")
+    private boolean replicationEnabled;
+    @Value("${replication.host}")
+    private String replicationHost;
+    @Value("${replication.port}")
+    private int replicationPort;
+    @Value("${replication.acknowledgement.timeout.millis}")
+    private long replicationAcknowledgementTimeoutMillis;
     @Value("${chronicle.map.file.path}")
     private String chronicleMapFilePath;
+    @Value("${chronicle.map.legacy.file.path:}")
+    private String legacyChronicleMapFilePath;
+    @Value("${chronicle.write.behind.buffer.size:4096}")
+    private int chronicleWriteBehindBufferSize;
+    @Value("${chronicle.write.behind.maximum.batch.size:256}")
+    private int chronicleWriteBehindMaximumBatchSize;
+    @Value("${event.log.enabled:true}")
+    private boolean eventLogEnabled;
+    @Value("${event.log.path:../logs/event-log}")
+    private String eventLogPath;
+    @Value("${event.log.capacity:262144}")
+    private int eventLogCapacity;
+    @Value("${reader.batch.size}")
+    private int readerBatchSize;
+    @Value("${inbound.shard.count}")
+    private int shardCount;
 
     private boolean hasStarted = false;
+    private final ObjectMapper objectMapper = new ObjectMapper();
 
     @PostConstruct
     public void initialization()
     {
-        inventoryCheckEventHandler = new InventoryCheckEventHandler(outboundDisruptor, instrumentService, fxService);
-        inventoryCheckEventHandler.start(chronicleMapFilePath);
-        responseWriter = beanFactory.getBean(disruptorWriterClass, DisruptorWriter.class);
+        inboundDisruptors = new DisruptorService[shardCount];
+        outboundDisruptors = new DisruptorService[shardCount];
+        inventoryCheckEventHandlers = new InventoryCheckEventHandler[shardCount];
+        responseWriters = new DisruptorWriter[shardCount];
+        inboundJournalWriters = new JournalWriter[shardCount];
+        outboundJournalWriters = new JournalWriter[shardCount];
+        inventorySnapshotWriters = new InventorySnapshotWriter[shardCount];
+        inventoryEventLogs = new EventLogWriter[shardCount];
+        publishingEventLogs = new EventLogWriter[shardCount];
+        replicationEventHandlers = new ReplicationEventHandler[shardCount];
+        replicationReceivers = new ReplicationReceiver[shardCount];
+        lastRecoveredSequences = new long[shardCount];
+        Arrays.fill(lastRecoveredSequences, -1);
+        ChronicleInventoryWriter[] inventoryWriters = new ChronicleInventoryWriter[shardCount];
+
+        for(int shard = 0; shard < shardCount; shard++)
+        {
+            inboundDisruptors[shard] = beanFactory.getBean(DisruptorService.class);
+            outboundDisruptors[shard] = beanFactory.getBean(DisruptorService.class);
+            inventoryCheckEventHandlers[shard] = new InventoryCheckEventHandler(outboundDisruptors[shard], instrumentService, fxService, shard, shardCount);
+            inventoryCheckEventHandlers[shard].setLatencyService(latencyService);
+            // The legacy map predates sharding, so every shard migrates its own positions from the one file.
+            ChronicleInventoryWriter inventoryWriter = new ChronicleInventoryWriter(shardPath(chronicleMapFilePath, shard), legacyChronicleMapFilePath, chronicleWriteBehindBufferSize);
+            inventoryWriter.setShard(shard, shardCount);
+            inventoryWriter.setLatencyService(latencyService);
+            inventoryCheckEventHandlers[shard].start(inventoryWriter, chronicleWriteBehindMaximumBatchSize);
+            inventoryWriters[shard] = inventoryWriter;
+            responseWriters[shard] = beanFactory.getBean(disruptorWriterClass, DisruptorWriter.class);
+            inboundJournalWriters[shard] = new JournalWriter(shardPath(inboundJournalPath, shard), inboundJournalSegmentSize, inboundJournalDurability, inboundJournalSyncIntervalMillis);
+            outboundJournalWriters[shard] = new JournalWriter(shardPath(outboundJournalPath, shard), outboundJournalSegmentSize, outboundJournalDurability, outboundJournalSyncIntervalMillis);
+            // Once a snapshot is on disk the journal segments it covers are no longer needed for recovery.
+            JournalWriter inboundJournalWriter = inboundJournalWriters[shard];
+            inventorySnapshotWriters[shard] = new InventorySnapshotWriter(shardPath(inventorySnapshotPath, shard), inventorySnapshotRetainedCount, inboundJournalWriter::truncateBefore);
+            inventoryCheckEventHandlers[shard].setSnapshotWriter(inventorySnapshotWriters[shard], inventorySnapshotIntervalMillis);
+            if(eventLogEnabled)
+            {
+                inventoryEventLogs[shard] = openEventLog(shardPath(eventLogPath + ".inventory", shard));
+                publishingEventLogs[shard] = openEventLog(shardPath(eventLogPath + ".publishing", shard));
+                inventoryCheckEventHandlers[shard].setEventLog(inventoryEventLogs[shard]);
+            }
+            if(replicationEnabled)
+            {
+                replicationEventHandlers[shard] = new ReplicationEventHandler(replicationHost, replicationPort + shard, replicationAcknowledgementTimeoutMillis);
+                replicationReceivers[shard] = new ReplicationReceiver(replicationPort + shard, inboundDisruptors[shard]);
+            }
+            PublishingEventHandler publishingEventHandler = new PublishingEventHandler(responseWriters[shard], replicationEventHandlers[shard], publishingEventLogs[shard]);
+            publishingEventHandler.setLatencyService(latencyService);
+            publishingEventHandler.setRingStatistics(outboundDisruptors[shard].getStatistics());
+            inventoryCheckEventHandlers[shard].setRingStatistics(inboundDisruptors[shard].getStatistics());
+            inboundDisruptors[shard].setLatencyService(latencyService);
+            inboundDisruptors[shard].start(shardName("INBOUND", shard), new InboundJournalEventHandler(inboundJournalWriters[shard]), replicationEventHandlers[shard], inventoryCheckEventHandlers[shard]);
+            outboundDisruptors[shard].start(shardName("OUTBOUND", shard), new OutboundJournalEventHandler(outboundJournalWriters[shard]), publishingEventHandler);
+        }
+
+        if(!legacyChronicleMapFilePath.isEmpty() && new File(legacyChronicleMapFilePath).exists()
+                && Arrays.stream(inventoryWriters).allMatch(ChronicleInventoryWriter::hasMigratedLegacyChronicleMap))
+            ChronicleInventoryWriter.retireLegacyChronicleMap(legacyChronicleMapFilePath);
+
+        shardRouter = new ShardRouter(inboundDisruptors);
         requestReader = beanFactory.getBean(disruptorReaderClass, DisruptorReader.class);
-        inboundDisruptor.start("INBOUND", new InboundJournalEventHandler(), inventoryCheckEventHandler);
-        outboundDisruptor.start("OUTBOUND", new OutboundJournalEventHandler(), new PublishingEventHandler(responseWriter));
-        heartbeatService.start(true);
-        logger.info("Completed initialization of components with isPrimary mode = " + configurationService.isPrimary());
+        requestReader.setShardRouter(shardRouter);
+        heartbeatService.setRoleChangeListener(this::changeRole);
+        heartbeatService.start(configurationService.isPrimary());
+        logger.info("Completed initialization of " + shardCount + " shard(s) with isPrimary mode = " + configurationService.isPrimary());
+    }
+
+    // Returns null when the log cannot be created, the shard then runs without it.
+    private EventLogWriter openEventLog(String path)
+    {
+        try
+        {
+            EventLogWriter eventLog = new EventLogWriter(path, eventLogCapacity);
+            eventLog.open();
+            return eventLog;
+        }
+        catch(IOException ioe)
+        {
+            logger.error("Unable to open event log: " + path + " due to exception: " + ioe.getLocalizedMessage());
+            return null;
+        }
+    }
+
+    private String shardName(String ringName, int shard)
+    {
+        return shardCount == 1 ? ringName : ringName + "-" + shard;
+    }
+
+    private String shardPath(String path, int shard)
+    {
+        return shardCount == 1 ? path : path + "." + shard;
     }
 
     @Override
@@ -75,24 +245,218 @@ public class OrchestrationServiceImpl implements OrchestrationService, MessageLi
     {
         if(!hasStarted)
         {
-            logger.info("Now starting to listen to inbound requests...");
-            requestReader.start();
-            requestReader.readAll().subscribe((request) -> inboundDisruptor.push(request));
-            hasStarted = true;
+            for(InventorySnapshotWriter inventorySnapshotWriter : inventorySnapshotWriters)
+                inventorySnapshotWriter.deleteSnapshots();
+            startIngestion(false);
         }
         else
             logger.error("Cannot start components because they have already been started.");
     }
 
+    // Rebuilds the inventory from the latest snapshot, or the start of day positions when there is none, plus the tail of the inbound journal
+    // of the previous session, then starts live ingestion. Each shard recovers on its own thread straight into its handler, bypassing the ring,
+    // with outbound publishing suppressed.
+    @Override
+    public void recover()
+    {
+        if(hasStarted)
+        {
+            logger.error("Cannot recover because components have already been started.");
+            return;
+        }
+
+        long[] lastSequences = new long[shardCount];
+        boolean[] hasReplayed = new boolean[shardCount];
+        Thread[] replayers = new Thread[shardCount];
+        long start = System.nanoTime();
+
+        for(int shard = 0; shard < shardCount; shard++)
+        {
+            final int replayedShard = shard;
+            replayers[shard] = new Thread(() ->
+            {
+                InventoryCheckEventHandler inventoryCheckEventHandler = inventoryCheckEventHandlers[replayedShard];
+                inventoryCheckEventHandler.setReplaying(true);
+                try
+                {
+                    File snapshot = inventorySnapshotWriters[replayedShard].findLatestSnapshot();
+                    long snapshotSequence = snapshot == null ? -1 : InventorySnapshotWriter.sequenceOf(snapshot);
+                    inventoryCheckEventHandler.uploadSODPositions(snapshot == null ? startOfDayInventoryPositionFilePath : snapshot.getPath());
+                    long journalSequence = new JournalReader(shardPath(inboundJournalRecoveryFilePath, replayedShard)).replay(snapshotSequence + 1, inventoryCheckEventHandler);
+                    // The journal may lag the snapshot because both run in parallel behind the inbound ring.
+                    lastSequences[replayedShard] = Math.max(snapshotSequence, journalSequence);
+                    inventoryCheckEventHandler.setLastProcessedUid(lastSequences[replayedShard]);
+                    hasReplayed[replayedShard] = true;
+                }
+                catch(Exception e)
+                {
+                    logger.error("Failed to replay inbound journal of shard " + replayedShard + " due to exception: " + e.getLocalizedMessage());
+                }
+                finally
+                {
+                    inventoryCheckEventHandler.setReplaying(false);
+                }
+            }, "journal-replayer-" + shard);
+            replayers[shard].start();
+        }
+
+        try
+        {
+            for(Thread replayer : replayers)
+                replayer.join();
+        }
+        catch(InterruptedException ie)
+        {
+            Thread.currentThread().interrupt();
+            logger.error("Interrupted while waiting for the inbound journal replay to complete.");
+            return;
+        }
+
+        for(int shard = 0; shard < shardCount; shard++)
+        {
+            if(!hasReplayed[shard])
+            {
+                logger.error("Cannot start components because the inbound journal of shard " + shard + " could not be replayed.");
+                return;
+            }
+            inboundDisruptors[shard].setNextUid(lastSequences[shard] + 1);
+            lastRecoveredSequences[shard] = lastSequences[shard];
+        }
+
+        logger.info("Recovered " + shardCount + " shard(s) in " + (System.nanoTime() - start) / 1_000_000 + " ms.");
+        // Recovering from the live journal carries on appending to it so that it stays complete for the next recovery.
+        startIngestion(inboundJournalRecoveryFilePath.equals(inboundJournalPath));
+    }
+
+    private void startIngestion(boolean appendToJournal)
+    {
+        File captureDirectory = journalCapturePath.isEmpty() ? null : new File(journalCapturePath, new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()));
+        try
+        {
+            for(int shard = 0; shard < shardCount; shard++)
+            {
+                inboundJournalWriters[shard].setCaptureDirectory(captureDirectory);
+                inboundJournalWriters[shard].open(appendToJournal);
+                outboundJournalWriters[shard].setCaptureDirectory(captureDirectory);
+                outboundJournalWriters[shard].open(appendToJournal);
+            }
+        }
+        catch(IOException ioe)
+        {
+            logger.error("Cannot start components because the journals could not be opened: " + ioe.getLocalizedMessage());
+            return;
+        }
+
+        for(InventorySnapshotWriter inventorySnapshotWriter : inventorySnapshotWriters)
+            inventorySnapshotWriter.start();
+
+        // The secondary takes its inbound sequence from the primary only, inbound requests are ignored until it is promoted.
+        if(!configurationService.isPrimary())
+        {
+            if(!startReplicationReceivers(lastRecoveredSequences))
+                return;
+
+            hasStarted = true;
+            logger.info("Started in SECONDARY mode, waiting for replication from the primary.");
+            return;
+        }
+
+        startReplication();
+        startRequestReader();
+        hasStarted = true;
+    }
+
+    // A JMS reader takes over the request topic from the listener, which is stopped so that requests are not consumed twice.
+    private void startRequestReader()
+    {
+        if(hasStartedRequestReader)
+            return;
+
+        if(requestReader instanceof JMSDisruptorReader && jmsListenerEndpointRegistry.getListenerContainer(REQUEST_LISTENER_ID) != null)
+            jmsListenerEndpointRegistry.getListenerContainer(REQUEST_LISTENER_ID).stop();
+
+        logger.info("Now starting to listen to inbound requests...");
+        requestReader.start();
+        // Batches are handed over one at a time, so a single array carries all of them to the router.
+        String[] readerBatch = new String[readerBatchSize];
+        requestReader.readBatches(readerBatchSize).subscribe((requests) -> shardRouter.pushAll(requests.toArray(readerBatch), requests.size()));
+        hasStartedRequestReader = true;
+    }
+
+    private void startReplication()
+    {
+        if(replicationEnabled)
+        {
+            for(ReplicationEventHandler replicationEventHandler : replicationEventHandlers)
+                replicationEventHandler.start();
+        }
+    }
+
+    private void stopReplication()
+    {
+        if(replicationEnabled)
+        {
+            for(ReplicationEventHandler replicationEventHandler : replicationEventHandlers)
+                replicationEventHandler.stop();
+        }
+    }
+
+    private boolean startReplicationReceivers(long[] lastSequences)
+    {
+        if(!replicationEnabled)
+            return true;
+
+        try
+        {
+            for(int shard = 0; shard < shardCount; shard++)
+                replicationReceivers[shard].start(lastSequences[shard]);
+            return true;
+        }
+        catch(IOException ioe)
+        {
+            logger.error("Cannot start replication receivers: " + ioe.getLocalizedMessage());
+            return false;
+        }
+    }
+
+    private void stopReplicationReceivers()
+    {
+        if(replicationEnabled)
+        {
+            for(ReplicationReceiver replicationReceiver : replicationReceivers)
+                replicationReceiver.stop();
+        }
+    }
+
     @Override
     public void stop()
     {
         if(hasStarted)
         {
-            inventoryCheckEventHandler.stop();
-            inboundDisruptor.stop();
-            outboundDisruptor.stop();
+            // Ingress stops first so that each inbound ring can drain before the handler behind it closes its inventory writer, then the
+            // outbound ring drains before the response writer closes.
+            if(!configurationService.isPrimary())
+                stopReplicationReceivers();
+            if(jmsListenerEndpointRegistry.getListenerContainer(REQUEST_LISTENER_ID) != null)
+                jmsListenerEndpointRegistry.getListenerContainer(REQUEST_LISTENER_ID).stop();
             requestReader.stop();
+
+            for(int shard = 0; shard < shardCount; shard++)
+            {
+                inboundDisruptors[shard].stop();
+                inventoryCheckEventHandlers[shard].stop();
+                outboundDisruptors[shard].stop();
+                responseWriters[shard].stop();
+                if(inventoryEventLogs[shard] != null)
+                    inventoryEventLogs[shard].close();
+                if(publishingEventLogs[shard] != null)
+                    publishingEventLogs[shard].close();
+                inboundJournalWriters[shard].close();
+                outboundJournalWriters[shard].close();
+                inventorySnapshotWriters[shard].stop();
+            }
+            if(configurationService.isPrimary())
+                stopReplication();
             heartbeatService.stop();
             logger.info("Shutdown and cleanup completed.");
         }
@@ -104,7 +468,10 @@ public class OrchestrationServiceImpl implements OrchestrationService, MessageLi
     public void upload(String sodFilePath)
     {
         if(!hasStarted)
-            inventoryCheckEventHandler.uploadSODPositions(sodFilePath);
+        {
+            for(InventoryCheckEventHandler inventoryCheckEventHandler : inventoryCheckEventHandlers)
+                inventoryCheckEventHandler.uploadSODPositions(sodFilePath);
+        }
         else
             logger.error("Cannot upload SOD file because orchestration service is not in the right state.");
     }
@@ -112,42 +479,108 @@ public class OrchestrationServiceImpl implements OrchestrationService, MessageLi
     @Override
     public List<Inventory> getInventory()
     {
-        return inventoryCheckEventHandler == null ? new ArrayList<>() : inventoryCheckEventHandler.getInventory();
+        List<Inventory> inventory = new ArrayList<>();
+        if(inventoryCheckEventHandlers != null)
+        {
+            for(InventoryCheckEventHandler inventoryCheckEventHandler : inventoryCheckEventHandlers)
+                inventory.addAll(inventoryCheckEventHandler.getInventory());
+        }
+        return inventory;
+    }
+
+    @Override
+    public List<Map<String, Object>> getRingMetrics()
+    {
+        List<Map<String, Object>> ringMetrics = new ArrayList<>();
+        for(int shard = 0; shard < shardCount; shard++)
+        {
+            ringMetrics.add(inboundDisruptors[shard].getMetrics());
+            ringMetrics.add(outboundDisruptors[shard].getMetrics());
+        }
+        return ringMetrics;
     }
 
     @Override
     public void clearInventory()
     {
-        inventoryCheckEventHandler.clearInventory();
+        for(DisruptorService inboundDisruptor : inboundDisruptors)
+            inboundDisruptor.push(RequestTypeEnum.INVENTORY_CLEAR + "={}");
     }
 
+    // Inventory changes are sequenced through the inbound ring of the owning shard, the only thread that may write to its inventory store.
     @Override
     public void updateInventory(Inventory inventory)
     {
-        inventoryCheckEventHandler.updateInventory(inventory);
+        pushInventory(RequestTypeEnum.INVENTORY_UPDATE, inventory);
     }
 
     @Override
     public void deleteInventory(Inventory inventory)
     {
-        inventoryCheckEventHandler.deleteInventory(inventory);
+        pushInventory(RequestTypeEnum.INVENTORY_DELETE, inventory);
+    }
+
+    private void pushInventory(RequestTypeEnum requestType, Inventory inventory)
+    {
+        try
+        {
+            shardRouter.push(requestType + "=" + objectMapper.writeValueAsString(inventory));
+        }
+        catch(JsonProcessingException jpe)
+        {
+            logger.error("Unable to encode inventory: " + inventory + " for " + requestType + ". Exception thrown: " + jpe.getLocalizedMessage());
+        }
     }
 
+    // Once started, the promoted secondary already holds the replicated state so it only has to continue the uids after the last
+    // replicated sequence and start accepting requests. The demoted primary stops replicating and waits for the new primary's stream.
     @Override
-    public boolean togglePrimary()
+    public synchronized boolean togglePrimary()
     {
-        boolean isPrimary = responseWriter.togglePrimary();
+        boolean isPrimary = false;
+        for(DisruptorWriter responseWriter : responseWriters)
+            isPrimary = responseWriter.togglePrimary();
+
+        if(hasStarted && isPrimary)
+        {
+            stopReplicationReceivers();
+            if(replicationEnabled)
+            {
+                for(int shard = 0; shard < shardCount; shard++)
+                    inboundDisruptors[shard].setNextUid(replicationReceivers[shard].getLastSequence() + 1);
+            }
+            startReplication();
+            // A JMS reader only runs on the primary, so a promoted secondary starts its own. Other readers have nothing left to read.
+            if(requestReader instanceof JMSDisruptorReader)
+                startRequestReader();
+        }
+        else if(hasStarted)
+        {
+            stopReplication();
+            long[] lastSequences = new long[shardCount];
+            for(int shard = 0; shard < shardCount; shard++)
+                lastSequences[shard] = inboundDisruptors[shard].getNextUid() - 1;
+            startReplicationReceivers(lastSequences);
+        }
+
         configurationService.setPrimary(isPrimary);
         heartbeatService.start(isPrimary);
         logger.info("After toggling, the configuration of isPrimary mode is set to: " + isPrimary);
         return isPrimary;
     }
 
+    // Called by the heartbeat service when it promotes this instance or fences it off after hearing a primary with a higher epoch.
+    private synchronized void changeRole(boolean isPrimary)
+    {
+        if(configurationService.isPrimary() != isPrimary)
+            togglePrimary();
+    }
+
     @Override
-	@JmsListener(destination = "${spring.activemq.position.check.request.topic}")
+	@JmsListener(id = REQUEST_LISTENER_ID, destination = "${spring.activemq.position.check.request.topic}")
 	public void onMessage(Message message)
 	{
-        if(!hasStarted)
+        if(!hasStarted || !configurationService.isPrimary())
             return;
 
 		try
@@ -155,11 +588,21 @@ public class OrchestrationServiceImpl implements OrchestrationService, MessageLi
 			if(message instanceof TextMessage)
 			{
 				TextMessage textMessage = (TextMessage) message;
-				String[] splitInput  = textMessage.getText().split("=");
-				if (splitInput.length == 2)
-                    inboundDisruptor.push(new DisruptorPayload(splitInput[0], splitInput[1]));
+				String text = textMessage.getText();
+				if (RequestTypeEnum.isClientRequest(text))
+                    shardRouter.push(text);
+				else
+					logger.error("Cannot push incorrect message onto disruptor because of its format or type: {}. ", textMessage.getText());
+			}
+			else if(message instanceof BytesMessage)
+			{
+				BytesMessage bytesMessage = (BytesMessage) message;
+				byte[] bytes = new byte[(int) bytesMessage.getBodyLength()];
+				bytesMessage.readBytes(bytes);
+				if(BinaryCodec.isValidRequest(bytes, 0, bytes.length))
+					shardRouter.push(bytes);
 				else
-					logger.error("Cannot push incorrect message onto disruptor because of format: {}. ", textMessage.getText());
+					logger.error("Cannot push incorrect binary message of " + bytes.length + " bytes onto disruptor.");
 			}
 		}
 		catch(Exception e)
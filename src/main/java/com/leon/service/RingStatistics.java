@@ -0,0 +1,90 @@
+package com.leon.service;
+
+import com.leon.model.RequestTypeEnum;
+import com.lmax.disruptor.Sequence;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.SingleWriterRecorder;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Events and batch sizes seen by one consumer of a ring. The counters are Disruptor sequences, which are padded against false sharing,
+// so that the consumer updating them does not slow down the thread reading them or the ring's own sequences next to them in memory.
+// Written by the single consumer thread only, read by any thread.
+public class RingStatistics
+{
+    private static final long HIGHEST_TRACKABLE_BATCH_SIZE = 1 << 20;
+    private static final RequestTypeEnum[] REQUEST_TYPES = RequestTypeEnum.values();
+
+    private final Sequence[] eventCounts = new Sequence[REQUEST_TYPES.length];
+    private final SingleWriterRecorder batchSizes = new SingleWriterRecorder(1, HIGHEST_TRACKABLE_BATCH_SIZE, 2);
+    private long batchSize = 0;
+
+    // Only touched by the reader, under the lock of read.
+    private final long[] lastEventCounts = new long[REQUEST_TYPES.length];
+    private long lastReadTime = System.nanoTime();
+    private Histogram intervalBatchSizes;
+    private final Histogram totalBatchSizes = new Histogram(1, HIGHEST_TRACKABLE_BATCH_SIZE, 2);
+
+    public RingStatistics()
+    {
+        for(int index = 0; index < eventCounts.length; index++)
+            eventCounts[index] = new Sequence(0);
+    }
+
+    public void onEvent(RequestTypeEnum requestType, boolean endOfBatch)
+    {
+        Sequence eventCount = eventCounts[requestType == null ? RequestTypeEnum.NONE.ordinal() : requestType.ordinal()];
+        eventCount.set(eventCount.get() + 1);
+        batchSize++;
+        if(endOfBatch)
+        {
+            batchSizes.recordValue(Math.min(batchSize, HIGHEST_TRACKABLE_BATCH_SIZE));
+            batchSize = 0;
+        }
+    }
+
+    // Rates and the interval batch sizes cover the time since the previous read.
+    public synchronized Map<String, Object> read()
+    {
+        long now = System.nanoTime();
+        double elapsedSeconds = Math.max(1, now - lastReadTime) / 1_000_000_000.0;
+        lastReadTime = now;
+
+        Map<String, Object> events = new LinkedHashMap<>();
+        for(int index = 0; index < REQUEST_TYPES.length; index++)
+        {
+            long eventCount = eventCounts[index].get();
+            if(eventCount == 0)
+                continue;
+
+            Map<String, Object> counts = new LinkedHashMap<>();
+            counts.put("count", eventCount);
+            counts.put("perSecond", (eventCount - lastEventCounts[index]) / elapsedSeconds);
+            events.put(REQUEST_TYPES[index].name(), counts);
+            lastEventCounts[index] = eventCount;
+        }
+
+        intervalBatchSizes = batchSizes.getIntervalHistogram(intervalBatchSizes);
+        totalBatchSizes.add(intervalBatchSizes);
+        Map<String, Object> batches = new LinkedHashMap<>();
+        batches.put("interval", summarize(intervalBatchSizes));
+        batches.put("total", summarize(totalBatchSizes));
+
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("intervalSeconds", elapsedSeconds);
+        statistics.put("events", events);
+        statistics.put("batchSizes", batches);
+        return statistics;
+    }
+
+    private static Map<String, Object> summarize(Histogram histogram)
+    {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("count", histogram.getTotalCount());
+        summary.put("mean", histogram.getTotalCount() == 0 ? 0.0 : histogram.getMean());
+        summary.put("p50", histogram.getValueAtPercentile(50.0));
+        summary.put("p99", histogram.getValueAtPercentile(99.0));
+        summary.put("max", histogram.getMaxValue());
+        return summary;
+    }
+}
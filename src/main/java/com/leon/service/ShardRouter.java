@@ -0,0 +1,112 @@
+package com.leon.service;
+
+import com.leon.model.BinaryCodec;
+import com.leon.model.InventoryKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Routes inbound "PAYLOAD_TYPE=payload" and binary messages to one of the inbound shards using the (instrumentId, clientId) key.
+// Every message for the same key always lands on the same ring, so per-key ordering is kept while the shards run in parallel.
+public class ShardRouter
+{
+    private static final Logger logger = LoggerFactory.getLogger(ShardRouter.class);
+    private static final String INSTRUMENT_ID_FIELD = "\"instrumentId\"";
+    private static final String CLIENT_ID_FIELD = "\"clientId\"";
+
+    private final DisruptorService[] inboundDisruptors;
+    private String[][] shardBatches;
+    private final int[] shardBatchCounts;
+
+    public ShardRouter(DisruptorService[] inboundDisruptors)
+    {
+        if(inboundDisruptors == null || inboundDisruptors.length == 0)
+        {
+            logger.error("Inbound disruptors are invalid.");
+            throw new IllegalArgumentException("Inbound disruptors are invalid.");
+        }
+
+        this.inboundDisruptors = inboundDisruptors;
+        this.shardBatches = new String[inboundDisruptors.length][0];
+        this.shardBatchCounts = new int[inboundDisruptors.length];
+    }
+
+    public int getShardCount()
+    {
+        return inboundDisruptors.length;
+    }
+
+    public void push(String message)
+    {
+        inboundDisruptors[shardOf(message)].push(message);
+    }
+
+    public void push(byte[] message)
+    {
+        int shard = inboundDisruptors.length == 1 ? 0 : shardOf(BinaryCodec.instrumentIdOf(message, 0), BinaryCodec.clientIdOf(message, 0), inboundDisruptors.length);
+        inboundDisruptors[shard].push(message);
+    }
+
+    // The per-shard staging arrays are reused between calls so batches must be routed by one thread at a time.
+    public synchronized void pushAll(String[] messages, int count)
+    {
+        if(inboundDisruptors.length == 1)
+        {
+            inboundDisruptors[0].pushAll(messages, count);
+            return;
+        }
+
+        if(shardBatches[0].length < count)
+            shardBatches = new String[inboundDisruptors.length][count];
+
+        for(int index = 0; index < count; index++)
+        {
+            int shard = shardOf(messages[index]);
+            shardBatches[shard][shardBatchCounts[shard]++] = messages[index];
+        }
+
+        for(int shard = 0; shard < inboundDisruptors.length; shard++)
+        {
+            if(shardBatchCounts[shard] > 0)
+                inboundDisruptors[shard].pushAll(shardBatches[shard], shardBatchCounts[shard]);
+            shardBatchCounts[shard] = 0;
+        }
+    }
+
+    public int shardOf(String message)
+    {
+        if(inboundDisruptors.length == 1)
+            return 0;
+
+        return shardOf(readIntField(message, INSTRUMENT_ID_FIELD), readIntField(message, CLIENT_ID_FIELD), inboundDisruptors.length);
+    }
+
+    // Fibonacci hashing of the packed key spreads sequential instrument and client ids evenly across the shards.
+    public static int shardOf(int instrumentId, int clientId, int shardCount)
+    {
+        long key = InventoryKey.of(instrumentId, clientId);
+        return (int) (((key * 0x9E3779B97F4A7C15L) >>> 32) % shardCount);
+    }
+
+    // Reads the integer value of a top-level field without parsing the whole JSON payload, returns zero when the field is missing.
+    static int readIntField(String message, String quotedFieldName)
+    {
+        int index = message.indexOf(quotedFieldName);
+        if(index < 0)
+            return 0;
+
+        index += quotedFieldName.length();
+        int length = message.length();
+        while(index < length && (message.charAt(index) == ' ' || message.charAt(index) == ':' || message.charAt(index) == '"'))
+            index++;
+
+        boolean isNegative = index < length && message.charAt(index) == '-';
+        if(isNegative)
+            index++;
+
+        int value = 0;
+        while(index < length && message.charAt(index) >= '0' && message.charAt(index) <= '9')
+            value = value * 10 + (message.charAt(index++) - '0');
+
+        return isNegative ? -value : value;
+    }
+}
@@ -0,0 +1,207 @@
+package com.leon.handler;
+
+import com.leon.io.ChronicleInventoryWriter;
+import com.leon.model.DisruptorEvent;
+import com.leon.model.FxRate;
+import com.leon.model.Instrument;
+import com.leon.model.Inventory;
+import com.leon.model.InventoryKey;
+import com.leon.model.InventoryStore;
+import com.leon.model.PayloadFormat;
+import com.leon.model.RequestTypeEnum;
+import com.leon.service.DisruptorService;
+import com.leon.service.FxService;
+import com.leon.service.InstrumentService;
+import com.leon.service.LatencyService;
+import com.leon.service.RingStatistics;
+import com.lmax.disruptor.EventHandler;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class InventoryCheckEventHandlerTest
+{
+    private static final int INSTRUMENT_ID = 1;
+    private static final int CLIENT_ID = 2;
+
+    private final RecordingInventoryWriter inventoryWriter = new RecordingInventoryWriter();
+    private final RecordingDisruptorService outboundDisruptor = new RecordingDisruptorService();
+    private final InventoryCheckEventHandler handler = new InventoryCheckEventHandler(outboundDisruptor, new EmptyInstrumentService(), new EmptyFxService());
+    private long uid = 0;
+
+    // Stands in for the chronicle map, starting from one position of 100 shares and 1000 in cash, and records what is written behind.
+    private static class RecordingInventoryWriter extends ChronicleInventoryWriter
+    {
+        private final List<Long> writtenKeys = new ArrayList<>();
+
+        RecordingInventoryWriter()
+        {
+            super("unused", null, 1);
+        }
+
+        @Override
+        public void start()
+        {
+        }
+
+        @Override
+        public void load(InventoryStore inventoryStore)
+        {
+            inventoryStore.put(new Inventory(CLIENT_ID, INSTRUMENT_ID, 100, 0, 0, 0, 1000.0, 0.0, 0.0));
+        }
+
+        @Override
+        public void put(InventoryStore inventoryStore, int slot)
+        {
+            writtenKeys.add(inventoryStore.keyAt(slot));
+        }
+
+        @Override
+        public void stop()
+        {
+        }
+    }
+
+    private static class RecordingDisruptorService implements DisruptorService
+    {
+        private final List<String> responses = new ArrayList<>();
+
+        @Override
+        public void pushAll(DisruptorEvent[] events, int count)
+        {
+            for(int index = 0; index < count; index++)
+                responses.add(events[index].getPayloadAsString());
+        }
+
+        @Override
+        public void start(String name, EventHandler<DisruptorEvent> journalHandler, EventHandler<DisruptorEvent> actionEventHandler) {}
+        @Override
+        public void start(String name, EventHandler<DisruptorEvent> journalHandler, EventHandler<DisruptorEvent> replicationHandler, EventHandler<DisruptorEvent> actionEventHandler) {}
+        @Override
+        public void stop() {}
+        @Override
+        public void setLatencyService(LatencyService latencyService) {}
+        @Override
+        public RingStatistics getStatistics() { return null; }
+        @Override
+        public Map<String, Object> getMetrics() { return null; }
+        @Override
+        public void setNextUid(long nextUid) {}
+        @Override
+        public long getNextUid() { return 0; }
+        @Override
+        public void push(String message) {}
+        @Override
+        public void push(byte[] message) {}
+        @Override
+        public void pushAll(String[] messages, int count) {}
+    }
+
+    // The checks look neither instruments nor rates up, the handler only needs the services to be constructed.
+    private static class EmptyInstrumentService implements InstrumentService
+    {
+        @Override
+        public void put(int instrumentId, Instrument instrument) {}
+        @Override
+        public Optional<Instrument> get(int instrumentId) { return Optional.empty(); }
+        @Override
+        public Optional<Instrument> get(String bloombergCode) { return Optional.empty(); }
+        @Override
+        public void upload(String uploadFilePath) {}
+    }
+
+    private static class EmptyFxService implements FxService
+    {
+        @Override
+        public void put(String currency, double fxRateAgainstOneUSD) {}
+        @Override
+        public Optional<FxRate> get(String currency) { return Optional.empty(); }
+        @Override
+        public FxRate lookup(CharSequence currency) { return null; }
+        @Override
+        public void upload(String uploadFilePath) {}
+    }
+
+    @BeforeEach
+    public void start()
+    {
+        handler.start(inventoryWriter, 16);
+    }
+
+    // Sends the request as the only event of a batch, so that whatever it made dirty is written behind straight away.
+    private String check(RequestTypeEnum type, String json)
+    {
+        DisruptorEvent event = new DisruptorEvent();
+        event.setPayload(json, 0, json.length());
+        event.setPayloadType(type);
+        event.setPayloadFormat(PayloadFormat.JSON);
+        event.setUid(uid++);
+        handler.onEvent(event, event.getUid(), true);
+        return outboundDisruptor.responses.get(outboundDisruptor.responses.size() - 1);
+    }
+
+    private String checkCash(String amounts)
+    {
+        return check(RequestTypeEnum.CASH_CHECK_REQUEST, "{\"clientId\": " + CLIENT_ID + ", \"instrumentId\": " + INSTRUMENT_ID + ", \"referenceId\": \"ref\", "
+                + "\"requestType\": \"CASH_CHECK_REQUEST\", " + amounts + "}");
+    }
+
+    private String checkPosition(String subTypeAndQuantities)
+    {
+        return check(RequestTypeEnum.POSITION_CHECK_REQUEST, "{\"clientId\": " + CLIENT_ID + ", \"instrumentId\": " + INSTRUMENT_ID + ", \"referenceId\": \"ref\", "
+                + "\"requestType\": \"POSITION_CHECK_REQUEST\", " + subTypeAndQuantities + "}");
+    }
+
+    private void assertWrittenBehind(int expectedCount)
+    {
+        assertEquals(expectedCount, inventoryWriter.writtenKeys.size());
+        for(long key : inventoryWriter.writtenKeys)
+            assertEquals(InventoryKey.of(INSTRUMENT_ID, CLIENT_ID), key);
+    }
+
+    @Test
+    public void cashChecksThatChangeNothingAreNotWrittenBehind()
+    {
+        assertTrue(checkCash("\"unlockCash\": 10").contains("\"result\":\"FAILURE\""));
+        assertTrue(checkCash("\"lockCash\": 0, \"unlockCash\": 0").contains("\"lockedCash\":0.0"));
+        assertTrue(checkCash("\"lockCash\": 1000").contains("\"result\":\"SUCCESS\""));
+        assertWrittenBehind(1);
+
+        assertTrue(checkCash("\"lockCash\": 1").contains("\"result\":\"FAILURE\""));
+        assertWrittenBehind(1);
+
+        assertTrue(checkCash("\"unlockCash\": 400").contains("\"result\":\"SUCCESS\""));
+        assertWrittenBehind(2);
+    }
+
+    @Test
+    public void positionChecksThatChangeNothingAreNotWrittenBehind()
+    {
+        assertTrue(checkPosition("\"requestSubType\": \"LONG_SELL_ONLY\", \"unlockQuantity\": 10").contains("\"result\":\"FAILURE\""));
+        assertTrue(checkPosition("\"requestSubType\": \"LONG_SELL_ONLY\"").contains("\"lockQuantity\":0"));
+        assertTrue(checkPosition("\"requestSubType\": \"LONG_SELL_ONLY\", \"lockQuantity\": 100").contains("\"result\":\"SUCCESS\""));
+        assertWrittenBehind(1);
+
+        assertTrue(checkPosition("\"requestSubType\": \"LONG_SELL_ONLY\", \"lockQuantity\": 1").contains("\"result\":\"FAILURE\""));
+        assertWrittenBehind(1);
+
+        assertTrue(checkPosition("\"requestSubType\": \"LONG_SELL_ONLY\", \"unlockQuantity\": 40").contains("\"result\":\"SUCCESS\""));
+        assertWrittenBehind(2);
+    }
+
+    @Test
+    public void checksForAnUnknownPositionAreNotWrittenBehind()
+    {
+        assertTrue(check(RequestTypeEnum.CASH_CHECK_REQUEST, "{\"clientId\": 9, \"instrumentId\": 9, \"lockCash\": 10}").contains("\"result\":\"FAILURE\""));
+        assertTrue(check(RequestTypeEnum.POSITION_CHECK_REQUEST, "{\"clientId\": 9, \"instrumentId\": 9, \"requestSubType\": \"LONG_SELL_ONLY\", \"lockQuantity\": 10}")
+                .contains("\"result\":\"FAILURE\""));
+        assertWrittenBehind(0);
+    }
+}
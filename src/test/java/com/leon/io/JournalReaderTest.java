@@ -0,0 +1,221 @@
+package com.leon.io;
+
+import com.leon.model.DisruptorEvent;
+import com.leon.model.JournalDurabilityPolicy;
+import com.leon.model.PayloadFormat;
+import com.leon.model.RequestTypeEnum;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class JournalReaderTest
+{
+    // One page, which holds about sixty of the records written here, so that the tests roll over many segments.
+    private static final int SEGMENT_SIZE = 4096;
+
+    @TempDir
+    Path directory;
+
+    private String basePath()
+    {
+        return directory.resolve("journal").toString();
+    }
+
+    private static DisruptorEvent event(long uid)
+    {
+        DisruptorEvent event = new DisruptorEvent();
+        String payload = "{\"clientId\": " + uid + ", \"instrumentId\": 1}";
+        event.setPayload(payload, 0, payload.length());
+        event.setPayloadType(RequestTypeEnum.CASH_CHECK_REQUEST);
+        event.setPayloadFormat(PayloadFormat.JSON);
+        event.setUid(uid);
+        event.setCreatedTime(uid * 1_000 + 7);
+        return event;
+    }
+
+    private void write(long fromUid, long toUid, boolean append) throws IOException
+    {
+        JournalWriter writer = new JournalWriter(basePath(), SEGMENT_SIZE, JournalDurabilityPolicy.NONE, 0);
+        writer.open(append);
+        for(long uid = fromUid; uid <= toUid; uid++)
+            writer.append(event(uid));
+        writer.close();
+    }
+
+    private List<Long> replayedUids(long fromSequence) throws Exception
+    {
+        List<Long> uids = new ArrayList<>();
+        new JournalReader(basePath()).replay(fromSequence, (event, sequence, endOfBatch) -> uids.add(event.getUid()));
+        return uids;
+    }
+
+    private static List<Long> range(long fromUid, long toUid)
+    {
+        List<Long> uids = new ArrayList<>();
+        for(long uid = fromUid; uid <= toUid; uid++)
+            uids.add(uid);
+        return uids;
+    }
+
+    // Leaves a record length at the end of the journal that no record can have, as a record torn by a crash would look to the reader.
+    private void tearTheLastRecord() throws Exception
+    {
+        JournalReader reader = new JournalReader(basePath());
+        reader.scan();
+        try(RandomAccessFile randomAccessFile = new RandomAccessFile(JournalWriter.segmentPath(basePath(), reader.getEndSegmentIndex()), "rw"))
+        {
+            randomAccessFile.seek(reader.getEndPosition());
+            randomAccessFile.writeInt(Integer.reverseBytes(JournalWriter.RECORD_HEADER_SIZE - 1));
+            randomAccessFile.writeLong(Long.MAX_VALUE);
+        }
+    }
+
+    @Test
+    public void replayStartsAtTheRequestedSequence() throws Exception
+    {
+        write(0, 299, false);
+
+        assertEquals(range(0, 299), replayedUids(0));
+        assertEquals(range(150, 299), replayedUids(150));
+        assertTrue(replayedUids(300).isEmpty());
+
+        // Whatever is replayed, the reader knows where the journal ends.
+        JournalReader reader = new JournalReader(basePath());
+        assertEquals(299, reader.replay(290, (event, sequence, endOfBatch) -> assertEquals(event.getUid(), sequence)));
+        assertEquals(300, reader.getRecordCount());
+        assertEquals(299, reader.getLastSequence());
+    }
+
+    @Test
+    public void replayFlagsTheEndOfEachBatchAndOfTheJournal() throws Exception
+    {
+        write(0, 2999, false);
+
+        List<Long> batchEnds = new ArrayList<>();
+        new JournalReader(basePath()).replay(0, (event, sequence, endOfBatch) ->
+        {
+            if(endOfBatch)
+                batchEnds.add(event.getUid());
+        });
+        assertEquals(3, batchEnds.size());
+        assertEquals(1023L, (long) batchEnds.get(0));
+        assertEquals(2047L, (long) batchEnds.get(1));
+        assertEquals(2999L, (long) batchEnds.get(2));
+    }
+
+    @Test
+    public void replayReadsTheFieldsOfEachRecord() throws Exception
+    {
+        write(0, 99, false);
+
+        List<DisruptorEvent> replayed = new ArrayList<>();
+        new JournalReader(basePath()).replay(0, (event, sequence, endOfBatch) ->
+        {
+            DisruptorEvent copy = new DisruptorEvent();
+            copy.copyFrom(event);
+            replayed.add(copy);
+        });
+        for(DisruptorEvent event : replayed)
+        {
+            DisruptorEvent expected = event(event.getUid());
+            assertEquals(expected.getCreatedTime(), event.getCreatedTime());
+            assertEquals(expected.getPayloadType(), event.getPayloadType());
+            assertEquals(expected.getPayloadFormat(), event.getPayloadFormat());
+            assertEquals(expected.getPayloadAsString(), event.getPayloadAsString());
+        }
+    }
+
+    @Test
+    public void recoveryStopsAtATornRecordAndAppendingOverwritesIt() throws Exception
+    {
+        write(0, 199, false);
+        tearTheLastRecord();
+
+        assertEquals(range(0, 199), replayedUids(0));
+
+        write(200, 249, true);
+        assertEquals(range(0, 249), replayedUids(0));
+    }
+
+    @Test
+    public void appendingCarriesOnFromTheEndOfEverySession() throws Exception
+    {
+        write(0, 99, false);
+        write(100, 100, true);
+        write(101, 399, true);
+
+        assertEquals(range(0, 399), replayedUids(0));
+        JournalReader reader = new JournalReader(basePath());
+        reader.scan();
+        assertFalse(new File(JournalWriter.segmentPath(basePath(), reader.getEndSegmentIndex() + 2)).exists(), "Segments were left after the end");
+    }
+
+    @Test
+    public void recoveryReplaysWhatRemainsAfterTruncation() throws Exception
+    {
+        JournalWriter writer = new JournalWriter(basePath(), SEGMENT_SIZE, JournalDurabilityPolicy.NONE, 0);
+        writer.open();
+        for(long uid = 0; uid < 400; uid++)
+            writer.append(event(uid));
+        writer.truncateBefore(199);
+        writer.close();
+
+        int firstSegmentIndex = JournalWriter.firstSegmentIndex(basePath());
+        assertTrue(firstSegmentIndex > 0);
+        List<Long> uids = replayedUids(0);
+        assertTrue(uids.get(0) <= 200, "First remaining record: " + uids.get(0));
+        assertEquals(range(uids.get(0), 399), uids);
+        assertEquals(range(200, 399), replayedUids(200));
+        assertEquals(event(uids.get(0)).getCreatedTime(), JournalReader.firstCreatedTime(basePath()));
+
+        write(400, 409, true);
+        assertEquals(range(200, 409), replayedUids(200));
+        assertEquals(firstSegmentIndex, JournalWriter.firstSegmentIndex(basePath()));
+    }
+
+    @Test
+    public void openingWithoutAppendingStartsANewJournal() throws Exception
+    {
+        write(0, 299, false);
+        write(1000, 1004, false);
+
+        assertEquals(range(1000, 1004), replayedUids(0));
+        assertEquals(0, JournalWriter.firstSegmentIndex(basePath()));
+    }
+
+    @Test
+    public void anEmptyOrMissingJournalHasNothingToReplay() throws Exception
+    {
+        JournalReader reader = new JournalReader(basePath());
+        assertEquals(-1, reader.replay(0, (event, sequence, endOfBatch) -> { throw new AssertionError("Replayed: " + event); }));
+        assertEquals(-1, reader.getEndSegmentIndex());
+        assertEquals(Long.MAX_VALUE, JournalReader.firstCreatedTime(basePath()));
+
+        write(0, -1, false);
+        assertTrue(replayedUids(0).isEmpty());
+        assertEquals(Long.MAX_VALUE, JournalReader.firstCreatedTime(basePath()));
+    }
+
+    @Test
+    public void replayRejectsASegmentOfAnotherFormat() throws Exception
+    {
+        write(0, 9, false);
+        try(RandomAccessFile randomAccessFile = new RandomAccessFile(JournalWriter.segmentPath(basePath(), 0), "rw"))
+        {
+            randomAccessFile.writeInt(Integer.reverseBytes(JournalWriter.MAGIC + 1));
+        }
+
+        assertThrows(IOException.class, () -> replayedUids(0));
+    }
+}
@@ -0,0 +1,315 @@
+package com.leon.io;
+
+import com.leon.model.DisruptorEvent;
+import com.leon.model.JournalDurabilityPolicy;
+import com.leon.model.PayloadFormat;
+import com.leon.model.RequestTypeEnum;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class JournalWriterTest
+{
+    // One page, which holds about sixty of the records written here, so that the tests roll over many segments.
+    private static final int SEGMENT_SIZE = 4096;
+
+    @TempDir
+    Path directory;
+
+    private String basePath()
+    {
+        return directory.resolve("journal").toString();
+    }
+
+    private static DisruptorEvent event(long uid)
+    {
+        DisruptorEvent event = new DisruptorEvent();
+        String payload = "{\"clientId\": " + uid + ", \"instrumentId\": 1}";
+        event.setPayload(payload, 0, payload.length());
+        event.setPayloadType(RequestTypeEnum.CASH_CHECK_REQUEST);
+        event.setPayloadFormat(PayloadFormat.JSON);
+        event.setUid(uid);
+        event.setCreatedTime(uid * 1_000);
+        return event;
+    }
+
+    private static List<Long> replayedUids(String basePath) throws Exception
+    {
+        List<Long> uids = new ArrayList<>();
+        new JournalReader(basePath).replay(0, (event, sequence, endOfBatch) -> uids.add(event.getUid()));
+        return uids;
+    }
+
+    private static void assertContiguous(List<Long> uids, long lastUid)
+    {
+        assertTrue(!uids.isEmpty(), "Journal is empty");
+        for(int index = 1; index < uids.size(); index++)
+            assertEquals(uids.get(index - 1) + 1, (long) uids.get(index), "Gap in the journal");
+        assertEquals(lastUid, (long) uids.get(uids.size() - 1));
+    }
+
+    private static byte[] payloadOf(DisruptorEvent event)
+    {
+        byte[] payload = new byte[event.getPayloadLength()];
+        System.arraycopy(event.getPayload(), 0, payload, 0, payload.length);
+        return payload;
+    }
+
+    private static void assertSameRecord(DisruptorEvent expected, DisruptorEvent actual)
+    {
+        assertEquals(expected.getUid(), actual.getUid());
+        assertEquals(expected.getCreatedTime(), actual.getCreatedTime());
+        assertEquals(expected.getPayloadType(), actual.getPayloadType());
+        assertEquals(expected.getPayloadFormat(), actual.getPayloadFormat());
+        assertArrayEquals(payloadOf(expected), payloadOf(actual));
+    }
+
+    private static long readLong(File file, long position) throws Exception
+    {
+        try(RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r"))
+        {
+            randomAccessFile.seek(position);
+            return Long.reverseBytes(randomAccessFile.readLong());
+        }
+    }
+
+    private static void waitFor(File file) throws InterruptedException
+    {
+        for(int attempt = 0; attempt < 500 && !file.exists(); attempt++)
+            Thread.sleep(10);
+        assertTrue(file.exists(), file + " was never prepared");
+    }
+
+    @Test
+    public void recordFormatRoundTrips()
+    {
+        DisruptorEvent event = event(42);
+        event.setPayloadType(RequestTypeEnum.INVENTORY_UPDATE);
+        ByteBuffer buffer = ByteBuffer.allocate(256).order(ByteOrder.LITTLE_ENDIAN);
+
+        int alignedLength = JournalWriter.writeRecord(buffer, 8, event);
+
+        // Length, type code, format, uid and created time, then the payload, padded to eight bytes.
+        int length = JournalWriter.RECORD_HEADER_SIZE + event.getPayloadLength();
+        assertEquals(JournalWriter.align(length), alignedLength);
+        assertEquals(0, alignedLength % 8);
+        assertEquals(8 + alignedLength, buffer.position());
+        assertEquals(length, buffer.getInt(8));
+        assertEquals(RequestTypeEnum.INVENTORY_UPDATE.getCode(), buffer.getShort(12));
+        assertEquals(PayloadFormat.JSON.ordinal(), buffer.getShort(14));
+        assertEquals(42L, buffer.getLong(16));
+        assertEquals(42_000L, buffer.getLong(24));
+
+        DisruptorEvent read = new DisruptorEvent();
+        JournalReader.readRecord(buffer, 8, read);
+        assertSameRecord(event, read);
+        assertEquals(event.getCreatedTime(), read.getPublishedTime());
+    }
+
+    @Test
+    public void everyFieldRoundTripsThroughTheJournal() throws Exception
+    {
+        List<DisruptorEvent> events = new ArrayList<>();
+        events.add(event(0));
+        DisruptorEvent binary = new DisruptorEvent();
+        byte[] payload = {0, 1, (byte) 0xFF, (byte) 0x80, 127, 0, 0, 0, 42};
+        binary.setPayload(payload, 0, payload.length);
+        binary.setPayloadType(RequestTypeEnum.POSITION_CHECK_REQUEST);
+        binary.setPayloadFormat(PayloadFormat.BINARY);
+        binary.setUid(1);
+        binary.setCreatedTime(Long.MAX_VALUE);
+        events.add(binary);
+        DisruptorEvent text = new DisruptorEvent();
+        String json = "{\"referenceId\": \"r\u00e9f-\u20ac\"}";
+        text.setPayload(json, 0, json.length());
+        text.setPayloadType(RequestTypeEnum.EXECUTION_MESSAGE);
+        text.setPayloadFormat(PayloadFormat.JSON);
+        text.setUid(2);
+        text.setCreatedTime(-1);
+        events.add(text);
+        DisruptorEvent empty = new DisruptorEvent();
+        empty.setPayloadType(RequestTypeEnum.INVENTORY_CLEAR);
+        empty.setPayloadFormat(PayloadFormat.JSON);
+        empty.setUid(3);
+        events.add(empty);
+
+        JournalWriter writer = new JournalWriter(basePath(), SEGMENT_SIZE, JournalDurabilityPolicy.END_OF_BATCH, 0);
+        writer.open();
+        for(DisruptorEvent event : events)
+            writer.append(event);
+        writer.endOfBatch();
+        writer.close();
+
+        List<DisruptorEvent> replayed = new ArrayList<>();
+        new JournalReader(basePath()).replay(0, (event, sequence, endOfBatch) ->
+        {
+            DisruptorEvent copy = new DisruptorEvent();
+            copy.copyFrom(event);
+            replayed.add(copy);
+        });
+        assertEquals(events.size(), replayed.size());
+        for(int index = 0; index < events.size(); index++)
+            assertSameRecord(events.get(index), replayed.get(index));
+        assertEquals("{\"referenceId\": \"r\u00e9f-\u20ac\"}", new String(payloadOf(replayed.get(2)), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void rollsOverIntoSegmentsThatRecordTheirFirstSequence() throws Exception
+    {
+        JournalWriter writer = new JournalWriter(basePath(), SEGMENT_SIZE, JournalDurabilityPolicy.NONE, 0);
+        writer.open();
+        for(long uid = 0; uid < 500; uid++)
+            writer.append(event(uid));
+        writer.close();
+
+        JournalReader reader = new JournalReader(basePath());
+        assertContiguous(replayedUids(basePath()), 499);
+        assertEquals(499, reader.replay(0, null));
+        assertEquals(500, reader.getRecordCount());
+        assertTrue(reader.getEndSegmentIndex() >= 5, "Only rolled to segment: " + reader.getEndSegmentIndex());
+
+        // Every segment starts with the record its header names, and each full one hands over where the next one starts.
+        long expectedFirstSequence = 0;
+        for(int index = 0; index <= reader.getEndSegmentIndex(); index++)
+        {
+            File segment = new File(JournalWriter.segmentPath(basePath(), index));
+            assertEquals(SEGMENT_SIZE, segment.length());
+            assertEquals(expectedFirstSequence, readLong(segment, JournalWriter.FIRST_SEQUENCE_OFFSET), segment.getName());
+            assertEquals(expectedFirstSequence, readLong(segment, JournalWriter.SEGMENT_HEADER_SIZE + 8), segment.getName());
+            expectedFirstSequence += segmentRecordCount(segment);
+        }
+        assertEquals(500, expectedFirstSequence);
+    }
+
+    // Counts the records of one segment by walking their lengths up to the end of segment marker or the end of the journal.
+    private static long segmentRecordCount(File segment) throws Exception
+    {
+        try(RandomAccessFile randomAccessFile = new RandomAccessFile(segment, "r"))
+        {
+            long count = 0;
+            long position = JournalWriter.SEGMENT_HEADER_SIZE;
+            randomAccessFile.seek(position);
+            int length = Integer.reverseBytes(randomAccessFile.readInt());
+            while(JournalReader.isValidRecordLength(length))
+            {
+                count++;
+                position += JournalWriter.align(length);
+                randomAccessFile.seek(position);
+                length = Integer.reverseBytes(randomAccessFile.readInt());
+            }
+            return count;
+        }
+    }
+
+    @Test
+    public void truncateKeepsTheCurrentSegmentWhateverTheNextOneReads() throws Exception
+    {
+        JournalWriter writer = new JournalWriter(basePath(), SEGMENT_SIZE, JournalDurabilityPolicy.NONE, 0);
+        writer.open();
+        for(long uid = 0; uid < 10; uid++)
+            writer.append(event(uid));
+
+        // What truncation used to see while the next segment was being prepared: a sized file whose first sequence still read zero.
+        File nextSegment = new File(JournalWriter.segmentPath(basePath(), 1));
+        waitFor(nextSegment);
+        try(RandomAccessFile randomAccessFile = new RandomAccessFile(nextSegment, "rw"))
+        {
+            randomAccessFile.write(new byte[JournalWriter.SEGMENT_HEADER_SIZE]);
+        }
+
+        writer.truncateBefore(100);
+
+        assertTrue(new File(JournalWriter.segmentPath(basePath(), 0)).exists());
+        writer.append(event(10));
+        writer.close();
+        assertContiguous(replayedUids(basePath()), 10);
+    }
+
+    @Test
+    public void truncatingWhileRollingNeverLosesRecordsAfterTheTruncatedSequence() throws Exception
+    {
+        JournalWriter writer = new JournalWriter(basePath(), SEGMENT_SIZE, JournalDurabilityPolicy.NONE, 0);
+        writer.open();
+        AtomicLong lastAppendedUid = new AtomicLong(-1);
+        AtomicBoolean isAppending = new AtomicBoolean(true);
+        // Truncates as a snapshot would, up to the last record appended, racing the rolls and the preparation of the next segments.
+        Thread truncator = new Thread(() ->
+        {
+            while(isAppending.get())
+                writer.truncateBefore(lastAppendedUid.get());
+        }, "journal-truncator");
+        truncator.start();
+
+        long lastUid = 20_000;
+        for(long uid = 0; uid <= lastUid; uid++)
+        {
+            writer.append(event(uid));
+            lastAppendedUid.set(uid);
+        }
+        isAppending.set(false);
+        truncator.join();
+        writer.close();
+
+        assertContiguous(replayedUids(basePath()), lastUid);
+        assertTrue(JournalWriter.firstSegmentIndex(basePath()) > 0, "Nothing was truncated");
+    }
+
+    @Test
+    public void truncateDeletesOnlySegmentsCoveredByTheSequence() throws Exception
+    {
+        JournalWriter writer = new JournalWriter(basePath(), SEGMENT_SIZE, JournalDurabilityPolicy.NONE, 0);
+        writer.open();
+        for(long uid = 0; uid < 500; uid++)
+            writer.append(event(uid));
+
+        writer.truncateBefore(250);
+        writer.close();
+
+        List<Long> uids = replayedUids(basePath());
+        assertContiguous(uids, 499);
+        assertTrue(uids.get(0) > 0 && uids.get(0) <= 251, "First remaining record: " + uids.get(0));
+    }
+
+    @Test
+    public void truncateDeletesEverySegmentWhoseSuccessorStartsAtOrBeforeTheNextSequence() throws Exception
+    {
+        JournalWriter writer = new JournalWriter(basePath(), SEGMENT_SIZE, JournalDurabilityPolicy.NONE, 0);
+        writer.open();
+        for(long uid = 0; uid < 500; uid++)
+            writer.append(event(uid));
+
+        long secondSegmentStart = readLong(new File(JournalWriter.segmentPath(basePath(), 1)), JournalWriter.FIRST_SEQUENCE_OFFSET);
+        long thirdSegmentStart = readLong(new File(JournalWriter.segmentPath(basePath(), 2)), JournalWriter.FIRST_SEQUENCE_OFFSET);
+
+        // The first segment is only covered once its last record is.
+        writer.truncateBefore(secondSegmentStart - 2);
+        assertEquals(0, JournalWriter.firstSegmentIndex(basePath()));
+        writer.truncateBefore(secondSegmentStart - 1);
+        assertEquals(1, JournalWriter.firstSegmentIndex(basePath()));
+        writer.truncateBefore(thirdSegmentStart - 1);
+        assertEquals(2, JournalWriter.firstSegmentIndex(basePath()));
+
+        // Covering everything still keeps the segment being appended to.
+        writer.truncateBefore(Long.MAX_VALUE - 1);
+        writer.append(event(500));
+        writer.close();
+        List<Long> uids = replayedUids(basePath());
+        assertContiguous(uids, 500);
+        assertEquals(readLong(new File(JournalWriter.segmentPath(basePath(), JournalWriter.firstSegmentIndex(basePath()))), JournalWriter.FIRST_SEQUENCE_OFFSET),
+                (long) uids.get(0));
+    }
+}
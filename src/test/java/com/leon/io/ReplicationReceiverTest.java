@@ -0,0 +1,271 @@
+package com.leon.io;
+
+import com.leon.model.DisruptorEvent;
+import com.leon.model.PayloadFormat;
+import com.leon.model.RequestTypeEnum;
+import com.leon.service.DisruptorService;
+import com.leon.service.LatencyService;
+import com.leon.service.RingStatistics;
+import com.lmax.disruptor.EventHandler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ReplicationReceiverTest
+{
+    private final RecordingDisruptorService inboundDisruptor = new RecordingDisruptorService();
+    private final List<Socket> sockets = new ArrayList<>();
+    private ReplicationReceiver receiver;
+    private int port;
+
+    // Records what the receiver publishes, copied as the receiver reuses its batch.
+    private static class RecordingDisruptorService implements DisruptorService
+    {
+        private final List<Long> uids = new ArrayList<>();
+        private final List<String> payloads = new ArrayList<>();
+        private final List<Integer> batchSizes = new ArrayList<>();
+
+        @Override
+        public synchronized void pushAll(DisruptorEvent[] events, int count)
+        {
+            batchSizes.add(count);
+            for(int index = 0; index < count; index++)
+            {
+                uids.add(events[index].getUid());
+                payloads.add(events[index].getPayloadAsString());
+            }
+        }
+
+        synchronized List<Long> uids()
+        {
+            return new ArrayList<>(uids);
+        }
+
+        synchronized List<String> payloads()
+        {
+            return new ArrayList<>(payloads);
+        }
+
+        synchronized List<Integer> batchSizes()
+        {
+            return new ArrayList<>(batchSizes);
+        }
+
+        @Override
+        public void start(String name, EventHandler<DisruptorEvent> journalHandler, EventHandler<DisruptorEvent> actionEventHandler) {}
+        @Override
+        public void start(String name, EventHandler<DisruptorEvent> journalHandler, EventHandler<DisruptorEvent> replicationHandler, EventHandler<DisruptorEvent> actionEventHandler) {}
+        @Override
+        public void stop() {}
+        @Override
+        public void setLatencyService(LatencyService latencyService) {}
+        @Override
+        public RingStatistics getStatistics() { return null; }
+        @Override
+        public Map<String, Object> getMetrics() { return null; }
+        @Override
+        public void setNextUid(long nextUid) {}
+        @Override
+        public long getNextUid() { return 0; }
+        @Override
+        public void push(String message) {}
+        @Override
+        public void push(byte[] message) {}
+        @Override
+        public void pushAll(String[] messages, int count) {}
+    }
+
+    @AfterEach
+    public void stop() throws IOException
+    {
+        for(Socket socket : sockets)
+            socket.close();
+        if(receiver != null)
+            receiver.stop();
+    }
+
+    private void start(long lastSequence) throws IOException
+    {
+        try(ServerSocket serverSocket = new ServerSocket(0))
+        {
+            port = serverSocket.getLocalPort();
+        }
+        receiver = new ReplicationReceiver(port, inboundDisruptor);
+        receiver.start(lastSequence);
+    }
+
+    private Socket connect() throws IOException
+    {
+        Socket socket = new Socket("localhost", port);
+        socket.setSoTimeout(5_000);
+        sockets.add(socket);
+        return socket;
+    }
+
+    private static DisruptorEvent event(long uid)
+    {
+        DisruptorEvent event = new DisruptorEvent();
+        String payload = "{\"clientId\": " + uid + ", \"instrumentId\": 1}";
+        event.setPayload(payload, 0, payload.length());
+        event.setPayloadType(RequestTypeEnum.CASH_CHECK_REQUEST);
+        event.setPayloadFormat(PayloadFormat.JSON);
+        event.setUid(uid);
+        return event;
+    }
+
+    // The records in the journal format, as the primary streams them.
+    private static byte[] records(long... uids)
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(uids.length * JournalWriter.maximumRecordLength()).order(ByteOrder.LITTLE_ENDIAN);
+        for(long uid : uids)
+            JournalWriter.writeRecord(buffer, buffer.position(), event(uid));
+        byte[] records = new byte[buffer.position()];
+        System.arraycopy(buffer.array(), 0, records, 0, records.length);
+        return records;
+    }
+
+    private static long[] range(long fromUid, long toUid)
+    {
+        long[] uids = new long[(int) (toUid - fromUid + 1)];
+        for(int index = 0; index < uids.length; index++)
+            uids[index] = fromUid + index;
+        return uids;
+    }
+
+    private static List<Long> list(long... uids)
+    {
+        List<Long> list = new ArrayList<>();
+        for(long uid : uids)
+            list.add(uid);
+        return list;
+    }
+
+    private static void send(Socket socket, byte[] bytes) throws IOException
+    {
+        socket.getOutputStream().write(bytes);
+        socket.getOutputStream().flush();
+    }
+
+    // Acknowledgements follow every read, so several may arrive before the one that covers everything sent.
+    private static void awaitAcknowledgement(Socket socket, long sequence) throws IOException
+    {
+        DataInputStream input = new DataInputStream(socket.getInputStream());
+        long acknowledgedSequence;
+        do
+            acknowledgedSequence = Long.reverseBytes(input.readLong());
+        while(acknowledgedSequence < sequence);
+        assertEquals(sequence, acknowledgedSequence);
+    }
+
+    private void awaitPublished(int count) throws InterruptedException
+    {
+        for(int attempt = 0; attempt < 500 && inboundDisruptor.uids().size() < count; attempt++)
+            Thread.sleep(10);
+        assertEquals(count, inboundDisruptor.uids().size(), "Published: " + inboundDisruptor.uids());
+    }
+
+    @Test
+    public void recordsAlreadyHeldAreDroppedAndAcknowledged() throws Exception
+    {
+        start(9);
+        Socket socket = connect();
+
+        send(socket, records(range(5, 12)));
+
+        awaitAcknowledgement(socket, 12);
+        assertEquals(list(10, 11, 12), inboundDisruptor.uids());
+        assertEquals(12, receiver.getLastSequence());
+
+        // A primary that reconnects resends from before what the secondary holds.
+        socket.close();
+        socket = connect();
+        send(socket, records(range(11, 14)));
+        awaitAcknowledgement(socket, 14);
+        assertEquals(list(10, 11, 12, 13, 14), inboundDisruptor.uids());
+    }
+
+    @Test
+    public void aGapIsPublishedAndAcknowledgedPastIt() throws Exception
+    {
+        start(-1);
+        Socket socket = connect();
+
+        send(socket, records(0, 1, 2));
+        awaitAcknowledgement(socket, 2);
+        send(socket, records(5, 6));
+        awaitAcknowledgement(socket, 6);
+
+        // The secondary carries on from the primary's sequence, a record received out of order behind it is then dropped.
+        send(socket, records(4, 7));
+        awaitAcknowledgement(socket, 7);
+        assertEquals(list(0, 1, 2, 5, 6, 7), inboundDisruptor.uids());
+        assertEquals(7, receiver.getLastSequence());
+    }
+
+    @Test
+    public void aRecordSplitAcrossReadsIsPublishedOnceComplete() throws Exception
+    {
+        start(-1);
+        Socket socket = connect();
+        byte[] records = records(0, 1);
+        int split = records.length - 10;
+        byte[] head = new byte[split];
+        byte[] tail = new byte[records.length - split];
+        System.arraycopy(records, 0, head, 0, split);
+        System.arraycopy(records, split, tail, 0, tail.length);
+
+        send(socket, head);
+        awaitAcknowledgement(socket, 0);
+        assertEquals(list(0), inboundDisruptor.uids());
+
+        send(socket, tail);
+        awaitAcknowledgement(socket, 1);
+        assertEquals(list(0, 1), inboundDisruptor.uids());
+        assertEquals(event(1).getPayloadAsString(), inboundDisruptor.payloads().get(1));
+    }
+
+    @Test
+    public void anInvalidRecordDropsTheConnectionAndTheNextOneCarriesOn() throws Exception
+    {
+        start(-1);
+        Socket socket = connect();
+        send(socket, records(0));
+        awaitAcknowledgement(socket, 0);
+
+        ByteBuffer invalid = ByteBuffer.allocate(JournalWriter.RECORD_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN).putInt(0, JournalWriter.RECORD_HEADER_SIZE - 1);
+        send(socket, invalid.array());
+        assertEquals(-1, socket.getInputStream().read());
+
+        socket = connect();
+        send(socket, records(0, 1, 2));
+        awaitAcknowledgement(socket, 2);
+        assertEquals(list(0, 1, 2), inboundDisruptor.uids());
+    }
+
+    @Test
+    public void aLargeChunkIsPublishedInBoundedBatches() throws Exception
+    {
+        start(-1);
+        Socket socket = connect();
+
+        send(socket, records(range(0, 999)));
+
+        awaitAcknowledgement(socket, 999);
+        awaitPublished(1000);
+        assertEquals(list(range(0, 999)), inboundDisruptor.uids());
+        for(int batchSize : inboundDisruptor.batchSizes())
+            assertTrue(batchSize > 0 && batchSize <= 256, "Batch of " + batchSize);
+    }
+}
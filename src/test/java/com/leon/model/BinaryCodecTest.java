@@ -0,0 +1,228 @@
+package com.leon.model;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BinaryCodecTest
+{
+	private final byte[] buffer = new byte[512];
+
+	@Test
+	public void cashCheckRequestRoundTrips()
+	{
+		CheckCashRequestMessage request = new CheckCashRequestMessage(100, 50, 2, 1, "ref-1", RequestTypeEnum.CASH_CHECK_REQUEST);
+		int length = BinaryCodec.encode(request, 42L, buffer, 0);
+
+		assertTrue(BinaryCodec.isValid(buffer, 0, length));
+		assertEquals(RequestTypeEnum.CASH_CHECK_REQUEST, BinaryCodec.typeOf(buffer, 0));
+		assertEquals(42L, BinaryCodec.sequenceOf(buffer, 0));
+		assertEquals(1, BinaryCodec.instrumentIdOf(buffer, 0));
+		assertEquals(2, BinaryCodec.clientIdOf(buffer, 0));
+		CheckCashRequestMessage decoded = new CheckCashRequestMessage();
+		assertTrue(BinaryCodec.decode(buffer, 0, length, decoded));
+		assertEquals(request, decoded);
+	}
+
+	@Test
+	public void positionCheckRequestRoundTripsAtAnOffset()
+	{
+		CheckPositionRequestMessage request = new CheckPositionRequestMessage(300, 0, 5, 7, "ref-2", RequestTypeEnum.POSITION_CHECK_REQUEST, RequestTypeEnum.NAKED_SHORT_SELL);
+		int length = BinaryCodec.encode(request, 0L, buffer, 100);
+
+		assertTrue(BinaryCodec.isValid(buffer, 100, length));
+		assertEquals(7, BinaryCodec.instrumentIdOf(buffer, 100));
+		assertEquals(5, BinaryCodec.clientIdOf(buffer, 100));
+		CheckPositionRequestMessage decoded = new CheckPositionRequestMessage();
+		assertTrue(BinaryCodec.decode(buffer, 100, length, decoded));
+		assertEquals(request, decoded);
+	}
+
+	@Test
+	public void executionMessageRoundTrips()
+	{
+		ExecutionMessage execution = new ExecutionMessage(101.25, 100, 200, 300, 'S', "E1", "O1", 1, 2, "USD");
+		int length = BinaryCodec.encode(execution, 7L, buffer, 0);
+
+		ExecutionMessage decoded = new ExecutionMessage();
+		assertTrue(BinaryCodec.decode(buffer, 0, length, decoded));
+		assertEquals(execution, decoded);
+		assertEquals(101.25, decoded.getExecutedPrice());
+		assertEquals('S', decoded.getSide());
+	}
+
+	@Test
+	public void nullTextRoundTripsAsNull()
+	{
+		CheckCashRequestMessage request = new CheckCashRequestMessage(1, 0, 2, 1, null, RequestTypeEnum.CASH_CHECK_REQUEST);
+		int length = BinaryCodec.encode(request, 0L, buffer, 0);
+
+		CheckCashRequestMessage decoded = new CheckCashRequestMessage(0, 0, 0, 0, "stale", RequestTypeEnum.NONE);
+		assertTrue(BinaryCodec.decode(buffer, 0, length, decoded));
+		assertTrue(decoded.getReferenceId().isNull());
+
+		ExecutionMessage execution = new ExecutionMessage(1.0, 1, 1, 1, 'B', null, "", 1, 2, null);
+		length = BinaryCodec.encode(execution, 0L, buffer, 0);
+		ExecutionMessage decodedExecution = new ExecutionMessage();
+		assertTrue(BinaryCodec.decode(buffer, 0, length, decodedExecution));
+		assertTrue(decodedExecution.getExecutionId().isNull());
+		assertFalse(decodedExecution.getOrderId().isNull());
+		assertEquals(0, decodedExecution.getOrderId().length());
+		assertTrue(decodedExecution.getCurrency().isNull());
+	}
+
+	@Test
+	public void nonAsciiAndLongTextRoundTrips()
+	{
+		byte[] largeBuffer = new byte[DisruptorEvent.PAYLOAD_CAPACITY];
+		StringBuilder referenceId = new StringBuilder("r\u00e9f-\u20ac-\ud83d\ude00-");
+		while(referenceId.length() < 400)
+			referenceId.append('x');
+		CheckCashRequestMessage request = new CheckCashRequestMessage(1, 0, 2, 1, referenceId.toString(), RequestTypeEnum.CASH_CHECK_REQUEST);
+		int length = BinaryCodec.encode(request, 0L, largeBuffer, 0);
+
+		CheckCashRequestMessage decoded = new CheckCashRequestMessage();
+		assertTrue(BinaryCodec.decode(largeBuffer, 0, length, decoded));
+		assertEquals(request, decoded);
+
+		InventoryCheckResponse response = new InventoryCheckResponse(1, 0, OutcomeType.SUCCESS.toString(), "\u65e5\u672c-\u00e9", 2, 1, 0.0, 0.0,
+				RequestTypeEnum.CASH_CHECK_REQUEST.name(), null);
+		length = BinaryCodec.encode(response, RequestTypeEnum.CASH_CHECK_RESPONSE, 0L, buffer, 0);
+		assertEquals(response, BinaryCodec.decodeResponse(buffer, 0, length));
+	}
+
+	@Test
+	public void responseRoundTrips()
+	{
+		InventoryCheckResponse response = new InventoryCheckResponse(10, 5, OutcomeType.PARTIAL_SUCCESS.toString(), "ref-3", 2, 1, 1.5, 0.25,
+				RequestTypeEnum.POSITION_CHECK_REQUEST.name(), RequestTypeEnum.LONG_SELL_ONLY.name());
+		int length = BinaryCodec.encode(response, RequestTypeEnum.POSITION_CHECK_RESPONSE, 9L, buffer, 0);
+
+		assertEquals(RequestTypeEnum.POSITION_CHECK_RESPONSE, BinaryCodec.typeOf(buffer, 0));
+		assertEquals(response, BinaryCodec.decodeResponse(buffer, 0, length));
+
+		InventoryCheckResponse withNulls = new InventoryCheckResponse(0, 0, null, null, 2, 1, 0.0, 0.0, RequestTypeEnum.CASH_CHECK_REQUEST.name(), null);
+		length = BinaryCodec.encode(withNulls, RequestTypeEnum.CASH_CHECK_RESPONSE, 0L, buffer, 0);
+		assertEquals(withNulls, BinaryCodec.decodeResponse(buffer, 0, length));
+	}
+
+	@Test
+	public void encodeReturnsMinusOneWhenTheBufferIsTooSmall()
+	{
+		CheckCashRequestMessage request = new CheckCashRequestMessage(1, 0, 2, 1, "ref-1", RequestTypeEnum.CASH_CHECK_REQUEST);
+		int length = BinaryCodec.encode(request, 0L, buffer, 0);
+
+		assertEquals(-1, BinaryCodec.encode(request, 0L, new byte[length - 1], 0));
+		assertEquals(length, BinaryCodec.encode(request, 0L, new byte[length], 0));
+	}
+
+	@Test
+	public void rejectsTruncatedBuffers()
+	{
+		ExecutionMessage execution = new ExecutionMessage(101.25, 100, 200, 300, 'B', "E1", "O1", 1, 2, "USD");
+		int length = BinaryCodec.encode(execution, 0L, buffer, 0);
+		ExecutionMessage decoded = new ExecutionMessage();
+
+		// Shorter than the body length in the header, or than the header itself.
+		assertFalse(BinaryCodec.isValid(buffer, 0, length - 1));
+		assertFalse(BinaryCodec.decode(buffer, 0, length - 1, decoded));
+		assertFalse(BinaryCodec.isValid(buffer, 0, BinaryCodec.HEADER_SIZE));
+		assertNull(BinaryCodec.decodeResponse(buffer, 0, length - 1));
+
+		// A header that agrees with the truncated length still leaves the last text running past the end.
+		setBodyLength(length - 2);
+		assertTrue(BinaryCodec.isValid(buffer, 0, length - 2));
+		assertFalse(BinaryCodec.decode(buffer, 0, length - 2, decoded));
+	}
+
+	@Test
+	public void rejectsAnotherTypeOrVersion()
+	{
+		CheckCashRequestMessage request = new CheckCashRequestMessage(1, 0, 2, 1, "ref-1", RequestTypeEnum.CASH_CHECK_REQUEST);
+		int length = BinaryCodec.encode(request, 0L, buffer, 0);
+
+		assertFalse(BinaryCodec.decode(buffer, 0, length, new CheckPositionRequestMessage()));
+		assertNull(BinaryCodec.decodeResponse(buffer, 0, length));
+		buffer[0] = (byte) (BinaryCodec.VERSION + 1);
+		assertFalse(BinaryCodec.isValid(buffer, 0, length));
+		assertFalse(BinaryCodec.decode(buffer, 0, length, new CheckCashRequestMessage()));
+	}
+
+	@Test
+	public void acceptsOnlyClientRequestTypesAtIngress()
+	{
+		CheckCashRequestMessage request = new CheckCashRequestMessage(1, 0, 2, 1, "ref-1", RequestTypeEnum.CASH_CHECK_REQUEST);
+		int length = BinaryCodec.encode(request, 0L, buffer, 0);
+		assertTrue(BinaryCodec.isValidRequest(buffer, 0, length));
+
+		for(RequestTypeEnum type : new RequestTypeEnum[] {RequestTypeEnum.INVENTORY_UPDATE, RequestTypeEnum.INVENTORY_DELETE, RequestTypeEnum.INVENTORY_CLEAR,
+				RequestTypeEnum.CASH_CHECK_RESPONSE})
+		{
+			buffer[2] = (byte) type.getCode();
+			assertTrue(BinaryCodec.isValid(buffer, 0, length));
+			assertFalse(BinaryCodec.isValidRequest(buffer, 0, length), type.name());
+		}
+	}
+
+	@Test
+	public void wireCodesArePinned()
+	{
+		// Written by every binary client and into every journal, so these must never change. A new type takes the next unused code.
+		RequestTypeEnum[] requestTypes = {RequestTypeEnum.CASH_CHECK_REQUEST, RequestTypeEnum.POSITION_CHECK_REQUEST, RequestTypeEnum.EXECUTION_MESSAGE,
+				RequestTypeEnum.LONG_AND_COVERED_SHORT_SELL, RequestTypeEnum.LONG_SELL_ONLY, RequestTypeEnum.NAKED_SHORT_SELL, RequestTypeEnum.QUANTITY_AMEND_UP,
+				RequestTypeEnum.QUANTITY_AMEND_DOWN, RequestTypeEnum.NONE, RequestTypeEnum.CASH_CHECK_RESPONSE, RequestTypeEnum.POSITION_CHECK_RESPONSE,
+				RequestTypeEnum.INVENTORY_UPDATE, RequestTypeEnum.INVENTORY_DELETE, RequestTypeEnum.INVENTORY_CLEAR};
+		assertEquals(RequestTypeEnum.values().length, requestTypes.length);
+		for(int code = 0; code < requestTypes.length; code++)
+		{
+			assertEquals(code, requestTypes[code].getCode(), requestTypes[code].name());
+			assertEquals(requestTypes[code], RequestTypeEnum.fromCode(code));
+		}
+		assertEquals(RequestTypeEnum.NONE, RequestTypeEnum.fromCode(requestTypes.length));
+		assertEquals(RequestTypeEnum.NONE, RequestTypeEnum.fromCode(-1));
+
+		OutcomeType[] outcomeTypes = {OutcomeType.SUCCESS, OutcomeType.PARTIAL_SUCCESS, OutcomeType.FAILURE};
+		assertEquals(OutcomeType.values().length, outcomeTypes.length);
+		for(int code = 0; code < outcomeTypes.length; code++)
+		{
+			assertEquals(code, outcomeTypes[code].getCode(), outcomeTypes[code].name());
+			assertEquals(outcomeTypes[code], OutcomeType.fromCode(code));
+		}
+		assertNull(OutcomeType.fromCode(outcomeTypes.length));
+	}
+
+	@Test
+	public void wireCodesAreWhatTheCodecWrites()
+	{
+		CheckPositionRequestMessage request = new CheckPositionRequestMessage(1, 0, 2, 1, "ref-1", RequestTypeEnum.POSITION_CHECK_REQUEST, RequestTypeEnum.NAKED_SHORT_SELL);
+		BinaryCodec.encode(request, 0L, buffer, 0);
+		assertEquals(1, getShort(2));
+		assertEquals(1, getShort(BinaryCodec.HEADER_SIZE + 16));
+		assertEquals(5, getShort(BinaryCodec.HEADER_SIZE + 18));
+
+		InventoryCheckResponse response = new InventoryCheckResponse(1, 0, OutcomeType.FAILURE.toString(), "ref-1", 2, 1, 0.0, 0.0,
+				RequestTypeEnum.POSITION_CHECK_REQUEST.name(), RequestTypeEnum.LONG_SELL_ONLY.name());
+		BinaryCodec.encode(response, RequestTypeEnum.POSITION_CHECK_RESPONSE, 0L, buffer, 0);
+		assertEquals(10, getShort(2));
+		assertEquals(2, getShort(BinaryCodec.HEADER_SIZE + 8 + 24));
+		assertEquals(1, getShort(BinaryCodec.HEADER_SIZE + 8 + 26));
+		assertEquals(4, getShort(BinaryCodec.HEADER_SIZE + 8 + 28));
+	}
+
+	private int getShort(int position)
+	{
+		return (short) ((buffer[position] & 0xFF) | (buffer[position + 1] << 8));
+	}
+
+	private void setBodyLength(int length)
+	{
+		int bodyLength = length - BinaryCodec.HEADER_SIZE;
+		buffer[4] = (byte) bodyLength;
+		buffer[5] = (byte) (bodyLength >> 8);
+		buffer[6] = (byte) (bodyLength >> 16);
+		buffer[7] = (byte) (bodyLength >> 24);
+	}
+}
@@ -0,0 +1,246 @@
+package com.leon.model;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MessageFactoryTest
+{
+	private final MessageFactory messageFactory = new MessageFactory();
+	private final CheckCashRequestMessage cashRequest = new CheckCashRequestMessage();
+	private final CheckPositionRequestMessage positionRequest = new CheckPositionRequestMessage();
+	private final ExecutionMessage execution = new ExecutionMessage();
+
+	private static byte[] ascii(String text)
+	{
+		return text.getBytes(StandardCharsets.US_ASCII);
+	}
+
+	private static byte[] utf8(String text)
+	{
+		return text.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static String repeat(char character, int count)
+	{
+		StringBuilder text = new StringBuilder();
+		for(int index = 0; index < count; index++)
+			text.append(character);
+		return text.toString();
+	}
+
+	private boolean decodeCashRequest(String json)
+	{
+		byte[] payload = utf8(json);
+		return messageFactory.decodeCashCheckRequestMessage(payload, 0, payload.length, cashRequest);
+	}
+
+	private boolean decodePositionRequest(String json)
+	{
+		byte[] payload = ascii(json);
+		return messageFactory.decodePositionCheckRequestMessage(payload, 0, payload.length, positionRequest);
+	}
+
+	private double decodeExecutedPrice(String price)
+	{
+		byte[] payload = ascii("{\"executedPrice\": " + price + ", \"executedQuantity\": 1}");
+		assertTrue(messageFactory.decodeExecutionMessage(payload, 0, payload.length, execution), price);
+		return execution.getExecutedPrice();
+	}
+
+	@Test
+	public void decodesCashCheckRequest()
+	{
+		assertTrue(decodeCashRequest("{\"clientId\": 2, \"instrumentId\": 1, \"referenceId\": \"ref-1\", \"requestType\": \"CASH_CHECK_REQUEST\", \"lockCash\": 100, \"unlockCash\": 50}"));
+
+		assertEquals(2, cashRequest.getClientId());
+		assertEquals(1, cashRequest.getInstrumentId());
+		assertTrue(cashRequest.getReferenceId().contentEquals("ref-1"));
+		assertEquals(RequestTypeEnum.CASH_CHECK_REQUEST, cashRequest.getRequestType());
+		assertEquals(100, cashRequest.getLockCash());
+		assertEquals(50, cashRequest.getUnlockCash());
+	}
+
+	@Test
+	public void decodesQuotedNumbersAsJacksonDid()
+	{
+		assertTrue(decodeCashRequest("{\"clientId\": \"2\", \"instrumentId\": \"-1\", \"lockCash\": \"100\", \"unlockCash\": \"10.9\"}"));
+
+		assertEquals(2, cashRequest.getClientId());
+		assertEquals(-1, cashRequest.getInstrumentId());
+		assertEquals(100, cashRequest.getLockCash());
+		assertEquals(10, cashRequest.getUnlockCash());
+		assertEquals(99.5, decodeExecutedPrice("\"99.5\""));
+	}
+
+	@Test
+	public void decodesNullsAsDefaults()
+	{
+		assertTrue(decodePositionRequest("{\"clientId\": null, \"instrumentId\": 3, \"referenceId\": null, \"requestType\": null, \"requestSubType\": \"LONG_SELL_ONLY\", \"lockQuantity\": null, \"unlockQuantity\": 7}"));
+
+		assertEquals(0, positionRequest.getClientId());
+		assertEquals(3, positionRequest.getInstrumentId());
+		assertTrue(positionRequest.getReferenceId().isNull());
+		assertEquals(RequestTypeEnum.NONE, positionRequest.getRequestType());
+		assertEquals(RequestTypeEnum.LONG_SELL_ONLY, positionRequest.getRequestSubType());
+		assertEquals(0, positionRequest.getLockQuantity());
+		assertEquals(7, positionRequest.getUnlockQuantity());
+		assertEquals(0.0, decodeExecutedPrice("null"));
+	}
+
+	@Test
+	public void resetsFieldsLeftFromThePreviousMessage()
+	{
+		assertTrue(decodeCashRequest("{\"clientId\": 2, \"referenceId\": \"ref-1\", \"lockCash\": 100}"));
+		assertTrue(decodeCashRequest("{\"instrumentId\": 4}"));
+
+		assertEquals(0, cashRequest.getClientId());
+		assertEquals(4, cashRequest.getInstrumentId());
+		assertEquals(0, cashRequest.getLockCash());
+	}
+
+	@Test
+	public void skipsUnknownFieldsIncludingNestedValues()
+	{
+		assertTrue(decodeCashRequest("{\"tags\": [1, {\"a\": \"}\"}], \"clientId\": 2, \"extra\": {\"lockCash\": 999}, \"note\": \"a \\\"quoted\\\" value\", \"lockCash\": 5, \"flag\": true}"));
+
+		assertEquals(2, cashRequest.getClientId());
+		assertEquals(5, cashRequest.getLockCash());
+	}
+
+	@Test
+	public void decodesFromAnOffsetWithinTheBuffer()
+	{
+		byte[] payload = ascii("CASH_CHECK_REQUEST={\"clientId\": 9, \"lockCash\": 1}");
+		int offset = payload.length - "{\"clientId\": 9, \"lockCash\": 1}".length();
+
+		assertTrue(messageFactory.decodeCashCheckRequestMessage(payload, offset, payload.length - offset, cashRequest));
+		assertEquals(9, cashRequest.getClientId());
+		assertEquals(1, cashRequest.getLockCash());
+	}
+
+	@Test
+	public void decodesExecutionMessage()
+	{
+		byte[] payload = ascii("{\"executionId\": \"E1\", \"orderId\": \"O1\", \"instrumentId\": 1, \"clientId\": 2, \"side\": \"B\", \"executedPrice\": 101.25, "
+				+ "\"executedQuantity\": 100, \"cumulativeQuantity\": 200, \"orderQuantity\": 300, \"currency\": \"USD\"}");
+
+		assertTrue(messageFactory.decodeExecutionMessage(payload, 0, payload.length, execution));
+		assertTrue(execution.getExecutionId().contentEquals("E1"));
+		assertTrue(execution.getOrderId().contentEquals("O1"));
+		assertEquals(1, execution.getInstrumentId());
+		assertEquals(2, execution.getClientId());
+		assertEquals('B', execution.getSide());
+		assertEquals(101.25, execution.getExecutedPrice());
+		assertEquals(100, execution.getExecutedQuantity());
+		assertEquals(200, execution.getCumulativeQuantity());
+		assertEquals(300, execution.getOrderQuantity());
+		assertTrue(execution.getCurrency().contentEquals("USD"));
+	}
+
+	@Test
+	public void decodesDoublesOnTheExactPath()
+	{
+		String[] prices = {"0", "-0.25", "0.1", "101.25", "1.5e3", "2E-3", "123456789012345", "0.000000000000001", "9007199254740.99"};
+		for(String price : prices)
+			assertEquals(Double.parseDouble(price), decodeExecutedPrice(price), price);
+	}
+
+	@Test
+	public void decodesDoublesOnTheInexactPath()
+	{
+		// Too many significant digits for the mantissa, or a power of ten outside the exact range.
+		String[] prices = {"123456789012345678.9", "0.12345678901234567890", "1e30", "1.7976931348623157E308", "4.9E-324", "-2.5e-40"};
+		for(String price : prices)
+			assertEquals(Double.parseDouble(price), decodeExecutedPrice(price), price);
+	}
+
+	@Test
+	public void decodesEveryDoubleAsDoubleToStringPrintsIt()
+	{
+		Random random = new Random(42);
+		for(int index = 0; index < 10_000; index++)
+		{
+			double value = index % 2 == 0 ? Math.round(random.nextDouble() * 1_000_000) / 100.0 : Double.longBitsToDouble(random.nextLong());
+			if(Double.isNaN(value) || Double.isInfinite(value))
+				continue;
+
+			String price = Double.toString(value);
+			assertEquals(Double.doubleToLongBits(value), Double.doubleToLongBits(decodeExecutedPrice(price)), price);
+		}
+	}
+
+	@Test
+	public void decodesIdsAsLongAsThePayloadAllows()
+	{
+		String referenceId = repeat('r', DisruptorEvent.PAYLOAD_CAPACITY - 20);
+		assertTrue(decodeCashRequest("{\"referenceId\":\"" + referenceId + "\"}"));
+		assertTrue(cashRequest.getReferenceId().contentEquals(referenceId));
+
+		assertTrue(decodePositionRequest("{\"referenceId\": \"" + repeat('p', 200) + "\"}"));
+		assertTrue(positionRequest.getReferenceId().contentEquals(repeat('p', 200)));
+
+		byte[] payload = ascii("{\"executionId\": \"" + repeat('e', 300) + "\", \"orderId\": \"" + repeat('o', 300) + "\", \"currency\": \"" + repeat('c', 20) + "\"}");
+		assertTrue(messageFactory.decodeExecutionMessage(payload, 0, payload.length, execution));
+		assertTrue(execution.getExecutionId().contentEquals(repeat('e', 300)));
+		assertTrue(execution.getOrderId().contentEquals(repeat('o', 300)));
+		assertTrue(execution.getCurrency().contentEquals(repeat('c', 20)));
+	}
+
+	@Test
+	public void decodesNonAsciiIdsAsJacksonDid() throws Exception
+	{
+		ObjectMapper objectMapper = new ObjectMapper();
+		String[] json = {"{\"referenceId\": \"r\u00e9f\u00e9rence-\u20ac-\ud83d\ude00\"}", "{\"referenceId\": \"\\u00e9\\u20AC\\ud83d\\ude00\"}",
+				"{\"referenceId\": \"\u65e5\u672c-\\\"x\\\"\"}"};
+		for(String text : json)
+		{
+			assertTrue(decodeCashRequest(text), text);
+			assertEquals(objectMapper.readTree(utf8(text)).get("referenceId").asText(), cashRequest.getReferenceId().toString(), text);
+		}
+
+		byte[] payload = utf8("{\"executionId\": \"\u00c9-1\", \"currency\": \"\u20ac\"}");
+		assertTrue(messageFactory.decodeExecutionMessage(payload, 0, payload.length, execution));
+		assertTrue(execution.getExecutionId().contentEquals("\u00c9-1"));
+		assertTrue(execution.getCurrency().contentEquals("\u20ac"));
+	}
+
+	@Test
+	public void rejectsMalformedUtf8()
+	{
+		byte[] prefix = ascii("{\"referenceId\": \"");
+		byte[][] sequences = {{(byte) 0xC3, '('}, {(byte) 0xC0, (byte) 0xAF}, {(byte) 0xED, (byte) 0xA0, (byte) 0x80}, {(byte) 0xF4, (byte) 0x90, (byte) 0x80, (byte) 0x80},
+				{(byte) 0x80}, {(byte) 0xE2, (byte) 0x82}};
+		for(byte[] sequence : sequences)
+		{
+			byte[] payload = new byte[prefix.length + sequence.length + 2];
+			System.arraycopy(prefix, 0, payload, 0, prefix.length);
+			System.arraycopy(sequence, 0, payload, prefix.length, sequence.length);
+			payload[payload.length - 2] = '"';
+			payload[payload.length - 1] = '}';
+			assertFalse(messageFactory.decodeCashCheckRequestMessage(payload, 0, payload.length, cashRequest));
+		}
+
+		// A sequence cut short by the end of the payload.
+		byte[] payload = utf8("{\"referenceId\": \"\u20ac");
+		assertFalse(messageFactory.decodeCashCheckRequestMessage(payload, 0, payload.length - 1, cashRequest));
+	}
+
+	@Test
+	public void rejectsInvalidPayloads()
+	{
+		assertFalse(decodeCashRequest("\"clientId\": 2}"));
+		assertFalse(decodeCashRequest("{\"clientId\": 2"));
+		assertFalse(decodeCashRequest("{\"clientId\": 2} trailing"));
+		assertFalse(decodeCashRequest("{\"clientId\": abc}"));
+		assertFalse(decodeCashRequest("{\"clientId\": 2147483648}"));
+		assertTrue(decodeCashRequest("{\"clientId\": -2147483648}"));
+		assertEquals(Integer.MIN_VALUE, cashRequest.getClientId());
+	}
+}
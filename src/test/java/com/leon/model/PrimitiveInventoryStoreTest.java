@@ -0,0 +1,160 @@
+package com.leon.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PrimitiveInventoryStoreTest
+{
+	// An empty store of expected size 0 has the minimum capacity of 16 slots.
+	private static final int CAPACITY = 16;
+
+	private static Inventory inventory(int instrumentId, int clientId)
+	{
+		return new Inventory(clientId, instrumentId, instrumentId * 10, instrumentId, instrumentId * 2, 0, instrumentId * 100.0, 0.0, instrumentId * 0.5);
+	}
+
+	// The slot a key takes in an empty store is its home slot, so the keys are found without repeating the hash here.
+	private static List<Inventory> inventoriesWithHomeSlot(int homeSlot, int count)
+	{
+		List<Inventory> inventories = new ArrayList<>();
+		for(int instrumentId = 1; inventories.size() < count; instrumentId++)
+		{
+			Inventory inventory = inventory(instrumentId, 7);
+			if(new PrimitiveInventoryStore(0).put(inventory) == homeSlot)
+				inventories.add(inventory);
+		}
+		return inventories;
+	}
+
+	private static void assertStored(PrimitiveInventoryStore store, Inventory expected)
+	{
+		int slot = store.slotOf(InventoryKey.of(expected));
+		assertTrue(slot >= 0, "Missing " + expected);
+		Inventory actual = store.read(slot, new Inventory());
+		assertEquals(expected.getInstrumentId(), actual.getInstrumentId());
+		assertEquals(expected.getClientId(), actual.getClientId());
+		assertEquals(expected.getStartOfDayQuantity(), actual.getStartOfDayQuantity());
+		assertEquals(expected.getExecutedQuantity(), actual.getExecutedQuantity());
+		assertEquals(expected.getReservedQuantity(), actual.getReservedQuantity());
+		assertEquals(expected.getStartOfDayCash(), actual.getStartOfDayCash());
+		assertEquals(expected.getReservedCash(), actual.getReservedCash());
+	}
+
+	@Test
+	public void removeShiftsTheProbeRunBackAcrossTheWrapAround()
+	{
+		// Three keys homed in the last slot run over the end of the table into slots 0 and 1, a key homed in slot 0 follows in slot 2.
+		List<Inventory> lastSlotInventories = inventoriesWithHomeSlot(CAPACITY - 1, 3);
+		Inventory firstSlotInventory = inventoriesWithHomeSlot(0, 1).get(0);
+		PrimitiveInventoryStore store = new PrimitiveInventoryStore(0);
+		assertEquals(CAPACITY - 1, store.put(lastSlotInventories.get(0)));
+		assertEquals(0, store.put(lastSlotInventories.get(1)));
+		assertEquals(1, store.put(lastSlotInventories.get(2)));
+		assertEquals(2, store.put(firstSlotInventory));
+
+		assertTrue(store.remove(InventoryKey.of(lastSlotInventories.get(0))));
+
+		assertEquals(3, store.size());
+		assertEquals(-1, store.slotOf(InventoryKey.of(lastSlotInventories.get(0))));
+		assertEquals(CAPACITY - 1, store.slotOf(InventoryKey.of(lastSlotInventories.get(1))));
+		assertEquals(0, store.slotOf(InventoryKey.of(lastSlotInventories.get(2))));
+		assertEquals(1, store.slotOf(InventoryKey.of(firstSlotInventory)));
+		assertStored(store, lastSlotInventories.get(1));
+		assertStored(store, lastSlotInventories.get(2));
+		assertStored(store, firstSlotInventory);
+		assertEquals(CAPACITY - 1, store.nextSlot(1));
+	}
+
+	@Test
+	public void removeLeavesEntriesAtTheirHomeSlotInPlace()
+	{
+		Inventory lastSlotInventory = inventoriesWithHomeSlot(CAPACITY - 1, 1).get(0);
+		List<Inventory> firstSlotInventories = inventoriesWithHomeSlot(0, 2);
+		PrimitiveInventoryStore store = new PrimitiveInventoryStore(0);
+		store.put(firstSlotInventories.get(0));
+		store.put(lastSlotInventory);
+		store.put(firstSlotInventories.get(1));
+
+		assertTrue(store.remove(InventoryKey.of(lastSlotInventory)));
+
+		assertEquals(0, store.slotOf(InventoryKey.of(firstSlotInventories.get(0))));
+		assertEquals(1, store.slotOf(InventoryKey.of(firstSlotInventories.get(1))));
+		assertFalse(store.remove(InventoryKey.of(lastSlotInventory)));
+	}
+
+	@Test
+	public void dirtyFlagMovesWithTheShiftedEntry()
+	{
+		List<Inventory> lastSlotInventories = inventoriesWithHomeSlot(CAPACITY - 1, 3);
+		PrimitiveInventoryStore store = new PrimitiveInventoryStore(0);
+		for(Inventory inventory : lastSlotInventories)
+			store.put(inventory);
+		assertTrue(store.markDirty(store.slotOf(InventoryKey.of(lastSlotInventories.get(1)))));
+
+		store.remove(InventoryKey.of(lastSlotInventories.get(0)));
+
+		// Already dirty in its new slot, while the clean entry shifted behind it and the slot freed at the end of the run are not.
+		assertFalse(store.markDirty(store.slotOf(InventoryKey.of(lastSlotInventories.get(1)))));
+		assertTrue(store.markDirty(store.slotOf(InventoryKey.of(lastSlotInventories.get(2)))));
+		Inventory reused = inventoriesWithHomeSlot(1, 1).get(0);
+		assertEquals(1, store.put(reused));
+		assertTrue(store.markDirty(1));
+	}
+
+	@Test
+	public void growKeepsEveryEntryAndItsDirtyFlag()
+	{
+		PrimitiveInventoryStore store = new PrimitiveInventoryStore(0);
+		List<Inventory> inventories = new ArrayList<>();
+		for(int instrumentId = 1; instrumentId <= CAPACITY * 4; instrumentId++)
+		{
+			Inventory inventory = inventory(instrumentId, instrumentId % 3);
+			inventories.add(inventory);
+			int slot = store.put(inventory);
+			if(instrumentId % 2 == 0)
+				store.markDirty(slot);
+		}
+
+		assertEquals(inventories.size(), store.size());
+		for(Inventory inventory : inventories)
+		{
+			assertStored(store, inventory);
+			assertEquals(inventory.getInstrumentId() % 2 != 0, store.markDirty(store.slotOf(InventoryKey.of(inventory))));
+		}
+	}
+
+	@Test
+	public void putReplacesTheValuesOfAnExistingKey()
+	{
+		PrimitiveInventoryStore store = new PrimitiveInventoryStore(0);
+		int slot = store.put(inventory(5, 1));
+		Inventory replacement = new Inventory(1, 5, 1, 2, 3, 4, 5.0, 6.0, 7.0);
+
+		assertEquals(slot, store.put(replacement));
+		assertEquals(1, store.size());
+		assertStored(store, replacement);
+	}
+
+	@Test
+	public void clearEmptiesTheStore()
+	{
+		PrimitiveInventoryStore store = new PrimitiveInventoryStore(4);
+		int slot = store.put(inventory(1, 1));
+		store.markDirty(slot);
+		store.put(inventory(2, 1));
+
+		store.clear();
+
+		assertEquals(0, store.size());
+		assertEquals(-1, store.slotOf(InventoryKey.of(1, 1)));
+		assertEquals(-1, store.nextSlot(-1));
+		assertEquals(slot, store.put(inventory(1, 1)));
+		assertTrue(store.markDirty(slot));
+	}
+}
@@ -0,0 +1,122 @@
+package com.leon.model;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ResponseEncoderTest
+{
+	private static final String LOCKED_CASH = "\"lockedCash\":";
+	private static final String UNLOCKED_CASH = ",\"unlockedCash\":";
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+	private final byte[] buffer = new byte[1024];
+
+	private String encode(int lockedQuantity, int unlockedQuantity, OutcomeType result, String referenceId, int clientId, int instrumentId, double lockedCash,
+			double unlockedCash, RequestTypeEnum requestType, RequestTypeEnum requestSubType)
+	{
+		MutableString reference = new MutableString(DisruptorEvent.PAYLOAD_CAPACITY);
+		reference.set(referenceId);
+		int length = ResponseEncoder.encode(buffer, 0, lockedQuantity, unlockedQuantity, result, reference, clientId, instrumentId, lockedCash, unlockedCash,
+				requestType, requestSubType);
+		return new String(buffer, 0, length, StandardCharsets.UTF_8);
+	}
+
+	// The text written for the locked cash of a response, which goes through putDouble.
+	private String encodeDouble(double value)
+	{
+		String json = encode(0, 0, OutcomeType.SUCCESS, "ref", 1, 1, value, 0.0, RequestTypeEnum.CASH_CHECK_REQUEST, null);
+		int start = json.indexOf(LOCKED_CASH) + LOCKED_CASH.length();
+		return json.substring(start, json.indexOf(UNLOCKED_CASH, start));
+	}
+
+	private String jackson(int lockedQuantity, int unlockedQuantity, OutcomeType result, String referenceId, int clientId, int instrumentId, double lockedCash,
+			double unlockedCash, RequestTypeEnum requestType, RequestTypeEnum requestSubType) throws Exception
+	{
+		return objectMapper.writeValueAsString(new InventoryCheckResponse(lockedQuantity, unlockedQuantity, result == null ? null : result.toString(), referenceId,
+				clientId, instrumentId, lockedCash, unlockedCash, requestType == null ? null : requestType.name(), requestSubType == null ? null : requestSubType.name()));
+	}
+
+	@Test
+	public void putDoubleMatchesDoubleToString()
+	{
+		double[] values = {0.0, -0.0, 1.0, -1.0, 0.1, 0.25, 1.5, 100.0, 1234.56, 0.001, 0.009, 999.999999999, 1e7 - 0.01, 0.123456789, 0.1234567891,
+				1e-4, 1e7, 12345678.9, 1e21, Double.MIN_VALUE, Double.MAX_VALUE};
+		for(double value : values)
+			assertEquals(Double.toString(value), encodeDouble(value), Double.toString(value));
+	}
+
+	@Test
+	public void putDoubleQuotesNonFiniteValues()
+	{
+		assertEquals("\"NaN\"", encodeDouble(Double.NaN));
+		assertEquals("\"Infinity\"", encodeDouble(Double.POSITIVE_INFINITY));
+		assertEquals("\"-Infinity\"", encodeDouble(Double.NEGATIVE_INFINITY));
+	}
+
+	@Test
+	public void putDoubleMatchesDoubleToStringForRandomCashAndDoubles()
+	{
+		Random random = new Random(42);
+		for(int index = 0; index < 100_000; index++)
+		{
+			double value;
+			switch(index % 4)
+			{
+				case 0:
+					value = random.nextInt(1_000_000_000) / 100.0;
+					break;
+				case 1:
+					value = -random.nextInt(1_000_000) / 1_000_000.0;
+					break;
+				case 2:
+					value = random.nextDouble() * Math.pow(10, random.nextInt(11) - 3);
+					break;
+				default:
+					value = Double.longBitsToDouble(random.nextLong());
+			}
+			if(Double.isNaN(value))
+				continue;
+			assertEquals(Double.toString(value), encodeDouble(value), Double.toString(value));
+		}
+	}
+
+	@Test
+	public void encodeMatchesTheJacksonResponse() throws Exception
+	{
+		assertEquals(jackson(100, 0, OutcomeType.SUCCESS, "ref-1", 2, 1, 1234.5, 0.0, RequestTypeEnum.CASH_CHECK_REQUEST, null),
+				encode(100, 0, OutcomeType.SUCCESS, "ref-1", 2, 1, 1234.5, 0.0, RequestTypeEnum.CASH_CHECK_REQUEST, null));
+		assertEquals(jackson(-5, Integer.MAX_VALUE, OutcomeType.PARTIAL_SUCCESS, "a \"quoted\\ ref\u0001", Integer.MIN_VALUE, 0, -0.001, 1e-9,
+				RequestTypeEnum.POSITION_CHECK_REQUEST, RequestTypeEnum.QUANTITY_AMEND_DOWN),
+				encode(-5, Integer.MAX_VALUE, OutcomeType.PARTIAL_SUCCESS, "a \"quoted\\ ref\u0001", Integer.MIN_VALUE, 0, -0.001, 1e-9,
+				RequestTypeEnum.POSITION_CHECK_REQUEST, RequestTypeEnum.QUANTITY_AMEND_DOWN));
+		assertEquals(jackson(0, 0, null, null, 0, 0, Double.NaN, Double.NEGATIVE_INFINITY, null, null), encode(0, 0, null, null, 0, 0, Double.NaN, Double.NEGATIVE_INFINITY, null, null));
+		assertEquals(jackson(0, 0, OutcomeType.FAILURE, "", 0, 0, 1e300, -2.5e-7, null, null), encode(0, 0, OutcomeType.FAILURE, "", 0, 0, 1e300, -2.5e-7, null, null));
+	}
+
+	@Test
+	public void encodeWritesNonAsciiAndLongIdsAsJacksonDid() throws Exception
+	{
+		assertEquals(jackson(1, 0, OutcomeType.SUCCESS, "r\u00e9f-\u20ac-\ud83d\ude00-\u65e5\"", 2, 1, 0.0, 0.0, RequestTypeEnum.CASH_CHECK_REQUEST, null),
+				encode(1, 0, OutcomeType.SUCCESS, "r\u00e9f-\u20ac-\ud83d\ude00-\u65e5\"", 2, 1, 0.0, 0.0, RequestTypeEnum.CASH_CHECK_REQUEST, null));
+
+		StringBuilder referenceId = new StringBuilder();
+		while(referenceId.length() < 600)
+			referenceId.append("ref-");
+		assertEquals(jackson(1, 0, OutcomeType.SUCCESS, referenceId.toString(), 2, 1, 0.0, 0.0, RequestTypeEnum.CASH_CHECK_REQUEST, null),
+				encode(1, 0, OutcomeType.SUCCESS, referenceId.toString(), 2, 1, 0.0, 0.0, RequestTypeEnum.CASH_CHECK_REQUEST, null));
+	}
+
+	@Test
+	public void encodeReturnsMinusOneWhenTheBufferIsTooSmall()
+	{
+		MutableString reference = new MutableString(64);
+		reference.set("ref-1");
+		assertEquals(-1, ResponseEncoder.encode(new byte[64], 0, 0, 0, OutcomeType.SUCCESS, reference, 1, 1, 0.0, 0.0, RequestTypeEnum.CASH_CHECK_REQUEST, null));
+		assertEquals(-1, ResponseEncoder.encode(buffer, buffer.length - 64, 0, 0, OutcomeType.SUCCESS, reference, 1, 1, 0.0, 0.0, RequestTypeEnum.CASH_CHECK_REQUEST, null));
+	}
+}
@@ -0,0 +1,197 @@
+package com.leon.service;
+
+import com.leon.model.BinaryCodec;
+import com.leon.model.CheckCashRequestMessage;
+import com.leon.model.DisruptorEvent;
+import com.leon.model.RequestTypeEnum;
+import com.lmax.disruptor.EventHandler;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ShardRouterTest
+{
+    private static final int SHARD_COUNT = 4;
+
+    private static class RecordingDisruptorService implements DisruptorService
+    {
+        private final List<String> messages = new ArrayList<>();
+        private final List<byte[]> binaryMessages = new ArrayList<>();
+        private String[] lastBatch;
+
+        @Override
+        public void push(String message)
+        {
+            messages.add(message);
+        }
+
+        @Override
+        public void push(byte[] message)
+        {
+            binaryMessages.add(message);
+        }
+
+        @Override
+        public void pushAll(String[] messages, int count)
+        {
+            lastBatch = messages;
+            this.messages.addAll(Arrays.asList(messages).subList(0, count));
+        }
+
+        @Override
+        public void start(String name, EventHandler<DisruptorEvent> journalHandler, EventHandler<DisruptorEvent> actionEventHandler) {}
+        @Override
+        public void start(String name, EventHandler<DisruptorEvent> journalHandler, EventHandler<DisruptorEvent> replicationHandler, EventHandler<DisruptorEvent> actionEventHandler) {}
+        @Override
+        public void stop() {}
+        @Override
+        public void setLatencyService(LatencyService latencyService) {}
+        @Override
+        public RingStatistics getStatistics() { return null; }
+        @Override
+        public Map<String, Object> getMetrics() { return null; }
+        @Override
+        public void setNextUid(long nextUid) {}
+        @Override
+        public long getNextUid() { return 0; }
+        @Override
+        public void pushAll(DisruptorEvent[] events, int count) {}
+    }
+
+    private static RecordingDisruptorService[] disruptors(int count)
+    {
+        RecordingDisruptorService[] disruptors = new RecordingDisruptorService[count];
+        for(int shard = 0; shard < count; shard++)
+            disruptors[shard] = new RecordingDisruptorService();
+        return disruptors;
+    }
+
+    private static String message(int instrumentId, int clientId, int index)
+    {
+        return "CASH_CHECK_REQUEST={\"instrumentId\": " + instrumentId + ", \"clientId\": " + clientId + ", \"lockCash\": " + index + "}";
+    }
+
+    @Test
+    public void shardOfIsStableAndWithinTheShardCount()
+    {
+        for(int shardCount = 1; shardCount <= 8; shardCount++)
+        {
+            for(int instrumentId = -5; instrumentId < 50; instrumentId++)
+            {
+                for(int clientId = -5; clientId < 50; clientId++)
+                {
+                    int shard = ShardRouter.shardOf(instrumentId, clientId, shardCount);
+                    assertTrue(shard >= 0 && shard < shardCount, "Shard: " + shard + " of " + shardCount);
+                    assertEquals(shard, ShardRouter.shardOf(instrumentId, clientId, shardCount));
+                }
+            }
+        }
+        assertEquals(0, ShardRouter.shardOf(Integer.MAX_VALUE, Integer.MIN_VALUE, 1));
+    }
+
+    @Test
+    public void shardOfSpreadsSequentialKeysEvenly()
+    {
+        int[] counts = new int[SHARD_COUNT];
+        for(int instrumentId = 1; instrumentId <= 500; instrumentId++)
+        {
+            for(int clientId = 1; clientId <= 20; clientId++)
+                counts[ShardRouter.shardOf(instrumentId, clientId, SHARD_COUNT)]++;
+        }
+
+        int mean = 500 * 20 / SHARD_COUNT;
+        for(int count : counts)
+            assertTrue(Math.abs(count - mean) < mean / 10, "Uneven shards: " + Arrays.toString(counts));
+    }
+
+    @Test
+    public void textAndBinaryMessagesOfAKeyLandOnTheSameShard()
+    {
+        RecordingDisruptorService[] disruptors = disruptors(SHARD_COUNT);
+        ShardRouter shardRouter = new ShardRouter(disruptors);
+        byte[] buffer = new byte[256];
+        for(int instrumentId = 1; instrumentId <= 20; instrumentId++)
+        {
+            int clientId = instrumentId * 7;
+            int shard = ShardRouter.shardOf(instrumentId, clientId, SHARD_COUNT);
+            assertEquals(shard, shardRouter.shardOf(message(instrumentId, clientId, 0)));
+
+            shardRouter.push(message(instrumentId, clientId, 0));
+            int length = BinaryCodec.encode(new CheckCashRequestMessage(1, 0, clientId, instrumentId, "ref", RequestTypeEnum.CASH_CHECK_REQUEST), 0L, buffer, 0);
+            shardRouter.push(Arrays.copyOf(buffer, length));
+
+            assertEquals(message(instrumentId, clientId, 0), disruptors[shard].messages.get(disruptors[shard].messages.size() - 1));
+            byte[] binaryMessage = disruptors[shard].binaryMessages.get(disruptors[shard].binaryMessages.size() - 1);
+            assertEquals(instrumentId, BinaryCodec.instrumentIdOf(binaryMessage, 0));
+            assertEquals(clientId, BinaryCodec.clientIdOf(binaryMessage, 0));
+        }
+    }
+
+    @Test
+    public void pushAllSplitsABatchByShardKeepingTheOrderOfEachKey()
+    {
+        RecordingDisruptorService[] disruptors = disruptors(SHARD_COUNT);
+        ShardRouter shardRouter = new ShardRouter(disruptors);
+        List<List<String>> expected = new ArrayList<>();
+        for(int shard = 0; shard < SHARD_COUNT; shard++)
+            expected.add(new ArrayList<>());
+
+        // A second, larger batch makes the router grow its staging arrays, and must not see anything left from the first.
+        for(int batchSize : new int[] {40, 400})
+        {
+            String[] messages = new String[batchSize + 1];
+            for(int index = 0; index < batchSize; index++)
+            {
+                messages[index] = message(index % 10, index % 3, index);
+                expected.get(ShardRouter.shardOf(index % 10, index % 3, SHARD_COUNT)).add(messages[index]);
+            }
+            messages[batchSize] = "not routed";
+            shardRouter.pushAll(messages, batchSize);
+        }
+
+        for(int shard = 0; shard < SHARD_COUNT; shard++)
+        {
+            assertTrue(!expected.get(shard).isEmpty(), "Nothing was routed to shard: " + shard);
+            assertEquals(expected.get(shard), disruptors[shard].messages);
+        }
+    }
+
+    @Test
+    public void aSingleShardTakesEveryBatchAsItIs()
+    {
+        RecordingDisruptorService[] disruptors = disruptors(1);
+        ShardRouter shardRouter = new ShardRouter(disruptors);
+        String[] messages = {message(1, 2, 0), message(3, 4, 1), "CASH_CHECK_REQUEST={}"};
+
+        shardRouter.pushAll(messages, 2);
+
+        assertSame(messages, disruptors[0].lastBatch);
+        assertEquals(Arrays.asList(messages[0], messages[1]), disruptors[0].messages);
+        assertEquals(0, shardRouter.shardOf(messages[2]));
+    }
+
+    @Test
+    public void readIntFieldReadsTopLevelIntegers()
+    {
+        assertEquals(42, ShardRouter.readIntField("{\"clientId\":42}", "\"clientId\""));
+        assertEquals(42, ShardRouter.readIntField("{\"clientId\" : \"42\", \"instrumentId\": 7}", "\"clientId\""));
+        assertEquals(-7, ShardRouter.readIntField("{\"clientId\": 1, \"instrumentId\": -7}", "\"instrumentId\""));
+        assertEquals(0, ShardRouter.readIntField("{\"clientId\": 1}", "\"instrumentId\""));
+        assertEquals(0, ShardRouter.readIntField("{\"instrumentId\": null}", "\"instrumentId\""));
+    }
+
+    @Test
+    public void rejectsMissingDisruptors()
+    {
+        assertThrows(IllegalArgumentException.class, () -> new ShardRouter(null));
+        assertThrows(IllegalArgumentException.class, () -> new ShardRouter(new DisruptorService[0]));
+    }
+}